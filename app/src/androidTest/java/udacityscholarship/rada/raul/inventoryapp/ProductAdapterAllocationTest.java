@@ -0,0 +1,93 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import udacityscholarship.rada.raul.inventoryapp.data.Product;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductFilter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented test counting the objects allocated while {@link ProductAdapter} binds list
+ * items: apart from the three texts of a list item, binding must not allocate anything.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductAdapterAllocationTest {
+
+    /**
+     * Number of products bound in turn
+     */
+    private static final int PRODUCTS = 100;
+
+    /**
+     * Number of binds whose allocations are counted
+     */
+    private static final int BINDS = 10000;
+
+    /**
+     * Maximum number of objects allocated by a bind, on average: one String for each of the
+     * three texts, plus its array of chars before Android 6.0
+     */
+    private static final int MAX_ALLOCATIONS_PER_BIND = 6;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void bindingAllocatesOnlyTheTexts() {
+        final Context context = new ContextThemeWrapper(
+                InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+        final int[] allocations = new int[1];
+        final String[] lastTexts = new String[2];
+
+        // list items are bound on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                List<Product> products = new ArrayList<>();
+                for (int i = 0; i < PRODUCTS; i++) {
+                    products.add(new Product(i + 1, "Product " + i, i * 199, i, 0));
+                }
+                ProductAdapter adapter = new ProductAdapter(context, null);
+                adapter.swapProducts(new ProductListLoader.Result(products, null, null, false,
+                        ProductContract.ProductEntry.SORT_ID, ProductFilter.NONE, 1));
+                ProductAdapter.ViewHolder holder =
+                        adapter.onCreateViewHolder(new FrameLayout(context), 0);
+
+                // the first binds grow the buffers of the holder and load the classes involved
+                for (int i = 0; i < PRODUCTS; i++) {
+                    adapter.onBindViewHolder(holder, i);
+                }
+
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                for (int i = 0; i < BINDS; i++) {
+                    adapter.onBindViewHolder(holder, i % PRODUCTS);
+                }
+                allocations[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+
+                lastTexts[0] = holder.productPriceTextView.getText().toString();
+                lastTexts[1] = holder.productQuantityTextView.getText().toString();
+            }
+        });
+
+        // the last product bound is the last one of the list
+        assertEquals("Price: 197.01 EUR", lastTexts[0]);
+        assertEquals("Quantity: " + (PRODUCTS - 1), lastTexts[1]);
+
+        assertTrue(allocations[0] + " objects allocated by " + BINDS + " binds",
+                allocations[0] <= BINDS * MAX_ALLOCATIONS_PER_BIND);
+    }
+}
@@ -0,0 +1,175 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link ProductContract.ProductEntry#METHOD_ADJUST_QUANTITIES} applies every batch
+ * of deltas exactly once: a batch sent again, even after the provider was restarted, and a
+ * batch older than the last one applied are refused without changing the quantities. The
+ * provider runs on a throwaway copy of the database.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class AdjustQuantitiesTest {
+
+    /**
+     * Prefix of the throwaway database of the test
+     */
+    private static final String DATABASE_PREFIX = "adjust_quantities_test.";
+
+    /**
+     * ID of the first batch sent by the tests, as created by the {@link StockAdjustmentQueue}
+     */
+    private static final long BATCH_ID = 1530000000000L;
+
+    /**
+     * Quantity of the product before any adjustment
+     */
+    private static final int QUANTITY = 10;
+
+    private Context context;
+    private ProductProvider provider;
+    private long productId;
+
+    @Before
+    public void insertProduct() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                DATABASE_PREFIX);
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+        startProvider();
+
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, "Apples");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, 300);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, QUANTITY);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Orchard");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "111");
+        Uri productUri = provider.insert(ProductContract.ProductEntry.CONTENT_URI, values);
+        productId = ContentUris.parseId(productUri);
+    }
+
+    @After
+    public void deleteDatabase() {
+        provider.shutdown();
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void sameBatchIsAppliedOnce() {
+        Bundle result = adjust(BATCH_ID, -3);
+        assertFalse(result.getBoolean(ProductContract.ProductEntry.EXTRA_BATCH_ALREADY_APPLIED));
+        assertArrayEquals(new int[]{QUANTITY - 3},
+                result.getIntArray(ProductContract.ProductEntry.EXTRA_NEW_QUANTITIES));
+
+        // the same batch, sent again because its result was lost
+        Bundle replayed = adjust(BATCH_ID, -3);
+
+        assertTrue(replayed.getBoolean(ProductContract.ProductEntry.EXTRA_BATCH_ALREADY_APPLIED));
+        assertNull(replayed.getIntArray(ProductContract.ProductEntry.EXTRA_NEW_QUANTITIES));
+        assertEquals(QUANTITY - 3, readQuantity());
+    }
+
+    @Test
+    public void batchIsRefusedAfterRestart() {
+        adjust(BATCH_ID, -3);
+
+        // the journal of a process which died is replayed by the next process
+        provider.shutdown();
+        startProvider();
+        Bundle replayed = adjust(BATCH_ID, -3);
+
+        assertTrue(replayed.getBoolean(ProductContract.ProductEntry.EXTRA_BATCH_ALREADY_APPLIED));
+        assertEquals(QUANTITY - 3, readQuantity());
+    }
+
+    @Test
+    public void olderBatchIsRefused() {
+        adjust(BATCH_ID, 5);
+
+        Bundle older = adjust(BATCH_ID - 1, -3);
+
+        assertTrue(older.getBoolean(ProductContract.ProductEntry.EXTRA_BATCH_ALREADY_APPLIED));
+        assertEquals(QUANTITY + 5, readQuantity());
+
+        // the batches created after it are still applied
+        adjust(BATCH_ID + 1, -3);
+        assertEquals(QUANTITY + 2, readQuantity());
+    }
+
+    @Test
+    public void deltasWithoutBatchAreAlwaysApplied() {
+        Bundle extras = buildExtras(-3);
+        provider.call(ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES, null, extras);
+        provider.call(ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES, null, extras);
+
+        assertEquals(QUANTITY - 6, readQuantity());
+    }
+
+    /**
+     * Create the provider on the throwaway database.
+     */
+    private void startProvider() {
+        provider = new ProductProvider();
+        provider.attachInfo(context, null);
+    }
+
+    /**
+     * Send a batch holding one delta of the product.
+     *
+     * @param batchId ID of the batch
+     * @param delta   of the quantity of the product
+     * @return result of the call
+     */
+    private Bundle adjust(long batchId, int delta) {
+        Bundle extras = buildExtras(delta);
+        extras.putLong(ProductContract.ProductEntry.EXTRA_BATCH_ID, batchId);
+        return provider.call(ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES, null,
+                extras);
+    }
+
+    /**
+     * @param delta of the quantity of the product
+     * @return arguments of an adjustment of the product, without batch ID
+     */
+    private Bundle buildExtras(int delta) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS, new long[]{productId});
+        extras.putIntArray(ProductContract.ProductEntry.EXTRA_QUANTITY_DELTAS, new int[]{delta});
+        return extras;
+    }
+
+    /**
+     * @return quantity of the product in the database
+     */
+    private int readQuantity() {
+        Cursor cursor = provider.query(
+                ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI, productId),
+                new String[]{ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY}, null, null,
+                null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Instrumented benchmark measuring mixed read/write throughput with and without write-ahead
+ * logging. A reader thread reads the first page of the list of products, as the loaders do,
+ * while the test thread commits quantity updates one by one, as the sell button does. Results
+ * are written to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class JournalModeBenchmark {
+
+    private static final String LOG_TAG = JournalModeBenchmark.class.getSimpleName();
+
+    /**
+     * Name of the throwaway database used by the benchmark
+     */
+    private static final String DATABASE_NAME = "journal_benchmark.db";
+
+    /**
+     * Time during which the reads and writes are counted, for each journal mode
+     */
+    private static final long DURATION_MILLIS = 5000;
+
+    /**
+     * Number of products in the database
+     */
+    private static final int PRODUCTS = 1000;
+
+    /**
+     * Number of products read by each read, as in one page of the list
+     */
+    private static final String PAGE_SIZE = "50";
+
+    /**
+     * Columns read by each read
+     */
+    private static final String[] PROJECTION = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY
+    };
+
+    private Context context;
+    private ProductDbHelper productDbHelper;
+
+    @Before
+    public void deleteOldDatabase() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void deleteDatabase() {
+        if (productDbHelper != null) {
+            productDbHelper.close();
+        }
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void mixedReadsAndWrites() throws InterruptedException {
+        String rollbackJournal = measure(false);
+        String writeAheadLog = measure(true);
+
+        Log.i(LOG_TAG, "Rollback journal: " + rollbackJournal + ", write-ahead log: " +
+                writeAheadLog);
+    }
+
+    /**
+     * Fill a new database, then read and write it concurrently for {@link #DURATION_MILLIS}.
+     *
+     * @param writeAheadLogging whether the database uses write-ahead logging
+     * @return description of the number of reads and writes per second
+     */
+    private String measure(boolean writeAheadLogging) throws InterruptedException {
+        if (productDbHelper != null) {
+            productDbHelper.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+        productDbHelper = new ProductDbHelper(context, DATABASE_NAME, writeAheadLogging);
+        final SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        ProductStatements productStatements = new ProductStatements(productDbHelper);
+        long[] productIds = insertProducts(db, productStatements);
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final long[] reads = new long[1];
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    Cursor cursor = db.query(ProductContract.ProductEntry.TABLE_NAME, PROJECTION,
+                            null, null, null, null,
+                            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, PAGE_SIZE);
+                    try {
+                        while (cursor.moveToNext()) {
+                            cursor.getLong(0);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    reads[0]++;
+                }
+            }
+        });
+
+        // each write is committed on its own, as the writes of the app are
+        long writes = 0;
+        reader.start();
+        long end = SystemClock.elapsedRealtime() + DURATION_MILLIS;
+        while (SystemClock.elapsedRealtime() < end) {
+            assertEquals(1, productStatements.updateQuantity(
+                    productIds[(int) (writes % PRODUCTS)], writes, writes));
+            writes++;
+        }
+        stop.set(true);
+        reader.join();
+
+        return reads[0] * 1000 / DURATION_MILLIS + " reads/s and " +
+                writes * 1000 / DURATION_MILLIS + " writes/s";
+    }
+
+    /**
+     * @return IDs of the products inserted
+     */
+    private static long[] insertProducts(SQLiteDatabase db, ProductStatements productStatements) {
+        SupplierDictionary supplierDictionary = new SupplierDictionary(PRODUCTS);
+        long[] productIds = new long[PRODUCTS];
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < PRODUCTS; i++) {
+                ContentValues values = new ContentValues();
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, i);
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                        supplierDictionary.getOrInsert(db, "Supplier " + i, "n/a"));
+                productIds[i] =
+                        productStatements.insertFullRow(values, System.currentTimeMillis());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return productIds;
+    }
+}
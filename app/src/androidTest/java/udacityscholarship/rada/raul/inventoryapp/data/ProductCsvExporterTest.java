@@ -0,0 +1,176 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the CSV written by {@link ProductCsvExporter}, and that the heap it uses does not grow
+ * with the number of products exported. The products are generated on the fly by a provider
+ * standing in for the {@link ProductProvider}, so that a million of them can be exported
+ * without first being written to a database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductCsvExporterTest {
+
+    private static final String LOG_TAG = ProductCsvExporterTest.class.getSimpleName();
+
+    /**
+     * Number of products exported by the heap test
+     */
+    private static final int LARGE_PRODUCT_COUNT = 1000000;
+
+    /**
+     * Number of products exported between two measures of the heap
+     */
+    private static final int HEAP_CHECK_INTERVAL = 100000;
+
+    /**
+     * Growth of the heap tolerated over the whole export, in bytes. Far below the size of the
+     * CSV, which is tens of megabytes.
+     */
+    private static final long MAX_HEAP_GROWTH_BYTES = 2 * 1024 * 1024;
+
+    private Context context;
+
+    @Before
+    public void getContext() {
+        context = InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void writesHeaderAndQuotedFields() throws IOException {
+        ProductCsvExporter exporter = new ProductCsvExporter(
+                createResolver(new SyntheticProductsProvider(context, 3)), 2);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        long productsExported = exporter.export(outputStream, null, null);
+
+        assertEquals(3, productsExported);
+        assertEquals("_id,product,price,quantity,supplier,number,reorder_threshold\r\n" +
+                        "1,Product 1,0.01,1,\"Supplier, \"\"1\"\"\",n/a,0\r\n" +
+                        "2,Product 2,0.02,2,\"Supplier, \"\"2\"\"\",n/a,0\r\n" +
+                        "3,Product 3,0.03,3,\"Supplier, \"\"3\"\"\",n/a,0\r\n",
+                outputStream.toString("UTF-8"));
+    }
+
+    @Test
+    public void heapDoesNotGrowWithProductCount() throws IOException {
+        ProductCsvExporter exporter = new ProductCsvExporter(
+                createResolver(new SyntheticProductsProvider(context, LARGE_PRODUCT_COUNT)),
+                ProductCsvExporter.DEFAULT_CHUNK_SIZE);
+        CountingOutputStream outputStream = new CountingOutputStream();
+        final long[] heapRange = {Long.MAX_VALUE, 0};
+
+        long productsExported = exporter.export(outputStream,
+                new ProductCsvExporter.ProgressListener() {
+                    @Override
+                    public void onProgress(long productsExported, long productCount) {
+                        if (productsExported % HEAP_CHECK_INTERVAL != 0) {
+                            return;
+                        }
+                        long usedHeap = measureUsedHeap();
+                        heapRange[0] = Math.min(heapRange[0], usedHeap);
+                        heapRange[1] = Math.max(heapRange[1], usedHeap);
+                    }
+                }, null);
+
+        Log.i(LOG_TAG, "Exported " + productsExported + " products, " + outputStream.count +
+                " bytes, used heap between " + heapRange[0] + " and " + heapRange[1] + " bytes");
+        assertEquals(LARGE_PRODUCT_COUNT, productsExported);
+        assertTrue(outputStream.count > MAX_HEAP_GROWTH_BYTES * 10);
+        assertTrue(heapRange[1] - heapRange[0] < MAX_HEAP_GROWTH_BYTES);
+    }
+
+    /**
+     * @return heap in use by live objects, once the garbage has been collected
+     */
+    private static long measureUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @param provider standing in for the {@link ProductProvider}
+     * @return resolver routing the products authority to the provider
+     */
+    private static MockContentResolver createResolver(MockContentProvider provider) {
+        MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(ProductContract.CONTENT_AUTHORITY, provider);
+        return resolver;
+    }
+
+    /**
+     * Provider generating products 1 to n on the fly, answering the page and count queries of
+     * the exporter like the {@link ProductProvider} does.
+     */
+    private static class SyntheticProductsProvider extends MockContentProvider {
+
+        private final long productCount;
+
+        SyntheticProductsProvider(Context context, long productCount) {
+            super(context);
+            this.productCount = productCount;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
+            MatrixCursor cursor = new MatrixCursor(projection);
+            String limitParameter = uri.getQueryParameter(
+                    ProductContract.ProductEntry.QUERY_PARAMETER_LIMIT);
+            if (limitParameter == null) {
+                // count of the products
+                cursor.addRow(new Object[]{productCount});
+                return cursor;
+            }
+
+            long afterId = Long.parseLong(uri.getQueryParameter(
+                    ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_ID));
+            long lastId = Math.min(productCount, afterId + Long.parseLong(limitParameter));
+            for (long id = afterId + 1; id <= lastId; id++) {
+                cursor.addRow(new Object[]{id, "Product " + id, id % 100, id % 10,
+                        "Supplier, \"" + id + "\"", "n/a", 0});
+            }
+            return cursor;
+        }
+    }
+
+    /**
+     * Output stream discarding the CSV, only counting its bytes
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
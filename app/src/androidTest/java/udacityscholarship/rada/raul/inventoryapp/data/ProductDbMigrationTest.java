@@ -0,0 +1,331 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Instrumented test of the upgrades of {@link ProductDbHelper}. A database is built at each
+ * older version and filled with products, one of them deleted, then opened with the current
+ * helper. The upgraded database must have the same schema as a new one, and keep the products,
+ * their IDs, their suppliers and their prices, converted into minor units. Its search table,
+ * statistics and triggers must follow the products, and new products must not reuse the ID of
+ * the deleted one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductDbMigrationTest {
+
+    /**
+     * Name of the database built at an older version, then upgraded
+     */
+    private static final String DATABASE_NAME = "migration_test.db";
+
+    /**
+     * Name of the database created at the current version, whose schema is the expected one
+     */
+    private static final String NEW_DATABASE_NAME = "migration_test_new.db";
+
+    /**
+     * Version of the database once upgraded
+     */
+    private static final int CURRENT_VERSION = 11;
+
+    /**
+     * Version at which the suppliers were moved into their own table
+     */
+    private static final int SUPPLIERS_TABLE_VERSION = 8;
+
+    /**
+     * Statement creating the products table of the first version of the database
+     */
+    private static final String SQL_CREATE_VERSION_1 = "CREATE TABLE products (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            "product TEXT NOT NULL, " +
+            "price INTEGER NOT NULL, " +
+            "quantity INTEGER NOT NULL DEFAULT 0, " +
+            "supplier TEXT NOT NULL DEFAULT \"n/a\", " +
+            "number TEXT NOT NULL DEFAULT \"n/a\");";
+
+    /**
+     * Query reading the schema of a database, apart from the tables SQLite and Android create
+     */
+    private static final String SQL_SELECT_SCHEMA = "SELECT type, name, sql FROM sqlite_master " +
+            "WHERE name NOT IN ('sqlite_sequence', 'android_metadata') ORDER BY type, name;";
+
+    /**
+     * Number of minor units in one unit of the currency, by which the upgrade multiplies the
+     * prices
+     */
+    private static final long MINOR_UNITS = 100;
+
+    private Context context;
+    private ProductDbHelper productDbHelper;
+
+    @Before
+    public void deleteOldDatabases() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        context.deleteDatabase(NEW_DATABASE_NAME);
+    }
+
+    @After
+    public void deleteDatabases() {
+        if (productDbHelper != null) {
+            productDbHelper.close();
+        }
+        context.deleteDatabase(DATABASE_NAME);
+        context.deleteDatabase(NEW_DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradesFromVersion1() {
+        checkUpgrade(1);
+    }
+
+    @Test
+    public void upgradesFromVersion2() {
+        checkUpgrade(2);
+    }
+
+    @Test
+    public void upgradesFromVersion3() {
+        checkUpgrade(3);
+    }
+
+    @Test
+    public void upgradesFromVersion4() {
+        checkUpgrade(4);
+    }
+
+    @Test
+    public void upgradesFromVersion5() {
+        checkUpgrade(5);
+    }
+
+    @Test
+    public void upgradesFromVersion6() {
+        checkUpgrade(6);
+    }
+
+    @Test
+    public void upgradesFromVersion7() {
+        checkUpgrade(7);
+    }
+
+    @Test
+    public void upgradesFromVersion8() {
+        checkUpgrade(8);
+    }
+
+    /**
+     * Build a database at the given version, upgrade it with the current helper, and check the
+     * upgraded database.
+     *
+     * @param version of the database before the upgrade
+     */
+    private void checkUpgrade(int version) {
+        createDatabase(version);
+
+        productDbHelper = new ProductDbHelper(context, DATABASE_NAME);
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        assertEquals(CURRENT_VERSION, db.getVersion());
+        assertEquals(readNewDatabaseSchema(), readSchema(db));
+
+        // the products keep their IDs and suppliers, and their prices are in minor units
+        Cursor cursor = db.query(ProductContract.ProductEntry.VIEW_NAME, new String[]{
+                        ProductContract.ProductEntry._ID,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER},
+                null, null, null, null, ProductContract.ProductEntry._ID);
+        try {
+            assertEquals(3, cursor.getCount());
+            checkProduct(cursor, 1, "Apples", 3 * MINOR_UNITS, 10, "Orchard", "111");
+            checkProduct(cursor, 2, "Pears", 12 * MINOR_UNITS, 0, "Orchard", "111");
+            checkProduct(cursor, 4, "Walnuts", 7 * MINOR_UNITS, 5, "Grove", "222");
+        } finally {
+            cursor.close();
+        }
+        assertEquals(2, DatabaseUtils.queryNumEntries(db,
+                ProductContract.SupplierEntry.TABLE_NAME));
+
+        // the statistics cover the products, with their prices in minor units
+        checkStats(db, 15, (3 * 10 + 7 * 5) * MINOR_UNITS, 1);
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT " +
+                ProductContract.AdjustmentBatchEntry.COLUMN_LAST_BATCH_ID + " FROM " +
+                ProductContract.AdjustmentBatchEntry.TABLE_NAME, null));
+        assertEquals(1, searchProduct(db, "apple*"));
+        assertEquals(4, searchProduct(db, "grove"));
+
+        // the triggers follow new products, which do not reuse the ID of the deleted product
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, "Plums");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, 250);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, 2);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                DatabaseUtils.longForQuery(db, "SELECT " + ProductContract.SupplierEntry._ID +
+                        " FROM " + ProductContract.SupplierEntry.TABLE_NAME + " WHERE " +
+                        ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME + " = 'Grove'", null));
+        assertEquals(5, db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values));
+        checkStats(db, 17, (3 * 10 + 7 * 5) * MINOR_UNITS + 2 * 250, 1);
+        assertEquals(5, searchProduct(db, "plums"));
+    }
+
+    /**
+     * Create the database at the given version: the first version of the products table, then
+     * each step which brought the database to that version, and fill it with products.
+     *
+     * @param version of the database
+     */
+    private void createDatabase(int version) {
+        File databaseFile = context.getDatabasePath(DATABASE_NAME);
+        databaseFile.getParentFile().mkdirs();
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(databaseFile, null);
+        try {
+            db.execSQL(SQL_CREATE_VERSION_1);
+            new ProductDbHelper(context, DATABASE_NAME).onUpgrade(db, 1, version);
+
+            insertProduct(db, version, "Apples", 3, 10, "Orchard", "111");
+            insertProduct(db, version, "Pears", 12, 0, "Orchard", "111");
+            long deletedId = insertProduct(db, version, "Cherries", 9, 1, "Orchard", "333");
+            insertProduct(db, version, "Walnuts", 7, 5, "Grove", "222");
+            db.delete(ProductContract.ProductEntry.TABLE_NAME,
+                    ProductContract.ProductEntry._ID + "=" + deletedId, null);
+            if (version >= SUPPLIERS_TABLE_VERSION) {
+                db.delete(ProductContract.SupplierEntry.TABLE_NAME,
+                        ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + "='333'",
+                        null);
+            }
+
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Insert a product into a database at the given version, with a price in whole units of
+     * the currency.
+     *
+     * @return ID of the product
+     */
+    private static long insertProduct(SQLiteDatabase db, int version, String name, long price,
+                                      int quantity, String supplier, String phoneNumber) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, price);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        if (version < SUPPLIERS_TABLE_VERSION) {
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, supplier);
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                    phoneNumber);
+        } else {
+            ContentValues supplierValues = new ContentValues();
+            supplierValues.put(ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME, supplier);
+            supplierValues.put(ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                    phoneNumber);
+            db.insertWithOnConflict(ProductContract.SupplierEntry.TABLE_NAME, null,
+                    supplierValues, SQLiteDatabase.CONFLICT_IGNORE);
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                    DatabaseUtils.longForQuery(db, "SELECT " +
+                            ProductContract.SupplierEntry._ID + " FROM " +
+                            ProductContract.SupplierEntry.TABLE_NAME + " WHERE " +
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME + " = ? AND " +
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " = ?",
+                            new String[]{supplier, phoneNumber}));
+        }
+        return db.insertOrThrow(ProductContract.ProductEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * @return schema of a database created at the current version
+     */
+    private List<String> readNewDatabaseSchema() {
+        ProductDbHelper newDbHelper = new ProductDbHelper(context, NEW_DATABASE_NAME);
+        try {
+            return readSchema(newDbHelper.getReadableDatabase());
+        } finally {
+            newDbHelper.close();
+        }
+    }
+
+    /**
+     * @return every table, index, view and trigger of the database, with its SQL statement
+     */
+    private static List<String> readSchema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<>();
+        Cursor cursor = db.rawQuery(SQL_SELECT_SCHEMA, null);
+        try {
+            while (cursor.moveToNext()) {
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + ": " +
+                        cursor.getString(2));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+
+    /**
+     * Check the product at the next position of the cursor.
+     */
+    private static void checkProduct(Cursor cursor, long id, String name, long price,
+                                     int quantity, String supplier, String phoneNumber) {
+        cursor.moveToNext();
+        assertEquals(id, cursor.getLong(0));
+        assertEquals(name, cursor.getString(1));
+        assertEquals(price, cursor.getLong(2));
+        assertEquals(quantity, cursor.getInt(3));
+        assertEquals(supplier, cursor.getString(4));
+        assertEquals(phoneNumber, cursor.getString(5));
+    }
+
+    /**
+     * Check the single row of the inventory statistics.
+     */
+    private static void checkStats(SQLiteDatabase db, long totalQuantity, long totalValue,
+                                   long outOfStockCount) {
+        Cursor cursor = db.query(ProductContract.StatsEntry.TABLE_NAME, new String[]{
+                        ProductContract.StatsEntry.COLUMN_TOTAL_QUANTITY,
+                        ProductContract.StatsEntry.COLUMN_TOTAL_VALUE,
+                        ProductContract.StatsEntry.COLUMN_OUT_OF_STOCK_COUNT},
+                null, null, null, null, null);
+        try {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(totalQuantity, cursor.getLong(0));
+            assertEquals(totalValue, cursor.getLong(1));
+            assertEquals(outOfStockCount, cursor.getLong(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @param query full-text query, matched against the names and suppliers of the products
+     * @return ID of the single product matching the query
+     */
+    private static long searchProduct(SQLiteDatabase db, String query) {
+        return DatabaseUtils.longForQuery(db, "SELECT docid FROM " +
+                ProductContract.ProductEntry.SEARCH_TABLE_NAME + " WHERE " +
+                ProductContract.ProductEntry.SEARCH_TABLE_NAME + " MATCH ?",
+                new String[]{query});
+    }
+}
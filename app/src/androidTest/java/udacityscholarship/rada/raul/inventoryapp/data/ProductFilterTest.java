@@ -0,0 +1,60 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the query parameters of the URIs of the sorted pages of products, and those added by
+ * a {@link ProductFilter}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductFilterTest {
+
+    @Test
+    public void emptyFilterKeepsUri() {
+        Uri uri = ProductContract.ProductEntry.buildPageUri(0, 50);
+        assertSame(uri, ProductFilter.NONE.applyTo(uri));
+    }
+
+    @Test
+    public void filterAddsItsRestrictions() {
+        ProductFilter filter = new ProductFilter(ProductContract.ProductEntry.STOCK_IN,
+                "Supplier 1", 10, ProductFilter.NO_PRICE_BOUND);
+
+        Uri uri = filter.applyTo(ProductContract.ProductEntry.buildPageUri(
+                ProductContract.ProductEntry.SORT_PRICE, "12", 34, 50));
+
+        assertEquals(ProductContract.ProductEntry.SORT_PRICE,
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_SORT));
+        assertEquals("12",
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_VALUE));
+        assertEquals("34",
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_ID));
+        assertEquals("50",
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_LIMIT));
+        assertEquals(ProductContract.ProductEntry.STOCK_IN,
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_STOCK));
+        assertEquals("Supplier 1",
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_SUPPLIER));
+        assertEquals("10",
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_MIN_PRICE));
+        assertNull(uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_MAX_PRICE));
+    }
+
+    @Test
+    public void firstSortedPageHasNoKeyset() {
+        Uri uri = ProductContract.ProductEntry.buildPageUri(
+                ProductContract.ProductEntry.SORT_NAME, null, 0, 50);
+
+        assertNull(uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_ID));
+        assertNull(
+                uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_VALUE));
+    }
+}
@@ -0,0 +1,94 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentProvider;
+import android.test.mock.MockContentResolver;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link ProductLoadGenerator} is deterministic, generates valid products with
+ * the requested number of suppliers, and writes them through batched bulk inserts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductLoadGeneratorTest {
+
+    private static final long SEED = 42;
+
+    private static final int SUPPLIERS = 50;
+
+    private static final int PRODUCTS = 10000;
+
+    @Test
+    public void sameSeedGeneratesSameProducts() {
+        ProductLoadGenerator first = new ProductLoadGenerator(SEED, SUPPLIERS);
+        ProductLoadGenerator second = new ProductLoadGenerator(SEED, SUPPLIERS);
+        ProductLoadGenerator other = new ProductLoadGenerator(SEED + 1, SUPPLIERS);
+        ContentValues firstValues = new ContentValues();
+        ContentValues secondValues = new ContentValues();
+        ContentValues otherValues = new ContentValues();
+
+        int differences = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            first.nextProduct(firstValues);
+            second.nextProduct(secondValues);
+            other.nextProduct(otherValues);
+            assertEquals(firstValues, secondValues);
+            if (!firstValues.equals(otherValues)) {
+                differences++;
+            }
+        }
+        assertNotEquals(0, differences);
+    }
+
+    @Test
+    public void generatesValidProductsFromAllSuppliers() {
+        ProductLoadGenerator generator = new ProductLoadGenerator(SEED, SUPPLIERS);
+        ProductValidator validator = new ProductValidator(
+                InstrumentationRegistry.getTargetContext());
+        ContentValues values = new ContentValues();
+        Set<String> suppliers = new HashSet<>();
+
+        for (int i = 0; i < PRODUCTS; i++) {
+            generator.nextProduct(values);
+            assertNull(validator.findNewProductError(values));
+            suppliers.add(values.getAsString(
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER));
+        }
+        // the Zipf distribution still reaches every supplier over this many products
+        assertEquals(SUPPLIERS, suppliers.size());
+    }
+
+    @Test
+    public void insertsProductsInBatches() {
+        final int[] bulkInserts = {0};
+        MockContentResolver resolver = new MockContentResolver();
+        resolver.addProvider(ProductContract.CONTENT_AUTHORITY, new MockContentProvider(
+                InstrumentationRegistry.getTargetContext()) {
+            @Override
+            public int bulkInsert(Uri uri, ContentValues[] values) {
+                bulkInserts[0]++;
+                assertTrue(values.length <= 1000);
+                return values.length;
+            }
+        });
+
+        long productsInserted = new ProductLoadGenerator(SEED, SUPPLIERS)
+                .insertProducts(resolver, 2500, 1000);
+
+        assertEquals(2500, productsInserted);
+        assertEquals(3, bulkInserts[0]);
+    }
+}
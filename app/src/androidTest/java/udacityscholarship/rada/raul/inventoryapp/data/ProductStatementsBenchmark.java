@@ -0,0 +1,124 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark comparing the number of quantity updates per second written through
+ * SQLiteDatabase.update() with a ContentValues, and through the compiled statement of
+ * {@link ProductStatements}. Results are written to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductStatementsBenchmark {
+
+    private static final String LOG_TAG = ProductStatementsBenchmark.class.getSimpleName();
+
+    /**
+     * Name of the throwaway database used by the benchmark
+     */
+    private static final String DATABASE_NAME = "benchmark.db";
+
+    /**
+     * Number of quantity updates measured for each path
+     */
+    private static final int UPDATES = 100000;
+
+    /**
+     * Number of products whose quantities are updated in turn
+     */
+    private static final int PRODUCTS = 100;
+
+    private Context context;
+    private ProductDbHelper productDbHelper;
+    private ProductStatements productStatements;
+    private long[] productIds;
+
+    @Before
+    public void createProducts() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        productDbHelper = new ProductDbHelper(context, DATABASE_NAME);
+        productStatements = new ProductStatements(productDbHelper);
+
+        SupplierDictionary supplierDictionary = new SupplierDictionary(PRODUCTS);
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+
+        productIds = new long[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, i);
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+            values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                    supplierDictionary.getOrInsert(db, "Supplier " + i, "n/a"));
+            productIds[i] = productStatements.insertFullRow(values, System.currentTimeMillis());
+        }
+    }
+
+    @After
+    public void deleteDatabase() {
+        productDbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void quantityUpdates() {
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        String selection = ProductContract.ProductEntry._ID + "=?";
+
+        // both paths run in one transaction, so that the benchmark measures the statements and
+        // not the commits
+        long start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < UPDATES; i++) {
+                ContentValues values = new ContentValues();
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, i);
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT, i);
+                assertEquals(1, db.update(ProductContract.ProductEntry.TABLE_NAME, values,
+                        selection, new String[]{String.valueOf(productIds[i % PRODUCTS])}));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long contentValuesMillis = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < UPDATES; i++) {
+                assertEquals(1,
+                        productStatements.updateQuantity(productIds[i % PRODUCTS], i, i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long statementMillis = SystemClock.elapsedRealtime() - start;
+
+        Log.i(LOG_TAG, "ContentValues updates: " + opsPerSecond(contentValuesMillis) +
+                " ops/s, compiled statement updates: " + opsPerSecond(statementMillis) +
+                " ops/s");
+    }
+
+    /**
+     * @param millis time taken by {@link #UPDATES} updates
+     * @return number of updates per second
+     */
+    private static long opsPerSecond(long millis) {
+        return UPDATES * 1000L / Math.max(millis, 1);
+    }
+}
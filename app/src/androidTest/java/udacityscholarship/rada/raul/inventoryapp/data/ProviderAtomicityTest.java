@@ -0,0 +1,182 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link ProductProvider#bulkInsert(Uri, ContentValues[])} and
+ * {@link ProductProvider#applyBatch(ArrayList)} are all or nothing: a bulk insert holding one
+ * invalid row inserts none of them, and a batch with a failing operation leaves the products
+ * unchanged. The provider runs on a throwaway copy of the database.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class ProviderAtomicityTest {
+
+    /**
+     * Prefix of the throwaway database of the test
+     */
+    private static final String DATABASE_PREFIX = "provider_atomicity_test.";
+
+    /**
+     * Quantity of the product inserted before each test
+     */
+    private static final int QUANTITY = 10;
+
+    private Context context;
+    private ProductProvider provider;
+    private long productId;
+
+    @Before
+    public void insertProduct() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                DATABASE_PREFIX);
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+        provider = new ProductProvider();
+        provider.attachInfo(context, null);
+
+        productId = ContentUris.parseId(provider.insert(ProductContract.ProductEntry.CONTENT_URI,
+                buildProduct("Apples", 300)));
+    }
+
+    @After
+    public void deleteDatabase() {
+        provider.shutdown();
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void validBulkInsertInsertsEveryRow() {
+        ContentValues[] values = {buildProduct("Pears", 200), buildProduct("Plums", 100)};
+
+        assertEquals(2, provider.bulkInsert(ProductContract.ProductEntry.CONTENT_URI, values));
+        assertEquals(3, countProducts());
+    }
+
+    @Test
+    public void bulkInsertWithInvalidRowInsertsNothing() {
+        // the row in the middle has a negative price
+        ContentValues[] values = {buildProduct("Pears", 200), buildProduct("Plums", -1),
+                buildProduct("Cherries", 100)};
+
+        try {
+            provider.bulkInsert(ProductContract.ProductEntry.CONTENT_URI, values);
+            fail("The invalid row was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected: the whole transaction is rolled back
+        }
+        assertEquals(1, countProducts());
+    }
+
+    @Test
+    public void failingBatchLeavesTableUnchanged() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newUpdate(
+                ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI, productId))
+                .withValue(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, 0)
+                .build());
+        operations.add(ContentProviderOperation.newInsert(
+                ProductContract.ProductEntry.CONTENT_URI)
+                .withValues(buildProduct("Pears", 200))
+                .build());
+        // fails, as there are now two products
+        operations.add(ContentProviderOperation.newAssertQuery(
+                ProductContract.ProductEntry.CONTENT_URI)
+                .withExpectedCount(1)
+                .build());
+
+        try {
+            provider.applyBatch(operations);
+            fail("The failing operation was not reported");
+        } catch (OperationApplicationException e) {
+            // expected: the whole transaction is rolled back
+        }
+        assertEquals(1, countProducts());
+        assertEquals(QUANTITY, readQuantity());
+    }
+
+    @Test
+    public void batchWithInvalidInsertLeavesTableUnchanged()
+            throws OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(
+                ProductContract.ProductEntry.CONTENT_URI)
+                .withValues(buildProduct("Pears", 200))
+                .build());
+        operations.add(ContentProviderOperation.newInsert(
+                ProductContract.ProductEntry.CONTENT_URI)
+                .withValues(buildProduct("Plums", -1))
+                .build());
+
+        try {
+            provider.applyBatch(operations);
+            fail("The invalid insert was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected: the whole transaction is rolled back
+        }
+        assertEquals(1, countProducts());
+    }
+
+    /**
+     * @param name  of the product
+     * @param price of the product
+     * @return values of a product, with a quantity of {@link #QUANTITY}
+     */
+    private static ContentValues buildProduct(String name, int price) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, price);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, QUANTITY);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Orchard");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "111");
+        return values;
+    }
+
+    /**
+     * @return number of products in the database
+     */
+    private int countProducts() {
+        Cursor cursor = provider.query(ProductContract.ProductEntry.CONTENT_URI,
+                new String[]{ProductContract.ProductEntry._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return quantity of the product inserted before each test
+     */
+    private int readQuantity() {
+        Cursor cursor = provider.query(
+                ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI, productId),
+                new String[]{ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY}, null, null,
+                null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
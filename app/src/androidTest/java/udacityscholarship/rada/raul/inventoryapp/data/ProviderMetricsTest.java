@@ -0,0 +1,68 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the buckets of the {@link ProviderMetrics} latency histograms, and the counts,
+ * percentiles and maximum latency returned in a Bundle once operations are recorded.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProviderMetricsTest {
+
+    private static final String[] TARGETS = {"products", "products/#"};
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    @Test
+    public void bucketsCoverAllLatenciesWithoutGaps() {
+        assertEquals(0, ProviderMetrics.lowerBoundOf(0));
+        for (int bucket = 0; bucket < ProviderMetrics.BUCKET_COUNT - 1; bucket++) {
+            long lowerBound = ProviderMetrics.lowerBoundOf(bucket);
+            long upperBound = ProviderMetrics.upperBoundOf(bucket);
+            assertTrue(lowerBound <= upperBound);
+            assertEquals(upperBound + 1, ProviderMetrics.lowerBoundOf(bucket + 1));
+            assertEquals(bucket, ProviderMetrics.bucketOf(lowerBound));
+            assertEquals(bucket, ProviderMetrics.bucketOf(upperBound));
+        }
+        assertEquals(ProviderMetrics.BUCKET_COUNT - 1, ProviderMetrics.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordsOperationsPerTarget() {
+        ProviderMetrics metrics = new ProviderMetrics(TARGETS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 99; i++) {
+            metrics.record(ProviderMetrics.OPERATION_QUERY, 0, now, 10, false);
+        }
+        metrics.record(ProviderMetrics.OPERATION_QUERY, 0, now - 50 * NANOS_PER_MILLI, 0, true);
+        metrics.record(ProviderMetrics.OPERATION_UPDATE, 1, now, 1, false);
+        metrics.recordNotification();
+
+        Bundle result = metrics.toBundle();
+        assertArrayEquals(new String[]{"query products", "update products/#"},
+                result.getStringArray(ProductContract.EXTRA_METRICS_KEYS));
+        assertEquals(1, result.getLong(ProductContract.EXTRA_METRICS_NOTIFICATIONS));
+
+        Bundle query = result.getBundle("query products");
+        assertNotNull(query);
+        assertEquals(100, query.getLong(ProductContract.EXTRA_METRIC_COUNT));
+        assertEquals(1, query.getLong(ProductContract.EXTRA_METRIC_FAILURES));
+        assertEquals(990, query.getLong(ProductContract.EXTRA_METRIC_ROWS));
+        // the slow query is above the 99th percentile, but sets the maximum latency
+        assertTrue(query.getLong(ProductContract.EXTRA_METRIC_P99_MICROS) < 50000);
+        assertTrue(query.getLong(ProductContract.EXTRA_METRIC_MAX_MICROS) >= 50000);
+
+        metrics.reset();
+        assertEquals(0, metrics.toBundle()
+                .getStringArray(ProductContract.EXTRA_METRICS_KEYS).length);
+    }
+}
@@ -0,0 +1,94 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the {@link SlowQueryLog} only keeps the queries over its threshold, with the
+ * query plan SQLite gives for them, and keeps the most recent ones once full.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SlowQueryLogTest {
+
+    private static final String SQL_SELECT_BY_NAME = "SELECT * FROM products WHERE name = ?";
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void createDatabase() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE products (_id INTEGER PRIMARY KEY, name TEXT)");
+    }
+
+    @After
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    public void disabledLogKeepsNothing() {
+        SlowQueryLog log = new SlowQueryLog(4, SlowQueryLog.DISABLED);
+        assertFalse(log.isEnabled());
+
+        log.record(db, "uri", SQL_SELECT_BY_NAME, new String[]{"milk"}, null, null, 0,
+                10 * NANOS_PER_MILLI);
+
+        assertEquals(0, getQueries(log).size());
+    }
+
+    @Test
+    public void keepsSlowQueriesWithTheirPlan() {
+        SlowQueryLog log = new SlowQueryLog(4, 5);
+        log.record(db, "fast", SQL_SELECT_BY_NAME, new String[]{"milk"}, "name = ?", null, 0,
+                NANOS_PER_MILLI);
+        log.record(db, "slow", SQL_SELECT_BY_NAME, new String[]{"milk"}, "name = ?", null, 3,
+                10 * NANOS_PER_MILLI);
+
+        ArrayList<Bundle> queries = getQueries(log);
+        assertEquals(1, queries.size());
+        Bundle query = queries.get(0);
+        assertEquals("slow", query.getString(ProductContract.EXTRA_SLOW_QUERY_URI));
+        assertEquals("name = ?", query.getString(ProductContract.EXTRA_SLOW_QUERY_SELECTION));
+        assertEquals(3, query.getLong(ProductContract.EXTRA_SLOW_QUERY_ROWS));
+        assertEquals(10000, query.getLong(ProductContract.EXTRA_SLOW_QUERY_DURATION_MICROS));
+        // without an index on the name, the whole table is scanned
+        assertTrue(query.getString(ProductContract.EXTRA_SLOW_QUERY_PLAN).contains("SCAN"));
+    }
+
+    @Test
+    public void keepsMostRecentQueriesOnceFull() {
+        SlowQueryLog log = new SlowQueryLog(3, 0);
+        for (int i = 0; i < 5; i++) {
+            log.record(db, "query " + i, SQL_SELECT_BY_NAME, new String[]{"milk"}, null, null, 0,
+                    NANOS_PER_MILLI);
+        }
+
+        ArrayList<Bundle> queries = getQueries(log);
+        assertEquals(3, queries.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("query " + (i + 2),
+                    queries.get(i).getString(ProductContract.EXTRA_SLOW_QUERY_URI));
+        }
+
+        log.clear();
+        assertEquals(0, getQueries(log).size());
+    }
+
+    private static ArrayList<Bundle> getQueries(SlowQueryLog log) {
+        return log.toBundle().getParcelableArrayList(ProductContract.EXTRA_SLOW_QUERIES);
+    }
+}
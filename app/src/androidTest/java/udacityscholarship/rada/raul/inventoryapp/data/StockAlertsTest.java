@@ -0,0 +1,174 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.RenamingDelegatingContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a low-stock alert is raised only when an update makes a product cross its reorder
+ * threshold - not when a product is inserted at or below it, nor on the later writes of a
+ * product already below it - and that the alerts are taken in bounded chunks. The provider
+ * runs on a throwaway copy of the database.
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class StockAlertsTest {
+
+    /**
+     * Prefix of the throwaway database of the test
+     */
+    private static final String DATABASE_PREFIX = "stock_alerts_test.";
+
+    /**
+     * Reorder threshold of the products
+     */
+    private static final int THRESHOLD = 5;
+
+    private Context context;
+    private ProductProvider provider;
+
+    @Before
+    public void createProvider() {
+        context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(),
+                DATABASE_PREFIX);
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+        provider = new ProductProvider();
+        provider.attachInfo(context, null);
+    }
+
+    @After
+    public void deleteDatabase() {
+        provider.shutdown();
+        context.deleteDatabase(ProductDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void insertBelowThresholdRaisesNoAlert() {
+        insertProduct("Apples", 0);
+        insertProduct("Pears", THRESHOLD);
+
+        assertEquals(0, takeAlerts(100).getLongArray(
+                ProductContract.ProductEntry.EXTRA_PRODUCT_IDS).length);
+    }
+
+    @Test
+    public void onlyCrossingRaisesAlert() {
+        long productId = insertProduct("Apples", 10);
+
+        // above the threshold: no alert
+        updateQuantity(productId, 6);
+        assertNoAlert();
+
+        // crossing: one alert
+        updateQuantity(productId, THRESHOLD);
+        Bundle alerts = takeAlerts(100);
+        assertArrayEquals(new long[]{productId},
+                alerts.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS));
+        assertArrayEquals(new int[]{THRESHOLD},
+                alerts.getIntArray(ProductContract.ProductEntry.EXTRA_QUANTITIES));
+
+        // further sales below the threshold: no new alert
+        updateQuantity(productId, 3);
+        updateQuantity(productId, 0);
+        assertNoAlert();
+
+        // restocked, then crossing again: a new alert
+        updateQuantity(productId, 20);
+        updateQuantity(productId, 1);
+        assertArrayEquals(new long[]{productId}, takeAlerts(100).getLongArray(
+                ProductContract.ProductEntry.EXTRA_PRODUCT_IDS));
+    }
+
+    @Test
+    public void restockedProductIsNotAlerted() {
+        long productId = insertProduct("Apples", 10);
+        updateQuantity(productId, 2);
+        updateQuantity(productId, 8);
+
+        assertNoAlert();
+    }
+
+    @Test
+    public void alertsAreTakenInChunks() {
+        long[] productIds = new long[7];
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = insertProduct("Product " + i, 10);
+            updateQuantity(productIds[i], 0);
+        }
+
+        Bundle first = takeAlerts(3);
+        assertArrayEquals(new long[]{productIds[0], productIds[1], productIds[2]},
+                first.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS));
+        assertTrue(first.getBoolean(ProductContract.ProductEntry.EXTRA_HAS_MORE_ALERTS));
+
+        Bundle second = takeAlerts(3);
+        assertArrayEquals(new long[]{productIds[3], productIds[4], productIds[5]},
+                second.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS));
+
+        Bundle last = takeAlerts(3);
+        assertArrayEquals(new long[]{productIds[6]},
+                last.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS));
+        assertFalse(last.getBoolean(ProductContract.ProductEntry.EXTRA_HAS_MORE_ALERTS));
+        assertNoAlert();
+    }
+
+    /**
+     * Check that no alert is pending.
+     */
+    private void assertNoAlert() {
+        assertEquals(0, takeAlerts(100).getLongArray(
+                ProductContract.ProductEntry.EXTRA_PRODUCT_IDS).length);
+    }
+
+    /**
+     * @param name     of the product
+     * @param quantity of the product
+     * @return ID of the product inserted, with a reorder threshold of {@link #THRESHOLD}
+     */
+    private long insertProduct(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, 300);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Orchard");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "111");
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD, THRESHOLD);
+        return ContentUris.parseId(
+                provider.insert(ProductContract.ProductEntry.CONTENT_URI, values));
+    }
+
+    /**
+     * @param productId ID of the product
+     * @param quantity  new quantity of the product
+     */
+    private void updateQuantity(long productId, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        assertEquals(1, provider.update(ContentUris.withAppendedId(
+                ProductContract.ProductEntry.CONTENT_URI, productId), values, null, null));
+    }
+
+    /**
+     * @param limit maximum number of alerts taken
+     * @return the alerts taken
+     */
+    private Bundle takeAlerts(int limit) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.ProductEntry.EXTRA_LIMIT, limit);
+        return provider.call(ProductContract.ProductEntry.METHOD_TAKE_STOCK_ALERTS, null, extras);
+    }
+}
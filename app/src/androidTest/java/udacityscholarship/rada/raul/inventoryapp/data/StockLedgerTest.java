@@ -0,0 +1,166 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that {@link StockLedger#compact(SQLiteDatabase, int)} folds the movements older than
+ * the retention period into one snapshot per product and day, adds them to the snapshots left by
+ * a previous compaction, and deletes them from the ledger, keeping the recent ones. The ledger
+ * lives in a throwaway database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StockLedgerTest {
+
+    /**
+     * Name of the throwaway database of the test
+     */
+    private static final String DATABASE_NAME = "stock_ledger_test.db";
+
+    /**
+     * Number of days, before today, whose movements are kept in the ledger
+     */
+    private static final int RETENTION_DAYS = 2;
+
+    /**
+     * IDs of the products the movements belong to
+     */
+    private static final long APPLES = 1;
+    private static final long PEARS = 2;
+
+    private Context context;
+    private ProductDbHelper productDbHelper;
+    private SQLiteDatabase db;
+    private StockLedger stockLedger;
+
+    /**
+     * Day of today, as in {@link ProductContract.StockSnapshotEntry#COLUMN_DAY}
+     */
+    private long today;
+
+    @Before
+    public void createLedger() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase(DATABASE_NAME);
+        productDbHelper = new ProductDbHelper(context, DATABASE_NAME);
+        db = productDbHelper.getWritableDatabase();
+        stockLedger = new StockLedger(productDbHelper);
+        today = System.currentTimeMillis() / StockLedger.MILLIS_PER_DAY;
+    }
+
+    @After
+    public void deleteDatabase() {
+        productDbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void foldsOldMovementsIntoDailySnapshots() {
+        long oldDay = today - 5;
+        insertMovement(APPLES, oldDay, -3, ProductContract.StockMovementEntry.REASON_SALE);
+        insertMovement(APPLES, oldDay, -2, ProductContract.StockMovementEntry.REASON_SALE);
+        insertMovement(APPLES, oldDay, 10, ProductContract.StockMovementEntry.REASON_RESTOCK);
+        insertMovement(APPLES, oldDay, 1, ProductContract.StockMovementEntry.REASON_CORRECTION);
+        insertMovement(PEARS, oldDay, -1, ProductContract.StockMovementEntry.REASON_SALE);
+        insertMovement(APPLES, oldDay + 1, 4,
+                ProductContract.StockMovementEntry.REASON_RESTOCK);
+        // the oldest day kept in the ledger, and today
+        insertMovement(APPLES, today - RETENTION_DAYS, -1,
+                ProductContract.StockMovementEntry.REASON_SALE);
+        insertMovement(APPLES, today, -7, ProductContract.StockMovementEntry.REASON_SALE);
+
+        assertEquals(6, stockLedger.compact(db, RETENTION_DAYS));
+
+        // units sold, units restocked, net change, movement count
+        assertArrayEquals(new long[]{5, 10, 6, 4}, readSnapshot(APPLES, oldDay));
+        assertArrayEquals(new long[]{1, 0, -1, 1}, readSnapshot(PEARS, oldDay));
+        assertArrayEquals(new long[]{0, 4, 4, 1}, readSnapshot(APPLES, oldDay + 1));
+        assertNull(readSnapshot(APPLES, today - RETENTION_DAYS));
+        assertEquals(3, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockSnapshotEntry.TABLE_NAME));
+
+        // only the movements of the retention period are left
+        assertEquals(2, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void laterCompactionAddsToExistingSnapshot() {
+        long oldDay = today - 5;
+        insertMovement(APPLES, oldDay, -3, ProductContract.StockMovementEntry.REASON_SALE);
+        assertEquals(1, stockLedger.compact(db, RETENTION_DAYS));
+
+        // a movement of the same day, written late, for instance by a restored backup
+        insertMovement(APPLES, oldDay, 8, ProductContract.StockMovementEntry.REASON_RESTOCK);
+        assertEquals(1, stockLedger.compact(db, RETENTION_DAYS));
+
+        assertArrayEquals(new long[]{3, 8, 5, 2}, readSnapshot(APPLES, oldDay));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockSnapshotEntry.TABLE_NAME));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockMovementEntry.TABLE_NAME));
+    }
+
+    @Test
+    public void recentMovementsAreNotCompacted() {
+        insertMovement(APPLES, today, -3, ProductContract.StockMovementEntry.REASON_SALE);
+
+        assertEquals(0, stockLedger.compact(db, RETENTION_DAYS));
+        assertEquals(0, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockSnapshotEntry.TABLE_NAME));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db,
+                ProductContract.StockMovementEntry.TABLE_NAME));
+    }
+
+    /**
+     * Append a movement to the ledger, in the middle of the given day.
+     */
+    private void insertMovement(long productId, long day, long delta, int reason) {
+        ContentValues values = new ContentValues();
+        values.put(ProductContract.StockMovementEntry.COLUMN_PRODUCT_ID, productId);
+        values.put(ProductContract.StockMovementEntry.COLUMN_DELTA, delta);
+        values.put(ProductContract.StockMovementEntry.COLUMN_CREATED_AT,
+                day * StockLedger.MILLIS_PER_DAY + StockLedger.MILLIS_PER_DAY / 2);
+        values.put(ProductContract.StockMovementEntry.COLUMN_REASON, reason);
+        db.insertOrThrow(ProductContract.StockMovementEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * @return the units sold, units restocked, net change and movement count of the snapshot of
+     * the product and day, or null if there is no such snapshot
+     */
+    private long[] readSnapshot(long productId, long day) {
+        Cursor cursor = db.query(ProductContract.StockSnapshotEntry.TABLE_NAME, new String[]{
+                        ProductContract.StockSnapshotEntry.COLUMN_UNITS_SOLD,
+                        ProductContract.StockSnapshotEntry.COLUMN_UNITS_RESTOCKED,
+                        ProductContract.StockSnapshotEntry.COLUMN_NET_CHANGE,
+                        ProductContract.StockSnapshotEntry.COLUMN_MOVEMENT_COUNT},
+                ProductContract.StockSnapshotEntry.COLUMN_PRODUCT_ID + " = ? AND " +
+                        ProductContract.StockSnapshotEntry.COLUMN_DAY + " = ?",
+                new String[]{String.valueOf(productId), String.valueOf(day)},
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2),
+                    cursor.getLong(3)};
+        } finally {
+            cursor.close();
+        }
+    }
+}
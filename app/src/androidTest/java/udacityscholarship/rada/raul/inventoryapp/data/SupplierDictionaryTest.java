@@ -0,0 +1,71 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Checks that the {@link SupplierDictionary} inserts every supplier once, and looks it up again
+ * after being cleared or filled up, against an in-memory suppliers table.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SupplierDictionaryTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void createDatabase() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE suppliers (_id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                "name TEXT NOT NULL, number TEXT NOT NULL, UNIQUE (name, number))");
+    }
+
+    @After
+    public void closeDatabase() {
+        db.close();
+    }
+
+    @Test
+    public void insertsEachSupplierOnce() {
+        SupplierDictionary dictionary = new SupplierDictionary(16);
+
+        long dairyId = dictionary.getOrInsert(db, "Dairy", "123");
+        assertEquals(dairyId, dictionary.getOrInsert(db, "Dairy", "123"));
+        assertNotEquals(dairyId, dictionary.getOrInsert(db, "Dairy", "456"));
+
+        assertEquals(2, dictionary.size());
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, "suppliers"));
+    }
+
+    @Test
+    public void clearedDictionaryReadsStoredSuppliers() {
+        SupplierDictionary dictionary = new SupplierDictionary(16);
+        long supplierId = dictionary.getOrInsert(db, "Dairy", "123");
+
+        dictionary.clear();
+
+        assertEquals(0, dictionary.size());
+        assertEquals(supplierId, dictionary.getOrInsert(db, "Dairy", "123"));
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "suppliers"));
+    }
+
+    @Test
+    public void fullDictionaryIsEmptied() {
+        SupplierDictionary dictionary = new SupplierDictionary(2);
+        dictionary.getOrInsert(db, "Dairy", "1");
+        dictionary.getOrInsert(db, "Bakery", "2");
+
+        dictionary.getOrInsert(db, "Butcher", "3");
+
+        assertEquals(1, dictionary.size());
+        assertEquals(3, DatabaseUtils.queryNumEntries(db, "suppliers"));
+    }
+}
@@ -13,7 +13,9 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.widget.RelativeLayout;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
@@ -25,7 +27,10 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import udacityscholarship.rada.raul.inventoryapp.data.PriceUtils;
 import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductRepository;
+import udacityscholarship.rada.raul.inventoryapp.data.StockAdjustmentQueue;
 
 public class InsertProductActivity extends AppCompatActivity implements
         LoaderManager.LoaderCallbacks<Cursor> {
@@ -34,6 +39,10 @@ public class InsertProductActivity extends AppCompatActivity implements
      * Identifier for the product data loader
      */
     private static final int EXISTING_PRODUCT_LOADER = 0;
+    /**
+     * Identifier for the loader of the suppliers offered by the supplier picker
+     */
+    private static final int SUPPLIERS_LOADER = 1;
     /**
      * String value used for the call intent
      */
@@ -50,6 +59,14 @@ public class InsertProductActivity extends AppCompatActivity implements
      * String key for saving productHasChanged in onSaveInstanceState
      */
     private static final String KEY_PRODUCT_CHANGED = "product has changed";
+    /**
+     * Quantity delta applied when the user clicks the increase quantity button
+     */
+    private static final int INCREASE_QUANTITY_DELTA = 1;
+    /**
+     * Quantity delta applied when the user clicks the decrease quantity button
+     */
+    private static final int DECREASE_QUANTITY_DELTA = -1;
     /**
      * Variable showing whether the menu should be displayed or not.
      */
@@ -74,6 +91,10 @@ public class InsertProductActivity extends AppCompatActivity implements
      * EditText field to enter the product supplier phone number
      */
     private EditText productSupplierPhoneEditText;
+    /**
+     * EditText field to enter the quantity at which the product should be reordered
+     */
+    private EditText productReorderThresholdEditText;
     /**
      * Button allowing user to save the information about a product
      */
@@ -94,6 +115,10 @@ public class InsertProductActivity extends AppCompatActivity implements
      * Button allowing the user to decrease the quantity of a product.
      */
     private Button decreaseQuantityButton;
+    /**
+     * Button allowing the user to choose the supplier of a product among the stored suppliers.
+     */
+    private Button pickSupplierButton;
     /**
      * Relative Layout holding the increase / decrease quantity buttons.
      */
@@ -107,6 +132,68 @@ public class InsertProductActivity extends AppCompatActivity implements
      */
     private boolean productHasChanged;
 
+    /**
+     * Save of the product details in progress, or null if the product is not being saved
+     */
+    private PendingSave pendingSave;
+
+    /**
+     * Names of the stored suppliers, as last read by the {@link #SUPPLIERS_LOADER}
+     */
+    private String[] supplierNames = new String[0];
+
+    /**
+     * Phone numbers of the stored suppliers, at the same positions as in {@link #supplierNames}
+     */
+    private String[] supplierPhoneNumbers = new String[0];
+
+    /**
+     * Callbacks of the {@link #SUPPLIERS_LOADER}, copying the suppliers into
+     * {@link #supplierNames} and {@link #supplierPhoneNumbers}, so that the supplier picker does
+     * not depend on an open Cursor.
+     */
+    private LoaderManager.LoaderCallbacks<Cursor> suppliersLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    String[] projection = {
+                            ProductContract.SupplierEntry._ID,
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME,
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+                    };
+                    // the provider sorts the suppliers by name
+                    return new CursorLoader(InsertProductActivity.this,
+                            ProductContract.SupplierEntry.CONTENT_URI, projection, null, null,
+                            null);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    if (cursor == null) {
+                        return;
+                    }
+                    int nameColumnIndex = cursor.getColumnIndex(
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME);
+                    int phoneColumnIndex = cursor.getColumnIndex(
+                            ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+                    String[] names = new String[cursor.getCount()];
+                    String[] phoneNumbers = new String[cursor.getCount()];
+                    cursor.moveToPosition(-1);
+                    while (cursor.moveToNext()) {
+                        names[cursor.getPosition()] = cursor.getString(nameColumnIndex);
+                        phoneNumbers[cursor.getPosition()] = cursor.getString(phoneColumnIndex);
+                    }
+                    supplierNames = names;
+                    supplierPhoneNumbers = phoneNumbers;
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    supplierNames = new String[0];
+                    supplierPhoneNumbers = new String[0];
+                }
+            };
+
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
      * the view, and we change the productHasChanged boolean to true.
@@ -131,11 +218,14 @@ public class InsertProductActivity extends AppCompatActivity implements
         productQuantityEditText = (EditText) findViewById(R.id.edit_text_product_quantity);
         productSupplierEditText = (EditText) findViewById(R.id.edit_text_product_supplier);
         productSupplierPhoneEditText = (EditText) findViewById(R.id.edit_text_product_supplier_phone);
+        productReorderThresholdEditText = (EditText) findViewById(
+                R.id.edit_text_product_reorder_threshold);
         saveButton = (Button) findViewById(R.id.button_save_insert);
         orderButton = (Button) findViewById(R.id.button_order_insert);
         deleteButton = (Button) findViewById(R.id.button_delete_insert);
         increaseQuantityButton = (Button) findViewById(R.id.button_increase_quantity);
         decreaseQuantityButton = (Button) findViewById(R.id.button_decrease_quantity);
+        pickSupplierButton = (Button) findViewById(R.id.button_pick_supplier);
         adjustQuantityRL = (RelativeLayout) findViewById(R.id.adjust_quantity_relative_layout);
 
         // Setup OnTouchListeners on all the input fields, so we can determine if the user
@@ -146,6 +236,7 @@ public class InsertProductActivity extends AppCompatActivity implements
         productQuantityEditText.setOnTouchListener(viewTouchListener);
         productSupplierEditText.setOnTouchListener(viewTouchListener);
         productSupplierPhoneEditText.setOnTouchListener(viewTouchListener);
+        productReorderThresholdEditText.setOnTouchListener(viewTouchListener);
 
         // Get the intent used to launch the InsertProductActivity
         Intent intent = getIntent();
@@ -171,6 +262,11 @@ public class InsertProductActivity extends AppCompatActivity implements
         saveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                // the product details are already being saved
+                if (pendingSave != null) {
+                    return;
+                }
+
                 // Read from input fields
                 // Use trim to eliminate leading or trailing white space
                 // Where case, get numerical value of Strings read from EditTexts
@@ -185,11 +281,18 @@ public class InsertProductActivity extends AppCompatActivity implements
 
                 String productPriceString =
                         productPriceEditText.getText().toString().trim();
-                int productPrice;
+                long productPrice;
 
                 // don't parse an empty String, otherwise the app will crash!!!
                 if (!TextUtils.isEmpty(productPriceString)) {
-                    productPrice = Integer.parseInt(productPriceString);
+                    // the price may have decimals, and is stored in minor units of the currency
+                    productPrice = PriceUtils.parsePrice(productPriceString);
+                    if (productPrice == PriceUtils.INVALID_PRICE) {
+                        Toast.makeText(getApplicationContext(),
+                                getString(R.string.product_price_invalid),
+                                Toast.LENGTH_SHORT).show();
+                        return;
+                    }
                 } else {
                     // let user know that price must be provided
                     Toast.makeText(getApplicationContext(),
@@ -218,6 +321,17 @@ public class InsertProductActivity extends AppCompatActivity implements
                     return;
                 }
 
+                // The reorder threshold is optional - a product without a threshold is only
+                // reported once it is out of stock.
+                int productReorderThreshold = 0;
+                String productReorderThresholdString =
+                        productReorderThresholdEditText.getText().toString().trim();
+
+                // don't parse an empty String, otherwise the app will crash!!!
+                if (!TextUtils.isEmpty(productReorderThresholdString)) {
+                    productReorderThreshold = Integer.parseInt(productReorderThresholdString);
+                }
+
                 // if product supplier EditText is empty, let user know that product supplier name
                 // must be provided and return without saving the product
                 String productSupplier = productSupplierEditText.getText().toString().trim();
@@ -249,55 +363,25 @@ public class InsertProductActivity extends AppCompatActivity implements
                 values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, productSupplier);
                 values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
                         productSupplierPhoneNumber);
+                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+                        productReorderThreshold);
 
                 // determine whether this is a new or an existing product
-                // (if currentProductUri == null, then it's a new product)
+                // (if currentProductUri == null, then it's a new product). The product is saved
+                // on the writer thread - the save button stays disabled until the save finishes,
+                // so that the same product is not saved twice.
+                pendingSave = new PendingSave(getApplicationContext(), currentProductUri == null);
+                pendingSave.attach(InsertProductActivity.this);
+                saveButton.setEnabled(false);
                 if (currentProductUri == null) {
-                    // Insert a new product into the provider, returning the content URI for the
+                    // Insert a new product into the provider, receiving the content URI for the
                     // new product.
-                    Uri newUri = getContentResolver().insert(
-                            ProductContract.ProductEntry.CONTENT_URI, values);
-
-                    // Show a toast message depending on whether or not the insertion was successful
-                    if (newUri == null) {
-                        // If the new content URI is null, then there was an error with insertion.
-                        Toast.makeText(getApplicationContext(), getString(R.string.product_save_error),
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        // Otherwise, the insertion was successful, we have a current URI for the
-                        // product being displayed after it was saved into the database, and we can
-                        // display a toast confirming the saving of the product.
-                        currentProductUri = newUri;
-                        Toast.makeText(getApplicationContext(), getString(R.string.product_save_successful),
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    pendingSave.insert(values);
                 } else {
                     // this is an existing product, so update the product with content URI
-                    // currentProductUri and pass in the new ContentValues. Pass in null for the
-                    // selection and selection args because currentProductUri will already identify
-                    // the correct row in the database that we want to modify.
-                    int rowsAffected = getContentResolver().update(
-                            currentProductUri, values, null, null);
-
-                    // check if the update failed
-                    if (rowsAffected == 0) {
-                        // product update failed
-                        Toast.makeText(getApplicationContext(), getString(R.string.product_update_error),
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        // product update successful
-                        Toast.makeText(getApplicationContext(), getString(R.string.product_update_successful),
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    // currentProductUri and pass in the new ContentValues.
+                    pendingSave.update(currentProductUri, values);
                 }
-
-                // Once the Save button has been pressed, the changes to the product details have
-                // been saved - there are no other unsaved changes the user should be aware about.
-                productHasChanged = false;
-
-                // Once the product details have been saved, set up particular views in the right
-                // mode for displaying product information
-                setViewsInDisplayMode();
             }
         });
 
@@ -339,40 +423,8 @@ public class InsertProductActivity extends AppCompatActivity implements
         increaseQuantityButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                // get current quantity from the relevant EditText
-                String productQuantityString =
-                        productQuantityEditText.getText().toString().trim();
-
-                // get an integer value for the product quantity. Since we are guaranteed to see
-                // the increase quantity button only in product display mode, the value of
-                // productQuantityEditText is quaranteed not to be null.
-                int productQuantity = Integer.parseInt(productQuantityString);
-
-                // increment product quantity.
-                productQuantity++;
-
-                // Create a ContentValues object where column names are the keys, and the parameters
-                // supplied to the insertProduct method are the values.
-                ContentValues values = new ContentValues();
-                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, productQuantity);
-
-                // this is an existing product, so update the product with content URI
-                // currentProductUri and pass in the new ContentValues. Pass in null for the
-                // selection and selection args because currentProductUri will already identify
-                // the correct row in the database that we want to modify.
-                int rowsAffected = getContentResolver().update(
-                        currentProductUri, values, null, null);
-
-                // check if the update failed
-                if (rowsAffected == 0) {
-                    // product update failed
-                    Toast.makeText(getApplicationContext(), getString(R.string.product_update_error),
-                            Toast.LENGTH_SHORT).show();
-                } else {
-                    // product update successful
-                    Toast.makeText(getApplicationContext(), getString(R.string.product_update_successful),
-                            Toast.LENGTH_SHORT).show();
-                }
+                // add one item to the stock of the current product
+                adjustProductQuantity(INCREASE_QUANTITY_DELTA);
             }
         });
 
@@ -382,48 +434,19 @@ public class InsertProductActivity extends AppCompatActivity implements
         decreaseQuantityButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                // get current quantity from the relevant EditText
-                String productQuantityString =
-                        productQuantityEditText.getText().toString().trim();
-
-                // get an integer value for the product quantity. Since we are guaranteed to see
-                // the increase quantity button only in product display mode, the value of
-                // productQuantityEditText is quaranteed not to be null.
-                int productQuantity = Integer.parseInt(productQuantityString);
-
-                // decrement product quantity, as long as it is >0.
-                if (productQuantity > 0) {
-                    productQuantity--;
-                } else {
-                    // let the user know quantity cannot be lower than 0.
-                    Toast.makeText(getApplicationContext(), getString(R.string.quantity_error),
-                            Toast.LENGTH_SHORT).show();
-                    // no need to update the product details, so bail out.
-                    return;
-                }
-
-                // Create a ContentValues object where column names are the keys, and the parameters
-                // supplied to the insertProduct method are the values.
-                ContentValues values = new ContentValues();
-                values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, productQuantity);
+                // remove one item from the stock of the current product
+                adjustProductQuantity(DECREASE_QUANTITY_DELTA);
+            }
+        });
 
-                // this is an existing product, so update the product with content URI
-                // currentProductUri and pass in the new ContentValues. Pass in null for the
-                // selection and selection args because currentProductUri will already identify
-                // the correct row in the database that we want to modify.
-                int rowsAffected = getContentResolver().update(
-                        currentProductUri, values, null, null);
-
-                // check if the update failed
-                if (rowsAffected == 0) {
-                    // product update failed
-                    Toast.makeText(getApplicationContext(), getString(R.string.product_update_error),
-                            Toast.LENGTH_SHORT).show();
-                } else {
-                    // product update successful
-                    Toast.makeText(getApplicationContext(), getString(R.string.product_update_successful),
-                            Toast.LENGTH_SHORT).show();
-                }
+        /**
+         * Action to be performed when the user clicks the pick supplier button
+         */
+        pickSupplierButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                // Let the user choose one of the existing suppliers
+                showPickSupplierDialog();
             }
         });
 
@@ -439,6 +462,83 @@ public class InsertProductActivity extends AppCompatActivity implements
         });
     }
 
+    /**
+     * Called once the save started by the save button has finished, on the activity showing the
+     * product at that time - which is not the one which started the save if the activity was
+     * recreated meanwhile.
+     *
+     * @param save which has finished
+     */
+    private void onSaveFinished(PendingSave save) {
+        pendingSave = null;
+        saveButton.setEnabled(true);
+
+        if (save.isInsert) {
+            // we have a current URI for the product being displayed after it was saved into the
+            // database
+            if (save.newUri != null) {
+                currentProductUri = save.newUri;
+                onProductSaved();
+            }
+        } else if (save.rowsAffected != 0) {
+            onProductSaved();
+        }
+    }
+
+    /**
+     * Called once the product details have been written to the database.
+     */
+    private void onProductSaved() {
+        // the activity may have been closed while the product was being saved
+        if (isFinishing()) {
+            return;
+        }
+
+        // Once the product has been saved, the changes to the product details have been saved -
+        // there are no other unsaved changes the user should be aware about.
+        productHasChanged = false;
+
+        // Once the product details have been saved, set up particular views in the right
+        // mode for displaying product information
+        setViewsInDisplayMode();
+    }
+
+    /**
+     * Add a delta to the quantity of the current product. The delta is queued, merged with the
+     * other adjustments made in quick succession, and written to the database in the background,
+     * while the new quantity is displayed right away. The provider applies the merged delta in
+     * one single statement and refuses it if the quantity would become negative.
+     *
+     * @param delta number of items to add to (if positive) or remove from (if negative) the
+     *              product quantity
+     */
+    private void adjustProductQuantity(int delta) {
+        // get the displayed quantity from the relevant EditText. Since we are guaranteed to see
+        // the adjust quantity buttons only in product display mode, the value of
+        // productQuantityEditText is guaranteed not to be null.
+        int productQuantity = Integer.parseInt(
+                productQuantityEditText.getText().toString().trim());
+
+        // the quantity cannot become lower than 0.
+        if (productQuantity + delta < 0) {
+            // let the user know quantity cannot be lower than 0.
+            Toast.makeText(getApplicationContext(), getString(R.string.quantity_error),
+                    Toast.LENGTH_SHORT).show();
+            // no need to update the product details, so bail out.
+            return;
+        }
+
+        // Since we are guaranteed to see the adjust quantity buttons only in product display
+        // mode, currentProductUri is guaranteed not to be null.
+        StockAdjustmentQueue.getInstance(this).enqueue(
+                ContentUris.parseId(currentProductUri), delta);
+
+        // product update successful
+        productQuantityEditText.setText(Integer.toString(productQuantity + delta));
+        Toast.makeText(getApplicationContext(), getString(R.string.product_update_successful),
+                Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Method setting up the layout for displaying product information
      */
@@ -471,6 +571,7 @@ public class InsertProductActivity extends AppCompatActivity implements
         orderButton.setVisibility(View.VISIBLE);
         deleteButton.setVisibility(View.VISIBLE);
         adjustQuantityRL.setVisibility(View.VISIBLE);
+        pickSupplierButton.setVisibility(View.GONE);
         productNameEditText.setEnabled(false);
         productNameEditText.setInputType(InputType.TYPE_NULL);
         productPriceEditText.setEnabled(false);
@@ -481,6 +582,8 @@ public class InsertProductActivity extends AppCompatActivity implements
         productSupplierEditText.setInputType(InputType.TYPE_NULL);
         productSupplierPhoneEditText.setEnabled(false);
         productSupplierPhoneEditText.setInputType(InputType.TYPE_NULL);
+        productReorderThresholdEditText.setEnabled(false);
+        productReorderThresholdEditText.setInputType(InputType.TYPE_NULL);
     }
 
     /**
@@ -510,16 +613,23 @@ public class InsertProductActivity extends AppCompatActivity implements
         orderButton.setVisibility(View.GONE);
         deleteButton.setVisibility(View.GONE);
         adjustQuantityRL.setVisibility(View.GONE);
+        pickSupplierButton.setVisibility(View.VISIBLE);
         productNameEditText.setEnabled(true);
         productNameEditText.setInputType(InputType.TYPE_CLASS_TEXT);
         productPriceEditText.setEnabled(true);
-        productPriceEditText.setInputType(InputType.TYPE_CLASS_NUMBER);
+        productPriceEditText.setInputType(
+                InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL);
         productQuantityEditText.setEnabled(true);
         productQuantityEditText.setInputType(InputType.TYPE_CLASS_NUMBER);
         productSupplierEditText.setEnabled(true);
         productSupplierEditText.setInputType(InputType.TYPE_CLASS_TEXT);
         productSupplierPhoneEditText.setEnabled(true);
         productSupplierPhoneEditText.setInputType(InputType.TYPE_CLASS_PHONE);
+        productReorderThresholdEditText.setEnabled(true);
+        productReorderThresholdEditText.setInputType(InputType.TYPE_CLASS_NUMBER);
+
+        // the stored suppliers are only needed while the product can be edited
+        getLoaderManager().initLoader(SUPPLIERS_LOADER, null, suppliersLoaderCallbacks);
     }
 
     @Override
@@ -533,7 +643,8 @@ public class InsertProductActivity extends AppCompatActivity implements
                 ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
                 ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
                 ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
-                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
         };
 
         // This loader will execute the ContentProvider's query method on a background thread
@@ -567,20 +678,27 @@ public class InsertProductActivity extends AppCompatActivity implements
                     ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER);
             int supplierPhoneColumnIndex = cursor.getColumnIndex(
                     ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+            int reorderThresholdColumnIndex = cursor.getColumnIndex(
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
 
             // Extract out the value from the Cursor for the given column index
             String productName = cursor.getString(nameColumnIndex);
-            int productPrice = cursor.getInt(priceColumnIndex);
+            long productPrice = cursor.getLong(priceColumnIndex);
             int productQuantity = cursor.getInt(quantityColumnIndex);
+            // add the adjustments which have not been written to the database yet
+            productQuantity += StockAdjustmentQueue.getInstance(this).getPendingDelta(
+                    ContentUris.parseId(currentProductUri));
             String productSupplier = cursor.getString(supplierColumnIndex);
             String productSupplierPhoneNumber = cursor.getString(supplierPhoneColumnIndex);
+            int productReorderThreshold = cursor.getInt(reorderThresholdColumnIndex);
 
             // Update the views on the screen with the values from the database
             productNameEditText.setText(productName);
-            productPriceEditText.setText(Integer.toString(productPrice));
+            productPriceEditText.setText(PriceUtils.formatPrice(productPrice));
             productQuantityEditText.setText(Integer.toString(productQuantity));
             productSupplierEditText.setText(productSupplier);
             productSupplierPhoneEditText.setText(productSupplierPhoneNumber);
+            productReorderThresholdEditText.setText(Integer.toString(productReorderThreshold));
         }
     }
 
@@ -592,6 +710,7 @@ public class InsertProductActivity extends AppCompatActivity implements
         productQuantityEditText.setText("");
         productSupplierEditText.setText("");
         productSupplierPhoneEditText.setText("");
+        productReorderThresholdEditText.setText("");
     }
 
     /**
@@ -691,6 +810,48 @@ public class InsertProductActivity extends AppCompatActivity implements
         alertDialog.show();
     }
 
+    /**
+     * Show the stored suppliers, and copy the name and phone number of the one chosen by the
+     * user into the supplier EditTexts, so that the product is linked to the existing supplier
+     * rather than to a misspelled copy of it.
+     */
+    private void showPickSupplierDialog() {
+        if (supplierNames.length == 0) {
+            Toast.makeText(this, R.string.no_suppliers, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // keep the arrays the dialog was built from, in case the loader delivers new ones
+        final String[] names = supplierNames;
+        final String[] phoneNumbers = supplierPhoneNumbers;
+        String[] items = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            items[i] = getString(R.string.pick_supplier_item, names[i], phoneNumbers[i]);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.pick_supplier_dialog_title);
+        builder.setItems(items, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                productSupplierEditText.setText(names[which]);
+                productSupplierPhoneEditText.setText(phoneNumbers[which]);
+                productHasChanged = true;
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+
+        // Create and show the AlertDialog
+        AlertDialog alertDialog = builder.create();
+        alertDialog.show();
+    }
+
     /**
      * Ask for user's confirmation that they want to delete this product.
      */
@@ -726,25 +887,68 @@ public class InsertProductActivity extends AppCompatActivity implements
      */
     private void deleteProduct() {
         // If the Delete button is visible, we know for sure that the user is in product info
-        // display mode, and that {@link currentProductUri} is not null
-        int rowsDeleted = getContentResolver().delete(currentProductUri,
-                null, null);
-
-        // Show a toast message depending on whether or not the delete was successful.
-        if (rowsDeleted == 0) {
-            // If no rows were deleted, then there was an error with the delete.
-            Toast.makeText(this, getString(R.string.editor_delete_failure),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            // Otherwise, the delete was successful and we can display a toast.
-            Toast.makeText(this, getString(R.string.editor_delete_successful),
-                    Toast.LENGTH_SHORT).show();
-        }
+        // display mode, and that {@link currentProductUri} is not null.
+        // The product is deleted on the writer thread, so the activity can be closed right away.
+        ProductRepository.getInstance(this).delete(currentProductUri, null, null,
+                new ProductRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer rowsDeleted) {
+                        // Show a toast message depending on whether or not the delete was
+                        // successful.
+                        if (rowsDeleted == 0) {
+                            // If no rows were deleted, then there was an error with the delete.
+                            Toast.makeText(getApplicationContext(),
+                                    getString(R.string.editor_delete_failure),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Otherwise, the delete was successful and we can display a toast.
+                            Toast.makeText(getApplicationContext(),
+                                    getString(R.string.editor_delete_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
 
         // Close the activity
         finish();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // journal the queued quantity adjustments, and write them, as soon as the user leaves
+        // the screen
+        StockAdjustmentQueue.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onPostCreate(Bundle savedInstanceState) {
+        super.onPostCreate(savedInstanceState);
+        // if the activity was recreated while the product was being saved, take over the save,
+        // once the state of the views has been restored
+        PendingSave save = (PendingSave) getLastCustomNonConfigurationInstance();
+        if (save != null) {
+            pendingSave = save;
+            saveButton.setEnabled(false);
+            save.attach(this);
+        }
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // keep the save running across the configuration change
+        return pendingSave;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // the save must not hold this instance once it is destroyed
+        if (pendingSave != null) {
+            pendingSave.detach();
+        }
+    }
+
     @Override
     public void onSaveInstanceState(Bundle savedInstanceState) {
         // save the layout mode for the current activity
@@ -811,4 +1015,135 @@ public class InsertProductActivity extends AppCompatActivity implements
         // Show dialog that there are unsaved changes
         showUnsavedChangesDialog(discardButtonClickListener);
     }
+
+    /**
+     * Save of the product details running on the writer thread. It does not hold the activity
+     * while the save runs, and it is retained across configuration changes, so that its result
+     * is delivered to the activity showing the product when the save finishes.
+     */
+    private static class PendingSave {
+
+        /**
+         * Context of the app, used to let the user know the result of the save
+         */
+        private final Context appContext;
+
+        /**
+         * Whether the save inserts a new product, rather than updating an existing one
+         */
+        private final boolean isInsert;
+
+        /**
+         * Activity receiving the result, or null while the activity is being recreated
+         */
+        private InsertProductActivity activity;
+
+        /**
+         * Whether the save has finished, its result waiting for an activity if none is attached
+         */
+        private boolean isFinished;
+
+        /**
+         * URI of the new product, or null if the insertion failed
+         */
+        private Uri newUri;
+
+        /**
+         * Number of products updated, 0 if the update failed
+         */
+        private int rowsAffected;
+
+        /**
+         * @param appContext context of the app
+         * @param isInsert   true if the save inserts a new product
+         */
+        PendingSave(Context appContext, boolean isInsert) {
+            this.appContext = appContext;
+            this.isInsert = isInsert;
+        }
+
+        /**
+         * Insert a new product.
+         *
+         * @param values describing the product
+         */
+        void insert(ContentValues values) {
+            ProductRepository.getInstance(appContext).insert(
+                    ProductContract.ProductEntry.CONTENT_URI, values,
+                    new ProductRepository.Callback<Uri>() {
+                        @Override
+                        public void onResult(Uri result) {
+                            // If the new content URI is null, then there was an error with
+                            // insertion.
+                            Toast.makeText(appContext, result == null ?
+                                            R.string.product_save_error :
+                                            R.string.product_save_successful,
+                                    Toast.LENGTH_SHORT).show();
+                            newUri = result;
+                            finish();
+                        }
+                    });
+        }
+
+        /**
+         * Update an existing product. The selection is null because the URI already identifies
+         * the row to modify.
+         *
+         * @param productUri content URI of the product
+         * @param values     new values of the product
+         */
+        void update(Uri productUri, ContentValues values) {
+            ProductRepository.getInstance(appContext).update(productUri, values, null, null,
+                    new ProductRepository.Callback<Integer>() {
+                        @Override
+                        public void onResult(Integer result) {
+                            // check if the update failed
+                            Toast.makeText(appContext, result == 0 ?
+                                            R.string.product_update_error :
+                                            R.string.product_update_successful,
+                                    Toast.LENGTH_SHORT).show();
+                            rowsAffected = result;
+                            finish();
+                        }
+                    });
+        }
+
+        /**
+         * Deliver the result to the given activity, right away if the save has already finished.
+         *
+         * @param activity showing the product
+         */
+        void attach(InsertProductActivity activity) {
+            this.activity = activity;
+            if (isFinished) {
+                deliver();
+            }
+        }
+
+        /**
+         * Stop delivering the result to the activity, which is being destroyed.
+         */
+        void detach() {
+            activity = null;
+        }
+
+        /**
+         * Record that the save has finished, delivering the result if an activity is attached.
+         */
+        private void finish() {
+            isFinished = true;
+            if (activity != null) {
+                deliver();
+            }
+        }
+
+        /**
+         * Deliver the result, only once, to the attached activity.
+         */
+        private void deliver() {
+            InsertProductActivity target = activity;
+            activity = null;
+            target.onSaveFinished(this);
+        }
+    }
 }
@@ -12,26 +12,40 @@ import android.net.Uri;
 import android.app.LoaderManager;
 import android.content.CursorLoader;
 import android.content.Loader;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.view.View;
-import android.widget.AdapterView;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.RadioGroup;
 import android.support.v7.app.AppCompatActivity;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuItem;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.File;
+import java.util.List;
 import java.util.Random;
 
+import udacityscholarship.rada.raul.inventoryapp.data.PriceUtils;
+import udacityscholarship.rada.raul.inventoryapp.data.Product;
 import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductFilter;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductLoadGenerator;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductRepository;
+import udacityscholarship.rada.raul.inventoryapp.data.StockAdjustmentQueue;
 
 /**
  * Main activity of the app. Shows a list of available products and permits navigation to other
  * activities within the app
  */
-public class InventoryActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class InventoryActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<ProductListLoader.Result> {
 
     /**
      * Constant value used when inserting dummy product name
@@ -51,9 +65,9 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      */
     private static final String PRODUCT_SUPPLIER = "Supplier ";
     /**
-     * Constant value for maximum price of a dummy product
+     * Constant value for maximum price of a dummy product, in minor units of the currency
      */
-    private static final int PRODUCT_MAX_PRICE = 100;
+    private static final int PRODUCT_MAX_PRICE = 10000;
     /**
      * Constant value for maximum quantity of a dummy product
      */
@@ -62,23 +76,144 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * Identifier for the product data loader
      */
     private static final int PRODUCT_LOADER = 0;
+    /**
+     * Identifier for the inventory statistics loader
+     */
+    private static final int STATS_LOADER = 1;
+    /**
+     * Number of products loaded in each page of the list
+     */
+    private static final int PAGE_SIZE = 50;
+    /**
+     * Number of products left to scroll through before the next page starts loading
+     */
+    private static final int PAGE_PREFETCH_DISTANCE = 15;
+    /**
+     * Maximum number of products displayed as search results
+     */
+    private static final int SEARCH_RESULTS_LIMIT = 100;
+    /**
+     * Delay after the last keystroke before a search starts, so that a search does not run for
+     * every single character typed
+     */
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+    /**
+     * Window during which the changes of the products are merged into one single reload of the
+     * list, so that bursts of writes (dummy products, quick sales) do not requery the list for
+     * every single write
+     */
+    private static final long PRODUCT_CHANGE_WINDOW_MILLIS = 100;
+    /**
+     * Request code of the activity picking the file the products are exported to
+     */
+    private static final int REQUEST_EXPORT_PRODUCTS = 1;
+    /**
+     * Request code of the activity picking the CSV file the products are imported from
+     */
+    private static final int REQUEST_IMPORT_PRODUCTS = 2;
+    /**
+     * MIME types under which CSV files may be offered for import
+     */
+    private static final String[] IMPORT_MIME_TYPES = {
+            ProductContract.ProductEntry.CONTENT_EXPORT_TYPE, "text/comma-separated-values",
+            "text/plain"
+    };
+    /**
+     * MIME type matching any of the {@link #IMPORT_MIME_TYPES}, on its own
+     */
+    private static final String IMPORT_MIME_TYPE_FILTER = "text/*";
+    /**
+     * Orders of the list of products offered to the user, in the order of the
+     * sort_products_labels array
+     */
+    private static final String[] SORT_VALUES = {
+            ProductContract.ProductEntry.SORT_ID,
+            ProductContract.ProductEntry.SORT_NAME,
+            ProductContract.ProductEntry.SORT_PRICE,
+            ProductContract.ProductEntry.SORT_QUANTITY,
+            ProductContract.ProductEntry.SORT_RECENTLY_UPDATED
+    };
     /**
      * Constant value used as offset of the id of the last product in the database, used when
      * inserting dummy products (in order to account for indexing starting at 0, and not at 1).
      */
     private static final int POSITION_OFFSET = 1;
     /**
-     * Adapter for the ListView
+     * Adapter for the RecyclerView
+     */
+    ProductAdapter productAdapter;
+    /**
+     * Text view displayed when there are no products
      */
-    ProductCursorAdapter productCursorAdapter;
+    private TextView emptyTextView;
+    /**
+     * Text view displaying the inventory statistics above the list of products
+     */
+    private TextView statsTextView;
     /**
      * ID of the last product in the database - useful when inserting dummy products.
      */
     private int lastProductId;
     /**
-     * Flag showing whether the saving of dummy products was successful or not
+     * Text currently searched by the user, or null when the list of all products is displayed
+     */
+    private String searchQuery;
+    /**
+     * Source of the random values of the dummy products
+     */
+    private final Random random = new Random();
+    /**
+     * Handler delaying searches until the user stops typing
+     */
+    private final Handler searchHandler = new Handler();
+    /**
+     * Runnable starting the search of {@link #searchQuery}
+     */
+    private final Runnable searchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startSearch();
+        }
+    };
+
+    /**
+     * Callbacks of the loader of the inventory statistics. The statistics are one single row
+     * maintained by the database, so they are cheap to load again whenever the products change.
      */
-    private boolean saveSuccessful;
+    private final LoaderManager.LoaderCallbacks<Cursor> statsLoaderCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    String[] projection = {
+                            ProductContract.StatsEntry.COLUMN_TOTAL_QUANTITY,
+                            ProductContract.StatsEntry.COLUMN_TOTAL_VALUE,
+                            ProductContract.StatsEntry.COLUMN_OUT_OF_STOCK_COUNT
+                    };
+                    return new CursorLoader(InventoryActivity.this,
+                            ProductContract.StatsEntry.CONTENT_URI, projection, null, null, null);
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+                    if (data == null || !data.moveToFirst()) {
+                        statsTextView.setVisibility(View.GONE);
+                        return;
+                    }
+                    statsTextView.setVisibility(View.VISIBLE);
+                    statsTextView.setText(getString(R.string.inventory_stats,
+                            data.getLong(data.getColumnIndex(
+                                    ProductContract.StatsEntry.COLUMN_TOTAL_QUANTITY)),
+                            PriceUtils.formatPrice(data.getLong(data.getColumnIndex(
+                                    ProductContract.StatsEntry.COLUMN_TOTAL_VALUE))),
+                            data.getLong(data.getColumnIndex(
+                                    ProductContract.StatsEntry.COLUMN_OUT_OF_STOCK_COUNT))));
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    statsTextView.setText(null);
+                }
+            };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -89,33 +224,29 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
         //a different app label displayed on user's device vs. the label of the launcher activity
         getSupportActionBar().setTitle(R.string.inventory_activity_label);
 
+        // raise a notification whenever a product falls to its reorder threshold
+        LowStockMonitor.getInstance(this).start();
+
         // find the add_product button
         Button addProductButton = (Button) findViewById(R.id.add_product_button);
 
-        // find the ListView displaying data about products and the text view which will be
-        // displayed when the ListView is empty
-        ListView productsListView = (ListView) findViewById(R.id.products_list_view);
-        TextView emptyTextView = (TextView) findViewById(R.id.empty_text_view);
-        productsListView.setEmptyView(emptyTextView);
-
-        // Setup a CursorAdapter to create list items for each row of product data in the cursor.
-        // There is no product data yet (until the loader finishes) so pass in null for the Cursor.
-        productCursorAdapter = new ProductCursorAdapter(this, null);
-
-        // Attach the adapter to the ListView
-        productsListView.setAdapter(productCursorAdapter);
-
-        // click listener for the list view containing products information
-        productsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // find the RecyclerView displaying data about products and the text view which will be
+        // displayed when there are no products
+        RecyclerView productsRecyclerView = (RecyclerView) findViewById(
+                R.id.products_recycler_view);
+        emptyTextView = (TextView) findViewById(R.id.empty_text_view);
+        statsTextView = (TextView) findViewById(R.id.stats_text_view);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        productsRecyclerView.setLayoutManager(layoutManager);
+
+        // Setup an adapter to create list items for each product. There is no product data yet
+        // (until the loader finishes), and clicking on a product opens it.
+        productAdapter = new ProductAdapter(this, new ProductAdapter.OnProductClickListener() {
             /**
-             *
-             * @param parent the list view
-             * @param view containing one product - the view on which the user clicks
-             * @param position of the item in the list view
-             * @param id of the item
+             * @param productId ID of the product on which the user clicks
              */
             @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            public void onProductClick(long productId) {
                 // intent to go to InsertProductActivity
                 Intent startInsertProductActivityIntent = new Intent(
                         InventoryActivity.this, InsertProductActivity.class);
@@ -124,7 +255,7 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
                 // by appending the "id" (passed as input to this method) onto the
                 // {@link ProductContract.ProductEntry#CONTENT_URI}.
                 Uri currentProductUri = ContentUris.withAppendedId(
-                        ProductContract.ProductEntry.CONTENT_URI, id);
+                        ProductContract.ProductEntry.CONTENT_URI, productId);
 
                 // Set the URI on the data field of the intent
                 startInsertProductActivityIntent.setData(currentProductUri);
@@ -134,6 +265,9 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             }
         });
 
+        // Attach the adapter to the RecyclerView
+        productsRecyclerView.setAdapter(productAdapter);
+
         // set action to be completed when the user clicks on the add_product button
         addProductButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -147,25 +281,92 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             }
         });
 
-        // Kick off the loader
+        // load the next page of products when the user scrolls close to the end of the list
+        productsRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+                if (lastVisibleItem >= productAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    getProductListLoader().loadNextPage();
+                }
+            }
+        });
+
+        // Kick off the loader, or reconnect to the one which survived the recreation of the
+        // activity, together with the pages it already loaded
         getLoaderManager().initLoader(PRODUCT_LOADER, null, this);
+        getLoaderManager().initLoader(STATS_LOADER, null, statsLoaderCallbacks);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // drop the pending search, the activity is gone
+        searchHandler.removeCallbacks(searchRunnable);
+    }
+
+    /**
+     * @return the loader of the list of products
+     */
+    private ProductListLoader getProductListLoader() {
+        Loader<ProductListLoader.Result> loader = getLoaderManager().getLoader(PRODUCT_LOADER);
+        return (ProductListLoader) loader;
     }
 
     /**
-     * Insert a product in the products database
+     * Search the products matching {@link #searchQuery}, or go back to the list of all products.
+     * The loader cancels the search which may still be running for a previous query.
+     */
+    private void startSearch() {
+        getProductListLoader().setSearchQuery(searchQuery);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // let the user know when a queued sale was refused because the product ran out of stock
+        StockAdjustmentQueue.getInstance(this).setOnFlushListener(
+                new StockAdjustmentQueue.OnFlushListener() {
+                    @Override
+                    public void onFlushed(long[] productIds, int[] newQuantities) {
+                        for (int newQuantity : newQuantities) {
+                            if (newQuantity == ProductContract.ProductEntry.QUANTITY_NOT_ADJUSTED) {
+                                Toast.makeText(InventoryActivity.this,
+                                        getString(R.string.quantity_error),
+                                        Toast.LENGTH_SHORT).show();
+                                return;
+                            }
+                        }
+                    }
+                });
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // journal the queued sales, and write them, as soon as the user leaves the screen
+        StockAdjustmentQueue stockAdjustmentQueue = StockAdjustmentQueue.getInstance(this);
+        stockAdjustmentQueue.setOnFlushListener(null);
+        stockAdjustmentQueue.flush();
+    }
+
+    /**
+     * Create the values describing a product, ready to be inserted in the products database
      *
      * @param productName                name of the product
-     * @param productPrice               price of the product
+     * @param productPrice               price of the product, in minor units of the currency
      * @param productQuantity            quantity of the product
      * @param productSupplier            supplier of the product
      * @param productSupplierPhoneNumber phone number of the product supplier
      *                                   entries - only when the user chooses to enter dummy data
+     * @return ContentValues object where column names are the keys
      */
-    public void insertProduct(String productName, int productPrice, int productQuantity,
-                              String productSupplier, String productSupplierPhoneNumber) {
+    public ContentValues createProductValues(String productName, long productPrice,
+                                             int productQuantity, String productSupplier,
+                                             String productSupplierPhoneNumber) {
 
         // Create a ContentValues object where column names are the keys, and the parameters
-        // supplied to the insertProduct method are the values.
+        // supplied to the createProductValues method are the values.
         ContentValues values = new ContentValues();
         values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, productName);
         values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE, productPrice);
@@ -173,20 +374,7 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
         values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, productSupplier);
         values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
                 productSupplierPhoneNumber);
-
-        // Insert a new product into the provider, returning the content URI for the
-        // new product.
-        Uri newUri = getContentResolver().insert(
-                ProductContract.ProductEntry.CONTENT_URI, values);
-
-        // Show a toast message depending on whether or not the insertion was successful
-        if (newUri == null) {
-            // If the new content URI is null, then there was an error with insertion.
-            saveSuccessful = false;
-        } else {
-            // Otherwise, the insertion was successful.
-            saveSuccessful = true;
-        }
+        return values;
     }
 
     /**
@@ -196,7 +384,6 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * @return generated random number
      */
     private int getRandomNumber(int n) {
-        Random random = new Random();
         return random.nextInt(n) + 1;
     }
 
@@ -208,9 +395,49 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_inventory, menu);
+        if (BuildConfig.DEBUG) {
+            getMenuInflater().inflate(R.menu.menu_inventory_debug, menu);
+        }
+
+        // search products as the user types
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // search right away
+                setSearchQuery(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // wait for the user to stop typing
+                setSearchQuery(newText, SEARCH_DEBOUNCE_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
+    /**
+     * Set the text searched by the user, and schedule the search. Any search scheduled before
+     * is cancelled.
+     *
+     * @param query       text searched by the user
+     * @param delayMillis delay before the search starts
+     */
+    private void setSearchQuery(String query, long delayMillis) {
+        String trimmedQuery = query == null ? "" : query.trim();
+        searchQuery = trimmedQuery.isEmpty() ? null : trimmedQuery;
+        searchHandler.removeCallbacks(searchRunnable);
+        if (searchQuery == null) {
+            // go back to the list of all products right away
+            startSearch();
+        } else {
+            searchHandler.postDelayed(searchRunnable, delayMillis);
+        }
+    }
+
     /**
      * Determines what happens when user clicks on item in the menu
      *
@@ -222,40 +449,321 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
         switch (item.getItemId()) {
             // The user chose the insert dummy products option:
             case R.id.action_insert_dummy_products:
-                // insert a number of dummy products
-                for (int i = lastProductId + POSITION_OFFSET;
-                     i < MAX_DUMMY_PRODUCTS + lastProductId + POSITION_OFFSET; i++) {
-                    String productName = PRODUCT_NAME + i;
+                // prepare a number of dummy products
+                ContentValues[] dummyProducts = new ContentValues[MAX_DUMMY_PRODUCTS];
+                for (int i = 0; i < MAX_DUMMY_PRODUCTS; i++) {
+                    int productNumber = lastProductId + POSITION_OFFSET + i;
+                    String productName = PRODUCT_NAME + productNumber;
                     int productPrice = getRandomNumber(PRODUCT_MAX_PRICE);
                     int productQuantity = getRandomNumber(PRODUCT_MAX_QUANTITY);
-                    String productSupplier = PRODUCT_SUPPLIER + i;
-                    insertProduct(productName, productPrice, productQuantity, productSupplier,
-                            PRODUCT_SUPPLIER_PHONE_NUMBER);
-                }
-                // Show a toast message depending on whether or not the insertion was successful
-                if (!saveSuccessful) {
-                    Toast.makeText(getApplicationContext(), getString(R.string.products_save_error),
-                            Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(getApplicationContext(), getString(R.string.products_save_successful),
-                            Toast.LENGTH_SHORT).show();
+                    String productSupplier = PRODUCT_SUPPLIER + productNumber;
+                    dummyProducts[i] = createProductValues(productName, productPrice,
+                            productQuantity, productSupplier, PRODUCT_SUPPLIER_PHONE_NUMBER);
                 }
+
+                // insert all dummy products in one single transaction, on the writer thread
+                ProductRepository.getInstance(this).bulkInsert(
+                        ProductContract.ProductEntry.CONTENT_URI, dummyProducts,
+                        new ProductRepository.Callback<Integer>() {
+                            @Override
+                            public void onResult(Integer rowsInserted) {
+                                // Show a toast message depending on whether or not the
+                                // insertion was successful
+                                if (rowsInserted != MAX_DUMMY_PRODUCTS) {
+                                    Toast.makeText(getApplicationContext(),
+                                            getString(R.string.products_save_error),
+                                            Toast.LENGTH_SHORT).show();
+                                } else {
+                                    Toast.makeText(getApplicationContext(),
+                                            getString(R.string.products_save_successful),
+                                            Toast.LENGTH_SHORT).show();
+                                }
+                            }
+                        });
+                return true;
+
+            // The user chose the sort products option:
+            case R.id.action_sort_products:
+                showSortDialog();
+                return true;
+
+            // The user chose the filter products option:
+            case R.id.action_filter_products:
+                showFilterDialog();
+                return true;
+
+            // The user chose the import products option:
+            case R.id.action_import_products:
+                importProducts();
+                return true;
+
+            // The user chose the export products option:
+            case R.id.action_export_products:
+                exportProducts();
                 return true;
 
             // The user chose the delete all products option:
             case R.id.action_delete_all_products:
                 showDeleteConfirmationDialog();
                 return true;
+
+            // The user chose the generate test products option, in a debug build:
+            case R.id.action_generate_products:
+                showGenerateProductsDialog();
+                return true;
+
+            // The user chose the provider metrics option, in a debug build:
+            case R.id.action_provider_metrics:
+                startActivity(new Intent(this, MetricsActivity.class));
+                return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Ask the user by which attribute the products should be sorted, then load them in that
+     * order.
+     */
+    private void showSortDialog() {
+        String currentSort = getProductListLoader().getSort();
+        int checkedItem = 0;
+        for (int i = 0; i < SORT_VALUES.length; i++) {
+            if (SORT_VALUES[i].equals(currentSort)) {
+                checkedItem = i;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.sort_products_title);
+        builder.setSingleChoiceItems(R.array.sort_products_labels, checkedItem,
+                new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        getProductListLoader().setSort(SORT_VALUES[which]);
+                        dialog.dismiss();
+                    }
+                });
+        builder.create().show();
+    }
+
+    /**
+     * Ask the user which products should be listed (in or out of stock, of one supplier, in a
+     * range of prices), then load the products matching the filter.
+     */
+    private void showFilterDialog() {
+        View filterView = getLayoutInflater().inflate(R.layout.dialog_filter_products, null);
+        final RadioGroup stockRadioGroup = (RadioGroup) filterView.findViewById(
+                R.id.radio_group_filter_stock);
+        final EditText supplierEditText = (EditText) filterView.findViewById(
+                R.id.edit_text_filter_supplier);
+        final EditText minPriceEditText = (EditText) filterView.findViewById(
+                R.id.edit_text_filter_min_price);
+        final EditText maxPriceEditText = (EditText) filterView.findViewById(
+                R.id.edit_text_filter_max_price);
+
+        // show the current filter
+        ProductFilter filter = getProductListLoader().getFilter();
+        if (ProductContract.ProductEntry.STOCK_IN.equals(filter.getStock())) {
+            stockRadioGroup.check(R.id.radio_button_filter_stock_in);
+        } else if (ProductContract.ProductEntry.STOCK_OUT.equals(filter.getStock())) {
+            stockRadioGroup.check(R.id.radio_button_filter_stock_out);
+        }
+        supplierEditText.setText(filter.getSupplier());
+        if (filter.getMinPrice() != ProductFilter.NO_PRICE_BOUND) {
+            minPriceEditText.setText(PriceUtils.formatPrice(filter.getMinPrice()));
+        }
+        if (filter.getMaxPrice() != ProductFilter.NO_PRICE_BOUND) {
+            maxPriceEditText.setText(PriceUtils.formatPrice(filter.getMaxPrice()));
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.filter_products_title);
+        builder.setView(filterView);
+        builder.setPositiveButton(R.string.filter_apply, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String stock = null;
+                switch (stockRadioGroup.getCheckedRadioButtonId()) {
+                    case R.id.radio_button_filter_stock_in:
+                        stock = ProductContract.ProductEntry.STOCK_IN;
+                        break;
+                    case R.id.radio_button_filter_stock_out:
+                        stock = ProductContract.ProductEntry.STOCK_OUT;
+                        break;
+                }
+                String supplier = supplierEditText.getText().toString().trim();
+                getProductListLoader().setFilter(new ProductFilter(stock,
+                        supplier.isEmpty() ? null : supplier,
+                        parsePriceBound(minPriceEditText.getText().toString()),
+                        parsePriceBound(maxPriceEditText.getText().toString())));
+            }
+        });
+        builder.setNeutralButton(R.string.filter_clear, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                getProductListLoader().setFilter(ProductFilter.NONE);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                // User chose not to change the filter, so dismiss the dialog
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * @param text typed by the user as a bound of the price
+     * @return the bound, in minor units of the currency, or {@link ProductFilter#NO_PRICE_BOUND}
+     * when the text is not a price
+     */
+    private static long parsePriceBound(String text) {
+        long price = PriceUtils.parsePrice(text);
+        return price == PriceUtils.INVALID_PRICE ? ProductFilter.NO_PRICE_BOUND : price;
+    }
+
+    /**
+     * Export all the products as CSV. The user picks the file the products are written to, when
+     * the device lets them; before Android 4.4, the products are written to the app's external
+     * files directory.
+     */
+    private void exportProducts() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Intent createDocumentIntent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            createDocumentIntent.addCategory(Intent.CATEGORY_OPENABLE);
+            createDocumentIntent.setType(ProductContract.ProductEntry.CONTENT_EXPORT_TYPE);
+            createDocumentIntent.putExtra(Intent.EXTRA_TITLE, getString(R.string.export_file_name));
+            startActivityForResult(createDocumentIntent, REQUEST_EXPORT_PRODUCTS);
+            return;
+        }
+
+        File exportDirectory = getExternalFilesDir(null);
+        if (exportDirectory == null) {
+            // the external storage is not available
+            Toast.makeText(this, getString(R.string.export_error), Toast.LENGTH_SHORT).show();
+            return;
+        }
+        ProductExportService.start(this, Uri.fromFile(
+                new File(exportDirectory, getString(R.string.export_file_name))));
+    }
+
+    /**
+     * Import products from a CSV file, picked by the user. The import runs in the background;
+     * rows which cannot be imported are listed in a reject report.
+     */
+    private void importProducts() {
+        Intent pickFileIntent;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            pickFileIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            pickFileIntent.putExtra(Intent.EXTRA_MIME_TYPES, IMPORT_MIME_TYPES);
+        } else {
+            pickFileIntent = new Intent(Intent.ACTION_GET_CONTENT);
+        }
+        pickFileIntent.addCategory(Intent.CATEGORY_OPENABLE);
+        pickFileIntent.setType(IMPORT_MIME_TYPE_FILTER);
+        startActivityForResult(pickFileIntent, REQUEST_IMPORT_PRODUCTS);
+    }
+
+    /**
+     * Start the export or the import once the user has picked the file.
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        switch (requestCode) {
+            case REQUEST_EXPORT_PRODUCTS:
+                ProductExportService.start(this, data.getData());
+                break;
+            case REQUEST_IMPORT_PRODUCTS:
+                ProductImportService.start(this, data.getData());
+                break;
+        }
+    }
+
+    /**
+     * Ask how many test products should be generated, then generate them. While test products
+     * are being generated, ask whether to stop generating them instead.
+     */
+    private void showGenerateProductsDialog() {
+        final ProductRepository productRepository = ProductRepository.getInstance(this);
+        if (productRepository.isGeneratingProducts()) {
+            AlertDialog.Builder builder = new AlertDialog.Builder(this);
+            builder.setMessage(R.string.generate_products_stop_message);
+            builder.setPositiveButton(R.string.generate_products_stop,
+                    new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            productRepository.cancelProductGeneration();
+                        }
+                    });
+            builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    // User chose to keep generating the products, so dismiss the dialog
+                    if (dialog != null) {
+                        dialog.dismiss();
+                    }
+                }
+            });
+            builder.create().show();
+            return;
+        }
+
+        final int[] productCounts = getResources().getIntArray(
+                R.array.load_generator_product_counts);
+        String[] labels = new String[productCounts.length];
+        for (int i = 0; i < productCounts.length; i++) {
+            labels[i] = getString(R.string.generate_products_count, productCounts[i]);
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.generate_products_title);
+        builder.setItems(labels, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                generateProducts(productCounts[which]);
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Insert generated test products, always the same for the seed of the configuration, on the
+     * writer thread.
+     *
+     * @param productCount number of products to generate
+     */
+    private void generateProducts(int productCount) {
+        ProductLoadGenerator generator = new ProductLoadGenerator(
+                getResources().getInteger(R.integer.load_generator_seed),
+                getResources().getInteger(R.integer.load_generator_supplier_count));
+        Toast.makeText(this, getString(R.string.generate_products_started, productCount),
+                Toast.LENGTH_SHORT).show();
+        ProductRepository.getInstance(this).insertGeneratedProducts(generator, productCount,
+                getResources().getInteger(R.integer.load_generator_batch_size),
+                new ProductRepository.Callback<Long>() {
+                    @Override
+                    public void onResult(Long productsInserted) {
+                        Toast.makeText(getApplicationContext(),
+                                getString(R.string.generate_products_finished, productsInserted),
+                                Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+
     /**
      * Ask for user's confirmation that they want to delete this product.
      */
     private void showDeleteConfirmationDialog() {
         // Check if the products list is already empty
-        if (productCursorAdapter.getCount() == 0) {
+        if (productAdapter.getItemCount() == 0) {
             // let the user know there is nothing to delete
             Toast.makeText(this, getString(R.string.nothing_to_delete),
                     Toast.LENGTH_SHORT).show();
@@ -291,39 +799,35 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * Method deleting all products in the database
      */
     private void deleteAllProducts() {
-        // try to delete all items in the database
-        int rowsDeleted = getContentResolver().delete(ProductContract.ProductEntry.CONTENT_URI,
-                null, null);
-
-        // Show a toast message depending on whether or not the delete was successful.
-        if (rowsDeleted == 0) {
-            // If no rows were deleted, then there was an error with the delete.
-            Toast.makeText(this, getString(R.string.database_delete_failure),
-                    Toast.LENGTH_SHORT).show();
-        } else {
-            // Otherwise, the delete was successful and we can display a toast.
-            Toast.makeText(this, getString(R.string.database_delete_successful),
-                    Toast.LENGTH_SHORT).show();
-        }
+        // try to delete all items in the database, on the writer thread
+        ProductRepository.getInstance(this).delete(ProductContract.ProductEntry.CONTENT_URI,
+                null, null, new ProductRepository.Callback<Integer>() {
+                    @Override
+                    public void onResult(Integer rowsDeleted) {
+                        // Show a toast message depending on whether or not the delete was
+                        // successful.
+                        if (rowsDeleted == 0) {
+                            // If no rows were deleted, then there was an error with the delete.
+                            Toast.makeText(getApplicationContext(),
+                                    getString(R.string.database_delete_failure),
+                                    Toast.LENGTH_SHORT).show();
+                        } else {
+                            // Otherwise, the delete was successful and we can display a toast.
+                            Toast.makeText(getApplicationContext(),
+                                    getString(R.string.database_delete_successful),
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Define a projection that specifies which columns from the database which are relevant.
-        String[] projection = {
-                ProductContract.ProductEntry._ID,
-                ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
-                ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
-                ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY
-        };
-
-        // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this,                // Parent activity context
-                ProductContract.ProductEntry.CONTENT_URI,   // Provider content URI to query
-                projection,                                 // Columns to include in the resulting Cursor
-                null,                               // No selection clause
-                null,                            // No selection arguments
-                null);                             // Default sort order
+    public Loader<ProductListLoader.Result> onCreateLoader(int id, Bundle args) {
+        // This loader reads the pages of products (or the search results) on a background
+        // thread, and compares them with the products displayed so far
+        ProductListLoader loader = new ProductListLoader(this, PAGE_SIZE, SEARCH_RESULTS_LIMIT);
+        loader.setChangeWindowMillis(PRODUCT_CHANGE_WINDOW_MILLIS);
+        return loader;
     }
 
     /**
@@ -331,19 +835,21 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * information
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update the {@link ProductCursorAdapter} with this new cursor containing updated
-        // product data.
-        productCursorAdapter.swapCursor(data);
-
-        // Get the id of the last product in the database - useful when inserting dummmy products
-        // Proceed with moving to the last row of the cursor and reading data from it
-        if (data.moveToLast()) {
-            // Find the index of the id column of product attributes
-            int idColumnIndex = data.getColumnIndex(
-                    ProductContract.ProductEntry._ID);
-            // Get the ID of the last product in the database
-            lastProductId = data.getInt(idColumnIndex);
+    public void onLoadFinished(Loader<ProductListLoader.Result> loader,
+                               ProductListLoader.Result data) {
+        // Update the {@link ProductAdapter} with the changed products only
+        productAdapter.swapProducts(data);
+
+        // the empty view tells the user the database is empty, so it is not shown for a search
+        // or a filter without results
+        List<Product> products = data.products;
+        boolean isFiltered = ((ProductListLoader) loader).isFiltered();
+        emptyTextView.setVisibility(products.isEmpty() && !isFiltered ? View.VISIBLE : View.GONE);
+
+        // Get the highest id of the products loaded - useful when inserting dummmy products. In
+        // orders other than by ID, the last product loaded is not the one with the highest ID.
+        for (Product product : products) {
+            lastProductId = (int) Math.max(lastProductId, product.getId());
         }
     }
 
@@ -352,8 +858,8 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
      * be swapped in.
      */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<ProductListLoader.Result> loader) {
         // Callback called when the data needs to be deleted
-        productCursorAdapter.swapCursor(null);
+        productAdapter.clearProducts();
     }
 }
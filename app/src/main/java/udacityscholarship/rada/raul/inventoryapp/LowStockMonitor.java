@@ -0,0 +1,354 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.database.ContentObserver;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductRepository;
+
+/**
+ * Background check raising a notification when a product falls to its reorder threshold. The
+ * database records an alert only when a product crosses its threshold, so the check does not
+ * compare quantities itself: once the products change, it takes the pending alerts from the
+ * provider, on the writer thread of the {@link ProductRepository}, and notifies them.
+ * Changes notified in quick succession (e.g. a burst of sales) are merged into one single check.
+ * <p>
+ * The alerts are taken in chunks, each one its own task on the writer thread, so that a bulk
+ * update crossing the threshold of many products does not hold the sales queued behind it.
+ * A few alerts are notified one by one; beyond {@link #MAX_PRODUCT_NOTIFICATIONS}, a single
+ * notification sums them up.
+ */
+public class LowStockMonitor {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = LowStockMonitor.class.getSimpleName();
+
+    /**
+     * Length of the window, in milliseconds, during which product changes are merged into one
+     * single check of the alerts.
+     */
+    private static final long CHECK_WINDOW_MILLIS = 1000;
+
+    /**
+     * Maximum number of alerts taken from the provider by each task on the writer thread
+     */
+    private static final int ALERTS_CHUNK_SIZE = 200;
+
+    /**
+     * Maximum number of alerts of one check notified one by one; more alerts are summed up in
+     * one single notification, which lists the first of them
+     */
+    private static final int MAX_PRODUCT_NOTIFICATIONS = 5;
+
+    /**
+     * Identifier of the notification channel of the low-stock alerts
+     */
+    private static final String CHANNEL_ID = "low_stock";
+
+    /**
+     * Tag of the low-stock notifications, which are identified by the product ID
+     */
+    private static final String NOTIFICATION_TAG = "low_stock";
+
+    /**
+     * Identifier of the notification summing up many alerts, which no product ID can take
+     */
+    private static final int SUMMARY_NOTIFICATION_ID = 0;
+
+    /**
+     * The single instance of the monitor
+     */
+    private static LowStockMonitor sInstance;
+
+    /**
+     * Application context, used to reach the provider and to post the notifications
+     */
+    private final Context appContext;
+
+    /**
+     * Repository on whose writer thread the alerts are taken
+     */
+    private final ProductRepository productRepository;
+
+    /**
+     * Handler timing the check windows on the main thread
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Whether the monitor already observes the products
+     */
+    private boolean isStarted;
+
+    /**
+     * Whether a check has already been scheduled for the changes notified
+     */
+    private boolean isCheckScheduled;
+
+    /**
+     * Whether a check is taking the alerts, one chunk after the other. Only used on the writer
+     * thread, like the alerts taken so far by the check.
+     */
+    private boolean isChecking;
+
+    /**
+     * Number of alerts taken so far by the check, and the first of them
+     */
+    private int alertCount;
+    private final long[] firstProductIds = new long[MAX_PRODUCT_NOTIFICATIONS];
+    private final String[] firstProductNames = new String[MAX_PRODUCT_NOTIFICATIONS];
+    private final int[] firstQuantities = new int[MAX_PRODUCT_NOTIFICATIONS];
+
+    /**
+     * Observer scheduling a check of the alerts whenever the products change
+     */
+    private final ContentObserver productsObserver = new ContentObserver(mainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            scheduleCheck();
+        }
+    };
+
+    /**
+     * Runnable starting a check of the alerts, on the writer thread. A check already running
+     * takes the new alerts too.
+     */
+    private final Runnable checkTask = new Runnable() {
+        @Override
+        public void run() {
+            if (isChecking) {
+                return;
+            }
+            isChecking = true;
+            alertCount = 0;
+            takeAlerts();
+        }
+    };
+
+    /**
+     * Runnable taking the next chunk of alerts of the check, on the writer thread
+     */
+    private final Runnable takeAlertsTask = new Runnable() {
+        @Override
+        public void run() {
+            takeAlerts();
+        }
+    };
+
+    /**
+     * Runnable handing {@link #checkTask} over to the writer thread, once the check window has
+     * elapsed
+     */
+    private final Runnable checkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isCheckScheduled = false;
+            productRepository.execute(checkTask);
+        }
+    };
+
+    /**
+     * Create the monitor.
+     *
+     * @param context of the app
+     */
+    private LowStockMonitor(Context context) {
+        appContext = context.getApplicationContext();
+        productRepository = ProductRepository.getInstance(appContext);
+    }
+
+    /**
+     * Get the single instance of the monitor, creating it if needed.
+     *
+     * @param context of the app
+     * @return the monitor
+     */
+    public static synchronized LowStockMonitor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LowStockMonitor(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start observing the products, unless the monitor already does, and notify the alerts
+     * raised while the monitor was not running. Must be called on the main thread.
+     */
+    public void start() {
+        if (isStarted) {
+            return;
+        }
+        isStarted = true;
+        createNotificationChannel();
+        appContext.getContentResolver().registerContentObserver(
+                ProductContract.ProductEntry.CONTENT_URI, true, productsObserver);
+        scheduleCheck();
+    }
+
+    /**
+     * Schedule a check of the alerts at the end of the current window, unless one is already
+     * scheduled.
+     */
+    private void scheduleCheck() {
+        if (!isCheckScheduled) {
+            isCheckScheduled = true;
+            mainHandler.postDelayed(checkRunnable, CHECK_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Take the next chunk of pending alerts from the provider. If more alerts are pending, the
+     * next chunk is taken by another task, queued behind the writes submitted meanwhile;
+     * otherwise the alerts taken by the check are notified. Runs on the writer thread.
+     */
+    private void takeAlerts() {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductContract.ProductEntry.EXTRA_LIMIT, ALERTS_CHUNK_SIZE);
+        Bundle alerts = null;
+        try {
+            alerts = appContext.getContentResolver().call(
+                    ProductContract.ProductEntry.CONTENT_URI,
+                    ProductContract.ProductEntry.METHOD_TAKE_STOCK_ALERTS, null, extras);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        }
+
+        long[] productIds = null;
+        String[] productNames = null;
+        int[] quantities = null;
+        if (alerts != null) {
+            productIds = alerts.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS);
+            productNames = alerts.getStringArray(ProductContract.ProductEntry.EXTRA_PRODUCT_NAMES);
+            quantities = alerts.getIntArray(ProductContract.ProductEntry.EXTRA_QUANTITIES);
+        }
+        if (productIds != null && productNames != null && quantities != null) {
+            for (int i = 0; i < productIds.length; i++) {
+                if (alertCount < MAX_PRODUCT_NOTIFICATIONS) {
+                    firstProductIds[alertCount] = productIds[i];
+                    firstProductNames[alertCount] = productNames[i];
+                    firstQuantities[alertCount] = quantities[i];
+                }
+                alertCount++;
+            }
+            if (alerts.getBoolean(ProductContract.ProductEntry.EXTRA_HAS_MORE_ALERTS)) {
+                productRepository.execute(takeAlertsTask);
+                return;
+            }
+        }
+
+        // the alerts taken are notified even if taking the next chunk failed, as they are no
+        // longer pending
+        isChecking = false;
+        notifyAlerts();
+    }
+
+    /**
+     * Notify the alerts taken by the check: one by one if there are few of them, otherwise in
+     * one single notification.
+     */
+    private void notifyAlerts() {
+        if (alertCount == 0) {
+            return;
+        }
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(appContext);
+        if (alertCount <= MAX_PRODUCT_NOTIFICATIONS) {
+            for (int i = 0; i < alertCount; i++) {
+                notificationManager.notify(NOTIFICATION_TAG, (int) firstProductIds[i],
+                        buildNotification(firstProductIds[i], firstProductNames[i],
+                                firstQuantities[i]));
+            }
+        } else {
+            notificationManager.notify(NOTIFICATION_TAG, SUMMARY_NOTIFICATION_ID,
+                    buildSummaryNotification());
+        }
+    }
+
+    /**
+     * Build the notification of a product which fell to its reorder threshold. Clicking the
+     * notification opens the product, from which the supplier can be called.
+     *
+     * @param productId   ID of the product
+     * @param productName name of the product
+     * @param quantity    current quantity of the product
+     * @return the notification
+     */
+    private Notification buildNotification(long productId, String productName,
+                                           int quantity) {
+        Intent intent = new Intent(appContext, InsertProductActivity.class);
+        intent.setData(ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI,
+                productId));
+        PendingIntent pendingIntent = PendingIntent.getActivity(appContext, (int) productId,
+                intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(appContext.getString(R.string.low_stock_title, productName))
+                .setContentText(appContext.getString(R.string.low_stock_text, quantity))
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+    }
+
+    /**
+     * Build the notification summing up the alerts taken by the check, listing the first of
+     * them. Clicking the notification opens the list of products.
+     *
+     * @return the notification
+     */
+    private Notification buildSummaryNotification() {
+        Intent intent = new Intent(appContext, InventoryActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(appContext,
+                SUMMARY_NOTIFICATION_ID, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        String title = appContext.getString(R.string.low_stock_summary_title, alertCount);
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title);
+        for (int i = 0; i < MAX_PRODUCT_NOTIFICATIONS; i++) {
+            style.addLine(appContext.getString(R.string.low_stock_summary_line,
+                    firstProductNames[i], firstQuantities[i]));
+        }
+        style.setSummaryText(appContext.getString(R.string.low_stock_summary_more,
+                alertCount - MAX_PRODUCT_NOTIFICATIONS));
+
+        return new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(appContext.getString(R.string.low_stock_summary_text))
+                .setStyle(style)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+    }
+
+    /**
+     * Create the notification channel of the low-stock alerts, required since Android 8.0.
+     */
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                appContext.getString(R.string.low_stock_channel_name),
+                NotificationManager.IMPORTANCE_DEFAULT);
+        NotificationManager notificationManager = (NotificationManager)
+                appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
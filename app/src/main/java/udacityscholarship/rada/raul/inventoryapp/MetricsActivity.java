@@ -0,0 +1,138 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductRepository;
+
+/**
+ * Debug screen showing the latency and throughput metrics of the provider, as returned by
+ * {@link ProductContract#METHOD_METRICS}: for every operation and target, the number of calls,
+ * failures and rows, and the mean, percentile and maximum latencies.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+    /**
+     * TextView showing the metrics
+     */
+    private TextView metricsTextView;
+
+    /**
+     * Builder of the metrics text, reused from one refresh to the next
+     */
+    private final StringBuilder metricsBuilder = new StringBuilder();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+        metricsTextView = (TextView) findViewById(R.id.text_view_metrics);
+    }
+
+    /**
+     * Read the metrics again each time the screen comes back to the foreground.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        loadMetrics(false);
+    }
+
+    /**
+     * Initialize the contents of the Activity's options menu.
+     *
+     * @param menu in which to place the items
+     */
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_metrics, menu);
+        return true;
+    }
+
+    /**
+     * Determines what happens when user clicks on item in the menu
+     *
+     * @param item selected by user from the menu
+     */
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            // The user chose the refresh option:
+            case R.id.action_refresh_metrics:
+                loadMetrics(false);
+                return true;
+
+            // The user chose the reset option; the metrics shown are those before the reset:
+            case R.id.action_reset_metrics:
+                loadMetrics(true);
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Read the metrics from the provider, on the writer thread, and show them.
+     *
+     * @param reset whether the metrics are reset once read
+     */
+    private void loadMetrics(boolean reset) {
+        metricsTextView.setText(R.string.metrics_loading);
+        Bundle extras = new Bundle();
+        extras.putBoolean(ProductContract.EXTRA_METRICS_RESET, reset);
+        ProductRepository.getInstance(this).call(ProductContract.METHOD_METRICS, extras,
+                new ProductRepository.Callback<Bundle>() {
+                    @Override
+                    public void onResult(Bundle metrics) {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        if (metrics == null) {
+                            metricsTextView.setText(R.string.metrics_error);
+                        } else {
+                            metricsTextView.setText(formatMetrics(metrics));
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @param metrics as returned by {@link ProductContract#METHOD_METRICS}
+     * @return text describing the metrics of every operation and target
+     */
+    private String formatMetrics(Bundle metrics) {
+        metricsBuilder.setLength(0);
+        long sinceMillis = metrics.getLong(ProductContract.EXTRA_METRICS_SINCE_MILLIS);
+        metricsBuilder.append(getString(R.string.metrics_summary,
+                DateUtils.formatDateTime(this, sinceMillis,
+                        DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME),
+                metrics.getLong(ProductContract.EXTRA_METRICS_NOTIFICATIONS)));
+
+        String[] keys = metrics.getStringArray(ProductContract.EXTRA_METRICS_KEYS);
+        if (keys == null || keys.length == 0) {
+            metricsBuilder.append(getString(R.string.metrics_none));
+            return metricsBuilder.toString();
+        }
+        for (String key : keys) {
+            Bundle operation = metrics.getBundle(key);
+            if (operation == null) {
+                continue;
+            }
+            long count = operation.getLong(ProductContract.EXTRA_METRIC_COUNT);
+            long totalMicros = operation.getLong(ProductContract.EXTRA_METRIC_TOTAL_MICROS);
+            metricsBuilder.append(getString(R.string.metrics_operation, key, count,
+                    operation.getLong(ProductContract.EXTRA_METRIC_FAILURES),
+                    operation.getLong(ProductContract.EXTRA_METRIC_ROWS),
+                    count == 0 ? 0 : totalMicros / count,
+                    operation.getLong(ProductContract.EXTRA_METRIC_P50_MICROS),
+                    operation.getLong(ProductContract.EXTRA_METRIC_P90_MICROS),
+                    operation.getLong(ProductContract.EXTRA_METRIC_P99_MICROS),
+                    operation.getLong(ProductContract.EXTRA_METRIC_MAX_MICROS)));
+        }
+        return metricsBuilder.toString();
+    }
+}
@@ -0,0 +1,310 @@
+// Inspired by Udacity code at https://github.com/udacity/ud845-Pets/blob/lesson-four/app/src/main/java/com/example/android/pets/PetCursorAdapter.java
+
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.util.Collections;
+import java.util.List;
+
+import udacityscholarship.rada.raul.inventoryapp.data.PriceUtils;
+import udacityscholarship.rada.raul.inventoryapp.data.Product;
+import udacityscholarship.rada.raul.inventoryapp.data.StockAdjustmentQueue;
+
+/**
+ * {@link ProductAdapter} is an adapter for a {@link RecyclerView} that uses a list of
+ * {@link Product} snapshots as its data source. This adapter knows how to create list items for
+ * each product in the list.
+ * <p>
+ * New lists of products are delivered by the {@link ProductListLoader} together with the
+ * changes since the previous list, so only the list items of the products which changed are
+ * bound again.
+ */
+public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHolder> {
+
+    /**
+     * Quantity delta applied to a product each time the sell button is clicked
+     */
+    private static final int SALE_DELTA = -1;
+
+    /**
+     * Placeholders of the text and number values in the format strings of a list item
+     */
+    private static final String TEXT_PLACEHOLDER = "%1$s";
+    private static final String NUMBER_PLACEHOLDER = "%1$d";
+
+    /**
+     * the context
+     */
+    private Context mContext;
+
+    /**
+     * Queue writing the sales in the background
+     */
+    private StockAdjustmentQueue stockAdjustmentQueue;
+
+    /**
+     * Listener notified when the user clicks on a product
+     */
+    private OnProductClickListener onProductClickListener;
+
+    /**
+     * The products displayed
+     */
+    private List<Product> products = Collections.emptyList();
+
+    /**
+     * Texts before (at index 0) and after (at index 1) the name, the price and the quantity of
+     * a product in its list item, read once from the format strings, so that binding a list item
+     * appends the values instead of formatting them
+     */
+    private final String[] nameLabel;
+    private final String[] priceLabel;
+    private final String[] quantityLabel;
+
+    /**
+     * Callback invoked when the user clicks on a product in the list.
+     */
+    public interface OnProductClickListener {
+        /**
+         * @param productId ID of the product clicked
+         */
+        void onProductClick(long productId);
+    }
+
+    /**
+     * constructor of a new {@link ProductAdapter}
+     *
+     * @param context  of the app
+     * @param listener notified when the user clicks on a product
+     */
+    public ProductAdapter(Context context, OnProductClickListener listener) {
+        mContext = context;
+        stockAdjustmentQueue = StockAdjustmentQueue.getInstance(context);
+        onProductClickListener = listener;
+        nameLabel = splitFormat(context.getString(R.string.list_item_product), TEXT_PLACEHOLDER);
+        priceLabel = splitFormat(context.getString(R.string.list_item_price), TEXT_PLACEHOLDER);
+        quantityLabel = splitFormat(context.getString(R.string.list_item_quantity),
+                NUMBER_PLACEHOLDER);
+        // products are identified by their ID, so the list items keep their state when products
+        // move
+        setHasStableIds(true);
+    }
+
+    /**
+     * Split a format string holding one value, such as "Price: %1$s EUR", around the value.
+     *
+     * @param format      format string
+     * @param placeholder of the value in the format string
+     * @return the text before the value, then the text after the value
+     */
+    private static String[] splitFormat(String format, String placeholder) {
+        int start = format.indexOf(placeholder);
+        return new String[]{format.substring(0, start),
+                format.substring(start + placeholder.length())};
+    }
+
+    /**
+     * Display a new list of products. If the adapter displays the list the result was compared
+     * to, only the changes are applied; otherwise (e.g. after the activity was recreated) the
+     * whole list is displayed.
+     *
+     * @param result delivered by the {@link ProductListLoader}
+     */
+    public void swapProducts(ProductListLoader.Result result) {
+        if (result.products == products) {
+            // already displayed, e.g. when the loader delivers its result again
+            return;
+        }
+        boolean canApplyDiff = result.previousProducts == products;
+        products = result.products;
+        if (canApplyDiff) {
+            result.diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Remove all the products displayed
+     */
+    public void clearProducts() {
+        products = Collections.emptyList();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @return the products displayed
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    @Override
+    public int getItemCount() {
+        return products.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return products.get(position).getId();
+    }
+
+    /**
+     * Makes a new blank list item view. No data is set (or bound) to the views yet, but the
+     * views of the list item and its listeners are looked up and created once, and kept in a
+     * {@link ViewHolder}.
+     *
+     * @param parent   The parent to which the new view is attached to
+     * @param viewType type of the view - there is only one type of list item
+     * @return the holder of the newly created list item view.
+     */
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    /**
+     * This method binds the data of the product at the given position to the given list item.
+     * The texts are built in buffers kept by the holder, so the only objects allocated are the
+     * texts themselves.
+     *
+     * @param holder   of the list item, returned earlier by onCreateViewHolder()
+     * @param position of the product in the list
+     */
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Product product = products.get(position);
+
+        // Read the product attributes from the snapshot of the current product
+        holder.productId = product.getId();
+        holder.storedQuantity = product.getQuantity();
+
+        // Quantity adjustments which have not been written to the database yet are displayed
+        // optimistically
+        int currentProductQuantity = holder.storedQuantity +
+                stockAdjustmentQueue.getPendingDelta(holder.productId);
+
+        // Update the TextViews with the attributes for the current product
+        StringBuilder text = holder.textBuilder;
+        text.setLength(0);
+        text.append(nameLabel[0]).append(product.getName()).append(nameLabel[1]);
+        holder.productNameTextView.setText(text);
+
+        int priceLength = PriceUtils.formatPrice(product.getPrice(), holder.priceBuffer);
+        text.setLength(0);
+        text.append(priceLabel[0]).append(holder.priceBuffer, 0, priceLength)
+                .append(priceLabel[1]);
+        holder.productPriceTextView.setText(text);
+
+        holder.setQuantityText(currentProductQuantity);
+    }
+
+    /**
+     * Holds the views of a list item, and the product they currently display. Also acts as the
+     * click listener of the list item, opening the product, and of its sell button, selling the
+     * product.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView productNameTextView;
+        final TextView productPriceTextView;
+        final TextView productQuantityTextView;
+        final Button sellButton;
+
+        /**
+         * Builder of the texts of the list item, reused at every bind
+         */
+        final StringBuilder textBuilder = new StringBuilder();
+
+        /**
+         * Buffer receiving the formatted price of the product, reused at every bind
+         */
+        final char[] priceBuffer = new char[PriceUtils.MAX_PRICE_LENGTH];
+
+        /**
+         * ID of the product currently displayed by the list item
+         */
+        long productId;
+
+        /**
+         * Quantity of the product currently displayed, as stored in the database
+         */
+        int storedQuantity;
+
+        /**
+         * find individual views in the list item, and listen to the clicks on them
+         *
+         * @param view the list item
+         */
+        ViewHolder(View view) {
+            super(view);
+            productNameTextView = (TextView) view.findViewById(
+                    R.id.list_item_product_name_text_view);
+            productPriceTextView = (TextView) view.findViewById(
+                    R.id.list_item_product_price_text_view);
+            productQuantityTextView = (TextView) view.findViewById(
+                    R.id.list_item_product_quantity_text_view);
+            sellButton = (Button) view.findViewById(R.id.list_item_sell_button);
+
+            view.setOnClickListener(this);
+            sellButton.setOnClickListener(this);
+        }
+
+        /**
+         * Display the quantity of the product.
+         *
+         * @param quantity of the product, including the adjustments not written to the
+         *                 database yet
+         */
+        void setQuantityText(int quantity) {
+            textBuilder.setLength(0);
+            textBuilder.append(quantityLabel[0]).append(quantity).append(quantityLabel[1]);
+            productQuantityTextView.setText(textBuilder);
+        }
+
+        /**
+         * Sell one item of the product currently displayed if the sell button was clicked,
+         * otherwise open the product.
+         *
+         * @param v the sell button or the list item
+         */
+        @Override
+        public void onClick(View v) {
+            if (v != sellButton) {
+                onProductClickListener.onProductClick(productId);
+                return;
+            }
+
+            // quantity of the product including the sales not written to the database yet
+            int quantity = storedQuantity + stockAdjustmentQueue.getPendingDelta(productId);
+
+            // the product can only be sold as long as its quantity is >0.
+            if (quantity <= 0) {
+                // let the user know quantity cannot be lower than 0.
+                Toast.makeText(mContext, mContext.getString(R.string.quantity_error),
+                        Toast.LENGTH_SHORT).show();
+                // no need to update the product details, so bail out.
+                return;
+            }
+
+            // queue the sale - sales made in quick succession are merged and written to the
+            // database in the background, while the new quantity is displayed right away.
+            // The provider still refuses the sale if the product went out of stock meanwhile.
+            stockAdjustmentQueue.enqueue(productId, SALE_DELTA);
+
+            Toast.makeText(mContext, mContext.getString(R.string.product_sold),
+                    Toast.LENGTH_SHORT).show();
+            setQuantityText(quantity + SALE_DELTA);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.app.IntentService;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import udacityscholarship.rada.raul.inventoryapp.data.ProductCsvExporter;
+
+/**
+ * Service exporting all the products as CSV into the file given as data of the intent. The
+ * export runs on the background thread of the service, so it carries on when the user leaves
+ * the app, and its progress is shown in a notification.
+ */
+public class ProductExportService extends IntentService {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ProductExportService.class.getSimpleName();
+
+    /**
+     * Identifier of the notification channel of the exports
+     */
+    private static final String CHANNEL_ID = "export";
+
+    /**
+     * Identifier of the notification of the export in progress, and of its result
+     */
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Maximum value of the progress bar of the notification
+     */
+    private static final int PROGRESS_MAX = 100;
+
+    /**
+     * Create the service.
+     */
+    public ProductExportService() {
+        super(ProductExportService.class.getSimpleName());
+    }
+
+    /**
+     * Start the export of all the products.
+     *
+     * @param context   of the app
+     * @param outputUri URI of the file the products are written to
+     */
+    public static void start(Context context, Uri outputUri) {
+        Intent intent = new Intent(context, ProductExportService.class);
+        intent.setData(outputUri);
+        context.startService(intent);
+    }
+
+    /**
+     * Export the products into the file given as data of the intent. Runs on the background
+     * thread of the service.
+     *
+     * @param intent holding the URI of the file
+     */
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || intent.getData() == null) {
+            return;
+        }
+        createNotificationChannel();
+        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.export_title))
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setProgress(PROGRESS_MAX, 0, true);
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+
+        ProductCsvExporter exporter = new ProductCsvExporter(getContentResolver(),
+                ProductCsvExporter.DEFAULT_CHUNK_SIZE);
+        ProductCsvExporter.ProgressListener progressListener =
+                new ProductCsvExporter.ProgressListener() {
+                    /**
+                     * Percentage last shown in the notification, which is only updated when the
+                     * percentage changes
+                     */
+                    private int lastPercentage = -1;
+
+                    @Override
+                    public void onProgress(long productsExported, long productCount) {
+                        int percentage = productCount == 0 ? PROGRESS_MAX :
+                                (int) (productsExported * PROGRESS_MAX / productCount);
+                        if (percentage != lastPercentage) {
+                            lastPercentage = percentage;
+                            builder.setProgress(PROGRESS_MAX, percentage, false);
+                            notificationManager.notify(NOTIFICATION_ID, builder.build());
+                        }
+                    }
+                };
+
+        String resultText;
+        try {
+            OutputStream outputStream = getContentResolver().openOutputStream(intent.getData());
+            if (outputStream == null) {
+                throw new IOException(intent.getData().toString());
+            }
+            try {
+                long productsExported = exporter.export(outputStream, progressListener, null);
+                resultText = getString(R.string.export_successful, productsExported);
+            } finally {
+                outputStream.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            resultText = getString(R.string.export_error);
+        }
+
+        // replace the progress with the result of the export
+        builder.setProgress(0, 0, false)
+                .setOngoing(false)
+                .setAutoCancel(true)
+                .setContentText(resultText);
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * Create the notification channel of the exports, required since Android 8.0.
+     */
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.export_channel_name), NotificationManager.IMPORTANCE_LOW);
+        NotificationManager notificationManager = (NotificationManager)
+                getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
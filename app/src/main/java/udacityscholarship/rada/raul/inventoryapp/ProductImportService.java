@@ -0,0 +1,180 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.app.IntentService;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import udacityscholarship.rada.raul.inventoryapp.data.ProductCsvImporter;
+
+/**
+ * Service importing the products of the CSV file given as data of the intent. The import runs
+ * on the background thread of the service, so it carries on when the user leaves the app, and
+ * its progress is shown in a notification. The rows which could not be imported are listed in a
+ * reject report, written to the app's external files directory.
+ */
+public class ProductImportService extends IntentService {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ProductImportService.class.getSimpleName();
+
+    /**
+     * Identifier of the notification channel of the imports
+     */
+    private static final String CHANNEL_ID = "import";
+
+    /**
+     * Identifier of the notification of the import in progress, and of its result
+     */
+    private static final int NOTIFICATION_ID = 2;
+
+    /**
+     * Minimum time between two updates of the progress notification, which the system would
+     * otherwise drop
+     */
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    /**
+     * Name of the reject report
+     */
+    private static final String REJECT_REPORT_FILE_NAME = "import_rejects.csv";
+
+    /**
+     * Create the service.
+     */
+    public ProductImportService() {
+        super(ProductImportService.class.getSimpleName());
+    }
+
+    /**
+     * Start the import of the products of a CSV file.
+     *
+     * @param context  of the app
+     * @param inputUri URI of the CSV file
+     */
+    public static void start(Context context, Uri inputUri) {
+        Intent intent = new Intent(context, ProductImportService.class);
+        intent.setData(inputUri);
+        context.startService(intent);
+    }
+
+    /**
+     * Import the products of the file given as data of the intent. Runs on the background thread
+     * of the service.
+     *
+     * @param intent holding the URI of the file
+     */
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null || intent.getData() == null) {
+            return;
+        }
+        createNotificationChannel();
+        final NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.import_title))
+                .setOnlyAlertOnce(true)
+                .setOngoing(true)
+                .setProgress(0, 0, true);
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+
+        ProductCsvImporter importer = new ProductCsvImporter(this,
+                getResources().getInteger(R.integer.import_batch_size));
+        ProductCsvImporter.ProgressListener progressListener =
+                new ProductCsvImporter.ProgressListener() {
+                    /**
+                     * Time of the last update of the notification
+                     */
+                    private long lastUpdateMillis;
+
+                    @Override
+                    public void onProgress(long productsImported, long productsRejected) {
+                        long now = SystemClock.elapsedRealtime();
+                        if (now - lastUpdateMillis >= PROGRESS_INTERVAL_MILLIS) {
+                            lastUpdateMillis = now;
+                            builder.setContentText(getString(R.string.import_progress,
+                                    productsImported, productsRejected));
+                            notificationManager.notify(NOTIFICATION_ID, builder.build());
+                        }
+                    }
+                };
+
+        String resultText;
+        try {
+            InputStream inputStream = getContentResolver().openInputStream(intent.getData());
+            if (inputStream == null) {
+                throw new IOException(intent.getData().toString());
+            }
+            Writer rejectWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(getRejectReportFile()), "UTF-8"));
+            try {
+                ProductCsvImporter.Result result = importer.importCsv(inputStream, rejectWriter,
+                        progressListener);
+                resultText = result.productsRejected == 0 ?
+                        getString(R.string.import_successful, result.productsImported) :
+                        getString(R.string.import_successful_with_rejects,
+                                result.productsImported, result.productsRejected,
+                                REJECT_REPORT_FILE_NAME);
+            } finally {
+                rejectWriter.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            resultText = getString(R.string.import_error);
+        }
+
+        // replace the progress with the result of the import
+        builder.setProgress(0, 0, false)
+                .setOngoing(false)
+                .setAutoCancel(true)
+                .setContentText(resultText)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(resultText));
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+
+    /**
+     * @return file of the reject report, in the app's external files directory when the
+     * external storage is available, in its internal files directory otherwise
+     */
+    private File getRejectReportFile() {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        return new File(directory, REJECT_REPORT_FILE_NAME);
+    }
+
+    /**
+     * Create the notification channel of the imports, required since Android 8.0.
+     */
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                getString(R.string.import_channel_name), NotificationManager.IMPORTANCE_LOW);
+        NotificationManager notificationManager = (NotificationManager)
+                getSystemService(Context.NOTIFICATION_SERVICE);
+        if (notificationManager != null) {
+            notificationManager.createNotificationChannel(channel);
+        }
+    }
+}
@@ -0,0 +1,650 @@
+package udacityscholarship.rada.raul.inventoryapp;
+
+import android.content.AsyncTaskLoader;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.support.v7.util.DiffUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import udacityscholarship.rada.raul.inventoryapp.data.Product;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductContract;
+import udacityscholarship.rada.raul.inventoryapp.data.ProductFilter;
+
+/**
+ * Loader reading the list of products displayed by {@link InventoryActivity} into immutable
+ * {@link Product} snapshots. Products are read page by page, using keyset pagination, in the
+ * order and with the filter chosen by the user, or through the search URI while the user
+ * searches. The difference between the previous list and the new
+ * one is computed on the background thread too, so that only the products which changed are
+ * displayed again.
+ * <p>
+ * When the provider notifies changes of single products, only the pages which held or now hold
+ * those products are read again, and the other pages are kept from the previous list. Changes
+ * which cannot be told apart, such as bulk inserts, read all the pages again. Loading the next
+ * page only reads that page, after the pages kept from the previous list.
+ */
+public class ProductListLoader extends AsyncTaskLoader<ProductListLoader.Result> {
+
+    /**
+     * Default length of the window, in milliseconds, during which changes notified by the
+     * provider are merged into one single reload.
+     */
+    public static final long DEFAULT_CHANGE_WINDOW_MILLIS = 100;
+
+    /**
+     * Number of products read in each page
+     */
+    private final int pageSize;
+
+    /**
+     * Maximum number of products returned by a search
+     */
+    private final int searchResultsLimit;
+
+    /**
+     * Handler timing the windows during which changes are merged, on the main thread
+     */
+    private final Handler changeHandler = new Handler();
+
+    /**
+     * Observer reloading the products whenever they change. The provider notifies the changes of
+     * single products through their own URI, so changes which cannot affect the products loaded
+     * are ignored. The other changes are merged: the first one opens a window, and the products
+     * are loaded again once, when the window closes.
+     */
+    private final ContentObserver productsObserver = new ContentObserver(changeHandler) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            if (!isAffectedByChange(uri)) {
+                return;
+            }
+            recordChange(ProductContract.ProductEntry.parseProductId(uri));
+            if (isReloadScheduled) {
+                return;
+            }
+            isReloadScheduled = true;
+            changeHandler.postDelayed(reloadRunnable, changeWindowMillis);
+        }
+    };
+
+    /**
+     * Runnable loading the products again, once the window during which changes are merged
+     * closes. If a load is already running, its result is outdated: it is cancelled and exactly
+     * one new load follows it, however many changes were notified meanwhile.
+     */
+    private final Runnable reloadRunnable = new Runnable() {
+        @Override
+        public void run() {
+            isReloadScheduled = false;
+            onContentChanged();
+        }
+    };
+
+    /**
+     * Length of the window during which changes are merged
+     */
+    private long changeWindowMillis = DEFAULT_CHANGE_WINDOW_MILLIS;
+
+    /**
+     * Whether a reload has already been scheduled for the changes notified
+     */
+    private boolean isReloadScheduled;
+
+    /**
+     * Number of pages of products to load
+     */
+    private volatile int pageCount = 1;
+
+    /**
+     * Text searched by the user, or null to load the pages of all products
+     */
+    private volatile String searchQuery;
+
+    /**
+     * Order of the products, one of the SORT_ values of {@link ProductContract.ProductEntry}
+     */
+    private volatile String sort = ProductContract.ProductEntry.SORT_ID;
+
+    /**
+     * Filter restricting the products loaded
+     */
+    private volatile ProductFilter filter = ProductFilter.NONE;
+
+    /**
+     * Result delivered last, against which the next result is compared
+     */
+    private volatile Result result;
+
+    /**
+     * Signal cancelling the queries of the load in progress
+     */
+    private CancellationSignal cancellationSignal;
+
+    /**
+     * IDs of the single products changed since the last load started, whose pages the next load
+     * reads again. Guarded by this loader.
+     */
+    private Set<Long> changedProductIds = new HashSet<>();
+
+    /**
+     * Whether the next load must read all its pages again, because products which cannot be
+     * told apart changed, or because the changes read by a cancelled load were never displayed.
+     * Guarded by this loader.
+     */
+    private boolean isFullReloadNeeded = true;
+
+    /**
+     * Products loaded, together with the changes since the previous load.
+     */
+    public static class Result {
+        /**
+         * The products loaded
+         */
+        public final List<Product> products;
+        /**
+         * The products of the previous result, which {@link #diff} transforms into
+         * {@link #products}
+         */
+        public final List<Product> previousProducts;
+        /**
+         * Changes between {@link #previousProducts} and {@link #products}
+         */
+        public final DiffUtil.DiffResult diff;
+        /**
+         * Whether more products can be loaded with {@link #loadNextPage()}
+         */
+        public final boolean hasMoreProducts;
+        /**
+         * Order, filter and number of the pages read, or a null order if the products are the
+         * results of a search
+         */
+        final String sort;
+        final ProductFilter filter;
+        final int pageCount;
+
+        Result(List<Product> products, List<Product> previousProducts, DiffUtil.DiffResult diff,
+               boolean hasMoreProducts, String sort, ProductFilter filter, int pageCount) {
+            this.products = products;
+            this.previousProducts = previousProducts;
+            this.diff = diff;
+            this.hasMoreProducts = hasMoreProducts;
+            this.sort = sort;
+            this.filter = filter;
+            this.pageCount = pageCount;
+        }
+
+        /**
+         * @return whether the products are the given pages, in the given order and with the
+         * given filter
+         */
+        boolean hasPages(String sort, ProductFilter filter, int pageCount) {
+            return sort.equals(this.sort) && filter.equals(this.filter) &&
+                    pageCount == this.pageCount;
+        }
+    }
+
+    /**
+     * Create a loader for the list of products
+     *
+     * @param context            of the app
+     * @param pageSize           number of products read in each page
+     * @param searchResultsLimit maximum number of products returned by a search
+     */
+    public ProductListLoader(Context context, int pageSize, int searchResultsLimit) {
+        super(context);
+        this.pageSize = pageSize;
+        this.searchResultsLimit = searchResultsLimit;
+    }
+
+    /**
+     * Set the length of the window during which changes notified by the provider are merged into
+     * one single reload. Loads requested by the user, such as the next page or a search, are not
+     * delayed.
+     *
+     * @param changeWindowMillis length of the window in milliseconds
+     */
+    public void setChangeWindowMillis(long changeWindowMillis) {
+        this.changeWindowMillis = changeWindowMillis;
+    }
+
+    /**
+     * Load one more page of products, unless the previous page is still loading or there are no
+     * more products.
+     */
+    public void loadNextPage() {
+        Result currentResult = result;
+        if (searchQuery != null || currentResult == null || !currentResult.hasMoreProducts ||
+                currentResult.products.size() < pageCount * pageSize) {
+            return;
+        }
+        pageCount++;
+        onContentChanged();
+    }
+
+    /**
+     * Set the text searched by the user, and load the matching products.
+     *
+     * @param query text searched by the user, or null to load the list of all products
+     */
+    public void setSearchQuery(String query) {
+        if (query == null ? searchQuery == null : query.equals(searchQuery)) {
+            return;
+        }
+        searchQuery = query;
+        // forcing a new load cancels the search still running, if any
+        onContentChanged();
+    }
+
+    /**
+     * @return the text searched by the user, or null if the list of all products is loaded
+     */
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+
+    /**
+     * Set the order of the products, and load them again from the first page.
+     *
+     * @param sort one of the SORT_ values of {@link ProductContract.ProductEntry}
+     */
+    public void setSort(String sort) {
+        if (sort.equals(this.sort)) {
+            return;
+        }
+        this.sort = sort;
+        pageCount = 1;
+        onContentChanged();
+    }
+
+    /**
+     * @return the order of the products
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * Set the filter restricting the products, and load them again from the first page.
+     *
+     * @param filter restricting the products, or {@link ProductFilter#NONE}
+     */
+    public void setFilter(ProductFilter filter) {
+        if (filter.equals(this.filter)) {
+            return;
+        }
+        this.filter = filter;
+        pageCount = 1;
+        onContentChanged();
+    }
+
+    /**
+     * @return the filter restricting the products
+     */
+    public ProductFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * @return whether the products loaded are restricted by a filter, or a search
+     */
+    public boolean isFiltered() {
+        return searchQuery != null || !filter.isEmpty();
+    }
+
+    /**
+     * Check whether a change notified by the provider may affect the products loaded. A change of
+     * a single product beyond the last loaded page (for instance a new product) only matters once
+     * the user scrolls to that page, which then reads it anyway. This only holds for products in
+     * ID order without a filter: in any other order or filter, a change may move a product into
+     * the pages loaded.
+     *
+     * @param uri notified by the provider
+     * @return true if the products should be loaded again
+     */
+    private boolean isAffectedByChange(Uri uri) {
+        long productId = ProductContract.ProductEntry.parseProductId(uri);
+        Result currentResult = result;
+        if (productId == ProductContract.ProductEntry.NO_PRODUCT_ID || currentResult == null ||
+                searchQuery != null || !currentResult.hasMoreProducts ||
+                !ProductContract.ProductEntry.SORT_ID.equals(sort) || !filter.isEmpty()) {
+            return true;
+        }
+        List<Product> products = currentResult.products;
+        return products.isEmpty() || productId <= products.get(products.size() - 1).getId();
+    }
+
+    /**
+     * Record a change notified by the provider, to be read by the next load.
+     *
+     * @param productId ID of the product changed, or
+     *                  {@link ProductContract.ProductEntry#NO_PRODUCT_ID} if the change cannot
+     *                  be told apart
+     */
+    private synchronized void recordChange(long productId) {
+        if (productId == ProductContract.ProductEntry.NO_PRODUCT_ID) {
+            isFullReloadNeeded = true;
+        } else {
+            changedProductIds.add(productId);
+        }
+    }
+
+    @Override
+    public Result loadInBackground() {
+        Set<Long> changes;
+        boolean isFullReload;
+        synchronized (this) {
+            if (isLoadInBackgroundCanceled()) {
+                throw new OperationCanceledException();
+            }
+            cancellationSignal = new CancellationSignal();
+            changes = changedProductIds;
+            isFullReload = isFullReloadNeeded;
+            changedProductIds = new HashSet<>();
+            isFullReloadNeeded = false;
+        }
+        try {
+            List<Product> products = new ArrayList<>();
+            boolean hasMoreProducts;
+            String query = searchQuery;
+            String pageSort = sort;
+            ProductFilter pageFilter = filter;
+            int pages = pageCount;
+            Result previousResult = result;
+            if (query != null) {
+                readProducts(ProductContract.ProductEntry.buildSearchUri(query,
+                        searchResultsLimit), products);
+                hasMoreProducts = false;
+                pageSort = null;
+            } else if (isFullReload || previousResult == null || changes.size() > pageSize ||
+                    !(previousResult.hasPages(pageSort, pageFilter, pages) ||
+                            previousResult.hasPages(pageSort, pageFilter, pages - 1))) {
+                // many changes are read faster as whole pages than product by product
+                hasMoreProducts = readPages(pageSort, pageFilter, pages, products);
+            } else {
+                hasMoreProducts = readChangedPages(previousResult, changes, products);
+                if (hasMoreProducts && pages > previousResult.pageCount) {
+                    // the next page requested by the user, after the pages of the previous
+                    // result
+                    hasMoreProducts = readPage(pageSort, pageFilter, products) == pageSize;
+                }
+            }
+
+            // compare the new products with the ones displayed, still on the background thread
+            List<Product> previousProducts = previousResult == null ?
+                    Collections.<Product>emptyList() : previousResult.products;
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                    new ProductDiffCallback(previousProducts, products));
+
+            return new Result(products, previousProducts, diff, hasMoreProducts, pageSort,
+                    pageFilter, pages);
+        } finally {
+            synchronized (this) {
+                cancellationSignal = null;
+            }
+        }
+    }
+
+    /**
+     * Read the requested pages of products, each one starting after the last product of the
+     * previous page.
+     *
+     * @param pageSort   order of the products
+     * @param pageFilter filter restricting the products
+     * @param pages      number of pages to read
+     * @param products   list to which the products read are added
+     * @return whether there may be more products after the pages read
+     */
+    private boolean readPages(String pageSort, ProductFilter pageFilter, int pages,
+                              List<Product> products) {
+        for (int page = 0; page < pages; page++) {
+            if (readPage(pageSort, pageFilter, products) < pageSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the pages of the previous result again, from the first page which held or now holds
+     * one of the changed products. The pages before it are kept. Once a page read again ends
+     * with the same product as before, and no changed product is in a later page, the following
+     * pages start after the same product and hold the same products as before, so they are kept
+     * too.
+     *
+     * @param previousResult result delivered last, read with the current order and filter
+     * @param changes        IDs of the single products changed since that result was read
+     * @param products       list to which the products are added
+     * @return whether there may be more products after the pages read
+     */
+    private boolean readChangedPages(Result previousResult, Set<Long> changes,
+                                     List<Product> products) {
+        List<Product> previousProducts = previousResult.products;
+        String pageSort = previousResult.sort;
+        int firstPage = Integer.MAX_VALUE;
+        int lastPage = -1;
+        for (long productId : changes) {
+            // the page which held the product
+            for (int i = 0; i < previousProducts.size(); i++) {
+                if (previousProducts.get(i).getId() == productId) {
+                    firstPage = Math.min(firstPage, i / pageSize);
+                    lastPage = Math.max(lastPage, i / pageSize);
+                    break;
+                }
+            }
+
+            // the page which would now hold the product, if it still matches the filter: the
+            // product comes right before the first other product it sorts before
+            Product product = readProduct(productId);
+            if (product == null) {
+                continue;
+            }
+            int position = 0;
+            while (position < previousProducts.size() &&
+                    (previousProducts.get(position).getId() == productId ||
+                            product.compareInOrder(previousProducts.get(position), pageSort) > 0)) {
+                position++;
+            }
+            if (position == previousProducts.size() && previousResult.hasMoreProducts) {
+                // beyond the pages loaded
+                continue;
+            }
+            // at the boundary between two pages, the product may end either of them
+            firstPage = Math.min(firstPage, Math.max(position - 1, 0) / pageSize);
+            lastPage = Math.max(lastPage, position / pageSize);
+        }
+
+        if (lastPage < 0) {
+            // none of the products loaded changed
+            products.addAll(previousProducts);
+            return previousResult.hasMoreProducts;
+        }
+
+        products.addAll(previousProducts.subList(0,
+                Math.min(firstPage * pageSize, previousProducts.size())));
+        for (int page = firstPage; page < previousResult.pageCount; page++) {
+            if (readPage(pageSort, previousResult.filter, products) < pageSize) {
+                return false;
+            }
+            int previousPageEnd = (page + 1) * pageSize;
+            if (page >= lastPage && previousPageEnd <= previousProducts.size()) {
+                Product lastProduct = products.get(products.size() - 1);
+                Product previousLastProduct = previousProducts.get(previousPageEnd - 1);
+                if (lastProduct.getId() == previousLastProduct.getId() &&
+                        lastProduct.getSortValue(pageSort).equals(
+                                previousLastProduct.getSortValue(pageSort))) {
+                    products.addAll(previousProducts.subList(previousPageEnd,
+                            previousProducts.size()));
+                    return previousResult.hasMoreProducts;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read one page of products, starting after the last product of the list, or the first page
+     * if the list is empty.
+     *
+     * @param pageSort   order of the products
+     * @param pageFilter filter restricting the products
+     * @param products   list to which the products read are added
+     * @return number of products read
+     */
+    private int readPage(String pageSort, ProductFilter pageFilter, List<Product> products) {
+        String afterValue = null;
+        long afterId = 0;
+        if (!products.isEmpty()) {
+            Product lastProduct = products.get(products.size() - 1);
+            afterValue = lastProduct.getSortValue(pageSort);
+            afterId = lastProduct.getId();
+        }
+        return readProducts(pageFilter.applyTo(ProductContract.ProductEntry.buildPageUri(
+                pageSort, afterValue, afterId, pageSize)), products);
+    }
+
+    /**
+     * Read a single product, whatever the filter.
+     *
+     * @param productId ID of the product
+     * @return the product, or null if it does not exist anymore
+     */
+    private Product readProduct(long productId) {
+        List<Product> products = new ArrayList<>(1);
+        readProducts(ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI,
+                productId), products);
+        return products.isEmpty() ? null : products.get(0);
+    }
+
+    /**
+     * Read the products returned by a query into snapshots.
+     *
+     * @param uri      to query
+     * @param products list to which the products read are added
+     * @return number of products read
+     */
+    private int readProducts(Uri uri, List<Product> products) {
+        Cursor cursor = getContext().getContentResolver().query(uri, Product.PROJECTION, null,
+                null, null, cancellationSignal);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            int productsRead = 0;
+            while (cursor.moveToNext()) {
+                products.add(Product.fromCursor(cursor));
+                productsRead++;
+            }
+            return productsRead;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public void cancelLoadInBackground() {
+        super.cancelLoadInBackground();
+        synchronized (this) {
+            if (cancellationSignal != null) {
+                cancellationSignal.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void onCanceled(Result data) {
+        super.onCanceled(data);
+        // the changes read by the cancelled load were never displayed
+        synchronized (this) {
+            isFullReloadNeeded = true;
+        }
+    }
+
+    @Override
+    public void deliverResult(Result data) {
+        if (isReset()) {
+            return;
+        }
+        result = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        getContext().getContentResolver().registerContentObserver(
+                ProductContract.ProductEntry.CONTENT_URI, true, productsObserver);
+        if (result != null) {
+            deliverResult(result);
+        }
+        if (takeContentChanged() || result == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        getContext().getContentResolver().unregisterContentObserver(productsObserver);
+        changeHandler.removeCallbacks(reloadRunnable);
+        isReloadScheduled = false;
+        result = null;
+        synchronized (this) {
+            changedProductIds = new HashSet<>();
+            isFullReloadNeeded = true;
+        }
+    }
+
+    /**
+     * Compares two lists of products: two products are the same item when they have the same
+     * ID, and their contents are the same when all their displayed attributes are equal.
+     */
+    private static class ProductDiffCallback extends DiffUtil.Callback {
+
+        private final List<Product> oldProducts;
+        private final List<Product> newProducts;
+
+        ProductDiffCallback(List<Product> oldProducts, List<Product> newProducts) {
+            this.oldProducts = oldProducts;
+            this.newProducts = newProducts;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldProducts.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newProducts.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldProducts.get(oldItemPosition).getId() ==
+                    newProducts.get(newItemPosition).getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldProducts.get(oldItemPosition).equals(newProducts.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser of CSV (RFC 4180) records, used by the {@link ProductCsvImporter}. Records are
+ * read one at a time through a fixed buffer, so the memory used does not depend on the size of
+ * the file. Quoted fields may hold separators, doubled quotes and line breaks; records may end
+ * with CRLF or LF.
+ */
+class CsvReader implements Closeable {
+
+    /**
+     * Size of the read buffer, in chars
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Value returned by {@link #nextChar()} at the end of the input
+     */
+    private static final int END_OF_INPUT = -1;
+
+    /**
+     * Characters of the CSV syntax
+     */
+    private static final char FIELD_SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final char CARRIAGE_RETURN = '\r';
+    private static final char LINE_FEED = '\n';
+
+    /**
+     * Strings used for throwing errors
+     */
+    private static final String UNTERMINATED_QUOTE = "Unterminated quoted field at line ";
+    private static final String RECORD_TOO_LONG = "Record too long at line ";
+
+    /**
+     * Reader of the CSV
+     */
+    private final Reader reader;
+
+    /**
+     * Maximum number of chars in a record, beyond which the input is considered corrupt (e.g. a
+     * quote which is never closed)
+     */
+    private final int maxRecordLength;
+
+    /**
+     * Read buffer, the position of the next char within it and the number of chars it holds
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+
+    /**
+     * Field being read, and fields of the record being read. Both are reused from one record to
+     * the next.
+     */
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+
+    /**
+     * Line on which the last record read starts, and line on which the next record starts
+     */
+    private int lineNumber;
+    private int nextLineNumber = 1;
+
+    /**
+     * Create a parser.
+     *
+     * @param reader          of the CSV; it does not need to be buffered
+     * @param maxRecordLength maximum number of chars in a record
+     */
+    CsvReader(Reader reader, int maxRecordLength) {
+        this.reader = reader;
+        this.maxRecordLength = maxRecordLength;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return fields of the record, which are only valid until the next call, or null at the end
+     * of the input
+     * @throws IOException if the input could not be read, or is not valid CSV
+     */
+    List<String> readRecord() throws IOException {
+        int c = nextChar();
+        if (c == END_OF_INPUT) {
+            return null;
+        }
+        lineNumber = nextLineNumber;
+        record.clear();
+        field.setLength(0);
+
+        int recordLength = 0;
+        boolean isInQuotes = false;
+        while (true) {
+            if (++recordLength > maxRecordLength) {
+                throw new IOException(RECORD_TOO_LONG + lineNumber);
+            }
+
+            if (isInQuotes) {
+                if (c == END_OF_INPUT) {
+                    throw new IOException(UNTERMINATED_QUOTE + lineNumber);
+                }
+                if (c == QUOTE) {
+                    if (peekChar() == QUOTE) {
+                        // doubled quote within a quoted field
+                        nextChar();
+                        field.append(QUOTE);
+                    } else {
+                        isInQuotes = false;
+                    }
+                } else {
+                    if (c == LINE_FEED) {
+                        nextLineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == END_OF_INPUT) {
+                break;
+            } else if (c == FIELD_SEPARATOR) {
+                endField();
+            } else if (c == LINE_FEED) {
+                nextLineNumber++;
+                break;
+            } else if (c == CARRIAGE_RETURN && peekChar() == LINE_FEED) {
+                nextChar();
+                nextLineNumber++;
+                break;
+            } else if (c == QUOTE && field.length() == 0) {
+                isInQuotes = true;
+            } else {
+                field.append((char) c);
+            }
+
+            c = nextChar();
+        }
+
+        endField();
+        return record;
+    }
+
+    /**
+     * @return line on which the last record read starts, counting from 1
+     */
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Add the field read to the record, and start the next field.
+     */
+    private void endField() {
+        record.add(field.toString());
+        field.setLength(0);
+    }
+
+    /**
+     * @return next char of the input, or {@link #END_OF_INPUT}
+     * @throws IOException if the input could not be read
+     */
+    private int nextChar() throws IOException {
+        int c = peekChar();
+        if (c != END_OF_INPUT) {
+            bufferPosition++;
+        }
+        return c;
+    }
+
+    /**
+     * @return next char of the input, without consuming it, or {@link #END_OF_INPUT}
+     * @throws IOException if the input could not be read
+     */
+    private int peekChar() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = reader.read(buffer, 0, BUFFER_SIZE);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return END_OF_INPUT;
+            }
+        }
+        return buffer[bufferPosition];
+    }
+}
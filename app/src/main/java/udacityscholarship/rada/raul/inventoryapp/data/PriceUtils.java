@@ -0,0 +1,161 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+/**
+ * Formats and parses the prices, which are stored as whole numbers of minor units of the
+ * currency (see {@link ProductContract.ProductEntry#PRICE_SCALE}). A price never goes through a
+ * floating point number, so it is never rounded. Formatting into a buffer and parsing do not
+ * allocate any object, so they can run for every row of a list or of an export without
+ * producing garbage.
+ */
+public final class PriceUtils {
+
+    /**
+     * Value returned by {@link #parsePrice(CharSequence)} when the text is not a valid price
+     */
+    public static final long INVALID_PRICE = -1;
+
+    /**
+     * Maximum number of chars of a formatted price: a sign, the 19 digits of a long, and the
+     * decimal separator
+     */
+    public static final int MAX_PRICE_LENGTH = 21;
+
+    /**
+     * Separator between the units and the decimals, written when formatting a price
+     */
+    private static final char DECIMAL_SEPARATOR = '.';
+
+    /**
+     * Decimal separator also accepted when parsing a price, as typed in many locales
+     */
+    private static final char ALTERNATIVE_DECIMAL_SEPARATOR = ',';
+
+    private static final char MINUS_SIGN = '-';
+
+    private static final int RADIX = 10;
+
+    /**
+     * Only static helpers, no instances.
+     */
+    private PriceUtils() {
+    }
+
+    /**
+     * Format a price with all its decimals, for instance 999 as "9.99" and 5 as "0.05", into the
+     * given buffer.
+     *
+     * @param minorUnits price, in minor units of the currency
+     * @param buffer     receiving the formatted price from its first char, at least
+     *                   {@link #MAX_PRICE_LENGTH} chars long
+     * @return number of chars written
+     */
+    public static int formatPrice(long minorUnits, char[] buffer) {
+        // work on the negative value, as Long.MIN_VALUE has no positive counterpart
+        long remaining = minorUnits < 0 ? minorUnits : -minorUnits;
+        int digits = Math.max(countDigits(remaining),
+                ProductContract.ProductEntry.PRICE_SCALE + 1);
+        int length = digits + (ProductContract.ProductEntry.PRICE_SCALE > 0 ? 1 : 0) +
+                (minorUnits < 0 ? 1 : 0);
+
+        // write from the last char backwards: the decimals, then the units
+        int position = length;
+        for (int i = 0; i < ProductContract.ProductEntry.PRICE_SCALE; i++) {
+            buffer[--position] = (char) ('0' - remaining % RADIX);
+            remaining /= RADIX;
+        }
+        if (ProductContract.ProductEntry.PRICE_SCALE > 0) {
+            buffer[--position] = DECIMAL_SEPARATOR;
+        }
+        do {
+            buffer[--position] = (char) ('0' - remaining % RADIX);
+            remaining /= RADIX;
+        } while (remaining != 0);
+        if (minorUnits < 0) {
+            buffer[--position] = MINUS_SIGN;
+        }
+        return length;
+    }
+
+    /**
+     * Format a price with all its decimals, for instance 999 as "9.99", for display.
+     *
+     * @param minorUnits price, in minor units of the currency
+     * @return the formatted price
+     */
+    public static String formatPrice(long minorUnits) {
+        char[] buffer = new char[MAX_PRICE_LENGTH];
+        return new String(buffer, 0, formatPrice(minorUnits, buffer));
+    }
+
+    /**
+     * Parse a price typed by the user or read from a file: digits, optionally followed by a
+     * decimal separator ('.' or ',') and at most {@link ProductContract.ProductEntry#PRICE_SCALE}
+     * decimals, for instance "9.99", "9,9", "9" or ".5". Blanks around the price are ignored.
+     *
+     * @param text holding the price
+     * @return the price, in minor units of the currency, or {@link #INVALID_PRICE} if the text
+     * is not a price - it is empty, negative, has too many decimals or is too large
+     */
+    public static long parsePrice(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        long minorUnits = 0;
+        int digits = 0;
+        // number of decimals read so far, or -1 before the decimal separator
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == DECIMAL_SEPARATOR || c == ALTERNATIVE_DECIMAL_SEPARATOR) {
+                if (decimals >= 0) {
+                    return INVALID_PRICE;
+                }
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return INVALID_PRICE;
+            }
+            if (decimals >= 0 && ++decimals > ProductContract.ProductEntry.PRICE_SCALE) {
+                return INVALID_PRICE;
+            }
+            int digit = c - '0';
+            if (minorUnits > (Long.MAX_VALUE - digit) / RADIX) {
+                return INVALID_PRICE;
+            }
+            minorUnits = minorUnits * RADIX + digit;
+            digits++;
+        }
+        if (digits == 0) {
+            return INVALID_PRICE;
+        }
+
+        // add the decimals which were left out, "9.9" being 9.90
+        for (int i = Math.max(decimals, 0); i < ProductContract.ProductEntry.PRICE_SCALE; i++) {
+            if (minorUnits > Long.MAX_VALUE / RADIX) {
+                return INVALID_PRICE;
+            }
+            minorUnits *= RADIX;
+        }
+        return minorUnits;
+    }
+
+    /**
+     * @param negativeValue number, zero or negative
+     * @return number of digits of the number
+     */
+    private static int countDigits(long negativeValue) {
+        int digits = 1;
+        while (negativeValue <= -RADIX) {
+            negativeValue /= RADIX;
+            digits++;
+        }
+        return digits;
+    }
+}
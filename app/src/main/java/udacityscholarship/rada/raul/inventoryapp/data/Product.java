@@ -0,0 +1,192 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.Cursor;
+
+/**
+ * Immutable snapshot of the product attributes displayed in the list of products. Snapshots are
+ * read from a {@link Cursor} on a background thread, so the list can be compared with the
+ * previous one and only the products which changed are displayed again. The time of the last
+ * change is only kept to continue lists sorted by it, and is not compared.
+ */
+public final class Product {
+
+    /**
+     * Columns to query in order to build product snapshots
+     */
+    public static final String[] PROJECTION = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT
+    };
+
+    /**
+     * Indices of the columns in {@link #PROJECTION}
+     */
+    private static final int ID_COLUMN_INDEX = 0;
+    private static final int NAME_COLUMN_INDEX = 1;
+    private static final int PRICE_COLUMN_INDEX = 2;
+    private static final int QUANTITY_COLUMN_INDEX = 3;
+    private static final int UPDATED_AT_COLUMN_INDEX = 4;
+
+    private final long id;
+    private final String name;
+    private final long price;
+    private final int quantity;
+    private final long updatedAt;
+
+    /**
+     * Create a new product snapshot
+     *
+     * @param id        ID of the product
+     * @param name      name of the product
+     * @param price     price of the product, in minor units of the currency
+     * @param quantity  quantity of the product, as stored in the database
+     * @param updatedAt time of the last change of the product, in milliseconds
+     */
+    public Product(long id, String name, long price, int quantity, long updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.quantity = quantity;
+        this.updatedAt = updatedAt;
+    }
+
+    /**
+     * Create a snapshot of the product in the current row of a cursor queried with
+     * {@link #PROJECTION}.
+     *
+     * @param cursor positioned on the product
+     * @return the product snapshot
+     */
+    public static Product fromCursor(Cursor cursor) {
+        return new Product(cursor.getLong(ID_COLUMN_INDEX),
+                cursor.getString(NAME_COLUMN_INDEX),
+                cursor.getLong(PRICE_COLUMN_INDEX),
+                cursor.getInt(QUANTITY_COLUMN_INDEX),
+                cursor.getLong(UPDATED_AT_COLUMN_INDEX));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return price of the product, in minor units of the currency
+     */
+    public long getPrice() {
+        return price;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * Value of the product in the column by which a list of products is sorted, continuing the
+     * list after this product with {@link ProductContract.ProductEntry#buildPageUri(String,
+     * String, long, int)}.
+     *
+     * @param sort one of the SORT_ values of {@link ProductContract.ProductEntry}
+     * @return the value of the product in the column of the sort
+     */
+    public String getSortValue(String sort) {
+        if (ProductContract.ProductEntry.SORT_NAME.equals(sort)) {
+            return name;
+        } else if (ProductContract.ProductEntry.SORT_PRICE.equals(sort)) {
+            return String.valueOf(price);
+        } else if (ProductContract.ProductEntry.SORT_QUANTITY.equals(sort)) {
+            return String.valueOf(quantity);
+        } else if (ProductContract.ProductEntry.SORT_RECENTLY_UPDATED.equals(sort)) {
+            return String.valueOf(updatedAt);
+        }
+        return String.valueOf(id);
+    }
+
+    /**
+     * Compare the positions of this product and of another one in a list of products sorted by
+     * the provider in the given order: by the column of the order, names ignoring the case of
+     * ASCII letters as SQLite's NOCASE collation does, then by ID, with the most recently
+     * updated products first.
+     *
+     * @param other product to compare with
+     * @param sort  one of the SORT_ values of {@link ProductContract.ProductEntry}
+     * @return a negative number if this product comes first, a positive number if it comes
+     * after the other product, 0 if both are the same product
+     */
+    public int compareInOrder(Product other, String sort) {
+        int comparison;
+        if (ProductContract.ProductEntry.SORT_NAME.equals(sort)) {
+            comparison = compareNamesIgnoringCase(name, other.name);
+        } else if (ProductContract.ProductEntry.SORT_PRICE.equals(sort)) {
+            comparison = compareLongs(price, other.price);
+        } else if (ProductContract.ProductEntry.SORT_QUANTITY.equals(sort)) {
+            comparison = compareLongs(quantity, other.quantity);
+        } else if (ProductContract.ProductEntry.SORT_RECENTLY_UPDATED.equals(sort)) {
+            // most recently updated first, ties broken by the highest ID first
+            comparison = compareLongs(other.updatedAt, updatedAt);
+            return comparison != 0 ? comparison : compareLongs(other.id, id);
+        } else {
+            comparison = 0;
+        }
+        return comparison != 0 ? comparison : compareLongs(id, other.id);
+    }
+
+    /**
+     * Compare two names code point by code point, folding the ASCII upper case letters into
+     * lower case only, as SQLite's NOCASE collation does.
+     */
+    private static int compareNamesIgnoringCase(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int firstCodePoint = toLowerCaseAscii(first.codePointAt(i));
+            int secondCodePoint = toLowerCaseAscii(second.codePointAt(j));
+            if (firstCodePoint != secondCodePoint) {
+                return firstCodePoint - secondCodePoint;
+            }
+            i += Character.charCount(firstCodePoint);
+            j += Character.charCount(secondCodePoint);
+        }
+        return (first.length() - i) - (second.length() - j);
+    }
+
+    private static int toLowerCaseAscii(int codePoint) {
+        return codePoint >= 'A' && codePoint <= 'Z' ? codePoint + ('a' - 'A') : codePoint;
+    }
+
+    private static int compareLongs(long first, long second) {
+        return first < second ? -1 : (first == second ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Product)) {
+            return false;
+        }
+        Product other = (Product) o;
+        return id == other.id && price == other.price && quantity == other.quantity &&
+                (name == null ? other.name == null : name.equals(other.name));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (name == null ? 0 : name.hashCode());
+        result = 31 * result + (int) (price ^ (price >>> 32));
+        result = 31 * result + quantity;
+        return result;
+    }
+}
@@ -0,0 +1,276 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.LruCache;
+
+/**
+ * Bounded, read-through cache of single product rows, keyed by product ID. It lets the
+ * {@link ProductProvider} serve the queries of single products (for instance when a product is
+ * opened from the list) from memory, as a lightweight {@link MatrixCursor}, rather than running a
+ * SQL query and filling a new CursorWindow every time.
+ * <p>
+ * The provider keeps the cache coherent by invalidating the products it changes, once the
+ * changes have been committed. A row read from the database while a product was being changed
+ * is never stored, so the cache cannot hold a row older than the database.
+ */
+public class ProductCache {
+
+    /**
+     * Estimated sizes, in bytes, of a cached row and of its values, used to cap the memory used
+     * by the cache.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 64;
+    private static final int VALUE_OVERHEAD_BYTES = 16;
+    private static final int BYTES_PER_CHAR = 2;
+
+    /**
+     * SQL query reading all the columns of a product, with its supplier. Bound arguments:
+     * product ID.
+     */
+    private static final String SQL_SELECT_PRODUCT = "SELECT * FROM " +
+            ProductContract.ProductEntry.VIEW_NAME + " WHERE " +
+            ProductContract.ProductEntry._ID + " = ?";
+
+    /**
+     * All the columns of a product, in the order of the view read by {@link #SQL_SELECT_PRODUCT},
+     * returned by a query without projection
+     */
+    private static final String[] ALL_COLUMNS = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT
+    };
+
+    /**
+     * The cached rows, keyed by product ID
+     */
+    private final LruCache<Long, Row> rows;
+
+    /**
+     * Lock guarding {@link #generation} and the storage of rows read from the database
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Incremented every time products are invalidated, so that rows read from the database
+     * before an invalidation are not stored
+     */
+    private long generation;
+
+    /**
+     * Immutable copy of all the columns of a product.
+     */
+    private static final class Row {
+        final String[] columnNames;
+        final Object[] values;
+        final int sizeBytes;
+
+        Row(String[] columnNames, Object[] values) {
+            this.columnNames = columnNames;
+            this.values = values;
+
+            int size = ROW_OVERHEAD_BYTES;
+            for (Object value : values) {
+                size += VALUE_OVERHEAD_BYTES;
+                if (value instanceof String) {
+                    size += ((String) value).length() * BYTES_PER_CHAR;
+                } else if (value instanceof byte[]) {
+                    size += ((byte[]) value).length;
+                }
+            }
+            sizeBytes = size;
+        }
+
+        /**
+         * @param columnName name of a column
+         * @return index of the column in the row, or -1 if the row has no such column
+         */
+        int getColumnIndex(String columnName) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equals(columnName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxSizeBytes maximum estimated memory used by the cached rows, in bytes
+     */
+    public ProductCache(int maxSizeBytes) {
+        rows = new LruCache<Long, Row>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Long productId, Row row) {
+                return row.sizeBytes;
+            }
+        };
+    }
+
+    /**
+     * Query a single product, from the cache if possible, otherwise from the database - the row
+     * read is then cached.
+     *
+     * @param db         database to read from on a cache miss
+     * @param productId  ID of the product
+     * @param projection columns to return, or null for all of them
+     * @return cursor holding the product, or no row if the product does not exist, or null if
+     * the projection holds columns which are not columns of the products table
+     */
+    public Cursor query(SQLiteDatabase db, long productId, String[] projection) {
+        Row row = rows.get(productId);
+        if (row == null) {
+            long generationBeforeRead;
+            synchronized (lock) {
+                generationBeforeRead = generation;
+            }
+
+            row = readRow(db, productId);
+            if (row == null) {
+                // the same columns as when the product exists, so the caller can look them up
+                return new MatrixCursor(projection != null ? projection : ALL_COLUMNS, 0);
+            }
+
+            synchronized (lock) {
+                // the product may have been changed while it was read
+                if (generationBeforeRead == generation) {
+                    rows.put(productId, row);
+                }
+            }
+        }
+        return toCursor(row, projection);
+    }
+
+    /**
+     * Remove a product from the cache, after it was changed.
+     *
+     * @param productId ID of the product
+     */
+    public void invalidate(long productId) {
+        synchronized (lock) {
+            generation++;
+            rows.remove(productId);
+        }
+    }
+
+    /**
+     * Remove all products from the cache, after products which cannot be told apart were
+     * changed.
+     */
+    public void invalidateAll() {
+        synchronized (lock) {
+            generation++;
+            rows.evictAll();
+        }
+    }
+
+    /**
+     * @return number of queries served from the cache
+     */
+    public int hitCount() {
+        return rows.hitCount();
+    }
+
+    /**
+     * @return number of queries which had to read the database
+     */
+    public int missCount() {
+        return rows.missCount();
+    }
+
+    /**
+     * @return number of rows evicted to keep the cache under its maximum size
+     */
+    public int evictionCount() {
+        return rows.evictionCount();
+    }
+
+    /**
+     * @return estimated memory used by the cached rows, in bytes
+     */
+    public int sizeBytes() {
+        return rows.size();
+    }
+
+    /**
+     * @return maximum estimated memory used by the cached rows, in bytes
+     */
+    public int maxSizeBytes() {
+        return rows.maxSize();
+    }
+
+    /**
+     * Read all the columns of a product from the database.
+     *
+     * @param db        database to read from
+     * @param productId ID of the product
+     * @return the row of the product, or null if the product does not exist
+     */
+    private static Row readRow(SQLiteDatabase db, long productId) {
+        Cursor cursor = db.rawQuery(SQL_SELECT_PRODUCT, new String[]{String.valueOf(productId)});
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Object[] values = new Object[cursor.getColumnCount()];
+            for (int i = 0; i < values.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        values[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        values[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        values[i] = cursor.getString(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        values[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        values[i] = null;
+                }
+            }
+            return new Row(cursor.getColumnNames(), values);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Copy the requested columns of a cached row into a cursor.
+     *
+     * @param row        the cached row
+     * @param projection columns to return, or null for all of them
+     * @return cursor holding the row, or null if a requested column is not in the row
+     */
+    private static Cursor toCursor(Row row, String[] projection) {
+        if (projection == null) {
+            MatrixCursor cursor = new MatrixCursor(row.columnNames, 1);
+            cursor.addRow(row.values);
+            return cursor;
+        }
+
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            int columnIndex = row.getColumnIndex(projection[i]);
+            if (columnIndex == -1) {
+                return null;
+            }
+            values[i] = row.values[columnIndex];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+}
@@ -4,6 +4,8 @@ import android.content.ContentResolver;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.List;
+
 /**
  * API Contract for the Inventory app
  * class defined as final to prevent sub-classing
@@ -44,6 +46,167 @@ public final class ProductContract {
      */
     public static final String PATH_PRODUCTS = "products";
 
+    /**
+     * Path appended to the URI of a single product in order to adjust its quantity by a delta.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/3/adjust
+     */
+    public static final String PATH_ADJUST = "adjust";
+
+    /**
+     * Path appended to the products URI in order to search products by name or supplier.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/search?q=milk
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to the products URI in order to read the inventory statistics.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/stats
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Path appended to the products URI in order to read the products whose quantity has fallen
+     * to their reorder threshold.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/low_stock
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Path appended to the URI of a single product in order to read its recent stock movements.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/3/movements
+     */
+    public static final String PATH_MOVEMENTS = "movements";
+
+    /**
+     * Path appended to the URI of a single product in order to read its daily stock snapshots.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/3/snapshots
+     */
+    public static final String PATH_SNAPSHOTS = "snapshots";
+
+    /**
+     * Path appended to the products URI in order to read all the products as a CSV file.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/products/export
+     */
+    public static final String PATH_EXPORT = "export";
+
+    /**
+     * Possible path (appended to base content URI) for looking at supplier data.
+     * For instance, content://udacityscholarship.rada.raul.inventoryapp/suppliers
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Name of the provider method copying the write-ahead log back into the database file.
+     */
+    public static final String METHOD_CHECKPOINT = "checkpoint";
+
+    /**
+     * Name of the provider method folding the stock movements older than the retention period
+     * into daily snapshots. The returned Bundle holds {@link #EXTRA_MOVEMENTS_COMPACTED}.
+     */
+    public static final String METHOD_COMPACT_LEDGER = "compact_ledger";
+
+    /**
+     * Key of the Bundle returned by {@link #METHOD_COMPACT_LEDGER}, holding the number of stock
+     * movements folded into snapshots.
+     */
+    public static final String EXTRA_MOVEMENTS_COMPACTED = "movements_compacted";
+
+    /**
+     * Name of the provider method returning the statistics of the cache of single products.
+     * The returned Bundle holds {@link #EXTRA_CACHE_HIT_COUNT}, {@link #EXTRA_CACHE_MISS_COUNT},
+     * {@link #EXTRA_CACHE_EVICTION_COUNT}, {@link #EXTRA_CACHE_SIZE_BYTES} and
+     * {@link #EXTRA_CACHE_MAX_SIZE_BYTES}.
+     */
+    public static final String METHOD_CACHE_STATS = "cache_stats";
+
+    /**
+     * Keys of the Bundle returned by {@link #METHOD_CACHE_STATS}
+     */
+    public static final String EXTRA_CACHE_HIT_COUNT = "hit_count";
+    public static final String EXTRA_CACHE_MISS_COUNT = "miss_count";
+    public static final String EXTRA_CACHE_EVICTION_COUNT = "eviction_count";
+    public static final String EXTRA_CACHE_SIZE_BYTES = "size_bytes";
+    public static final String EXTRA_CACHE_MAX_SIZE_BYTES = "max_size_bytes";
+
+    /**
+     * Name of the provider method returning the latency and throughput metrics of the provider,
+     * since it started or since the metrics were last reset. The returned Bundle holds
+     * {@link #EXTRA_METRICS_KEYS}, {@link #EXTRA_METRICS_SINCE_MILLIS},
+     * {@link #EXTRA_METRICS_NOTIFICATIONS} and {@link #EXTRA_METRICS_BUCKET_BOUNDS_MICROS}, then
+     * one Bundle per key, holding the EXTRA_METRIC_ values of that operation. The metrics are
+     * reset after being read if the extras hold {@link #EXTRA_METRICS_RESET} set to true.
+     */
+    public static final String METHOD_METRICS = "metrics";
+
+    /**
+     * Key of the extras of {@link #METHOD_METRICS}, resetting the metrics after they are read
+     */
+    public static final String EXTRA_METRICS_RESET = "reset";
+
+    /**
+     * Keys of the Bundle returned by {@link #METHOD_METRICS}: the keys of the operations which
+     * ran, of the form "query products" (operation, then URI or method); the time at which the
+     * metrics started (as in {@link System#currentTimeMillis()}); the number of change
+     * notifications sent; the upper bound, in microseconds, of each bucket of the histograms.
+     */
+    public static final String EXTRA_METRICS_KEYS = "keys";
+    public static final String EXTRA_METRICS_SINCE_MILLIS = "since_millis";
+    public static final String EXTRA_METRICS_NOTIFICATIONS = "notifications";
+    public static final String EXTRA_METRICS_BUCKET_BOUNDS_MICROS = "bucket_bounds_micros";
+
+    /**
+     * Keys of the Bundle of one operation, returned by {@link #METHOD_METRICS}: the number of
+     * calls, of failed calls (which threw an exception) and of rows returned or changed (rows
+     * returned by queries are counted once the caller reads or counts them); the total and
+     * maximum latency; the 50th, 90th and 99th latency percentiles, given as the upper
+     * bound of their histogram bucket; the number of calls in each bucket of the histogram.
+     */
+    public static final String EXTRA_METRIC_COUNT = "count";
+    public static final String EXTRA_METRIC_FAILURES = "failures";
+    public static final String EXTRA_METRIC_ROWS = "rows";
+    public static final String EXTRA_METRIC_TOTAL_MICROS = "total_micros";
+    public static final String EXTRA_METRIC_MAX_MICROS = "max_micros";
+    public static final String EXTRA_METRIC_P50_MICROS = "p50_micros";
+    public static final String EXTRA_METRIC_P90_MICROS = "p90_micros";
+    public static final String EXTRA_METRIC_P99_MICROS = "p99_micros";
+    public static final String EXTRA_METRIC_HISTOGRAM = "histogram";
+
+    /**
+     * Name of the provider method returning the slow-query log: the most recent queries which
+     * took longer than the threshold, with their query plan. The log is off unless a threshold
+     * is configured or set through the extras. The extras may hold
+     * {@link #EXTRA_SLOW_QUERY_THRESHOLD_MILLIS}, setting the threshold (a negative threshold
+     * turns the log off), and {@link #EXTRA_SLOW_QUERIES_CLEAR} set to true, clearing the log
+     * after it is read. The returned Bundle holds the threshold in
+     * {@link #EXTRA_SLOW_QUERY_THRESHOLD_MILLIS} and the queries, oldest first, in
+     * {@link #EXTRA_SLOW_QUERIES}.
+     */
+    public static final String METHOD_SLOW_QUERIES = "slow_queries";
+
+    /**
+     * Keys of the extras of {@link #METHOD_SLOW_QUERIES}, and of the Bundle it returns
+     */
+    public static final String EXTRA_SLOW_QUERY_THRESHOLD_MILLIS = "threshold_millis";
+    public static final String EXTRA_SLOW_QUERIES_CLEAR = "clear";
+    public static final String EXTRA_SLOW_QUERIES = "queries";
+
+    /**
+     * Keys of the Bundle of one slow query, returned by {@link #METHOD_SLOW_QUERIES}: the time
+     * at which the query ran (as in {@link System#currentTimeMillis()}), its URI, the SQL run,
+     * the selection and sort order given by the caller, the number of rows returned, the
+     * duration of the query, and the output of EXPLAIN QUERY PLAN, one line per step. The
+     * selection arguments are not kept, as they may hold the user's data.
+     */
+    public static final String EXTRA_SLOW_QUERY_TIME_MILLIS = "time_millis";
+    public static final String EXTRA_SLOW_QUERY_URI = "uri";
+    public static final String EXTRA_SLOW_QUERY_SQL = "sql";
+    public static final String EXTRA_SLOW_QUERY_SELECTION = "selection";
+    public static final String EXTRA_SLOW_QUERY_SORT_ORDER = "sort_order";
+    public static final String EXTRA_SLOW_QUERY_ROWS = "rows";
+    public static final String EXTRA_SLOW_QUERY_DURATION_MICROS = "duration_micros";
+    public static final String EXTRA_SLOW_QUERY_PLAN = "plan";
+
     /**
      * Empty private constructor to prevent the instantiation of ProductContract class.
      * The purpose of the class is only to serve as a BlankContract.
@@ -61,6 +224,25 @@ public final class ProductContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
+        /**
+         * The content URI to search products by name or supplier
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI to read the products whose quantity is at or below their reorder
+         * threshold, lowest quantity first
+         */
+        public static final Uri CONTENT_LOW_STOCK_URI =
+                Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * The content URI to read all the products as a CSV file, through
+         * {@link ContentResolver#openInputStream(Uri)}. The file is streamed as it is read, so
+         * it can be shared with other apps without first being written to the storage.
+         */
+        public static final Uri CONTENT_EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of products.
          */
@@ -75,11 +257,29 @@ public final class ProductContract {
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
                         SLASH + PATH_PRODUCTS;
 
+        /**
+         * The MIME type of the {@link #CONTENT_EXPORT_URI}.
+         */
+        public static final String CONTENT_EXPORT_TYPE = "text/csv";
+
         /**
          * Name of the database table for products
          */
         public static final String TABLE_NAME = "products";
 
+        /**
+         * Name of the view joining every product with its supplier. The products are read
+         * through this view, so that they keep their {@link #COLUMN_PRODUCT_SUPPLIER} and
+         * {@link #COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER} columns.
+         */
+        public static final String VIEW_NAME = "products_with_suppliers";
+
+        /**
+         * Name of the full-text search table indexing the names and suppliers of the products.
+         * The docid of each row is the {@link #_ID} of the product it indexes.
+         */
+        public static final String SEARCH_TABLE_NAME = "products_fts";
+
         /**
          * Unique ID number for each product in the database. This constant is used only as column
          * header in the database.
@@ -94,11 +294,20 @@ public final class ProductContract {
         public static final String COLUMN_PRODUCT_NAME = "product";
 
         /**
-         * Price of the product. This constant is used only as column header in the database.
+         * Price of the product, in minor units of the currency (cents): a price of 9.99 is
+         * stored as 999. See {@link #PRICE_SCALE}, and {@link PriceUtils} to format and parse
+         * prices. This constant is used only as column header in the database.
          * The data in this column of the database is of type INTEGER.
          */
         public static final String COLUMN_PRODUCT_PRICE = "price";
 
+        /**
+         * Number of decimals of the prices, the scale of the currency: the prices are stored as
+         * whole numbers of 1 / 10^PRICE_SCALE of the currency unit, so that sums and
+         * comparisons of prices are exact, and the price sort index holds plain integers.
+         */
+        public static final int PRICE_SCALE = 2;
+
         /**
          * Quantity of product in inventory. This constant is used only as column header in the
          * database.
@@ -109,15 +318,599 @@ public final class ProductContract {
         /**
          * Name of the supplier of  the product. This constant is used only as column header in
          * the database.
-         * The data in this column of the database is of type TEXT.
+         * The data in this column of the database is of type TEXT. It is read from the
+         * {@link SupplierEntry#COLUMN_SUPPLIER_NAME} of the supplier of the product; when written
+         * together with {@link #COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER}, the product is linked to
+         * the supplier with that name and phone number, which is created if needed.
          */
         public static final String COLUMN_PRODUCT_SUPPLIER = "supplier";
 
         /**
          * Phone number of the supplier of  the product. This constant is used only as column
          * header in the database.
-         * The data in this column of the database is of type TEXT.
+         * The data in this column of the database is of type TEXT. It is read from the
+         * {@link SupplierEntry#COLUMN_SUPPLIER_PHONE_NUMBER} of the supplier of the product, and
+         * can only be written together with {@link #COLUMN_PRODUCT_SUPPLIER}.
          */
         public static final String COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER = "number";
+
+        /**
+         * {@link SupplierEntry#_ID} of the supplier of the product. This constant is used only as
+         * column header in the database.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_PRODUCT_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Quantity at or below which the product should be reordered. This constant is used only
+         * as column header in the database.
+         * The data in this column of the database is of type INTEGER, and defaults to 0.
+         */
+        public static final String COLUMN_PRODUCT_REORDER_THRESHOLD = "reorder_threshold";
+
+        /**
+         * Time at which the product was last inserted or updated, in milliseconds since the
+         * epoch, as in {@link System#currentTimeMillis()}. Set by the provider on every write of
+         * the product. This constant is used only as column header in the database.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_PRODUCT_UPDATED_AT = "updated_at";
+
+        /**
+         * Key of the ContentValues passed to an update of a {@link #buildAdjustUri(long)} URI,
+         * holding the (positive or negative) number of items to add to the product quantity.
+         */
+        public static final String KEY_QUANTITY_DELTA = "delta";
+
+        /**
+         * Name of the provider method atomically adding a delta to the quantity of a product.
+         * The extras passed to the method must hold {@link #EXTRA_PRODUCT_ID} and
+         * {@link #KEY_QUANTITY_DELTA}, and the returned Bundle holds {@link #EXTRA_NEW_QUANTITY}.
+         */
+        public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+        /**
+         * Key of the extras passed to {@link #METHOD_ADJUST_QUANTITY}, holding the product ID.
+         */
+        public static final String EXTRA_PRODUCT_ID = "product_id";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_ADJUST_QUANTITY}, holding the quantity of
+         * the product after the adjustment, or {@link #QUANTITY_NOT_ADJUSTED}.
+         */
+        public static final String EXTRA_NEW_QUANTITY = "new_quantity";
+
+        /**
+         * Name of the provider method atomically adding deltas to the quantities of several
+         * products, in one single transaction. The extras passed to the method must hold
+         * {@link #EXTRA_PRODUCT_IDS} and {@link #EXTRA_QUANTITY_DELTAS}, and may hold
+         * {@link #EXTRA_BATCH_ID}. The returned Bundle holds {@link #EXTRA_NEW_QUANTITIES}, or
+         * {@link #EXTRA_BATCH_ALREADY_APPLIED} if the batch had already been applied.
+         */
+        public static final String METHOD_ADJUST_QUANTITIES = "adjust_quantities";
+
+        /**
+         * Key of the extras passed to {@link #METHOD_ADJUST_QUANTITIES}, holding a long array
+         * with the IDs of the products to adjust.
+         */
+        public static final String EXTRA_PRODUCT_IDS = "product_ids";
+
+        /**
+         * Key of the extras passed to {@link #METHOD_ADJUST_QUANTITIES}, holding an int array
+         * with the delta to apply to each product.
+         */
+        public static final String EXTRA_QUANTITY_DELTAS = "deltas";
+
+        /**
+         * Key of the extras passed to {@link #METHOD_ADJUST_QUANTITIES}, holding a long which
+         * identifies the batch of deltas, so that a batch sent again - for instance replayed
+         * after the process died before learning that it was applied - is not applied twice.
+         * Batches must be sent in increasing order of their IDs: the provider keeps the ID of
+         * the last applied batch, and refuses any batch whose ID is not greater.
+         */
+        public static final String EXTRA_BATCH_ID = "batch_id";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_ADJUST_QUANTITIES}, holding true when the
+         * batch of deltas had already been applied, and was therefore not applied again.
+         */
+        public static final String EXTRA_BATCH_ALREADY_APPLIED = "batch_already_applied";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_ADJUST_QUANTITIES}, holding an int array
+         * with the quantity of each product after the adjustment, or
+         * {@link #QUANTITY_NOT_ADJUSTED}.
+         */
+        public static final String EXTRA_NEW_QUANTITIES = "new_quantities";
+
+        /**
+         * Value returned by {@link #METHOD_ADJUST_QUANTITY} and
+         * {@link #METHOD_ADJUST_QUANTITIES} when the product does not exist or
+         * when the adjustment would have made the product quantity negative.
+         */
+        public static final int QUANTITY_NOT_ADJUSTED = -1;
+
+        /**
+         * Name of the provider method returning the products which crossed their reorder
+         * threshold since the method was last called, and which are still at or below it. Each
+         * product is returned once per crossing, however many times it was written since; a
+         * product inserted at or below its threshold has not crossed it. At most
+         * {@link #EXTRA_LIMIT} products are returned at a time (500 at most), in the order of
+         * their IDs. The returned Bundle holds {@link #EXTRA_PRODUCT_IDS},
+         * {@link #EXTRA_PRODUCT_NAMES}, {@link #EXTRA_QUANTITIES} and
+         * {@link #EXTRA_HAS_MORE_ALERTS}.
+         */
+        public static final String METHOD_TAKE_STOCK_ALERTS = "take_stock_alerts";
+
+        /**
+         * Key of the optional int argument of {@link #METHOD_TAKE_STOCK_ALERTS}, holding the
+         * maximum number of products returned.
+         */
+        public static final String EXTRA_LIMIT = "limit";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_TAKE_STOCK_ALERTS}, holding a boolean
+         * which is true if more alerts may be pending, to be taken by calling the method again.
+         */
+        public static final String EXTRA_HAS_MORE_ALERTS = "has_more_alerts";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_TAKE_STOCK_ALERTS}, holding a String array
+         * with the name of each product.
+         */
+        public static final String EXTRA_PRODUCT_NAMES = "product_names";
+
+        /**
+         * Key of the Bundle returned by {@link #METHOD_TAKE_STOCK_ALERTS}, holding an int array
+         * with the current quantity of each product.
+         */
+        public static final String EXTRA_QUANTITIES = "quantities";
+
+        /**
+         * Value returned by {@link #parseProductId(Uri)} for URIs which do not refer to a single
+         * product
+         */
+        public static final long NO_PRODUCT_ID = -1;
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} limiting the number of products returned.
+         * When present, products are returned in the order of {@link #QUERY_PARAMETER_SORT}, or
+         * in ascending {@link #_ID} order without it.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} restricting the products returned to those
+         * whose {@link #_ID} is greater than the given value. Used together with
+         * {@link #QUERY_PARAMETER_LIMIT} to read the products page by page (keyset pagination):
+         * each page starts after the last ID of the previous page.
+         */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} choosing the order of the products: one of
+         * {@link #SORT_ID} (the default), {@link #SORT_NAME}, {@link #SORT_PRICE},
+         * {@link #SORT_QUANTITY} or {@link #SORT_RECENTLY_UPDATED}. Ties are broken by
+         * {@link #_ID}. Every order is read through an index, and cannot be combined with a sort
+         * order given by the caller.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        /**
+         * Values of {@link #QUERY_PARAMETER_SORT}: by ID (insertion order), by name (ignoring
+         * case), by price and by quantity (lowest first), and most recently updated first
+         */
+        public static final String SORT_ID = "id";
+        public static final String SORT_NAME = "name";
+        public static final String SORT_PRICE = "price";
+        public static final String SORT_QUANTITY = "quantity";
+        public static final String SORT_RECENTLY_UPDATED = "updated";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} holding the value, in the column of the
+         * {@link #QUERY_PARAMETER_SORT} order, of the last product of the previous page. Used
+         * together with {@link #QUERY_PARAMETER_AFTER_ID} to read the products page by page in
+         * any order other than {@link #SORT_ID}.
+         */
+        public static final String QUERY_PARAMETER_AFTER_VALUE = "after_value";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} restricting the products returned to those
+         * in stock ({@link #STOCK_IN}) or out of stock ({@link #STOCK_OUT})
+         */
+        public static final String QUERY_PARAMETER_STOCK = "stock";
+        public static final String STOCK_IN = "in";
+        public static final String STOCK_OUT = "out";
+
+        /**
+         * Query parameter of the {@link #CONTENT_URI} restricting the products returned to those
+         * of the given supplier
+         */
+        public static final String QUERY_PARAMETER_SUPPLIER = "supplier";
+
+        /**
+         * Query parameters of the {@link #CONTENT_URI} restricting the products returned to those
+         * whose price is at least, and at most, the given value, in minor units of the currency
+         */
+        public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+        public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+
+        /**
+         * Query parameter of the {@link #CONTENT_SEARCH_URI} holding the searched text. Every
+         * word of the text is matched as a prefix of the words in the product name or supplier;
+         * products whose name matches are returned first.
+         */
+        public static final String QUERY_PARAMETER_SEARCH = "q";
+
+        /**
+         * Build the URI searching products by name or supplier.
+         *
+         * @param query text typed by the user
+         * @param limit maximum number of products returned
+         * @return URI of the form products/search?q=milk&amp;limit=100
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            return CONTENT_SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SEARCH, query)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the URI of one page of products, ordered by ID.
+         *
+         * @param afterId ID of the last product of the previous page, or 0 for the first page
+         * @param limit   maximum number of products in the page
+         * @return URI of the form products?after_id=1234&amp;limit=50
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId))
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the URI of one page of products, in the given order.
+         *
+         * @param sort       one of the SORT_ values
+         * @param afterValue value, in the column of the order, of the last product of the
+         *                   previous page, or null for the first page
+         * @param afterId    ID of the last product of the previous page, ignored for the first
+         *                   page
+         * @param limit      maximum number of products in the page
+         * @return URI of the form
+         * products?sort=price&amp;after_value=12&amp;after_id=1234&amp;limit=50
+         */
+        public static Uri buildPageUri(String sort, String afterValue, long afterId, int limit) {
+            if (SORT_ID.equals(sort)) {
+                return buildPageUri(afterValue == null ? 0 : afterId, limit);
+            }
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_SORT, sort);
+            if (afterValue != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER_VALUE, afterValue)
+                        .appendQueryParameter(QUERY_PARAMETER_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * Build the URI used to adjust the quantity of a single product by a delta.
+         *
+         * @param productId ID of the product
+         * @return URI of the form products/#/adjust
+         */
+        public static Uri buildAdjustUri(long productId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(productId))
+                    .appendPath(PATH_ADJUST)
+                    .build();
+        }
+
+        /**
+         * Build the URI of the recent stock movements of a product.
+         *
+         * @param productId ID of the product
+         * @return URI of the form products/#/movements
+         */
+        public static Uri buildMovementsUri(long productId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(productId))
+                    .appendPath(PATH_MOVEMENTS)
+                    .build();
+        }
+
+        /**
+         * Build the URI of the daily stock snapshots of a product.
+         *
+         * @param productId ID of the product
+         * @return URI of the form products/#/snapshots
+         */
+        public static Uri buildSnapshotsUri(long productId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(String.valueOf(productId))
+                    .appendPath(PATH_SNAPSHOTS)
+                    .build();
+        }
+
+        /**
+         * Get the ID of the product a changed URI refers to. The provider notifies changes of a
+         * single product through the URI of that product, so listeners of {@link #CONTENT_URI}
+         * can tell which product changed.
+         *
+         * @param uri notified by the provider
+         * @return ID of the product, or {@link #NO_PRODUCT_ID} if the URI does not refer to a
+         * single product
+         */
+        public static long parseProductId(Uri uri) {
+            if (uri == null || !CONTENT_AUTHORITY.equals(uri.getAuthority())) {
+                return NO_PRODUCT_ID;
+            }
+            List<String> pathSegments = uri.getPathSegments();
+            if (pathSegments.size() != 2 || !PATH_PRODUCTS.equals(pathSegments.get(0))) {
+                return NO_PRODUCT_ID;
+            }
+            try {
+                return Long.parseLong(pathSegments.get(1));
+            } catch (NumberFormatException e) {
+                return NO_PRODUCT_ID;
+            }
+        }
+    }
+
+    /**
+     * SupplierEntry for the suppliers table in the database. Every product refers to one
+     * supplier; there is one supplier per distinct pair of name and phone number.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the supplier data in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI,
+                PATH_SUPPLIERS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
+                        SLASH + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
+                        SLASH + PATH_SUPPLIERS;
+
+        /**
+         * Name of the database table for suppliers
+         */
+        public static final String TABLE_NAME = "suppliers";
+
+        /**
+         * Name of the supplier.
+         * The data in this column of the database is of type TEXT.
+         */
+        public static final String COLUMN_SUPPLIER_NAME = "name";
+
+        /**
+         * Phone number of the supplier.
+         * The data in this column of the database is of type TEXT, and defaults to "n/a".
+         */
+        public static final String COLUMN_SUPPLIER_PHONE_NUMBER = "number";
+    }
+
+    /**
+     * StatsEntry for the one-row table of inventory statistics. The statistics are kept up to
+     * date by triggers on the products table, so reading them never scans the products.
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the inventory statistics in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ProductEntry.CONTENT_URI,
+                PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the inventory statistics.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
+                        SLASH + PATH_STATS;
+
+        /**
+         * Name of the database table for the inventory statistics
+         */
+        public static final String TABLE_NAME = "inventory_stats";
+
+        /**
+         * {@link #_ID} of the single row of the statistics table
+         */
+        public static final long STATS_ROW_ID = 1;
+
+        /**
+         * Total number of items in stock, over all products.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_TOTAL_QUANTITY = "total_quantity";
+
+        /**
+         * Total value of the stock, the sum of price * quantity over all products, in minor
+         * units of the currency like the prices.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_TOTAL_VALUE = "total_value";
+
+        /**
+         * Number of products which are out of stock.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+    }
+
+    /**
+     * StockAlertEntry for the table of pending low-stock alerts. A row is added by a trigger when
+     * the quantity of a product falls to its reorder threshold, and removed once the alert has
+     * been taken with {@link ProductEntry#METHOD_TAKE_STOCK_ALERTS}.
+     */
+    public static final class StockAlertEntry implements BaseColumns {
+
+        /**
+         * Name of the database table for the pending low-stock alerts
+         */
+        public static final String TABLE_NAME = "stock_alerts";
+
+        /**
+         * {@link ProductEntry#_ID} of the product which crossed its reorder threshold.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Time at which the product crossed its reorder threshold, in seconds since the epoch.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_CREATED_AT = "created_at";
+    }
+
+    /**
+     * AdjustmentBatchEntry for the one-row table holding the ID of the last batch of quantity
+     * deltas applied by {@link ProductEntry#METHOD_ADJUST_QUANTITIES}. The ID is updated in the
+     * same transaction as the quantities, so a batch is applied exactly once.
+     */
+    public static final class AdjustmentBatchEntry implements BaseColumns {
+
+        /**
+         * Name of the database table for the last applied batch
+         */
+        public static final String TABLE_NAME = "adjustment_batches";
+
+        /**
+         * {@link #_ID} of the single row of the table
+         */
+        public static final long BATCH_ROW_ID = 1;
+
+        /**
+         * {@link ProductEntry#EXTRA_BATCH_ID} of the last applied batch, or 0 if none was.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_LAST_BATCH_ID = "last_batch_id";
+    }
+
+    /**
+     * StockMovementEntry for the append-only ledger of stock movements. The provider records
+     * every change of the quantity of a product, within the same transaction as the change, so
+     * the movements of a product always add up to its quantity (until they are compacted).
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+        /**
+         * Name of the database table for the stock movements
+         */
+        public static final String TABLE_NAME = "stock_movements";
+
+        /**
+         * The MIME type of the stock movements of a product.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
+                        SLASH + PATH_MOVEMENTS;
+
+        /**
+         * {@link ProductEntry#_ID} of the product whose quantity changed. Movements are kept
+         * after the product is deleted.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Number of items added to (if positive) or removed from (if negative) the stock.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_DELTA = "delta";
+
+        /**
+         * Time of the movement, in milliseconds since the epoch.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_CREATED_AT = "created_at";
+
+        /**
+         * Reason of the movement, one of the REASON_ constants.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_REASON = "reason";
+
+        /**
+         * Possible values of {@link #COLUMN_REASON}: the initial stock of a new product, a sale,
+         * a restock, a correction of the quantity typed in the product editor, and the removal
+         * of the remaining stock when a product is deleted.
+         */
+        public static final int REASON_NEW_PRODUCT = 1;
+        public static final int REASON_SALE = 2;
+        public static final int REASON_RESTOCK = 3;
+        public static final int REASON_CORRECTION = 4;
+        public static final int REASON_PRODUCT_DELETED = 5;
+    }
+
+    /**
+     * StockSnapshotEntry for the daily snapshots into which old stock movements are compacted.
+     * There is at most one snapshot per product and day, so the ledger stays bounded while the
+     * sales of a product over any range of days remain one indexed range query away.
+     */
+    public static final class StockSnapshotEntry implements BaseColumns {
+
+        /**
+         * Name of the database table for the daily stock snapshots
+         */
+        public static final String TABLE_NAME = "stock_snapshots";
+
+        /**
+         * The MIME type of the daily stock snapshots of a product.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + SLASH + CONTENT_AUTHORITY +
+                        SLASH + PATH_SNAPSHOTS;
+
+        /**
+         * {@link ProductEntry#_ID} of the product.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Day of the snapshot, in days since the epoch (UTC).
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_DAY = "day";
+
+        /**
+         * Number of items sold during the day.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_UNITS_SOLD = "units_sold";
+
+        /**
+         * Number of items restocked during the day.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_UNITS_RESTOCKED = "units_restocked";
+
+        /**
+         * Sum of the deltas of all the movements of the day, whatever their reason.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_NET_CHANGE = "net_change";
+
+        /**
+         * Number of movements folded into the snapshot.
+         * The data in this column of the database is of type INTEGER.
+         */
+        public static final String COLUMN_MOVEMENT_COUNT = "movement_count";
     }
 }
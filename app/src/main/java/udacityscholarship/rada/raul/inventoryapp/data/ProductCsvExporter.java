@@ -0,0 +1,264 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.CancellationSignal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Exports the products table as CSV (RFC 4180), without ever holding more than one chunk of
+ * products in memory. The products are read through the {@link ProductProvider} in chunks of
+ * ascending IDs (keyset pagination, each chunk starting after the last ID of the previous one),
+ * and every chunk is written out through a buffered writer before the next one is read. The
+ * memory used is therefore the same for ten products as for millions of them.
+ */
+public class ProductCsvExporter {
+
+    /**
+     * Default number of products read in each chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Size of the buffer of the writer, in chars
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Encoding of the exported file
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * CSV separators and quote, and the characters which require a value to be quoted
+     */
+    static final char FIELD_SEPARATOR = ',';
+    static final String RECORD_SEPARATOR = "\r\n";
+    private static final char QUOTE = '"';
+
+    /**
+     * Projection used to count the products, in order to report the progress
+     */
+    private static final String[] COUNT_PROJECTION = {"COUNT(*)"};
+
+    /**
+     * Exported columns, in order. Their names make up the header of the file.
+     */
+    private static final String[] EXPORT_PROJECTION = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+    };
+
+    /**
+     * Index of the ID in {@link #EXPORT_PROJECTION}
+     */
+    private static final int ID_COLUMN_INDEX = 0;
+
+    /**
+     * Index of the price in {@link #EXPORT_PROJECTION}. The price is written with its decimals,
+     * such as 9.99, rather than in the minor units it is stored in.
+     */
+    private static final int PRICE_COLUMN_INDEX = 2;
+
+    /**
+     * Content resolver used to reach the {@link ProductProvider}
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Number of products read in each chunk
+     */
+    private final int chunkSize;
+
+    /**
+     * Callback receiving the progress of an export.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each chunk of products has been written, on the exporting thread.
+         *
+         * @param productsExported number of products written so far
+         * @param productCount     number of products when the export started
+         */
+        void onProgress(long productsExported, long productCount);
+    }
+
+    /**
+     * Create an exporter.
+     *
+     * @param contentResolver used to reach the {@link ProductProvider}
+     * @param chunkSize       number of products read in each chunk
+     */
+    public ProductCsvExporter(ContentResolver contentResolver, int chunkSize) {
+        this.contentResolver = contentResolver;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Write all the products as CSV. Runs on the calling thread, which should not be the main
+     * thread. The output stream is flushed but not closed.
+     *
+     * @param outputStream       to write the CSV to
+     * @param listener           receiving the progress, or null
+     * @param cancellationSignal cancelling the export, or null
+     * @return number of products exported
+     * @throws IOException if the CSV could not be written
+     */
+    public long export(OutputStream outputStream, ProgressListener listener,
+                       CancellationSignal cancellationSignal) throws IOException {
+        long productCount = listener == null ? 0 : countProducts(cancellationSignal);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, CHARSET),
+                BUFFER_SIZE);
+        writeHeader(writer);
+        // the prices are formatted into the same buffer, so that no String is created for them
+        char[] priceBuffer = new char[PriceUtils.MAX_PRICE_LENGTH];
+
+        long productsExported = 0;
+        long afterId = 0;
+        while (true) {
+            Cursor cursor = contentResolver.query(
+                    ProductContract.ProductEntry.buildPageUri(afterId, chunkSize),
+                    EXPORT_PROJECTION, null, null, null, cancellationSignal);
+            if (cursor == null) {
+                break;
+            }
+            int productsRead = 0;
+            try {
+                while (cursor.moveToNext()) {
+                    writeRecord(writer, cursor, priceBuffer);
+                    afterId = cursor.getLong(ID_COLUMN_INDEX);
+                    productsRead++;
+                }
+            } finally {
+                cursor.close();
+            }
+
+            productsExported += productsRead;
+            if (listener != null) {
+                listener.onProgress(productsExported, Math.max(productCount, productsExported));
+            }
+            if (productsRead < chunkSize) {
+                break;
+            }
+        }
+
+        writer.flush();
+        return productsExported;
+    }
+
+    /**
+     * @param cancellationSignal cancelling the query, or null
+     * @return number of products in the products table
+     */
+    private long countProducts(CancellationSignal cancellationSignal) {
+        Cursor cursor = contentResolver.query(ProductContract.ProductEntry.CONTENT_URI,
+                COUNT_PROJECTION, null, null, null, cancellationSignal);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write the names of the exported columns.
+     *
+     * @param writer to write to
+     * @throws IOException if the header could not be written
+     */
+    private static void writeHeader(Writer writer) throws IOException {
+        for (int i = 0; i < EXPORT_PROJECTION.length; i++) {
+            if (i > 0) {
+                writer.write(FIELD_SEPARATOR);
+            }
+            writeField(writer, EXPORT_PROJECTION[i]);
+        }
+        writer.write(RECORD_SEPARATOR);
+    }
+
+    /**
+     * Write the product at the current position of the cursor.
+     *
+     * @param writer      to write to
+     * @param cursor      positioned on a product, with the columns of {@link #EXPORT_PROJECTION}
+     * @param priceBuffer into which the price is formatted, {@link PriceUtils#MAX_PRICE_LENGTH}
+     *                    chars long
+     * @throws IOException if the product could not be written
+     */
+    private static void writeRecord(Writer writer, Cursor cursor, char[] priceBuffer)
+            throws IOException {
+        for (int i = 0; i < EXPORT_PROJECTION.length; i++) {
+            if (i > 0) {
+                writer.write(FIELD_SEPARATOR);
+            }
+            if (i == PRICE_COLUMN_INDEX && cursor.getType(i) == Cursor.FIELD_TYPE_INTEGER) {
+                writer.write(priceBuffer, 0,
+                        PriceUtils.formatPrice(cursor.getLong(i), priceBuffer));
+                continue;
+            }
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    writer.write(Long.toString(cursor.getLong(i)));
+                    break;
+                default:
+                    writeField(writer, cursor.getString(i));
+            }
+        }
+        writer.write(RECORD_SEPARATOR);
+    }
+
+    /**
+     * Write a text field, quoted only if it holds a separator, a quote or a line break. Quotes
+     * within a quoted field are doubled.
+     *
+     * @param writer to write to
+     * @param value  of the field
+     * @throws IOException if the field could not be written
+     */
+    static void writeField(Writer writer, String value) throws IOException {
+        if (!needsQuotes(value)) {
+            writer.write(value);
+            return;
+        }
+        writer.write(QUOTE);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == QUOTE) {
+                writer.write(QUOTE);
+            }
+            writer.write(c);
+        }
+        writer.write(QUOTE);
+    }
+
+    /**
+     * @param value of a field
+     * @return true if the field must be quoted
+     */
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == FIELD_SEPARATOR || c == QUOTE || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,407 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.res.Resources;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import udacityscholarship.rada.raul.inventoryapp.R;
+
+/**
+ * Imports products from a CSV file, as a stream: the file is parsed one record at a time, and
+ * the products are inserted through the {@link ProductProvider} in batches, each batch in one
+ * transaction with one single change notification. Only one batch of products is held in memory
+ * at any time, and the values of the batch are reused from one batch to the next, so the memory
+ * used does not depend on the size of the file.
+ * <p>
+ * The first record of the file names the columns, in any order: name (or product), price,
+ * quantity, supplier, phone (or number) and reorder_threshold; prices may have decimals, such as
+ * 9.99. Other columns, such as the _id written by the {@link ProductCsvExporter}, are ignored.
+ * Every row is checked with the same rules as the provider's inserts; invalid rows are written to
+ * a reject report, together with the reason, and the import carries on.
+ */
+public class ProductCsvImporter {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ProductCsvImporter.class.getSimpleName();
+
+    /**
+     * Maximum number of chars in a record; a longer record means the file is corrupt
+     */
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    /**
+     * Encoding of the imported file
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Byte order mark some spreadsheet apps write at the start of UTF-8 files
+     */
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    /**
+     * Value of {@link #columnIndexes} for the columns which are not in the file
+     */
+    private static final int NO_COLUMN = -1;
+
+    /**
+     * Imported product columns, and the names of the file columns which map to each of them
+     */
+    private static final String[] PRODUCT_COLUMNS = {
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD
+    };
+    private static final String[][] FILE_COLUMN_NAMES = {
+            {"name", ProductContract.ProductEntry.COLUMN_PRODUCT_NAME},
+            {ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE},
+            {ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY},
+            {ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER},
+            {"phone", ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER},
+            {ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD}
+    };
+
+    /**
+     * Whether each of the {@link #PRODUCT_COLUMNS} holds a whole number
+     */
+    private static final boolean[] IS_NUMBER_COLUMN = {false, false, true, false, false, true};
+
+    /**
+     * Index of the price in {@link #PRODUCT_COLUMNS}. The price is a decimal number, read by
+     * {@link PriceUtils#parsePrice(CharSequence)}.
+     */
+    private static final int PRICE_COLUMN = 1;
+
+    /**
+     * Strings used for throwing errors
+     */
+    private static final String MISSING_HEADER = "The file is empty";
+    private static final String MISSING_COLUMN = "Missing column ";
+
+    /**
+     * Header of the reject report
+     */
+    private static final String REJECT_REPORT_HEADER = "line,reason";
+
+    /**
+     * Resolver used to insert the products
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Rules checked for every row, the same as the provider's
+     */
+    private final ProductValidator productValidator;
+
+    /**
+     * Resources holding the reasons of the rejects
+     */
+    private final Resources resources;
+
+    /**
+     * Values of the batch of products waiting to be inserted, reused from one batch to the next,
+     * and the lines of the file they were read from
+     */
+    private final ContentValues[] batchValues;
+    private final int[] batchLineNumbers;
+
+    /**
+     * Index, in the records of the file, of each of the {@link #PRODUCT_COLUMNS}, or
+     * {@link #NO_COLUMN}
+     */
+    private final int[] columnIndexes = new int[PRODUCT_COLUMNS.length];
+
+    /**
+     * Callback receiving the progress of an import.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each batch of products has been committed, on the importing thread.
+         *
+         * @param productsImported number of products inserted so far
+         * @param productsRejected number of rows rejected so far
+         */
+        void onProgress(long productsImported, long productsRejected);
+    }
+
+    /**
+     * Outcome of an import
+     */
+    public static class Result {
+        /**
+         * Number of products inserted in the database
+         */
+        public final long productsImported;
+
+        /**
+         * Number of rows written to the reject report
+         */
+        public final long productsRejected;
+
+        Result(long productsImported, long productsRejected) {
+            this.productsImported = productsImported;
+            this.productsRejected = productsRejected;
+        }
+    }
+
+    /**
+     * Running totals of the current import
+     */
+    private long productsImported;
+    private long productsRejected;
+    private int batchSize;
+
+    /**
+     * Create an importer.
+     *
+     * @param context      of the app
+     * @param maxBatchSize number of products inserted in each transaction
+     */
+    public ProductCsvImporter(Context context, int maxBatchSize) {
+        contentResolver = context.getContentResolver();
+        productValidator = new ProductValidator(context);
+        resources = context.getResources();
+        batchValues = new ContentValues[maxBatchSize];
+        batchLineNumbers = new int[maxBatchSize];
+        for (int i = 0; i < maxBatchSize; i++) {
+            batchValues[i] = new ContentValues();
+        }
+    }
+
+    /**
+     * Import the products of a CSV file. Runs on the calling thread, which should not be the main
+     * thread. The input stream is closed; the reject report is flushed but not closed.
+     *
+     * @param inputStream  of the CSV file, encoded in UTF-8
+     * @param rejectWriter receiving the line number and reason of every rejected row
+     * @param listener     receiving the progress, or null
+     * @return number of products imported and rejected
+     * @throws IOException if the file could not be read, misses a required column or is corrupt;
+     *                     the batches committed before the error stay in the database
+     */
+    public Result importCsv(InputStream inputStream, Writer rejectWriter,
+                            ProgressListener listener) throws IOException {
+        productsImported = 0;
+        productsRejected = 0;
+        batchSize = 0;
+
+        CsvReader csvReader = new CsvReader(new InputStreamReader(inputStream, CHARSET),
+                MAX_RECORD_LENGTH);
+        try {
+            List<String> header = csvReader.readRecord();
+            if (header == null) {
+                throw new IOException(MISSING_HEADER);
+            }
+            int fieldCount = header.size();
+            mapColumns(header);
+            rejectWriter.write(REJECT_REPORT_HEADER);
+            rejectWriter.write(ProductCsvExporter.RECORD_SEPARATOR);
+
+            List<String> record;
+            while ((record = csvReader.readRecord()) != null) {
+                // skip the blank lines
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    continue;
+                }
+
+                int lineNumber = csvReader.getLineNumber();
+                if (record.size() != fieldCount) {
+                    productsRejected++;
+                    writeReject(rejectWriter, lineNumber, resources.getString(
+                            R.string.import_wrong_field_count, fieldCount, record.size()));
+                    continue;
+                }
+
+                ContentValues values = batchValues[batchSize];
+                String error = readProduct(record, values);
+                if (error == null) {
+                    error = productValidator.findNewProductError(values);
+                }
+                if (error != null) {
+                    productsRejected++;
+                    writeReject(rejectWriter, lineNumber, error);
+                    continue;
+                }
+
+                batchLineNumbers[batchSize++] = lineNumber;
+                if (batchSize == batchValues.length) {
+                    commitBatch(rejectWriter, listener);
+                }
+            }
+            commitBatch(rejectWriter, listener);
+        } finally {
+            csvReader.close();
+            rejectWriter.flush();
+        }
+        return new Result(productsImported, productsRejected);
+    }
+
+    /**
+     * Find the index of each of the {@link #PRODUCT_COLUMNS} within the records of the file.
+     *
+     * @param header first record of the file, naming the columns
+     * @throws IOException if a required column is missing
+     */
+    private void mapColumns(List<String> header) throws IOException {
+        Arrays.fill(columnIndexes, NO_COLUMN);
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+            if (i == 0 && name.startsWith(BYTE_ORDER_MARK)) {
+                name = name.substring(BYTE_ORDER_MARK.length());
+            }
+            for (int column = 0; column < PRODUCT_COLUMNS.length; column++) {
+                if (Arrays.asList(FILE_COLUMN_NAMES[column]).contains(name)) {
+                    columnIndexes[column] = i;
+                }
+            }
+        }
+
+        // the quantity and the reorder threshold are optional, as for the provider's inserts
+        for (int column = 0; column < PRODUCT_COLUMNS.length; column++) {
+            boolean isOptional = PRODUCT_COLUMNS[column].equals(
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY) ||
+                    PRODUCT_COLUMNS[column].equals(
+                            ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+            if (columnIndexes[column] == NO_COLUMN && !isOptional) {
+                throw new IOException(MISSING_COLUMN + FILE_COLUMN_NAMES[column][0]);
+            }
+        }
+    }
+
+    /**
+     * Read the product of a record into the given values. Empty fields are left out of the
+     * values, so the validator treats them as missing.
+     *
+     * @param record fields of a row of the file
+     * @param values cleared, then filled with the product
+     * @return message describing a field which is not a whole number or not a price, or null
+     */
+    private String readProduct(List<String> record, ContentValues values) {
+        values.clear();
+        for (int column = 0; column < PRODUCT_COLUMNS.length; column++) {
+            if (columnIndexes[column] == NO_COLUMN) {
+                continue;
+            }
+            String field = record.get(columnIndexes[column]).trim();
+            if (field.isEmpty()) {
+                continue;
+            }
+            if (column == PRICE_COLUMN) {
+                long price = PriceUtils.parsePrice(field);
+                if (price == PriceUtils.INVALID_PRICE) {
+                    return resources.getString(R.string.import_invalid_price,
+                            FILE_COLUMN_NAMES[column][0], field);
+                }
+                values.put(PRODUCT_COLUMNS[column], price);
+                continue;
+            }
+            if (!IS_NUMBER_COLUMN[column]) {
+                values.put(PRODUCT_COLUMNS[column], field);
+                continue;
+            }
+            try {
+                values.put(PRODUCT_COLUMNS[column], Integer.parseInt(field));
+            } catch (NumberFormatException e) {
+                return resources.getString(R.string.import_invalid_number,
+                        FILE_COLUMN_NAMES[column][0], field);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Insert the products of the batch in one single transaction, which is only committed if
+     * every product was inserted. Should the transaction fail, the products are inserted one by
+     * one, so that only the failing ones are rejected, each with its own line.
+     *
+     * @param rejectWriter receiving the rejected rows
+     * @param listener     receiving the progress, or null
+     * @throws IOException if the reject report could not be written
+     */
+    private void commitBatch(Writer rejectWriter, ProgressListener listener) throws IOException {
+        if (batchSize == 0) {
+            return;
+        }
+        // unlike bulkInsert(), which commits the rows it could insert without telling which,
+        // a batch of insert operations fails as a whole as soon as one insert fails
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            operations.add(ContentProviderOperation.newInsert(
+                    ProductContract.ProductEntry.CONTENT_URI).withValues(batchValues[i]).build());
+        }
+        try {
+            contentResolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            productsImported += batchSize;
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            Log.w(LOG_TAG, e.getMessage(), e);
+            for (int i = 0; i < batchSize; i++) {
+                insertSingleProduct(rejectWriter, batchValues[i], batchLineNumbers[i]);
+            }
+        }
+        batchSize = 0;
+
+        if (listener != null) {
+            listener.onProgress(productsImported, productsRejected);
+        }
+    }
+
+    /**
+     * Insert one product on its own, rejecting it if the insert fails.
+     *
+     * @param rejectWriter receiving the row if it is rejected
+     * @param values       of the product
+     * @param lineNumber   of the row
+     * @throws IOException if the reject report could not be written
+     */
+    private void insertSingleProduct(Writer rejectWriter, ContentValues values, int lineNumber)
+            throws IOException {
+        try {
+            if (contentResolver.insert(ProductContract.ProductEntry.CONTENT_URI, values) != null) {
+                productsImported++;
+            } else {
+                productsRejected++;
+                writeReject(rejectWriter, lineNumber,
+                        resources.getString(R.string.import_insert_failed));
+            }
+        } catch (RuntimeException e) {
+            productsRejected++;
+            writeReject(rejectWriter, lineNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * Write a rejected row to the reject report.
+     *
+     * @param rejectWriter receiving the row
+     * @param lineNumber   of the row in the file
+     * @param reason       why the row was rejected
+     * @throws IOException if the reject report could not be written
+     */
+    private static void writeReject(Writer rejectWriter, int lineNumber, String reason)
+            throws IOException {
+        rejectWriter.write(Integer.toString(lineNumber));
+        rejectWriter.write(ProductCsvExporter.FIELD_SEPARATOR);
+        ProductCsvExporter.writeField(rejectWriter, reason == null ? "" : reason);
+        rejectWriter.write(ProductCsvExporter.RECORD_SEPARATOR);
+    }
+}
@@ -1,23 +1,98 @@
 package udacityscholarship.rada.raul.inventoryapp.data;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+
+import udacityscholarship.rada.raul.inventoryapp.R;
 
 /**
  * Database helper for Inventory app. Manages database creation and version management.
+ * The database uses write-ahead logging, so that readers (such as the loaders of the list of
+ * products) are not blocked by writers (such as the sell button), and vice versa.
  */
 public class ProductDbHelper extends SQLiteOpenHelper {
 
     /**
-     * Name of the database file
+     * Name of the database file; tests open the provider on a renamed copy of it
+     */
+    static final String DATABASE_NAME = "inventory.db";
+
+    /**
+     * Database version. If you change the database schema, you must increment the database version
+     * and add the matching step to {@link #migrate(SQLiteDatabase, int)}.
+     */
+    private static final int DATABASE_VERSION = 11;
+
+    /**
+     * Version of the schema created by {@link #onCreate(SQLiteDatabase)}, before any migration
+     * is applied.
+     */
+    private static final int INITIAL_DATABASE_VERSION = 1;
+
+    /**
+     * Error message thrown when no migration step exists for a database version
+     */
+    private static final String UNKNOWN_MIGRATION = "No migration to database version ";
+
+    /**
+     * Number of minor units in one unit of the currency when the prices were converted by the
+     * migration to version 9. It is fixed, whatever the scale of the prices becomes later:
+     * later scales need their own migration.
+     */
+    private static final int VERSION_9_PRICE_MINOR_UNITS = 100;
+
+    /**
+     * Names of the indexes on the products table
+     */
+    private static final String INDEX_PRODUCT_NAME = "index_products_product";
+    private static final String INDEX_PRODUCT_SUPPLIER = "index_products_supplier";
+    private static final String INDEX_PRODUCT_QUANTITY = "index_products_quantity";
+    private static final String INDEX_PRODUCT_LOW_STOCK = "index_products_low_stock";
+    private static final String INDEX_PRODUCT_SUPPLIER_ID = "index_products_supplier_id";
+
+    /**
+     * Names of the indexes reading the list of products in each of its sort orders. Each one
+     * also holds the quantity and the price, so that the stock and price filters are checked
+     * within the index, and only the products of the page are read from the table.
+     */
+    private static final String INDEX_PRODUCT_NAME_SORT = "index_products_name_sort";
+    private static final String INDEX_PRODUCT_PRICE_SORT = "index_products_price_sort";
+    private static final String INDEX_PRODUCT_QUANTITY_SORT = "index_products_quantity_sort";
+    private static final String INDEX_PRODUCT_UPDATED_SORT = "index_products_updated_sort";
+
+    /**
+     * Name of the index of the stock movements by product and time
+     */
+    private static final String INDEX_MOVEMENT_PRODUCT = "index_stock_movements_product";
+
+    /**
+     * Names of the triggers keeping the full-text search table in sync with the products table
+     */
+    private static final String TRIGGER_SEARCH_INSERT = "products_fts_after_insert";
+    private static final String TRIGGER_SEARCH_UPDATE = "products_fts_after_update";
+    private static final String TRIGGER_SEARCH_DELETE = "products_fts_after_delete";
+    private static final String TRIGGER_SEARCH_SUPPLIER_UPDATE =
+            "products_fts_after_supplier_update";
+
+    /**
+     * Names of the triggers keeping the inventory statistics up to date
      */
-    private static final String DATABASE_NAME = "inventory.db";
+    private static final String TRIGGER_STATS_INSERT = "inventory_stats_after_insert";
+    private static final String TRIGGER_STATS_UPDATE = "inventory_stats_after_update";
+    private static final String TRIGGER_STATS_DELETE = "inventory_stats_after_delete";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Names of the triggers raising an alert when a product falls to its reorder threshold, and
+     * removing the alerts of a deleted product. The trigger on insert is dropped by the
+     * migration to version 11.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final String TRIGGER_ALERT_INSERT = "stock_alerts_after_insert";
+    private static final String TRIGGER_ALERT_UPDATE = "stock_alerts_after_update";
+    private static final String TRIGGER_ALERT_DELETE = "stock_alerts_after_delete";
 
     /**
      * Type of data introduced in column headed by _ID and related constraints
@@ -54,16 +129,157 @@ public class ProductDbHelper extends SQLiteOpenHelper {
             " TEXT NOT NULL DEFAULT \"n/a\"";
 
     /**
-     * Create a helper object to create, open, and/or manage a database.
+     * Type of data introduced in column headed by COLUMN_PRODUCT_SUPPLIER_ID and related
+     * constraints
+     */
+    private static final String PRODUCT_SUPPLIER_ID_TYPE_AND_CONSTRAINTS =
+            " INTEGER NOT NULL REFERENCES " + ProductContract.SupplierEntry.TABLE_NAME + " (" +
+                    ProductContract.SupplierEntry._ID + ")";
+
+    /**
+     * Type of data introduced in column headed by COLUMN_PRODUCT_REORDER_THRESHOLD and related
+     * constraints
+     */
+    private static final String PRODUCT_REORDER_THRESHOLD_TYPE_AND_CONSTRAINTS =
+            " INTEGER NOT NULL DEFAULT 0";
+
+    /**
+     * Type of data introduced in column headed by COLUMN_PRODUCT_UPDATED_AT and related
+     * constraints
+     */
+    private static final String PRODUCT_UPDATED_AT_TYPE_AND_CONSTRAINTS =
+            " INTEGER NOT NULL DEFAULT 0";
+
+    /**
+     * Name of the table into which the products are copied while the products table is rebuilt
+     */
+    private static final String PRODUCTS_REBUILD_TABLE_NAME = "products_new";
+
+    /**
+     * Name of the table holding the last ID handed out by each AUTOINCREMENT table
+     */
+    private static final String SEQUENCE_TABLE_NAME = "sqlite_sequence";
+
+    /**
+     * PRAGMA statements used to configure the database connection
+     */
+    private static final String PRAGMA_SYNCHRONOUS = "PRAGMA synchronous = ";
+    private static final String PRAGMA_CACHE_SIZE = "PRAGMA cache_size = ";
+    private static final String PRAGMA_PAGE_SIZE = "PRAGMA page_size = ";
+    private static final String PRAGMA_WAL_CHECKPOINT = "PRAGMA wal_checkpoint";
+
+    /**
+     * Checkpoint modes. TRUNCATE also shrinks the write-ahead log file, but it is only supported
+     * by the SQLite version shipped since Android 6.0; RESTART is used on older versions.
+     */
+    private static final String CHECKPOINT_TRUNCATE = "(TRUNCATE)";
+    private static final String CHECKPOINT_RESTART = "(RESTART)";
+
+    /**
+     * Synchronous mode of the database (OFF, NORMAL or FULL)
+     */
+    private final String synchronousMode;
+
+    /**
+     * Size of the page cache of the connection, in KiB
+     */
+    private final int cacheSizeKib;
+
+    /**
+     * Size of the database pages, in bytes
+     */
+    private final int pageSize;
+
+    /**
+     * Whether readers and the writer access the database concurrently, through a write-ahead log
+     */
+    private final boolean isWriteAheadLogging;
+
+    /**
+     * Create a helper object to create, open, and/or manage a database. The connection settings
+     * are read from res/values/config.xml.
      *
      * @param context of the app.
      */
     public ProductDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Create a helper object managing a database with another name, for instance a throwaway
+     * database used to measure performance.
+     *
+     * @param context      of the app.
+     * @param databaseName name of the database file
+     */
+    ProductDbHelper(Context context, String databaseName) {
+        this(context, databaseName, true);
     }
 
     /**
-     * Called when the database is created for the first time.
+     * Create a helper object managing a database with another name, with or without
+     * write-ahead logging, for instance to compare both journal modes.
+     *
+     * @param context             of the app.
+     * @param databaseName        name of the database file
+     * @param isWriteAheadLogging whether readers and the writer access the database
+     *                            concurrently, through a write-ahead log
+     */
+    ProductDbHelper(Context context, String databaseName, boolean isWriteAheadLogging) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        Resources resources = context.getResources();
+        synchronousMode = resources.getString(R.string.db_synchronous_mode);
+        cacheSizeKib = resources.getInteger(R.integer.db_cache_size_kib);
+        pageSize = resources.getInteger(R.integer.db_page_size);
+        this.isWriteAheadLogging = isWriteAheadLogging;
+    }
+
+    /**
+     * Called when the database connection is being configured, before the database is created or
+     * upgraded. Applies the connection settings. These PRAGMAs only reach the primary connection,
+     * the one writing to the database; the connections reading it in parallel through the
+     * write-ahead log keep the default cache size and synchronous mode of Android - readers do
+     * not sync anything anyway.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // The page size can only change while the database is still empty and not yet in WAL
+        // mode, so it is set before write-ahead logging is enabled, and has no effect on an
+        // existing database
+        db.execSQL(PRAGMA_PAGE_SIZE + pageSize);
+        if (isWriteAheadLogging) {
+            // Let readers and the writer access the database concurrently
+            db.enableWriteAheadLogging();
+        }
+        // A negative cache size is expressed in KiB rather than in pages
+        db.execSQL(PRAGMA_CACHE_SIZE + (-cacheSizeKib));
+        db.execSQL(PRAGMA_SYNCHRONOUS + synchronousMode);
+        // Every product must refer to an existing supplier
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    /**
+     * Copy the content of the write-ahead log back into the database file, so that the log does
+     * not keep growing and readers do not have to go through it. Best called when the app is idle,
+     * for instance when the system asks the app to trim its memory.
+     */
+    public void checkpoint() {
+        String mode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ?
+                CHECKPOINT_TRUNCATE : CHECKPOINT_RESTART;
+        // PRAGMA wal_checkpoint returns a row, so it must be run as a query
+        Cursor cursor = getWritableDatabase().rawQuery(PRAGMA_WAL_CHECKPOINT + mode, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Called when the database is created for the first time. Creates the initial schema, then
+     * applies every migration step, so that new and upgraded databases always end up with the
+     * same schema.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -84,10 +300,521 @@ public class ProductDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_PRODUCTS_TABLE);
+
+        // Bring the initial schema up to date
+        onUpgrade(db, INITIAL_DATABASE_VERSION, DATABASE_VERSION);
     }
 
+    /**
+     * Called when the database needs to be upgraded. Applies, in order, each migration step
+     * between the old and the new version. The whole upgrade runs in one single transaction, so
+     * a failing step leaves the database at its old version.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrate(db, version);
+        }
+    }
+
+    /**
+     * Apply the migration step bringing the database from the previous version to the given one.
+     *
+     * @param db      database to migrate
+     * @param version database version reached after this step
+     */
+    private void migrate(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // Index the columns used to look up and filter products, so that these lookups
+                // do not scan the whole products table
+                db.execSQL(createIndexStatement(INDEX_PRODUCT_NAME,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_NAME));
+                db.execSQL(createIndexStatement(INDEX_PRODUCT_SUPPLIER,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER));
+                db.execSQL(createIndexStatement(INDEX_PRODUCT_QUANTITY,
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY));
+                break;
+            case 3:
+                // Full-text index of the product names and suppliers, so that products can be
+                // searched by prefix without scanning the products table
+                createSearchTable(db);
+                break;
+            case 4:
+                // One-row table of inventory statistics, kept up to date by triggers, so that
+                // the statistics can be read without aggregating the products table
+                createStatsTable(db);
+                break;
+            case 5:
+                // Reorder threshold of every product, with an index over the products at or
+                // below it, and the table of alerts raised when a product crosses it
+                createLowStockWatchlist(db);
+                break;
+            case 6:
+                // Append-only ledger of the stock movements, and the daily snapshots into which
+                // old movements are compacted
+                createStockLedger(db);
+                break;
+            case 7:
+                // Time of the last write of every product, and the indexes reading the list of
+                // products in each of its sort orders
+                addUpdateTimeAndSortIndexes(db);
+                break;
+            case 8:
+                // Suppliers in their own table, referred to by the products, and the view
+                // joining every product with its supplier
+                createSuppliersTable(db);
+                break;
+            case 9:
+                // Prices in minor units of the currency, so that they can have decimals
+                convertPricesToMinorUnits(db);
+                break;
+            case 10:
+                // ID of the last batch of quantity deltas applied, so that no batch is applied
+                // twice
+                createAdjustmentBatchTable(db);
+                break;
+            case 11:
+                // Alerts only raised when an update makes a product cross its threshold, not for
+                // every product inserted at or below it
+                db.execSQL("DROP TRIGGER " + TRIGGER_ALERT_INSERT + ";");
+                break;
+            default:
+                throw new IllegalStateException(UNKNOWN_MIGRATION + version);
+        }
+    }
+
+    /**
+     * Create the full-text search table, fill it with the existing products, and create the
+     * triggers keeping it in sync with the products table.
+     *
+     * @param db database to migrate
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        String productName = ProductContract.ProductEntry.COLUMN_PRODUCT_NAME;
+        String productSupplier = ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER;
+        String products = ProductContract.ProductEntry.TABLE_NAME;
+        String search = ProductContract.ProductEntry.SEARCH_TABLE_NAME;
+        String id = ProductContract.ProductEntry._ID;
+
+        db.execSQL("CREATE VIRTUAL TABLE " + search + " USING fts4(" +
+                productName + ", " + productSupplier + ");");
+
+        db.execSQL("INSERT INTO " + search + " (docid, " + productName + ", " +
+                productSupplier + ") SELECT " + id + ", " + productName + ", " +
+                productSupplier + " FROM " + products + ";");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_INSERT + " AFTER INSERT ON " + products +
+                " BEGIN INSERT INTO " + search + " (docid, " + productName + ", " +
+                productSupplier + ") VALUES (new." + id + ", new." + productName + ", new." +
+                productSupplier + "); END;");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_UPDATE + " AFTER UPDATE OF " +
+                productName + ", " + productSupplier + " ON " + products +
+                " BEGIN UPDATE " + search + " SET " + productName + " = new." + productName +
+                ", " + productSupplier + " = new." + productSupplier +
+                " WHERE docid = old." + id + "; END;");
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_DELETE + " AFTER DELETE ON " + products +
+                " BEGIN DELETE FROM " + search + " WHERE docid = old." + id + "; END;");
+    }
+
+    /**
+     * Create the inventory statistics table, fill its single row from the existing products, and
+     * create the triggers applying every change of the products to the statistics.
+     *
+     * @param db database to migrate
+     */
+    private static void createStatsTable(SQLiteDatabase db) {
+        String price = ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE;
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String products = ProductContract.ProductEntry.TABLE_NAME;
+        String stats = ProductContract.StatsEntry.TABLE_NAME;
+        String totalQuantity = ProductContract.StatsEntry.COLUMN_TOTAL_QUANTITY;
+        String totalValue = ProductContract.StatsEntry.COLUMN_TOTAL_VALUE;
+        String outOfStockCount = ProductContract.StatsEntry.COLUMN_OUT_OF_STOCK_COUNT;
+
+        db.execSQL("CREATE TABLE " + stats + " (" +
+                ProductContract.StatsEntry._ID + " INTEGER PRIMARY KEY, " +
+                totalQuantity + " INTEGER NOT NULL DEFAULT 0, " +
+                totalValue + " INTEGER NOT NULL DEFAULT 0, " +
+                outOfStockCount + " INTEGER NOT NULL DEFAULT 0);");
+
+        // the only full aggregation of the products, done once
+        db.execSQL("INSERT INTO " + stats + " (" + ProductContract.StatsEntry._ID + ", " +
+                totalQuantity + ", " + totalValue + ", " + outOfStockCount + ") SELECT " +
+                ProductContract.StatsEntry.STATS_ROW_ID + ", " +
+                "IFNULL(SUM(" + quantity + "), 0), " +
+                "IFNULL(SUM(" + price + " * " + quantity + "), 0), " +
+                "IFNULL(SUM(" + quantity + " <= 0), 0) FROM " + products + ";");
+
+        createStatsTriggers(db);
+    }
+
+    /**
+     * Create the triggers applying every change of the products to the inventory statistics.
+     *
+     * @param db database to migrate
+     */
+    private static void createStatsTriggers(SQLiteDatabase db) {
+        String price = ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE;
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String products = ProductContract.ProductEntry.TABLE_NAME;
+        String stats = ProductContract.StatsEntry.TABLE_NAME;
+        String totalQuantity = ProductContract.StatsEntry.COLUMN_TOTAL_QUANTITY;
+        String totalValue = ProductContract.StatsEntry.COLUMN_TOTAL_VALUE;
+        String outOfStockCount = ProductContract.StatsEntry.COLUMN_OUT_OF_STOCK_COUNT;
+        String statsRow = " WHERE " + ProductContract.StatsEntry._ID + " = " +
+                ProductContract.StatsEntry.STATS_ROW_ID + "; END;";
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_INSERT + " AFTER INSERT ON " + products +
+                " BEGIN UPDATE " + stats + " SET " +
+                totalQuantity + " = " + totalQuantity + " + new." + quantity + ", " +
+                totalValue + " = " + totalValue + " + new." + price + " * new." + quantity + ", " +
+                outOfStockCount + " = " + outOfStockCount + " + (new." + quantity + " <= 0)" +
+                statsRow);
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_UPDATE + " AFTER UPDATE OF " +
+                price + ", " + quantity + " ON " + products +
+                " BEGIN UPDATE " + stats + " SET " +
+                totalQuantity + " = " + totalQuantity + " + new." + quantity + " - old." +
+                quantity + ", " +
+                totalValue + " = " + totalValue + " + new." + price + " * new." + quantity +
+                " - old." + price + " * old." + quantity + ", " +
+                outOfStockCount + " = " + outOfStockCount + " + (new." + quantity +
+                " <= 0) - (old." + quantity + " <= 0)" +
+                statsRow);
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_STATS_DELETE + " AFTER DELETE ON " + products +
+                " BEGIN UPDATE " + stats + " SET " +
+                totalQuantity + " = " + totalQuantity + " - old." + quantity + ", " +
+                totalValue + " = " + totalValue + " - old." + price + " * old." + quantity + ", " +
+                outOfStockCount + " = " + outOfStockCount + " - (old." + quantity + " <= 0)" +
+                statsRow);
+    }
+
+    /**
+     * Add the reorder threshold column, index the products whose quantity is at or below their
+     * threshold, and create the table of low-stock alerts with the triggers filling it. An alert
+     * is only raised when a product crosses its threshold, not on every write of a product which
+     * is already below it.
+     *
+     * @param db database to migrate
+     */
+    private static void createLowStockWatchlist(SQLiteDatabase db) {
+        String threshold = ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+        String alerts = ProductContract.StockAlertEntry.TABLE_NAME;
+
+        db.execSQL("ALTER TABLE " + ProductContract.ProductEntry.TABLE_NAME + " ADD COLUMN " +
+                threshold + PRODUCT_REORDER_THRESHOLD_TYPE_AND_CONSTRAINTS + ";");
+
+        createLowStockIndex(db);
+
+        db.execSQL("CREATE TABLE " + alerts + " (" +
+                ProductContract.StockAlertEntry._ID + ID_TYPE_AND_CONSTRAINTS + ", " +
+                ProductContract.StockAlertEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, " +
+                ProductContract.StockAlertEntry.COLUMN_CREATED_AT + " INTEGER NOT NULL);");
+
+        createStockAlertTriggers(db);
+    }
+
+    /**
+     * Index the products whose quantity is at or below their reorder threshold.
+     *
+     * @param db database to migrate
+     */
+    private static void createLowStockIndex(SQLiteDatabase db) {
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String threshold = ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+
+        // A partial index only holds the products at or below their threshold - usually a small
+        // fraction of the products - sorted by quantity, so the watchlist is read without
+        // scanning the products. Partial indexes need SQLite 3.8.0, shipped since Android 5.0;
+        // older versions get an index covering both columns, so that at least the products
+        // table itself is not read.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PRODUCT_LOW_STOCK + " ON " +
+                    ProductContract.ProductEntry.TABLE_NAME + " (" + quantity + ") WHERE " +
+                    quantity + " <= " + threshold + ";");
+        } else {
+            db.execSQL(createIndexStatement(INDEX_PRODUCT_LOW_STOCK,
+                    quantity + ", " + threshold));
+        }
+    }
+
+    /**
+     * Create the triggers raising a low-stock alert when a product crosses its reorder
+     * threshold, and removing the alerts of a deleted product. Until version 11, products
+     * inserted at or below their threshold raised an alert too.
+     *
+     * @param db database to migrate
+     */
+    private static void createStockAlertTriggers(SQLiteDatabase db) {
+        String id = ProductContract.ProductEntry._ID;
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String threshold = ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+        String products = ProductContract.ProductEntry.TABLE_NAME;
+        String alerts = ProductContract.StockAlertEntry.TABLE_NAME;
+        String alertProductId = ProductContract.StockAlertEntry.COLUMN_PRODUCT_ID;
+        String alertCreatedAt = ProductContract.StockAlertEntry.COLUMN_CREATED_AT;
+        String insertAlert = " BEGIN INSERT INTO " + alerts + " (" + alertProductId + ", " +
+                alertCreatedAt + ") VALUES (new." + id + ", strftime('%s', 'now')); END;";
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_ALERT_INSERT + " AFTER INSERT ON " + products +
+                " WHEN new." + quantity + " <= new." + threshold + insertAlert);
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_ALERT_UPDATE + " AFTER UPDATE OF " + quantity +
+                ", " + threshold + " ON " + products +
+                " WHEN old." + quantity + " > old." + threshold +
+                " AND new." + quantity + " <= new." + threshold + insertAlert);
+
+        db.execSQL("CREATE TRIGGER " + TRIGGER_ALERT_DELETE + " AFTER DELETE ON " + products +
+                " BEGIN DELETE FROM " + alerts + " WHERE " + alertProductId + " = old." + id +
+                "; END;");
+    }
+
+    /**
+     * Create the stock movements and daily snapshots tables. The current quantity of every
+     * product is recorded as its first movement, so that the movements of a product add up to
+     * its quantity from the start.
+     *
+     * @param db database to migrate
+     */
+    private static void createStockLedger(SQLiteDatabase db) {
+        String movements = ProductContract.StockMovementEntry.TABLE_NAME;
+        String movementProductId = ProductContract.StockMovementEntry.COLUMN_PRODUCT_ID;
+        String movementCreatedAt = ProductContract.StockMovementEntry.COLUMN_CREATED_AT;
+        String snapshotProductId = ProductContract.StockSnapshotEntry.COLUMN_PRODUCT_ID;
+        String snapshotDay = ProductContract.StockSnapshotEntry.COLUMN_DAY;
+
+        // movements are only ever appended, and removed oldest first by the compaction, so the
+        // row ID (rather than an AUTOINCREMENT key) already follows their order
+        db.execSQL("CREATE TABLE " + movements + " (" +
+                ProductContract.StockMovementEntry._ID + " INTEGER PRIMARY KEY, " +
+                movementProductId + " INTEGER NOT NULL, " +
+                ProductContract.StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL, " +
+                movementCreatedAt + " INTEGER NOT NULL, " +
+                ProductContract.StockMovementEntry.COLUMN_REASON + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_MOVEMENT_PRODUCT + " ON " + movements +
+                " (" + movementProductId + ", " + movementCreatedAt + ");");
+
+        // the unique constraint also indexes the snapshots of a product by day
+        db.execSQL("CREATE TABLE " + ProductContract.StockSnapshotEntry.TABLE_NAME + " (" +
+                ProductContract.StockSnapshotEntry._ID + " INTEGER PRIMARY KEY, " +
+                snapshotProductId + " INTEGER NOT NULL, " +
+                snapshotDay + " INTEGER NOT NULL, " +
+                ProductContract.StockSnapshotEntry.COLUMN_UNITS_SOLD +
+                " INTEGER NOT NULL DEFAULT 0, " +
+                ProductContract.StockSnapshotEntry.COLUMN_UNITS_RESTOCKED +
+                " INTEGER NOT NULL DEFAULT 0, " +
+                ProductContract.StockSnapshotEntry.COLUMN_NET_CHANGE +
+                " INTEGER NOT NULL DEFAULT 0, " +
+                ProductContract.StockSnapshotEntry.COLUMN_MOVEMENT_COUNT +
+                " INTEGER NOT NULL DEFAULT 0, " +
+                "UNIQUE (" + snapshotProductId + ", " + snapshotDay + "));");
+
+        db.execSQL("INSERT INTO " + movements + " (" + movementProductId + ", " +
+                ProductContract.StockMovementEntry.COLUMN_DELTA + ", " + movementCreatedAt +
+                ", " + ProductContract.StockMovementEntry.COLUMN_REASON + ") SELECT " +
+                ProductContract.ProductEntry._ID + ", " +
+                ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY +
+                ", strftime('%s', 'now') * 1000, " +
+                ProductContract.StockMovementEntry.REASON_NEW_PRODUCT + " FROM " +
+                ProductContract.ProductEntry.TABLE_NAME + " WHERE " +
+                ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " != 0;");
+    }
+
+    /**
+     * Add the time of the last write of every product, set to now for the existing products,
+     * and create one index per sort order of the list of products. The index on the quantity
+     * alone is replaced by the quantity sort index, which starts with the same column.
+     *
+     * @param db database to migrate
+     */
+    private static void addUpdateTimeAndSortIndexes(SQLiteDatabase db) {
+        String updatedAt = ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT;
+
+        db.execSQL("ALTER TABLE " + ProductContract.ProductEntry.TABLE_NAME + " ADD COLUMN " +
+                updatedAt + PRODUCT_UPDATED_AT_TYPE_AND_CONSTRAINTS + ";");
+        db.execSQL("UPDATE " + ProductContract.ProductEntry.TABLE_NAME + " SET " + updatedAt +
+                " = strftime('%s', 'now') * 1000;");
+
+        createSortIndexes(db);
+        db.execSQL("DROP INDEX IF EXISTS " + INDEX_PRODUCT_QUANTITY + ";");
+    }
+
+    /**
+     * Create one index per sort order of the list of products.
+     *
+     * @param db database to migrate
+     */
+    private static void createSortIndexes(SQLiteDatabase db) {
+        String id = ProductContract.ProductEntry._ID;
+        String name = ProductContract.ProductEntry.COLUMN_PRODUCT_NAME;
+        String price = ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE;
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String updatedAt = ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT;
+
+        // Every index is ordered by its sort column then by ID, the order of the pages, which
+        // the filtered columns then follow. The products are sorted by name ignoring case, so
+        // the name index uses the same collation.
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_NAME_SORT,
+                name + " COLLATE NOCASE, " + id + ", " + quantity + ", " + price));
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_PRICE_SORT,
+                price + ", " + id + ", " + quantity));
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_QUANTITY_SORT,
+                quantity + ", " + id + ", " + price));
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_UPDATED_SORT,
+                updatedAt + ", " + id + ", " + quantity + ", " + price));
+    }
+
+    /**
+     * Move the suppliers into their own table, one row per distinct pair of name and phone
+     * number, so that no product loses its supplier details. The products table is rebuilt with
+     * a reference to the supplier in place of the two supplier columns - SQLite cannot drop
+     * columns - keeping the IDs of the products and the last ID handed out, then its indexes
+     * and triggers are created again. The products are read through a view joining them with
+     * their supplier, and the full-text search table follows the renames of the suppliers.
+     *
+     * @param db database to migrate
+     */
+    private static void createSuppliersTable(SQLiteDatabase db) {
+        String id = ProductContract.ProductEntry._ID;
+        String name = ProductContract.ProductEntry.COLUMN_PRODUCT_NAME;
+        String price = ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE;
+        String quantity = ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY;
+        String supplier = ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER;
+        String phoneNumber = ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER;
+        String supplierId = ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID;
+        String threshold = ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+        String updatedAt = ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT;
+        String products = ProductContract.ProductEntry.TABLE_NAME;
+        String suppliers = ProductContract.SupplierEntry.TABLE_NAME;
+        String supplierName = ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME;
+        String supplierPhoneNumber = ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER;
+        String search = ProductContract.ProductEntry.SEARCH_TABLE_NAME;
+        String copiedColumns = id + ", " + name + ", " + price + ", " + quantity + ", " +
+                threshold + ", " + updatedAt;
+
+        // the unique constraint also indexes the suppliers by name, for the supplier filter
+        db.execSQL("CREATE TABLE " + suppliers + " (" +
+                ProductContract.SupplierEntry._ID + ID_TYPE_AND_CONSTRAINTS + ", " +
+                supplierName + " TEXT NOT NULL, " +
+                supplierPhoneNumber + " TEXT NOT NULL DEFAULT 'n/a', " +
+                "UNIQUE (" + supplierName + ", " + supplierPhoneNumber + "));");
+        db.execSQL("INSERT INTO " + suppliers + " (" + supplierName + ", " +
+                supplierPhoneNumber + ") SELECT DISTINCT " + supplier + ", " + phoneNumber +
+                " FROM " + products + ";");
+
+        db.execSQL("CREATE TABLE " + PRODUCTS_REBUILD_TABLE_NAME + " (" +
+                id + ID_TYPE_AND_CONSTRAINTS + ", " +
+                name + PRODUCT_NAME_TYPE_AND_CONSTRAINTS + ", " +
+                price + PRODUCT_PRICE_TYPE_AND_CONSTRAINTS + ", " +
+                quantity + PRODUCT_QUANTITY_TYPE_AND_CONSTRAINTS + ", " +
+                supplierId + PRODUCT_SUPPLIER_ID_TYPE_AND_CONSTRAINTS + ", " +
+                threshold + PRODUCT_REORDER_THRESHOLD_TYPE_AND_CONSTRAINTS + ", " +
+                updatedAt + PRODUCT_UPDATED_AT_TYPE_AND_CONSTRAINTS + ");");
+        db.execSQL("INSERT INTO " + PRODUCTS_REBUILD_TABLE_NAME + " (" + copiedColumns + ", " +
+                supplierId + ") SELECT " + products + "." + id + ", " + name + ", " + price +
+                ", " + quantity + ", " + threshold + ", " + updatedAt + ", " + suppliers + "." +
+                ProductContract.SupplierEntry._ID + " FROM " + products + " JOIN " + suppliers +
+                " ON " + suppliers + "." + supplierName + " = " + products + "." + supplier +
+                " AND " + suppliers + "." + supplierPhoneNumber + " = " + products + "." +
+                phoneNumber + ";");
+
+        // IDs of deleted products must not be handed out again, as the stock ledger still
+        // refers to them
+        db.execSQL("DELETE FROM " + SEQUENCE_TABLE_NAME + " WHERE name = '" +
+                PRODUCTS_REBUILD_TABLE_NAME + "';");
+        db.execSQL("INSERT INTO " + SEQUENCE_TABLE_NAME + " (name, seq) SELECT '" +
+                PRODUCTS_REBUILD_TABLE_NAME + "', seq FROM " + SEQUENCE_TABLE_NAME +
+                " WHERE name = '" + products + "';");
+
+        // dropping the products table drops its indexes and triggers too
+        db.execSQL("DROP TABLE " + products + ";");
+        db.execSQL("ALTER TABLE " + PRODUCTS_REBUILD_TABLE_NAME + " RENAME TO " + products +
+                ";");
+
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_NAME, name));
+        db.execSQL(createIndexStatement(INDEX_PRODUCT_SUPPLIER_ID, supplierId));
+        createLowStockIndex(db);
+        createSortIndexes(db);
+        createStatsTriggers(db);
+        createStockAlertTriggers(db);
+
+        // the search table keeps the name of the supplier of every product
+        String supplierOfNewProduct = "(SELECT " + supplierName + " FROM " + suppliers +
+                " WHERE " + ProductContract.SupplierEntry._ID + " = new." + supplierId + ")";
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_INSERT + " AFTER INSERT ON " + products +
+                " BEGIN INSERT INTO " + search + " (docid, " + name + ", " + supplier +
+                ") VALUES (new." + id + ", new." + name + ", " + supplierOfNewProduct +
+                "); END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_UPDATE + " AFTER UPDATE OF " + name +
+                ", " + supplierId + " ON " + products + " BEGIN UPDATE " + search + " SET " +
+                name + " = new." + name + ", " + supplier + " = " + supplierOfNewProduct +
+                " WHERE docid = old." + id + "; END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_DELETE + " AFTER DELETE ON " + products +
+                " BEGIN DELETE FROM " + search + " WHERE docid = old." + id + "; END;");
+        db.execSQL("CREATE TRIGGER " + TRIGGER_SEARCH_SUPPLIER_UPDATE + " AFTER UPDATE OF " +
+                supplierName + " ON " + suppliers + " BEGIN UPDATE " + search + " SET " +
+                supplier + " = new." + supplierName + " WHERE docid IN (SELECT " + id +
+                " FROM " + products + " WHERE " + supplierId + " = new." +
+                ProductContract.SupplierEntry._ID + "); END;");
+
+        db.execSQL("CREATE VIEW " + ProductContract.ProductEntry.VIEW_NAME + " AS SELECT " +
+                products + "." + id + " AS " + id + ", " +
+                products + "." + name + " AS " + name + ", " +
+                products + "." + price + " AS " + price + ", " +
+                products + "." + quantity + " AS " + quantity + ", " +
+                suppliers + "." + supplierName + " AS " + supplier + ", " +
+                suppliers + "." + supplierPhoneNumber + " AS " + phoneNumber + ", " +
+                products + "." + supplierId + " AS " + supplierId + ", " +
+                products + "." + threshold + " AS " + threshold + ", " +
+                products + "." + updatedAt + " AS " + updatedAt + " FROM " + products +
+                " JOIN " + suppliers + " ON " + suppliers + "." +
+                ProductContract.SupplierEntry._ID + " = " + products + "." + supplierId + ";");
+    }
+
+    /**
+     * Convert the prices, until now whole units of the currency, into minor units. The column
+     * stays an INTEGER, so the price sort index and the sums of the statistics remain exact;
+     * the statistics trigger applies the new prices to the total value of the stock.
+     *
+     * @param db database to migrate
+     */
+    private static void convertPricesToMinorUnits(SQLiteDatabase db) {
+        String price = ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE;
+
+        db.execSQL("UPDATE " + ProductContract.ProductEntry.TABLE_NAME + " SET " + price +
+                " = " + price + " * " + VERSION_9_PRICE_MINOR_UNITS + ";");
+    }
+
+    /**
+     * Create the one-row table holding the ID of the last applied batch of quantity deltas,
+     * starting with no batch applied.
+     *
+     * @param db database to migrate
+     */
+    private static void createAdjustmentBatchTable(SQLiteDatabase db) {
+        String batches = ProductContract.AdjustmentBatchEntry.TABLE_NAME;
+        String lastBatchId = ProductContract.AdjustmentBatchEntry.COLUMN_LAST_BATCH_ID;
+
+        db.execSQL("CREATE TABLE " + batches + " (" +
+                ProductContract.AdjustmentBatchEntry._ID + " INTEGER PRIMARY KEY, " +
+                lastBatchId + " INTEGER NOT NULL DEFAULT 0);");
+        db.execSQL("INSERT INTO " + batches + " (" + ProductContract.AdjustmentBatchEntry._ID +
+                ") VALUES (" + ProductContract.AdjustmentBatchEntry.BATCH_ROW_ID + ");");
+    }
+
+    /**
+     * Build the SQL statement creating an index on the products table.
+     *
+     * @param indexName name of the index
+     * @param columns   indexed columns, separated by commas
+     * @return the SQL statement
+     */
+    private static String createIndexStatement(String indexName, String columns) {
+        return "CREATE INDEX IF NOT EXISTS " + indexName + " ON " +
+                ProductContract.ProductEntry.TABLE_NAME + " (" + columns + ");";
     }
 }
@@ -0,0 +1,124 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.net.Uri;
+
+/**
+ * Immutable set of restrictions on the list of products: in or out of stock, one supplier, and a
+ * range of prices. The restrictions are passed to the provider as query parameters of the
+ * {@link ProductContract.ProductEntry#CONTENT_URI}.
+ */
+public final class ProductFilter {
+
+    /**
+     * Value of the price bounds meaning there is no bound
+     */
+    public static final long NO_PRICE_BOUND = -1;
+
+    /**
+     * Filter letting all the products through
+     */
+    public static final ProductFilter NONE = new ProductFilter(null, null, NO_PRICE_BOUND,
+            NO_PRICE_BOUND);
+
+    private final String stock;
+    private final String supplier;
+    private final long minPrice;
+    private final long maxPrice;
+
+    /**
+     * Create a filter.
+     *
+     * @param stock    {@link ProductContract.ProductEntry#STOCK_IN},
+     *                 {@link ProductContract.ProductEntry#STOCK_OUT}, or null for all the
+     *                 products
+     * @param supplier of the products, or null for all the suppliers
+     * @param minPrice lowest price of the products, in minor units of the currency, or
+     *                 {@link #NO_PRICE_BOUND}
+     * @param maxPrice highest price of the products, in minor units of the currency, or
+     *                 {@link #NO_PRICE_BOUND}
+     */
+    public ProductFilter(String stock, String supplier, long minPrice, long maxPrice) {
+        this.stock = stock;
+        this.supplier = supplier;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    public String getStock() {
+        return stock;
+    }
+
+    public String getSupplier() {
+        return supplier;
+    }
+
+    public long getMinPrice() {
+        return minPrice;
+    }
+
+    public long getMaxPrice() {
+        return maxPrice;
+    }
+
+    /**
+     * @return whether the filter lets all the products through
+     */
+    public boolean isEmpty() {
+        return stock == null && supplier == null && minPrice == NO_PRICE_BOUND &&
+                maxPrice == NO_PRICE_BOUND;
+    }
+
+    /**
+     * Add the restrictions of the filter to a URI of the products.
+     *
+     * @param uri of the {@link ProductContract.ProductEntry#CONTENT_URI}, possibly with other
+     *            query parameters
+     * @return the URI with the query parameters of the filter appended
+     */
+    public Uri applyTo(Uri uri) {
+        if (isEmpty()) {
+            return uri;
+        }
+        Uri.Builder builder = uri.buildUpon();
+        if (stock != null) {
+            builder.appendQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_STOCK,
+                    stock);
+        }
+        if (supplier != null) {
+            builder.appendQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_SUPPLIER,
+                    supplier);
+        }
+        if (minPrice != NO_PRICE_BOUND) {
+            builder.appendQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_MIN_PRICE,
+                    String.valueOf(minPrice));
+        }
+        if (maxPrice != NO_PRICE_BOUND) {
+            builder.appendQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_MAX_PRICE,
+                    String.valueOf(maxPrice));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ProductFilter)) {
+            return false;
+        }
+        ProductFilter other = (ProductFilter) o;
+        return minPrice == other.minPrice && maxPrice == other.maxPrice &&
+                (stock == null ? other.stock == null : stock.equals(other.stock)) &&
+                (supplier == null ? other.supplier == null : supplier.equals(other.supplier));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = stock == null ? 0 : stock.hashCode();
+        result = 31 * result + (supplier == null ? 0 : supplier.hashCode());
+        result = 31 * result + (int) (minPrice ^ (minPrice >>> 32));
+        result = 31 * result + (int) (maxPrice ^ (maxPrice >>> 32));
+        return result;
+    }
+}
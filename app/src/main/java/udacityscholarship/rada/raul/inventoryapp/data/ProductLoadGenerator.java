@@ -0,0 +1,284 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic generator of realistic products, used to load the database with large amounts
+ * of data from the debug menu and from the tests. All the values are drawn from one single
+ * {@link Random} created from the seed, so the same seed always generates the same products in
+ * the same order.
+ * <p>
+ * The values follow the shapes seen in real inventories: names of one to a few words, prices
+ * and quantities log-normally distributed (many cheap, plentiful products and a long tail of
+ * expensive or scarce ones), some products out of stock, and a fixed number of suppliers whose
+ * share of the products follows a Zipf distribution (a few suppliers supply most products).
+ */
+public class ProductLoadGenerator {
+
+    /**
+     * Words the product names are made of, and suffixes sometimes appended to them
+     */
+    private static final String[] NAME_WORDS = {
+            "Organic", "Whole", "Milk", "Bread", "Butter", "Cheese", "Apple", "Orange", "Juice",
+            "Coffee", "Tea", "Green", "Black", "Sparkling", "Water", "Rice", "Pasta", "Tomato",
+            "Sauce", "Olive", "Oil", "Chocolate", "Dark", "Cookies", "Cereal", "Honey", "Yogurt",
+            "Greek", "Chicken", "Soup", "Beans", "Peanut", "Almond", "Vanilla", "Strawberry",
+            "Jam", "Crackers", "Salted", "Sea", "Salt", "Pepper", "Flour", "Sugar", "Brown",
+            "Classic", "Family", "Pack", "Premium", "Light", "Extra"
+    };
+    private static final String[] NAME_SUFFIXES = {
+            "250g", "500g", "1kg", "330ml", "1L", "6 x 1L", "12 pcs", "XL"
+    };
+
+    /**
+     * Words the supplier names are made of
+     */
+    private static final String[] SUPPLIER_WORDS = {
+            "North", "Sunrise", "Valley", "Harbor", "Golden", "Green", "River", "Summit",
+            "Maple", "Cedar", "Atlas", "Pioneer", "Union", "Coastal", "Prairie", "Evergreen"
+    };
+    private static final String[] SUPPLIER_SUFFIXES = {
+            "Foods", "Farms", "Trading", "Distribution", "Wholesale", "Imports", "& Sons", "Co."
+    };
+
+    /**
+     * Separator of the words of the names
+     */
+    private static final String WORD_SEPARATOR = " ";
+
+    /**
+     * Shape of the product names: the number of words after the first one is geometric, and a
+     * suffix is appended to some of the names.
+     */
+    private static final double EXTRA_WORD_PROBABILITY = 0.55;
+    private static final int MAX_NAME_WORDS = 6;
+    private static final double NAME_SUFFIX_PROBABILITY = 0.3;
+
+    /**
+     * Log-normal shape of the prices, in minor units of the currency: median and spread
+     * (standard deviation of the logarithm), and highest price - 8.00 and 100000.00
+     */
+    private static final double MEDIAN_PRICE =
+            8 * Math.pow(10, ProductContract.ProductEntry.PRICE_SCALE);
+    private static final double PRICE_SPREAD = 1.0;
+    private static final int MAX_PRICE =
+            (int) (100000 * Math.pow(10, ProductContract.ProductEntry.PRICE_SCALE));
+
+    /**
+     * Shape of the quantities: share of products out of stock, then log-normal median and spread
+     */
+    private static final double OUT_OF_STOCK_PROBABILITY = 0.08;
+    private static final double MEDIAN_QUANTITY = 20;
+    private static final double QUANTITY_SPREAD = 1.2;
+    private static final int MAX_QUANTITY = 100000;
+
+    /**
+     * Shape of the reorder thresholds: share of products with a threshold, and maximum threshold
+     */
+    private static final double REORDER_THRESHOLD_PROBABILITY = 0.5;
+    private static final int MAX_REORDER_THRESHOLD = 10;
+
+    /**
+     * Exponent of the Zipf distribution of the products among the suppliers
+     */
+    private static final double SUPPLIER_ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Maximum number of suppliers, which are all held in memory
+     */
+    public static final int MAX_SUPPLIERS = 100000;
+
+    /**
+     * Strings used for throwing errors
+     */
+    private static final String INVALID_SUPPLIER_COUNT = "Supplier count must be between 1 and ";
+
+    /**
+     * Source of all the random values
+     */
+    private final Random random;
+
+    /**
+     * Names and phone numbers of the suppliers, generated once, so all the products of a
+     * supplier share the same strings
+     */
+    private final String[] supplierNames;
+    private final String[] supplierPhoneNumbers;
+
+    /**
+     * Cumulative Zipf weights of the suppliers, searched to draw the supplier of a product
+     */
+    private final double[] supplierCumulativeWeights;
+
+    /**
+     * Builder of the product names, reused from one product to the next
+     */
+    private final StringBuilder nameBuilder = new StringBuilder();
+
+    /**
+     * Create a generator.
+     *
+     * @param seed          of the random values; the same seed generates the same products
+     * @param supplierCount number of distinct suppliers of the products
+     */
+    public ProductLoadGenerator(long seed, int supplierCount) {
+        if (supplierCount < 1 || supplierCount > MAX_SUPPLIERS) {
+            throw new IllegalArgumentException(INVALID_SUPPLIER_COUNT + MAX_SUPPLIERS);
+        }
+        random = new Random(seed);
+        supplierNames = new String[supplierCount];
+        supplierPhoneNumbers = new String[supplierCount];
+        supplierCumulativeWeights = new double[supplierCount];
+        double cumulativeWeight = 0;
+        for (int i = 0; i < supplierCount; i++) {
+            supplierNames[i] = buildSupplierName(i);
+            supplierPhoneNumbers[i] = buildSupplierPhoneNumber(i);
+            cumulativeWeight += 1 / Math.pow(i + 1, SUPPLIER_ZIPF_EXPONENT);
+            supplierCumulativeWeights[i] = cumulativeWeight;
+        }
+    }
+
+    /**
+     * Generate the next product.
+     *
+     * @param values cleared, then filled with the product
+     */
+    public void nextProduct(ContentValues values) {
+        values.clear();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME, nextName());
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+                nextLogNormal(MEDIAN_PRICE, PRICE_SPREAD, MAX_PRICE));
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+                random.nextDouble() < OUT_OF_STOCK_PROBABILITY ? 0 :
+                        nextLogNormal(MEDIAN_QUANTITY, QUANTITY_SPREAD, MAX_QUANTITY));
+        int supplier = nextSupplier();
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER, supplierNames[supplier]);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                supplierPhoneNumbers[supplier]);
+        values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD,
+                random.nextDouble() < REORDER_THRESHOLD_PROBABILITY ?
+                        random.nextInt(MAX_REORDER_THRESHOLD) + 1 : 0);
+    }
+
+    /**
+     * Generate products and insert them through the provider's bulk insert, one transaction per
+     * batch. Only one batch of products is held in memory. Runs on the calling thread, which
+     * should not be the main thread.
+     *
+     * @param contentResolver used to reach the {@link ProductProvider}
+     * @param productCount    number of products to generate
+     * @param batchSize       number of products inserted in each transaction
+     * @return number of products inserted
+     */
+    public long insertProducts(ContentResolver contentResolver, long productCount,
+                               int batchSize) {
+        ContentValues[] batch = newBatch(batchSize);
+        long productsInserted = 0;
+        long productsLeft = productCount;
+        while (productsLeft > 0) {
+            int count = (int) Math.min(batchSize, productsLeft);
+            productsInserted += insertBatch(contentResolver, batch, count);
+            productsLeft -= count;
+        }
+        return productsInserted;
+    }
+
+    /**
+     * Create the values reused by {@link #insertBatch(ContentResolver, ContentValues[], int)}
+     * for each batch of products.
+     *
+     * @param batchSize maximum number of products inserted in one transaction
+     * @return empty values, one for each product of a batch
+     */
+    public static ContentValues[] newBatch(int batchSize) {
+        ContentValues[] batch = new ContentValues[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = new ContentValues();
+        }
+        return batch;
+    }
+
+    /**
+     * Generate one batch of products and insert it through the provider's bulk insert, in one
+     * transaction. Runs on the calling thread, which should not be the main thread.
+     *
+     * @param contentResolver used to reach the {@link ProductProvider}
+     * @param batch           values created by {@link #newBatch(int)}, filled with the products
+     * @param count           number of products to generate, at most the size of the batch
+     * @return number of products inserted
+     */
+    public int insertBatch(ContentResolver contentResolver, ContentValues[] batch, int count) {
+        for (int i = 0; i < count; i++) {
+            nextProduct(batch[i]);
+        }
+        return contentResolver.bulkInsert(ProductContract.ProductEntry.CONTENT_URI,
+                count == batch.length ? batch : Arrays.copyOf(batch, count));
+    }
+
+    /**
+     * @return name of one to {@link #MAX_NAME_WORDS} words, sometimes followed by a suffix
+     */
+    private String nextName() {
+        nameBuilder.setLength(0);
+        nameBuilder.append(NAME_WORDS[random.nextInt(NAME_WORDS.length)]);
+        for (int words = 1; words < MAX_NAME_WORDS &&
+                random.nextDouble() < EXTRA_WORD_PROBABILITY; words++) {
+            nameBuilder.append(WORD_SEPARATOR)
+                    .append(NAME_WORDS[random.nextInt(NAME_WORDS.length)]);
+        }
+        if (random.nextDouble() < NAME_SUFFIX_PROBABILITY) {
+            nameBuilder.append(WORD_SEPARATOR)
+                    .append(NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)]);
+        }
+        return nameBuilder.toString();
+    }
+
+    /**
+     * @param median of the values
+     * @param spread standard deviation of the logarithm of the values
+     * @param max    maximum value
+     * @return log-normally distributed whole number, between 0 and max
+     */
+    private int nextLogNormal(double median, double spread, int max) {
+        double value = Math.exp(Math.log(median) + spread * random.nextGaussian());
+        return (int) Math.min(max, Math.round(value));
+    }
+
+    /**
+     * @return index of a supplier, drawn from the Zipf distribution
+     */
+    private int nextSupplier() {
+        double target = random.nextDouble() *
+                supplierCumulativeWeights[supplierCumulativeWeights.length - 1];
+        int index = Arrays.binarySearch(supplierCumulativeWeights, target);
+        // binarySearch returns (-(insertion point) - 1) when the target is between two weights
+        return index >= 0 ? index : Math.min(-index - 1, supplierCumulativeWeights.length - 1);
+    }
+
+    /**
+     * @param index of the supplier
+     * @return name of the supplier, distinct from the names of all the other suppliers
+     */
+    private static String buildSupplierName(int index) {
+        int combinations = SUPPLIER_WORDS.length * SUPPLIER_SUFFIXES.length;
+        String name = SUPPLIER_WORDS[index % SUPPLIER_WORDS.length] + WORD_SEPARATOR +
+                SUPPLIER_SUFFIXES[(index / SUPPLIER_WORDS.length) % SUPPLIER_SUFFIXES.length];
+        if (index >= combinations) {
+            name += WORD_SEPARATOR + (index / combinations + 1);
+        }
+        return name;
+    }
+
+    /**
+     * @param index of the supplier
+     * @return phone number of the supplier
+     */
+    private static String buildSupplierPhoneNumber(int index) {
+        return String.format(Locale.ROOT, "+1 555 %07d", index);
+    }
+}
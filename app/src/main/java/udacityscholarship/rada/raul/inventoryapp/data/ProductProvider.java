@@ -3,15 +3,37 @@
 
 package udacityscholarship.rada.raul.inventoryapp.data;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import udacityscholarship.rada.raul.inventoryapp.R;
 
 /**
@@ -31,6 +53,69 @@ public class ProductProvider extends ContentProvider {
      * URI matcher code for the content URI for a single product in the products table
      */
     private static final int PRODUCT_ID = 11;
+    /**
+     * URI matcher code for the content URI adjusting the quantity of a single product
+     */
+    private static final int PRODUCT_ADJUST = 12;
+    /**
+     * URI matcher code for the content URI searching products by name or supplier
+     */
+    private static final int PRODUCT_SEARCH = 13;
+    /**
+     * URI matcher code for the content URI of the inventory statistics
+     */
+    private static final int PRODUCT_STATS = 14;
+    /**
+     * URI matcher code for the content URI of the products at or below their reorder threshold
+     */
+    private static final int PRODUCT_LOW_STOCK = 15;
+    /**
+     * URI matcher code for the content URI of the recent stock movements of a single product
+     */
+    private static final int PRODUCT_MOVEMENTS = 16;
+    /**
+     * URI matcher code for the content URI of the daily stock snapshots of a single product
+     */
+    private static final int PRODUCT_SNAPSHOTS = 17;
+    /**
+     * URI matcher code for the content URI of the CSV export of all the products
+     */
+    private static final int PRODUCT_EXPORT = 18;
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 19;
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table
+     */
+    private static final int SUPPLIER_ID = 20;
+
+    /**
+     * Names of the targets of the provider metrics: the URIs, indexed by their matcher code minus
+     * {@link #PRODUCTS}, then the batches, then the provider methods, then anything else, such as
+     * unknown URIs and methods.
+     */
+    private static final String[] METRICS_URI_TARGETS = {
+            "products", "products/#", "products/#/adjust", "products/search", "products/stats",
+            "products/low_stock", "products/#/movements", "products/#/snapshots",
+            "products/export", "suppliers", "suppliers/#"
+    };
+    private static final String[] METRICS_CALL_METHODS = {
+            ProductContract.ProductEntry.METHOD_ADJUST_QUANTITY,
+            ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES,
+            ProductContract.ProductEntry.METHOD_TAKE_STOCK_ALERTS,
+            ProductContract.METHOD_CHECKPOINT,
+            ProductContract.METHOD_COMPACT_LEDGER,
+            ProductContract.METHOD_CACHE_STATS,
+            ProductContract.METHOD_METRICS,
+            ProductContract.METHOD_SLOW_QUERIES
+    };
+    private static final String METRICS_BATCH_TARGET_NAME = "batch";
+    private static final String METRICS_OTHER_TARGET_NAME = "other";
+    private static final int METRICS_BATCH_TARGET = METRICS_URI_TARGETS.length;
+    private static final int METRICS_FIRST_CALL_TARGET = METRICS_BATCH_TARGET + 1;
+    private static final int METRICS_OTHER_TARGET =
+            METRICS_FIRST_CALL_TARGET + METRICS_CALL_METHODS.length;
     private static final String URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR = "/#";
     /**
      * UriMatcher object to match a content URI to a corresponding code.
@@ -52,7 +137,213 @@ public class ProductProvider extends ContentProvider {
     private static String CANNOT_UPDATE_URI = "Update is not supported for ";
     private static String INSERTION_FAILED = "Failed to insert row for ";
     private static String UNKNOWN_URI = "Unknown URI ";
+    private static String CANNOT_OPEN_URI = "Cannot open file for ";
+    private static String EXPORT_INTERRUPTED = "Export interrupted for ";
     private static String WITH_URI_MATCH = " with URI match ";
+    private static String QUANTITY_DELTA_REQUIRED = "Quantity delta must be provided for ";
+    private static String INVALID_QUERY_PARAMETER = "Invalid query parameter ";
+    private static String PAGE_SORT_ORDER_NOT_SUPPORTED =
+            "Paged and sorted queries are sorted by their sort parameter, sort order not " +
+                    "supported: ";
+    private static String AFTER_VALUE_REQUIRED =
+            "The value of the last product of the previous page must be provided for ";
+    private static String SEARCH_SELECTION_NOT_SUPPORTED =
+            "Searches are sorted by relevance, selection and sort order not supported for ";
+    private static String SUPPLIER_DETAILS_REQUIRED =
+            "The supplier name and phone number must be written together for ";
+    private static String SUPPLIER_ALREADY_EXISTS =
+            "Another supplier already has this name and phone number, not updating ";
+
+    /**
+     * Pieces of the full-text search queries. The searched text is split into words, and every
+     * word is matched as a prefix: "milk 2" becomes "milk*" "2*". Products whose name matches
+     * all the words rank before products which only match through their supplier.
+     */
+    private static final String SEARCH_WORD_SEPARATOR = "\\s+";
+    private static final String SEARCH_PHRASE_QUOTE = "\"";
+    private static final String SEARCH_SEARCHABLE_WORD = ".*[\\p{L}\\p{N}].*";
+    private static final String SEARCH_PREFIX_WILDCARD = "*";
+    private static final String SEARCH_COLUMN_FILTER_SEPARATOR = ":";
+    private static final String SEARCH_TERMS_SEPARATOR = " ";
+    private static final String SQL_SEARCH_FROM = " FROM " +
+            ProductContract.ProductEntry.VIEW_NAME + " JOIN " +
+            ProductContract.ProductEntry.SEARCH_TABLE_NAME + " ON " +
+            ProductContract.ProductEntry.VIEW_NAME + "." + ProductContract.ProductEntry._ID +
+            " = " + ProductContract.ProductEntry.SEARCH_TABLE_NAME + ".docid WHERE " +
+            ProductContract.ProductEntry.SEARCH_TABLE_NAME + " MATCH ? ORDER BY CASE WHEN " +
+            ProductContract.ProductEntry.VIEW_NAME + "." + ProductContract.ProductEntry._ID +
+            " IN (SELECT docid FROM " + ProductContract.ProductEntry.SEARCH_TABLE_NAME +
+            " WHERE " + ProductContract.ProductEntry.SEARCH_TABLE_NAME +
+            " MATCH ?) THEN 0 ELSE 1 END, " + ProductContract.ProductEntry.VIEW_NAME + "." +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME;
+    private static final String SQL_LIMIT = " LIMIT ";
+
+    /**
+     * Selection and sort order used for keyset pagination over the products table
+     */
+    private static final String AFTER_ID_SELECTION = ProductContract.ProductEntry._ID + " > ?";
+    private static final String ID_SORT_ORDER = ProductContract.ProductEntry._ID + " ASC";
+
+    /**
+     * Values of the sort query parameter, and the keys by which they sort the products, with the
+     * same collation as the index of each order. Products with the same key are sorted by ID.
+     * Only the values in this list are accepted, so the sort parameter never reaches the SQL.
+     */
+    private static final String[] SORT_VALUES = {
+            ProductContract.ProductEntry.SORT_ID,
+            ProductContract.ProductEntry.SORT_NAME,
+            ProductContract.ProductEntry.SORT_PRICE,
+            ProductContract.ProductEntry.SORT_QUANTITY,
+            ProductContract.ProductEntry.SORT_RECENTLY_UPDATED
+    };
+    private static final String[] SORT_KEYS = {
+            ProductContract.ProductEntry._ID,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE",
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT
+    };
+    private static final int SORT_ID_INDEX = 0;
+    private static final int SORT_NAME_INDEX = 1;
+    private static final int SORT_RECENTLY_UPDATED_INDEX = 4;
+
+    /**
+     * Pieces of the sort orders, and of the keyset selections continuing a sorted page
+     */
+    private static final String SQL_ASCENDING = " ASC";
+    private static final String SQL_DESCENDING = " DESC";
+    private static final String SQL_ORDER_SEPARATOR = ", ";
+    private static final String SQL_AT_LEAST_PARAMETER = " >= ?";
+    private static final String SQL_AT_MOST_PARAMETER = " <= ?";
+    private static final String SQL_GREATER_THAN_PARAMETER = " > ?";
+    private static final String SQL_LESS_THAN_PARAMETER = " < ?";
+    private static final String SQL_AND_OPEN = " AND (";
+    private static final String SQL_OR = " OR ";
+    private static final String SQL_CLOSE = ")";
+
+    /**
+     * Selections of the filters of the list of products
+     */
+    private static final String IN_STOCK_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " > 0";
+    private static final String OUT_OF_STOCK_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= 0";
+    private static final String SUPPLIER_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER + " = ?";
+    private static final String MIN_PRICE_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE + SQL_AT_LEAST_PARAMETER;
+    private static final String MAX_PRICE_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE + SQL_AT_MOST_PARAMETER;
+
+    /**
+     * Selection and sort order of the low-stock watchlist. The selection is the same as the
+     * condition of the partial low-stock index, so that SQLite reads the watchlist from that
+     * index, already sorted by quantity.
+     */
+    private static final String LOW_STOCK_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " <= " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD;
+    private static final String LOW_STOCK_SORT_ORDER =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " ASC";
+
+    /**
+     * SQL queries taking the pending low-stock alerts: the products which crossed their reorder
+     * threshold, once each, as long as they are still at or below it, in the order of their
+     * IDs and at most {@link #SQL_LIMIT} at a time. The alerts of the products up to the last
+     * one taken are then deleted - including the alerts of the products restocked meanwhile,
+     * which are not taken. Bound argument of the partial deletion: ID of the last product taken.
+     */
+    private static final String SQL_SELECT_STOCK_ALERTS = "SELECT DISTINCT " +
+            ProductContract.ProductEntry.TABLE_NAME + "." + ProductContract.ProductEntry._ID +
+            ", " + ProductContract.ProductEntry.COLUMN_PRODUCT_NAME + ", " +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " FROM " +
+            ProductContract.StockAlertEntry.TABLE_NAME + " JOIN " +
+            ProductContract.ProductEntry.TABLE_NAME + " ON " +
+            ProductContract.StockAlertEntry.TABLE_NAME + "." +
+            ProductContract.StockAlertEntry.COLUMN_PRODUCT_ID + " = " +
+            ProductContract.ProductEntry.TABLE_NAME + "." + ProductContract.ProductEntry._ID +
+            " WHERE " + LOW_STOCK_SELECTION + " ORDER BY " +
+            ProductContract.ProductEntry.TABLE_NAME + "." + ProductContract.ProductEntry._ID;
+    private static final String SQL_DELETE_STOCK_ALERTS = "DELETE FROM " +
+            ProductContract.StockAlertEntry.TABLE_NAME;
+    private static final String SQL_DELETE_STOCK_ALERTS_UP_TO = SQL_DELETE_STOCK_ALERTS +
+            " WHERE " + ProductContract.StockAlertEntry.COLUMN_PRODUCT_ID + " <= ?";
+
+    /**
+     * Maximum number of alerts taken by one call of
+     * {@link ProductContract.ProductEntry#METHOD_TAKE_STOCK_ALERTS}, unless the caller asks
+     * for fewer
+     */
+    private static final int MAX_STOCK_ALERTS = 500;
+
+    /**
+     * SQL statements reading and updating the ID of the last applied batch of quantity deltas.
+     * Bound argument of the update: ID of the batch.
+     */
+    private static final String SQL_SELECT_LAST_BATCH_ID = "SELECT " +
+            ProductContract.AdjustmentBatchEntry.COLUMN_LAST_BATCH_ID + " FROM " +
+            ProductContract.AdjustmentBatchEntry.TABLE_NAME + " WHERE " +
+            ProductContract.AdjustmentBatchEntry._ID + " = " +
+            ProductContract.AdjustmentBatchEntry.BATCH_ROW_ID;
+    private static final String SQL_UPDATE_LAST_BATCH_ID = "UPDATE " +
+            ProductContract.AdjustmentBatchEntry.TABLE_NAME + " SET " +
+            ProductContract.AdjustmentBatchEntry.COLUMN_LAST_BATCH_ID + " = ? WHERE " +
+            ProductContract.AdjustmentBatchEntry._ID + " = " +
+            ProductContract.AdjustmentBatchEntry.BATCH_ROW_ID;
+
+    /**
+     * Batch ID of the adjustments which are not part of a batch, and may be applied any number
+     * of times
+     */
+    private static final long NO_BATCH_ID = 0;
+
+    /**
+     * Pieces of the selection restricting a write of the products table to the products
+     * matched, in the products view, by the selection of the caller - which may refer to the
+     * supplier columns of the view
+     */
+    private static final String SQL_PRODUCTS_IN_VIEW = ProductContract.ProductEntry._ID +
+            " IN (SELECT " + ProductContract.ProductEntry._ID + " FROM " +
+            ProductContract.ProductEntry.VIEW_NAME + " WHERE ";
+
+    /**
+     * Pieces of the SQL query reading the current suppliers of the products matched by a
+     * selection of the products table: ID, name and phone number of each supplier. The
+     * selection goes between {@link #SQL_WHERE} and {@link #SQL_CLOSE}.
+     */
+    private static final String SQL_SELECT_SUPPLIERS_OF_PRODUCTS = "SELECT " +
+            ProductContract.SupplierEntry._ID + ", " +
+            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME + ", " +
+            ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " FROM " +
+            ProductContract.SupplierEntry.TABLE_NAME + " WHERE " +
+            ProductContract.SupplierEntry._ID + " IN (SELECT " +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + " FROM " +
+            ProductContract.ProductEntry.TABLE_NAME;
+    private static final String SQL_WHERE = " WHERE ";
+
+    /**
+     * Selection of the products of one supplier, to which the selection of the caller is added
+     */
+    private static final String PRODUCTS_OF_SUPPLIER_SELECTION =
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + SINGLE_PRODUCT_PLACEHOLDER;
+
+    /**
+     * Sort order of the suppliers, by name ignoring case
+     */
+    private static final String SUPPLIER_SORT_ORDER =
+            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME + " COLLATE NOCASE ASC";
+
+    /**
+     * Selection and sort orders of the stock ledger of a single product
+     */
+    private static final String MOVEMENT_PRODUCT_SELECTION =
+            ProductContract.StockMovementEntry.COLUMN_PRODUCT_ID + SINGLE_PRODUCT_PLACEHOLDER;
+    private static final String MOVEMENT_SORT_ORDER =
+            ProductContract.StockMovementEntry.COLUMN_CREATED_AT + " ASC";
+    private static final String SNAPSHOT_PRODUCT_SELECTION =
+            ProductContract.StockSnapshotEntry.COLUMN_PRODUCT_ID + SINGLE_PRODUCT_PLACEHOLDER;
+    private static final String SNAPSHOT_SORT_ORDER =
+            ProductContract.StockSnapshotEntry.COLUMN_DAY + " ASC";
 
     // Static initializer. This is run the first time anything is called from this class.
     static {
@@ -79,29 +370,318 @@ public class ProductProvider extends ContentProvider {
          */
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
                 ProductContract.PATH_PRODUCTS + URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR, PRODUCT_ID);
+
+        /**
+         * The content URI of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/search" will map to the
+         * integer code {@link #PRODUCT_SEARCH}. This URI is used to search products by name or
+         * supplier, through the full-text search table.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + ProductContract.SLASH +
+                        ProductContract.PATH_SEARCH, PRODUCT_SEARCH);
+
+        /**
+         * The content URI of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/stats" will map to the
+         * integer code {@link #PRODUCT_STATS}. This URI is used to read the one-row inventory
+         * statistics, kept up to date by triggers.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + ProductContract.SLASH +
+                        ProductContract.PATH_STATS, PRODUCT_STATS);
+
+        /**
+         * The content URI of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/low_stock" will map to
+         * the integer code {@link #PRODUCT_LOW_STOCK}. This URI is used to read the products
+         * whose quantity is at or below their reorder threshold.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + ProductContract.SLASH +
+                        ProductContract.PATH_LOW_STOCK, PRODUCT_LOW_STOCK);
+
+        /**
+         * The content URIs of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/#/movements" and
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/#/snapshots" will map to
+         * the integer codes {@link #PRODUCT_MOVEMENTS} and {@link #PRODUCT_SNAPSHOTS}. These URIs
+         * are used to read the stock ledger of ONE single product.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR +
+                        ProductContract.SLASH + ProductContract.PATH_MOVEMENTS, PRODUCT_MOVEMENTS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR +
+                        ProductContract.SLASH + ProductContract.PATH_SNAPSHOTS, PRODUCT_SNAPSHOTS);
+
+        /**
+         * The content URI of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/#/adjust" will map to the
+         * integer code {@link #PRODUCT_ADJUST}. This URI is only used for updates, in order to
+         * add a delta to the quantity of ONE single product in one single SQL statement.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR +
+                        ProductContract.SLASH + ProductContract.PATH_ADJUST, PRODUCT_ADJUST);
+
+        /**
+         * The content URI of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/products/export" will map to the
+         * integer code {@link #PRODUCT_EXPORT}. This URI is only used through
+         * {@link #openFile(Uri, String)}, in order to read all the products as a CSV file.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + ProductContract.SLASH +
+                        ProductContract.PATH_EXPORT, PRODUCT_EXPORT);
+
+        /**
+         * The content URIs of the form
+         * "content://udacityscholarship.rada.raul.inventoryapp/suppliers" and
+         * "content://udacityscholarship.rada.raul.inventoryapp/suppliers/#" will map to the
+         * integer codes {@link #SUPPLIERS} and {@link #SUPPLIER_ID}. These URIs are used to
+         * provide access to MULTIPLE rows, and to ONE single row, of the suppliers table.
+         */
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUPPLIERS,
+                SUPPLIERS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_SUPPLIERS + URI_INDIVIDUAL_PRODUCT_CONSTRUCTOR, SUPPLIER_ID);
     }
 
+    /**
+     * Mode in which the CSV export can be opened
+     */
+    private static final String READ_MODE = "r";
+
     /**
      * Database helper object that will provide us access to the database
      */
     private ProductDbHelper productDbHelper;
 
+    /**
+     * Cache of single products, serving the queries of {@link #PRODUCT_ID} URIs
+     */
+    private ProductCache productCache;
+
+    /**
+     * IDs of the suppliers, by name and phone number, used to write the products
+     */
+    private SupplierDictionary supplierDictionary;
+
+    /**
+     * URIs of the products changed on the calling thread while a multi-row operation (such as
+     * {@link #applyBatch(ArrayList)}) runs, or null when no such operation runs. The individual
+     * changes do not notify listeners one by one; a single notification is sent once the whole
+     * operation has been committed.
+     */
+    private final ThreadLocal<Set<Uri>> batchedNotifications = new ThreadLocal<Set<Uri>>();
+
+    /**
+     * Compiled statements for the most common writes
+     */
+    private ProductStatements productStatements;
+
+    /**
+     * Rules checked before every product insert
+     */
+    private ProductValidator productValidator;
+
+    /**
+     * Latency and throughput metrics of every operation of the provider
+     */
+    private ProviderMetrics providerMetrics;
+
+    /**
+     * Log of the slowest queries, off unless a threshold is configured or set through
+     * {@link ProductContract#METHOD_SLOW_QUERIES}
+     */
+    private SlowQueryLog slowQueryLog;
+
+    /**
+     * Writer of the stock movements ledger
+     */
+    private StockLedger stockLedger;
+
+    /**
+     * Number of days, before today, whose stock movements are kept before being compacted
+     */
+    private int ledgerRetentionDays;
+
+    /**
+     * Minimum time between two compactions of the stock ledger triggered by product changes
+     */
+    private long ledgerCompactionIntervalMillis;
+
+    /**
+     * Time, as in {@link System#currentTimeMillis()}, from which the next product change
+     * compacts the stock ledger. Starts at 0, so the first change after the app started
+     * compacts it: the app rarely keeps running for a whole interval.
+     */
+    private final AtomicLong nextLedgerCompactionMillis = new AtomicLong();
+
+    /**
+     * Writer of the CSV export into the pipe opened by {@link #openFile(Uri, String)}. It runs on
+     * a background thread, and writes the products as the reader consumes them.
+     */
+    private final PipeDataWriter<Void> exportPipeWriter = new PipeDataWriter<Void>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                    Bundle opts, Void args) {
+            // the pipe itself is closed by openPipeHelper() once the export returns
+            FileOutputStream outputStream = new FileOutputStream(output.getFileDescriptor());
+            try {
+                new ProductCsvExporter(getContext().getContentResolver(),
+                        ProductCsvExporter.DEFAULT_CHUNK_SIZE).export(outputStream, null, null);
+            } catch (IOException e) {
+                // the reader closed its end of the pipe before reading the whole file
+                Log.w(LOG_TAG, EXPORT_INTERRUPTED + uri, e);
+            }
+        }
+    };
+
     /**
      * Initialize the provider and the database helper object.
      */
     @Override
     public boolean onCreate() {
         productDbHelper = new ProductDbHelper(getContext());
+        productStatements = new ProductStatements(productDbHelper);
+        productValidator = new ProductValidator(getContext());
+        providerMetrics = new ProviderMetrics(buildMetricsTargetNames());
+        slowQueryLog = new SlowQueryLog(
+                getContext().getResources().getInteger(R.integer.slow_query_log_size),
+                getContext().getResources().getInteger(R.integer.slow_query_threshold_millis));
+        stockLedger = new StockLedger(productDbHelper);
+        ledgerRetentionDays = getContext().getResources().getInteger(
+                R.integer.ledger_retention_days);
+        ledgerCompactionIntervalMillis = TimeUnit.HOURS.toMillis(getContext().getResources()
+                .getInteger(R.integer.ledger_compaction_interval_hours));
+        productCache = new ProductCache(
+                getContext().getResources().getInteger(R.integer.product_cache_size_bytes));
+        supplierDictionary = new SupplierDictionary(
+                getContext().getResources().getInteger(R.integer.supplier_dictionary_size));
         return true;
     }
 
     /**
-     * Perform the query for the given URI. Use the given projection, selection,
-     * selection arguments, and sort order.
+     * Close the database. Only called by the tests, which create a provider of their own on a
+     * throwaway database.
+     */
+    @Override
+    public void shutdown() {
+        productDbHelper.close();
+        super.shutdown();
+    }
+
+    /**
+     * Called when the system asks the app to release memory. Once the app is in the background,
+     * this is a good time to compact the stock ledger, to checkpoint the write-ahead log and to
+     * release the SQLite caches. The ledger is also compacted periodically while products
+     * change, by {@link #compactLedgerIfDue()}, as the app may never be sent to the background.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level < ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+
+        // the cached products and suppliers are read again from the database when needed
+        productCache.invalidateAll();
+        supplierDictionary.clear();
+
+        // checkpoint on the writer thread, so the main thread does not wait for the disk and
+        // the checkpoint does not compete with the writes for the database lock
+        ProductRepository.getInstance(getContext()).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // compact first, so that the checkpoint also copies the compacted ledger
+                    stockLedger.compact(productDbHelper.getWritableDatabase(),
+                            ledgerRetentionDays);
+                    productDbHelper.checkpoint();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, e.getMessage(), e);
+                }
+                SQLiteDatabase.releaseMemory();
+            }
+        });
+    }
+
+    /**
+     * Write the slow-query log to the dump of the provider, read with
+     * "adb shell dumpsys activity provider ProductProvider".
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        slowQueryLog.dump(writer);
+    }
+
+    /**
+     * @return names of the targets of the provider metrics, indexed as by
+     * {@link #getUriTarget(Uri)} and {@link #getMethodTarget(String)}
+     */
+    private static String[] buildMetricsTargetNames() {
+        String[] targetNames = new String[METRICS_OTHER_TARGET + 1];
+        System.arraycopy(METRICS_URI_TARGETS, 0, targetNames, 0, METRICS_URI_TARGETS.length);
+        targetNames[METRICS_BATCH_TARGET] = METRICS_BATCH_TARGET_NAME;
+        System.arraycopy(METRICS_CALL_METHODS, 0, targetNames, METRICS_FIRST_CALL_TARGET,
+                METRICS_CALL_METHODS.length);
+        targetNames[METRICS_OTHER_TARGET] = METRICS_OTHER_TARGET_NAME;
+        return targetNames;
+    }
+
+    /**
+     * @param uri of an operation of the provider
+     * @return target of the operation in the provider metrics
+     */
+    private static int getUriTarget(Uri uri) {
+        int target = sUriMatcher.match(uri) - PRODUCTS;
+        return target >= 0 && target < METRICS_URI_TARGETS.length ? target : METRICS_OTHER_TARGET;
+    }
+
+    /**
+     * @param method called on the provider
+     * @return target of the call in the provider metrics
+     */
+    private static int getMethodTarget(String method) {
+        for (int i = 0; i < METRICS_CALL_METHODS.length; i++) {
+            if (METRICS_CALL_METHODS[i].equals(method)) {
+                return METRICS_FIRST_CALL_TARGET + i;
+            }
+        }
+        return METRICS_OTHER_TARGET;
+    }
+
+    /**
+     * Perform the query for the given URI, and record its latency in the provider metrics. The
+     * number of rows returned is recorded later, by the returned {@link RowCountingCursor}, once
+     * the caller counts them: counting them here would fill the cursor's first window inside the
+     * provider, adding to the latency of every query.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long startNanos = System.nanoTime();
+        int target = getUriTarget(uri);
+        boolean isFailed = true;
+        try {
+            Cursor cursor = performQuery(uri, projection, selection, selectionArgs, sortOrder);
+            isFailed = false;
+            return new RowCountingCursor(cursor, providerMetrics,
+                    ProviderMetrics.OPERATION_QUERY, target);
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_QUERY, target, startNanos, 0,
+                    isFailed);
+        }
+    }
+
+    /**
+     * Helper method performing the query for the given URI. Use the given projection, selection,
+     * selection arguments, and sort order.
+     */
+    private Cursor performQuery(Uri uri, String[] projection, String selection,
+                                String[] selectionArgs, String sortOrder) {
 
 
         // Create and/or open a database to read from it
@@ -115,16 +695,25 @@ public class ProductProvider extends ContentProvider {
 
         switch (uriMatch) {
             case PRODUCTS:
-                /**
-                 * For the {@link PRODUCTS} code, query the products table directly with the given
-                 // projection, selection, selection arguments, and sort order. The cursor
-                 // could contain multiple rows of the products table.
-                 */
-                cursor = db.query(ProductContract.ProductEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder);
+                // For the {@link PRODUCTS} code, query the products table with the given
+                // projection, selection, selection arguments, and sort order, narrowed by the
+                // filters, sort and page of the URI. The cursor could contain multiple rows of
+                // the products table.
+                cursor = queryProductList(db, uri, projection, selection, selectionArgs,
+                        sortOrder);
                 break;
 
             case PRODUCT_ID:
+                // Single products are served from the cache, which reads them from the database
+                // on a miss. Products read within a batch of operations on this thread may not be
+                // committed yet, so they are always read from the database.
+                long productId = ContentUris.parseId(uri);
+                cursor = batchedNotifications.get() == null ?
+                        productCache.query(db, productId, projection) : null;
+                if (cursor != null) {
+                    break;
+                }
+
                 /**
                  * For the {@link PRODUCT_ID} code, extract out the ID from the URI.
                  * For an example URI such as
@@ -140,14 +729,82 @@ public class ProductProvider extends ContentProvider {
                 // ContentUris.parseId(uri) converts the last segment of the URI path to a number -
                 // for instance, 3. Then, this number is converted into a String using
                 // String.valueOf().
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
+                selectionArgs = new String[]{String.valueOf(productId)};
 
                 /**
-                 * This will perform a query on the products table where the _id equals 3 to return a
-                 // Cursor containing that row of the table.
+                 * This will perform a query on the products view where the _id equals 3 to return a
+                 // Cursor containing that row of the table, with its supplier.
                  */
-                cursor = db.query(ProductContract.ProductEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder);
+                cursor = queryTable(db, uri, ProductContract.ProductEntry.VIEW_NAME, projection,
+                        selection, selectionArgs, sortOrder, null);
+                break;
+
+            case PRODUCT_SEARCH:
+                if (selection != null || sortOrder != null) {
+                    throw new IllegalArgumentException(SEARCH_SELECTION_NOT_SUPPORTED + uri);
+                }
+                cursor = searchProducts(db, uri, projection);
+                // The search results change whenever any product changes
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ProductContract.ProductEntry.CONTENT_URI);
+                return cursor;
+
+            case PRODUCT_STATS:
+                // The statistics are a single row maintained by triggers, so reading them costs
+                // the same however many products there are
+                cursor = queryTable(db, uri, ProductContract.StatsEntry.TABLE_NAME, projection,
+                        ProductContract.StatsEntry._ID + SINGLE_PRODUCT_PLACEHOLDER,
+                        new String[]{String.valueOf(ProductContract.StatsEntry.STATS_ROW_ID)},
+                        null, null);
+                // The statistics change whenever any product changes
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ProductContract.ProductEntry.CONTENT_URI);
+                return cursor;
+
+            case PRODUCT_MOVEMENTS:
+                // The ledger of a product is read through the index on product and time, so the
+                // selection can restrict it to a range of time cheaply
+                cursor = queryTable(db, uri, ProductContract.StockMovementEntry.TABLE_NAME,
+                        projection,
+                        DatabaseUtils.concatenateWhere(MOVEMENT_PRODUCT_SELECTION, selection),
+                        DatabaseUtils.appendSelectionArgs(
+                                new String[]{uri.getPathSegments().get(1)}, selectionArgs),
+                        sortOrder != null ? sortOrder : MOVEMENT_SORT_ORDER, null);
+                break;
+
+            case PRODUCT_SNAPSHOTS:
+                // Same for the daily snapshots, through the unique index on product and day
+                cursor = queryTable(db, uri, ProductContract.StockSnapshotEntry.TABLE_NAME,
+                        projection,
+                        DatabaseUtils.concatenateWhere(SNAPSHOT_PRODUCT_SELECTION, selection),
+                        DatabaseUtils.appendSelectionArgs(
+                                new String[]{uri.getPathSegments().get(1)}, selectionArgs),
+                        sortOrder != null ? sortOrder : SNAPSHOT_SORT_ORDER, null);
+                break;
+
+            case PRODUCT_LOW_STOCK:
+                // Only the products at or below their threshold are read, through the partial
+                // low-stock index, lowest quantity first unless another order is requested
+                cursor = queryTable(db, uri, ProductContract.ProductEntry.VIEW_NAME, projection,
+                        DatabaseUtils.concatenateWhere(LOW_STOCK_SELECTION, selection),
+                        selectionArgs, sortOrder != null ? sortOrder : LOW_STOCK_SORT_ORDER,
+                        null);
+                // Products enter and leave the watchlist whenever any product changes
+                cursor.setNotificationUri(getContext().getContentResolver(),
+                        ProductContract.ProductEntry.CONTENT_URI);
+                return cursor;
+
+            case SUPPLIERS:
+                // The suppliers are sorted by name unless another order is requested
+                cursor = queryTable(db, uri, ProductContract.SupplierEntry.TABLE_NAME, projection,
+                        selection, selectionArgs,
+                        sortOrder != null ? sortOrder : SUPPLIER_SORT_ORDER, null);
+                break;
+
+            case SUPPLIER_ID:
+                cursor = queryTable(db, uri, ProductContract.SupplierEntry.TABLE_NAME, projection,
+                        ProductContract.SupplierEntry._ID + SINGLE_PRODUCT_PLACEHOLDER,
+                        new String[]{String.valueOf(ContentUris.parseId(uri))}, null, null);
                 break;
 
             default:
@@ -163,6 +820,300 @@ public class ProductProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Helper method querying the list of products. The query parameters of the URI are all
+     * checked against the accepted values, and turned into SQL which SQLite runs through the
+     * index of the requested order:
+     * <ul>
+     * <li>the filters (stock, supplier and price range) are added to the selection;</li>
+     * <li>the sort parameter sorts the products by its key, then by ID;</li>
+     * <li>the after_value and after_id parameters start the page after the last product of the
+     * previous page (keyset pagination), so reading any page costs the same as reading the
+     * first one, and the limit parameter caps the number of products of the page.</li>
+     * </ul>
+     *
+     * @param db            database to read from
+     * @param uri           of the list of products, with its query parameters
+     * @param projection    columns to return, or null for all of them
+     * @param selection     given by the caller, or null
+     * @param selectionArgs given by the caller, or null
+     * @param sortOrder     given by the caller, only accepted without sort and page parameters
+     * @return cursor holding the products
+     */
+    private Cursor queryProductList(SQLiteDatabase db, Uri uri, String[] projection,
+                                    String selection, String[] selectionArgs,
+                                    String sortOrder) {
+        String stockParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_STOCK);
+        if (stockParameter != null) {
+            if (ProductContract.ProductEntry.STOCK_IN.equals(stockParameter)) {
+                selection = DatabaseUtils.concatenateWhere(selection, IN_STOCK_SELECTION);
+            } else if (ProductContract.ProductEntry.STOCK_OUT.equals(stockParameter)) {
+                selection = DatabaseUtils.concatenateWhere(selection, OUT_OF_STOCK_SELECTION);
+            } else {
+                throw new IllegalArgumentException(INVALID_QUERY_PARAMETER + stockParameter);
+            }
+        }
+
+        String supplierParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_SUPPLIER);
+        if (supplierParameter != null) {
+            selection = DatabaseUtils.concatenateWhere(selection, SUPPLIER_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{supplierParameter});
+        }
+
+        String minPriceParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_MIN_PRICE);
+        if (minPriceParameter != null) {
+            selection = DatabaseUtils.concatenateWhere(selection, MIN_PRICE_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{String.valueOf(parseNonNegativeLong(minPriceParameter))});
+        }
+
+        String maxPriceParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_MAX_PRICE);
+        if (maxPriceParameter != null) {
+            selection = DatabaseUtils.concatenateWhere(selection, MAX_PRICE_SELECTION);
+            selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                    new String[]{String.valueOf(parseNonNegativeLong(maxPriceParameter))});
+        }
+
+        String sortParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_SORT);
+        String afterIdParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_ID);
+        String limitParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_LIMIT);
+        String limit = null;
+        if (sortParameter != null || afterIdParameter != null || limitParameter != null) {
+            if (sortOrder != null) {
+                throw new IllegalArgumentException(PAGE_SORT_ORDER_NOT_SUPPORTED + sortOrder);
+            }
+            int sort = sortParameter == null ? SORT_ID_INDEX : findSort(sortParameter);
+            String sortKey = SORT_KEYS[sort];
+            boolean isDescending = sort == SORT_RECENTLY_UPDATED_INDEX;
+
+            if (afterIdParameter != null) {
+                String afterId = String.valueOf(parseNonNegativeLong(afterIdParameter));
+                if (sort == SORT_ID_INDEX) {
+                    selection = DatabaseUtils.concatenateWhere(selection, AFTER_ID_SELECTION);
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{afterId});
+                } else {
+                    String afterValue = uri.getQueryParameter(
+                            ProductContract.ProductEntry.QUERY_PARAMETER_AFTER_VALUE);
+                    if (afterValue == null) {
+                        throw new IllegalArgumentException(AFTER_VALUE_REQUIRED + uri);
+                    }
+                    if (sort != SORT_NAME_INDEX) {
+                        afterValue = String.valueOf(parseNonNegativeLong(afterValue));
+                    }
+                    selection = DatabaseUtils.concatenateWhere(selection,
+                            buildAfterSelection(sortKey, isDescending));
+                    selectionArgs = DatabaseUtils.appendSelectionArgs(selectionArgs,
+                            new String[]{afterValue, afterValue, afterId});
+                }
+            }
+            if (limitParameter != null) {
+                limit = String.valueOf(parseNonNegativeLong(limitParameter));
+            }
+            sortOrder = sort == SORT_ID_INDEX ? ID_SORT_ORDER :
+                    buildSortOrder(sortKey, isDescending);
+        }
+
+        return queryTable(db, uri, ProductContract.ProductEntry.VIEW_NAME, projection,
+                selection, selectionArgs, sortOrder, limit);
+    }
+
+    /**
+     * Helper method finding a value of the sort query parameter among the accepted ones.
+     *
+     * @param sortParameter value of the sort query parameter
+     * @return index of the value in {@link #SORT_VALUES}
+     */
+    private static int findSort(String sortParameter) {
+        for (int i = 0; i < SORT_VALUES.length; i++) {
+            if (SORT_VALUES[i].equals(sortParameter)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(INVALID_QUERY_PARAMETER + sortParameter);
+    }
+
+    /**
+     * Helper method building the sort order of a sorted list of products.
+     *
+     * @param sortKey      key by which the products are sorted
+     * @param isDescending whether the products are sorted from the highest key down
+     * @return sort order by the key, then by ID in the same direction, such as
+     * "price ASC, _id ASC"
+     */
+    private static String buildSortOrder(String sortKey, boolean isDescending) {
+        String direction = isDescending ? SQL_DESCENDING : SQL_ASCENDING;
+        return sortKey + direction + SQL_ORDER_SEPARATOR + ProductContract.ProductEntry._ID +
+                direction;
+    }
+
+    /**
+     * Helper method building the selection of the products after the last product of the
+     * previous page, in a sorted list. The range on the key comes first, so that SQLite starts
+     * reading the index of the order right at the page.
+     *
+     * @param sortKey      key by which the products are sorted
+     * @param isDescending whether the products are sorted from the highest key down
+     * @return selection whose arguments are the key of the last product, twice, then its ID,
+     * such as "price >= ? AND (price > ? OR _id > ?)"
+     */
+    private static String buildAfterSelection(String sortKey, boolean isDescending) {
+        return sortKey + (isDescending ? SQL_AT_MOST_PARAMETER : SQL_AT_LEAST_PARAMETER) +
+                SQL_AND_OPEN + sortKey +
+                (isDescending ? SQL_LESS_THAN_PARAMETER : SQL_GREATER_THAN_PARAMETER) + SQL_OR +
+                ProductContract.ProductEntry._ID +
+                (isDescending ? SQL_LESS_THAN_PARAMETER : SQL_GREATER_THAN_PARAMETER) +
+                SQL_CLOSE;
+    }
+
+    /**
+     * Helper method searching products by name or supplier, through the full-text search table.
+     * Every word of the searched text is matched as a prefix; products whose name matches rank
+     * before products which only match through their supplier, then products are sorted by name.
+     *
+     * @param db         database to read from
+     * @param uri        search URI, holding the searched text and an optional limit
+     * @param projection columns of the products view to return, or null for all of them
+     * @return cursor holding the matching products
+     */
+    private Cursor searchProducts(SQLiteDatabase db, Uri uri, String[] projection) {
+        String query = uri.getQueryParameter(ProductContract.ProductEntry.QUERY_PARAMETER_SEARCH);
+        String limitParameter = uri.getQueryParameter(
+                ProductContract.ProductEntry.QUERY_PARAMETER_LIMIT);
+
+        // Build the match expressions - one for any column, one for the product name only.
+        // Quotes are removed from the words and every word is quoted, so the searched text can
+        // never be interpreted as an FTS operator.
+        StringBuilder anyColumnMatch = new StringBuilder();
+        StringBuilder nameMatch = new StringBuilder();
+        if (query != null) {
+            for (String word : query.trim().split(SEARCH_WORD_SEPARATOR)) {
+                word = word.replace(SEARCH_PHRASE_QUOTE, "");
+                // words without any letter or digit are not indexed, so they cannot match
+                if (!word.matches(SEARCH_SEARCHABLE_WORD)) {
+                    continue;
+                }
+                String term = SEARCH_PHRASE_QUOTE + word + SEARCH_PREFIX_WILDCARD +
+                        SEARCH_PHRASE_QUOTE;
+                if (anyColumnMatch.length() > 0) {
+                    anyColumnMatch.append(SEARCH_TERMS_SEPARATOR);
+                    nameMatch.append(SEARCH_TERMS_SEPARATOR);
+                }
+                anyColumnMatch.append(term);
+                nameMatch.append(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME)
+                        .append(SEARCH_COLUMN_FILTER_SEPARATOR).append(term);
+            }
+        }
+
+        // Qualify the requested columns with the products view, as the search table has
+        // columns with the same names
+        String[] columns = projection != null ? projection : new String[]{
+                ProductContract.ProductEntry._ID,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD};
+
+        // Nothing to search for
+        if (anyColumnMatch.length() == 0) {
+            return new MatrixCursor(columns, 0);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(ProductContract.ProductEntry.VIEW_NAME).append('.').append(columns[i])
+                    .append(" AS ").append(columns[i]);
+        }
+        sql.append(SQL_SEARCH_FROM);
+        if (limitParameter != null) {
+            sql.append(SQL_LIMIT).append(parseNonNegativeLong(limitParameter));
+        }
+
+        return rawQuery(db, uri, sql.toString(),
+                new String[]{anyColumnMatch.toString(), nameMatch.toString()}, null, null);
+    }
+
+    /**
+     * Helper method querying one table, as {@link SQLiteDatabase#query}, while feeding the
+     * slow-query log.
+     *
+     * @param db            database to read from
+     * @param uri           of the provider which was queried
+     * @param table         to query
+     * @param projection    columns to return, or null for all of them
+     * @param selection     of the rows, or null for all of them
+     * @param selectionArgs replacing the question marks of the selection
+     * @param sortOrder     of the rows, or null
+     * @param limit         maximum number of rows, or null
+     * @return cursor holding the rows
+     */
+    private Cursor queryTable(SQLiteDatabase db, Uri uri, String table, String[] projection,
+                              String selection, String[] selectionArgs, String sortOrder,
+                              String limit) {
+        String sql = SQLiteQueryBuilder.buildQueryString(false, table, projection, selection,
+                null, null, sortOrder, limit);
+        return rawQuery(db, uri, sql, selectionArgs, selection, sortOrder);
+    }
+
+    /**
+     * Helper method running a query and, when the slow-query log is on, timing it and logging
+     * it if it was slow. Counting the rows runs the query right away, which the caller would do
+     * anyway; the count is kept by the cursor.
+     *
+     * @param db            database to read from
+     * @param uri           of the provider which was queried
+     * @param sql           to run
+     * @param selectionArgs bound to the SQL
+     * @param selection     of the query, or null
+     * @param sortOrder     of the query, or null
+     * @return cursor holding the rows
+     */
+    private Cursor rawQuery(SQLiteDatabase db, Uri uri, String sql, String[] selectionArgs,
+                            String selection, String sortOrder) {
+        if (!slowQueryLog.isEnabled()) {
+            return db.rawQuery(sql, selectionArgs);
+        }
+        long startNanos = System.nanoTime();
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        int rowCount = cursor.getCount();
+        slowQueryLog.record(db, uri.toString(), sql, selectionArgs, selection, sortOrder,
+                rowCount, System.nanoTime() - startNanos);
+        return cursor;
+    }
+
+    /**
+     * Helper method parsing the value of a numerical query parameter.
+     *
+     * @param parameter value of the query parameter
+     * @return the value of the parameter
+     * @throws IllegalArgumentException if the value is not a non-negative number
+     */
+    private static long parseNonNegativeLong(String parameter) {
+        long value;
+        try {
+            value = Long.parseLong(parameter);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(INVALID_QUERY_PARAMETER + parameter, e);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(INVALID_QUERY_PARAMETER + parameter);
+        }
+        return value;
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
@@ -173,24 +1124,72 @@ public class ProductProvider extends ContentProvider {
 
         switch (uriMatch) {
             case PRODUCTS:
+            case PRODUCT_SEARCH:
+            case PRODUCT_LOW_STOCK:
                 return ProductContract.ProductEntry.CONTENT_LIST_TYPE;
             case PRODUCT_ID:
+            case PRODUCT_ADJUST:
                 return ProductContract.ProductEntry.CONTENT_ITEM_TYPE;
+            case PRODUCT_MOVEMENTS:
+                return ProductContract.StockMovementEntry.CONTENT_LIST_TYPE;
+            case PRODUCT_SNAPSHOTS:
+                return ProductContract.StockSnapshotEntry.CONTENT_LIST_TYPE;
+            case PRODUCT_STATS:
+                return ProductContract.StatsEntry.CONTENT_ITEM_TYPE;
+            case PRODUCT_EXPORT:
+                return ProductContract.ProductEntry.CONTENT_EXPORT_TYPE;
+            case SUPPLIERS:
+                return ProductContract.SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return ProductContract.SupplierEntry.CONTENT_ITEM_TYPE;
             default:
                 throw new IllegalStateException(UNKNOWN_URI + uri + WITH_URI_MATCH + uriMatch);
         }
     }
 
     /**
-     * Insert new data into the provider with the given ContentValues.
+     * Open the CSV export of all the products, for reading only. The file is not written to the
+     * storage: the products are streamed into a pipe, chunk by chunk, while the caller reads it.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != PRODUCT_EXPORT || !READ_MODE.equals(mode)) {
+            throw new FileNotFoundException(CANNOT_OPEN_URI + uri);
+        }
+        return openPipeHelper(uri, ProductContract.ProductEntry.CONTENT_EXPORT_TYPE, null, null,
+                exportPipeWriter);
+    }
+
+    /**
+     * Insert new data into the provider with the given ContentValues, and record the insert in
+     * the provider metrics.
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long startNanos = System.nanoTime();
+        Uri newUri = null;
+        boolean isFailed = true;
+        try {
+            newUri = performInsert(uri, values);
+            isFailed = false;
+            return newUri;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_INSERT, getUriTarget(uri),
+                    startNanos, newUri == null ? 0 : 1, isFailed);
+        }
+    }
+
+    /**
+     * Helper method inserting new data into the provider with the given ContentValues.
+     */
+    private Uri performInsert(Uri uri, ContentValues values) {
         // Figure out if the URI matcher can match the URI to a specific code
         final int uriMatch = sUriMatcher.match(uri);
         switch (uriMatch) {
             case PRODUCTS:
                 return insertProduct(uri, values);
+            case SUPPLIERS:
+                return insertSupplier(uri, values);
             default:
                 throw new IllegalArgumentException(CANNOT_INSERT_URI + uri);
         }
@@ -205,75 +1204,326 @@ public class ProductProvider extends ContentProvider {
      * @return URI for the newly inserted product
      */
     private Uri insertProduct(Uri uri, ContentValues values) {
+        // Check that the values describe a valid product
+        productValidator.validateNewProduct(values);
 
-        // Check that the name is not null
-        String productName = values.getAsString(
-                ProductContract.ProductEntry.COLUMN_PRODUCT_NAME);
-        if (productName == null) {
-            throw new IllegalArgumentException(
-                    getContext().getString(R.string.product_name_required));
+        // Get writeable database
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+
+        // Insert the new product with the given values, together with its initial stock
+        // movement
+        long newRowId;
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            newRowId = insertValidProduct(db, values);
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            endWriteTransaction(db, isCommitted);
         }
 
-        // Check that product price is not null and that it is positive
-        Integer productPrice = values.getAsInteger
-                (ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE);
-        if (productPrice == null) {
-            throw new IllegalArgumentException(
-                    getContext().getString(R.string.product_price_not_null));
+        // If the newRowId is -1, then the insertion failed. Log an error and return null.
+        if (newRowId == -1) {
+            Log.e(LOG_TAG, INSERTION_FAILED + uri);
+            return null;
         }
-        if (productPrice < 0) {
-            throw new IllegalArgumentException(
-                    getContext().getString(R.string.product_price_positive));
+
+        // Return the new URI with the newRowId (of the newly inserted row) appended at the end
+        Uri newProductUri = ContentUris.withAppendedId(uri, newRowId);
+
+        // Notify all listeners that the data has changed for the new product only - listeners of
+        // the whole list are notified too, as the product URI descends from the list URI
+        notifyProductsChanged(newProductUri);
+
+        return newProductUri;
+    }
+
+    /**
+     * helper method inserting a product which has already been validated, and recording its
+     * initial stock in the ledger. Full products are inserted with a compiled statement. Must be
+     * called within a transaction.
+     *
+     * @param db     writable database
+     * @param values to be inserted in the database in relation to the product
+     * @return ID of the new product, or -1 if the insertion failed
+     */
+    private long insertValidProduct(SQLiteDatabase db, ContentValues values) {
+        long newRowId;
+        long updatedAt = System.currentTimeMillis();
+        ContentValues productValues = toProductValues(db, values);
+        if (ProductStatements.isFullRow(productValues)) {
+            newRowId = productStatements.insertFullRow(productValues, updatedAt);
+        } else {
+            newRowId = db.insert(ProductContract.ProductEntry.TABLE_NAME, null,
+                    withUpdateTime(productValues, updatedAt));
         }
 
-        // If a product quantity is provided, check that it is not negative
-        Integer productQuantity = values.getAsInteger
-                (ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY);
-        if (productQuantity != null && productQuantity < 0) {
-            throw new IllegalArgumentException(
-                    getContext().getString(R.string.product_quantity_positive));
+        Long quantity = values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        if (newRowId != -1 && quantity != null) {
+            stockLedger.recordMovement(newRowId, quantity,
+                    ProductContract.StockMovementEntry.REASON_NEW_PRODUCT);
         }
+        return newRowId;
+    }
 
-        // Check that the name of the supplier is not null
-        String productSupplier = values.getAsString(
+    /**
+     * Helper method turning the values of a product, as written by the callers, into values of
+     * the products table: the name and phone number of the supplier are replaced by the ID of
+     * the supplier, which is created if needed. Must be called within a transaction.
+     *
+     * @param db     writable database
+     * @param values of the product, left untouched
+     * @return the values without supplier details, or a copy of them with the supplier ID
+     * @throws IllegalArgumentException if only one of the supplier details is given
+     */
+    private ContentValues toProductValues(SQLiteDatabase db, ContentValues values) {
+        boolean hasSupplier = values.containsKey(
                 ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER);
-        if (productSupplier == null) {
-            throw new IllegalArgumentException(
-                    getContext().getString(R.string.product_supplier_required));
+        boolean hasPhoneNumber = values.containsKey(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+        if (!hasSupplier && !hasPhoneNumber) {
+            return values;
+        }
+        if (!hasSupplier || !hasPhoneNumber) {
+            throw new IllegalArgumentException(SUPPLIER_DETAILS_REQUIRED +
+                    ProductContract.ProductEntry.CONTENT_URI);
         }
 
-        // Check that the phone number of the supplier is not null
-        String productSupplierPhoneNumber = values.getAsString(
+        String supplier = values.getAsString(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER);
+        String phoneNumber = values.getAsString(
                 ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
-        if (productSupplierPhoneNumber == null) {
+        ContentValues productValues = new ContentValues(values);
+        productValues.remove(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER);
+        productValues.remove(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+        productValues.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                supplierDictionary.getOrInsert(db, supplier, phoneNumber));
+        return productValues;
+    }
+
+    /**
+     * Helper method restricting a write of the products table to the products matched by the
+     * selection of the caller, which applies to the products view.
+     *
+     * @param selection of the caller, or null for all the products
+     * @return selection of the same products in the products table
+     */
+    private static String toProductsTableSelection(String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return selection;
+        }
+        return SQL_PRODUCTS_IN_VIEW + selection + SQL_CLOSE;
+    }
+
+    /**
+     * Helper method ending a write transaction. If it was not committed, the suppliers it
+     * inserted no longer exist, so the supplier dictionary is cleared.
+     *
+     * @param db          writable database, within the transaction
+     * @param isCommitted whether the transaction was marked successful
+     */
+    private void endWriteTransaction(SQLiteDatabase db, boolean isCommitted) {
+        if (!isCommitted) {
+            supplierDictionary.clear();
+        }
+        db.endTransaction();
+    }
+
+    /**
+     * helper method inserting a supplier in the database, unless a supplier with the same name
+     * and phone number already exists
+     *
+     * @param uri    general supplier URI to be used in order to construct the URI of the
+     *               supplier
+     * @param values name and phone number of the supplier
+     * @return URI of the supplier
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        String name = values.getAsString(ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException(
+                    getContext().getString(R.string.product_supplier_required));
+        }
+        String phoneNumber = values.getAsString(
+                ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (phoneNumber == null) {
             throw new IllegalArgumentException(
                     getContext().getString(R.string.product_supplier_phone_required));
         }
 
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        long supplierId;
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            supplierId = supplierDictionary.getOrInsert(db, name, phoneNumber);
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            endWriteTransaction(db, isCommitted);
+        }
+
+        Uri supplierUri = ContentUris.withAppendedId(uri, supplierId);
+        getContext().getContentResolver().notifyChange(supplierUri, null);
+        providerMetrics.recordNotification();
+        return supplierUri;
+    }
+
+    /**
+     * Helper method adding the time of the write to the values of a product. The values of the
+     * caller are left untouched.
+     *
+     * @param values    of the product
+     * @param updatedAt time of the write, as in {@link System#currentTimeMillis()}
+     * @return copy of the values, with the time of the write in
+     * {@link ProductContract.ProductEntry#COLUMN_PRODUCT_UPDATED_AT}
+     */
+    private static ContentValues withUpdateTime(ContentValues values, long updatedAt) {
+        ContentValues timedValues = new ContentValues(values);
+        timedValues.put(ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT, updatedAt);
+        return timedValues;
+    }
+
+    /**
+     * Insert several products in one single database transaction, and record the insert in the
+     * provider metrics.
+     *
+     * @return number of products inserted in the database
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long startNanos = System.nanoTime();
+        int rowsInserted = 0;
+        boolean isFailed = true;
+        try {
+            rowsInserted = performBulkInsert(uri, values);
+            isFailed = false;
+            return rowsInserted;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_BULK_INSERT, getUriTarget(uri),
+                    startNanos, rowsInserted, isFailed);
+        }
+    }
+
+    /**
+     * Helper method inserting several products in one single database transaction. Every row is
+     * checked with the same rules as a single insert, and if any of them is invalid none of the
+     * products is inserted. Listeners are notified only once, after all the products have been
+     * inserted.
+     *
+     * @return number of products inserted in the database
+     */
+    private int performBulkInsert(Uri uri, ContentValues[] values) {
+        // Figure out if the URI matcher can match the URI to a specific code
+        final int uriMatch = sUriMatcher.match(uri);
+        if (uriMatch != PRODUCTS) {
+            throw new IllegalArgumentException(CANNOT_INSERT_URI + uri);
+        }
+
         // Get writeable database
         SQLiteDatabase db = productDbHelper.getWritableDatabase();
 
-        // Insert the new product with the given values
-        long newRowId = db.insert(ProductContract.ProductEntry.TABLE_NAME, null, values);
+        // Track the number of rows that were inserted
+        int rowsInserted = 0;
 
-        // If the newRowId is -1, then the insertion failed. Log an error and return null.
-        if (newRowId == -1) {
-            Log.e(LOG_TAG, INSERTION_FAILED + uri);
-            return null;
+        boolean isBatchOwner = beginNotificationBatch();
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            for (ContentValues productValues : values) {
+                // Check that the values describe a valid product; an exception thrown here ends
+                // the transaction without marking it successful, so nothing is inserted.
+                productValidator.validateNewProduct(productValues);
+
+                long newRowId = insertValidProduct(db, productValues);
+                if (newRowId == -1) {
+                    Log.e(LOG_TAG, INSERTION_FAILED + uri);
+                } else {
+                    rowsInserted++;
+                    notifyProductsChanged(ContentUris.withAppendedId(uri, newRowId));
+                }
+            }
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            endWriteTransaction(db, isCommitted);
+            // Notify all listeners only once, after all the products have been inserted
+            endNotificationBatch(isBatchOwner, isCommitted);
         }
 
-        // Notify all listeners that the data has changed for the product content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
 
-        // Return the new URI with the newRowId (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, newRowId);
+    /**
+     * Apply all the given operations in one single database transaction, and record the batch in
+     * the provider metrics. Each operation is recorded on its own too.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long startNanos = System.nanoTime();
+        boolean isFailed = true;
+        try {
+            ContentProviderResult[] results = performApplyBatch(operations);
+            isFailed = false;
+            return results;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_APPLY_BATCH, METRICS_BATCH_TARGET,
+                    startNanos, isFailed ? 0 : operations.size(), isFailed);
+        }
+    }
+
+    /**
+     * Helper method applying all the given operations in one single database transaction. If any
+     * of the operations fails, none of them is applied. Listeners are notified only once, after
+     * the whole batch has been committed.
+     */
+    private ContentProviderResult[] performApplyBatch(
+            ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        // Get writeable database
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+
+        ContentProviderResult[] results;
+        boolean isBatchOwner = beginNotificationBatch();
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            endWriteTransaction(db, isCommitted);
+            // Notify all listeners once, in case any of the operations changed the data
+            endNotificationBatch(isBatchOwner, isCommitted);
+        }
+
+        return results;
     }
 
     /**
-     * Delete the data at the given selection and selection arguments.
+     * Delete the data at the given selection and selection arguments, and record the delete in
+     * the provider metrics.
      */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long startNanos = System.nanoTime();
+        int rowsDeleted = 0;
+        boolean isFailed = true;
+        try {
+            rowsDeleted = performDelete(uri, selection, selectionArgs);
+            isFailed = false;
+            return rowsDeleted;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_DELETE, getUriTarget(uri),
+                    startNanos, rowsDeleted, isFailed);
+        }
+    }
+
+    /**
+     * Helper method deleting the data at the given selection and selection arguments.
+     */
+    private int performDelete(Uri uri, String selection, String[] selectionArgs) {
         // get a writable database;
         SQLiteDatabase db = productDbHelper.getWritableDatabase();
 
@@ -282,25 +1532,38 @@ public class ProductProvider extends ContentProvider {
 
         final int uriMatch = sUriMatcher.match(uri);
 
-        switch (uriMatch) {
-            case PRODUCTS:
-                // Delete all rows that match the selection and selection args
-                rowsDeleted = db.delete(ProductContract.ProductEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case PRODUCT_ID:
-                // Delete a single row given by the ID in the URI
-                selection = ProductContract.ProductEntry._ID + SINGLE_PRODUCT_PLACEHOLDER;
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                rowsDeleted = db.delete(ProductContract.ProductEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new IllegalArgumentException(CANNOT_DELETE_URI + uri);
+        // The remaining stock of the deleted products is recorded in the ledger, within the same
+        // transaction as the delete
+        db.beginTransaction();
+        try {
+            switch (uriMatch) {
+                case PRODUCTS:
+                    // Delete all rows that match the selection and selection args
+                    selection = toProductsTableSelection(selection);
+                    stockLedger.recordRemovals(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(ProductContract.ProductEntry.TABLE_NAME, selection,
+                            selectionArgs);
+                    break;
+                case PRODUCT_ID:
+                    // Delete a single row given by the ID in the URI, with a compiled statement
+                    long productId = ContentUris.parseId(uri);
+                    stockLedger.recordRemovals(db,
+                            ProductContract.ProductEntry._ID + SINGLE_PRODUCT_PLACEHOLDER,
+                            new String[]{String.valueOf(productId)});
+                    rowsDeleted = productStatements.deleteById(productId);
+                    break;
+                default:
+                    throw new IllegalArgumentException(CANNOT_DELETE_URI + uri);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyProductsChanged(uri);
         }
 
         // Return the number of rows deleted
@@ -308,22 +1571,57 @@ public class ProductProvider extends ContentProvider {
     }
 
     /**
-     * Updates the data at the given selection and selection arguments, with the new ContentValues.
+     * Updates the data at the given selection and selection arguments, with the new ContentValues,
+     * and record the update in the provider metrics.
      */
     @Override
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        long startNanos = System.nanoTime();
+        int rowsUpdated = 0;
+        boolean isFailed = true;
+        try {
+            rowsUpdated = performUpdate(uri, values, selection, selectionArgs);
+            isFailed = false;
+            return rowsUpdated;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_UPDATE, getUriTarget(uri),
+                    startNanos, rowsUpdated, isFailed);
+        }
+    }
+
+    /**
+     * Helper method updating the data at the given selection and selection arguments, with the
+     * new ContentValues.
+     */
+    private int performUpdate(Uri uri, ContentValues values, String selection,
+                              String[] selectionArgs) {
 
         final int uriMatch = sUriMatcher.match(uri);
         switch (uriMatch) {
             case PRODUCTS:
-                return updateProduct(uri, values, selection, selectionArgs);
+                return updateProduct(uri, values, selection, selectionArgs,
+                        ProductContract.ProductEntry.NO_PRODUCT_ID);
             case PRODUCT_ID:
                 // For the PRODUCT_ID code, extract out the ID from the URI,
                 // so we know which row to update. Selection will be "_id=?" and selection
                 // arguments will be a String array containing the actual ID.
+                long id = ContentUris.parseId(uri);
                 selection = ProductContract.ProductEntry._ID + SINGLE_PRODUCT_PLACEHOLDER;
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateProduct(uri, values, selection, selectionArgs);
+                selectionArgs = new String[]{String.valueOf(id)};
+                return updateProduct(uri, values, selection, selectionArgs, id);
+            case PRODUCT_ADJUST:
+                // For the PRODUCT_ADJUST code, the product ID is the second to last segment of
+                // the URI, and the values only hold the delta to add to the product quantity.
+                Integer delta = values.getAsInteger(
+                        ProductContract.ProductEntry.KEY_QUANTITY_DELTA);
+                if (delta == null) {
+                    throw new IllegalArgumentException(QUANTITY_DELTA_REQUIRED + uri);
+                }
+                long productId = Long.parseLong(uri.getPathSegments().get(1));
+                int newQuantity = adjustQuantity(productId, delta);
+                return newQuantity == ProductContract.ProductEntry.QUANTITY_NOT_ADJUSTED ? 0 : 1;
+            case SUPPLIER_ID:
+                return updateSupplier(uri, values, ContentUris.parseId(uri));
             default:
                 throw new IllegalArgumentException(CANNOT_UPDATE_URI + uri);
         }
@@ -333,11 +1631,16 @@ public class ProductProvider extends ContentProvider {
      * Helper method for updating one or more products in the database with the given ContentValues.
      * Apply the changes to the rows specified in the selection and selection arguments
      * (which could be 0 or 1 or more products).
+     * Updates of the quantity only, or of all the columns, of a single product are written with
+     * a compiled statement.
      *
+     * @param productId ID of the single product to update, or
+     *                  {@link ProductContract.ProductEntry#NO_PRODUCT_ID} if the products are
+     *                  given by the selection
      * @return number of rows that were successfully updated.
      */
     private int updateProduct(Uri uri, ContentValues values, String selection,
-                              String[] selectionArgs) {
+                              String[] selectionArgs, long productId) {
         // If the {@link ProductEntry#COLUMN_PRODUCT_NAME} key is present,
         // check that the product name value is not null.
         if (values.containsKey(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME)) {
@@ -353,7 +1656,7 @@ public class ProductProvider extends ContentProvider {
         // check that the product price value is not null and that the product price
         // is not negative.
         if (values.containsKey(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE)) {
-            Integer productPrice = values.getAsInteger(
+            Long productPrice = values.getAsLong(
                     ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE);
             if (productPrice == null) {
                 throw new IllegalArgumentException(
@@ -399,6 +1702,17 @@ public class ProductProvider extends ContentProvider {
             }
         }
 
+        // If the {@link ProductEntry#COLUMN_PRODUCT_REORDER_THRESHOLD} key is present,
+        // check that the reorder threshold is provided and is not negative.
+        if (values.containsKey(ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD)) {
+            Integer productReorderThreshold = values.getAsInteger(
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+            if (productReorderThreshold == null || productReorderThreshold < 0) {
+                throw new IllegalArgumentException(
+                        getContext().getString(R.string.product_reorder_threshold_positive));
+            }
+        }
+
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
             return 0;
@@ -407,17 +1721,504 @@ public class ProductProvider extends ContentProvider {
         // Otherwise, get writable database to update the data
         SQLiteDatabase db = productDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = db.update(ProductContract.ProductEntry.TABLE_NAME, values, selection,
-                selectionArgs);
+        // The selection of several products applies to the products view
+        if (productId == ProductContract.ProductEntry.NO_PRODUCT_ID) {
+            selection = toProductsTableSelection(selection);
+        }
+
+        // Perform the update on the database and get the number of rows affected. A quantity
+        // set directly (rather than adjusted by a delta) is recorded in the ledger as a
+        // correction, within the same transaction as the update.
+        int rowsUpdated;
+        Long newQuantity = values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        long updatedAt = System.currentTimeMillis();
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            if (newQuantity != null) {
+                stockLedger.recordQuantityChanges(db, newQuantity, selection, selectionArgs);
+            }
+            if (values.containsKey(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER) !=
+                    values.containsKey(
+                            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER)) {
+                rowsUpdated = updateProductsOfEachSupplier(db, values, selection, selectionArgs,
+                        updatedAt);
+            } else {
+                ContentValues productValues = toProductValues(db, values);
+                if (productId != ProductContract.ProductEntry.NO_PRODUCT_ID &&
+                        ProductStatements.isQuantityOnly(productValues)) {
+                    rowsUpdated = productStatements.updateQuantity(productId, newQuantity,
+                            updatedAt);
+                } else if (productId != ProductContract.ProductEntry.NO_PRODUCT_ID &&
+                        ProductStatements.isFullRow(productValues)) {
+                    rowsUpdated = productStatements.updateFullRow(productId, productValues,
+                            updatedAt);
+                } else {
+                    rowsUpdated = db.update(ProductContract.ProductEntry.TABLE_NAME,
+                            withUpdateTime(productValues, updatedAt), selection, selectionArgs);
+                }
+            }
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            endWriteTransaction(db, isCommitted);
+        }
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyProductsChanged(uri);
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
+
+    /**
+     * Helper method updating products with only one of the two supplier details: every product
+     * keeps the other detail of its current supplier, so the products of each current supplier
+     * are updated on their own. The products which keep their supplier are updated first, so
+     * that the products moved to one of those suppliers afterwards are not updated twice. Must
+     * be called within a transaction.
+     *
+     * @param db            writable database, within a transaction
+     * @param values        of the products, with either the supplier name or phone number
+     * @param selection     of the products in the products table, or null for all of them
+     * @param selectionArgs selection arguments
+     * @param updatedAt     time of the update
+     * @return number of products updated
+     */
+    private int updateProductsOfEachSupplier(SQLiteDatabase db, ContentValues values,
+                                             String selection, String[] selectionArgs,
+                                             long updatedAt) {
+        String sql = SQL_SELECT_SUPPLIERS_OF_PRODUCTS +
+                (TextUtils.isEmpty(selection) ? "" : SQL_WHERE + selection) + SQL_CLOSE;
+        ArrayList<ContentValues> suppliers = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, selectionArgs);
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues supplierValues = new ContentValues(values);
+                if (!values.containsKey(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER)) {
+                    supplierValues.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+                            cursor.getString(1));
+                } else {
+                    supplierValues.put(
+                            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                            cursor.getString(2));
+                }
+                // the current supplier ID is kept as the key of the products to update
+                supplierValues.put(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID,
+                        cursor.getLong(0));
+                suppliers.add(supplierValues);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        long[] currentSupplierIds = new long[suppliers.size()];
+        ContentValues[] productValues = new ContentValues[suppliers.size()];
+        for (int i = 0; i < suppliers.size(); i++) {
+            currentSupplierIds[i] = suppliers.get(i).getAsLong(
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID);
+            suppliers.get(i).remove(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID);
+            productValues[i] = withUpdateTime(toProductValues(db, suppliers.get(i)), updatedAt);
+        }
+
+        int rowsUpdated = 0;
+        for (boolean isKeepingSupplier : new boolean[]{true, false}) {
+            for (int i = 0; i < currentSupplierIds.length; i++) {
+                long newSupplierId = productValues[i].getAsLong(
+                        ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID);
+                if ((newSupplierId == currentSupplierIds[i]) != isKeepingSupplier) {
+                    continue;
+                }
+                String[] supplierSelectionArgs = new String[]{
+                        String.valueOf(currentSupplierIds[i])};
+                rowsUpdated += db.update(ProductContract.ProductEntry.TABLE_NAME,
+                        productValues[i],
+                        DatabaseUtils.concatenateWhere(PRODUCTS_OF_SUPPLIER_SELECTION, selection),
+                        selectionArgs == null ? supplierSelectionArgs :
+                                DatabaseUtils.appendSelectionArgs(supplierSelectionArgs,
+                                        selectionArgs));
+            }
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Helper method updating the name and phone number of a supplier. Every product of the
+     * supplier changes with it, so the listeners of the products are notified too, and the
+     * cached products and suppliers are dropped.
+     *
+     * @param uri        of the supplier
+     * @param values     new name and phone number of the supplier
+     * @param supplierId ID of the supplier
+     * @return number of suppliers updated, 0 if another supplier already has the new name and
+     * phone number
+     */
+    private int updateSupplier(Uri uri, ContentValues values, long supplierId) {
+        if (values.containsKey(ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME) &&
+                values.getAsString(ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME) == null) {
+            throw new IllegalArgumentException(
+                    getContext().getString(R.string.product_supplier_required));
+        }
+        if (values.containsKey(ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER) &&
+                values.getAsString(
+                        ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER) == null) {
+            throw new IllegalArgumentException(
+                    getContext().getString(R.string.product_supplier_phone_required));
+        }
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+        int rowsUpdated;
+        try {
+            rowsUpdated = db.update(ProductContract.SupplierEntry.TABLE_NAME, values,
+                    ProductContract.SupplierEntry._ID + SINGLE_PRODUCT_PLACEHOLDER,
+                    new String[]{String.valueOf(supplierId)});
+        } catch (SQLiteConstraintException e) {
+            // the name and phone number of the suppliers are unique
+            Log.w(LOG_TAG, SUPPLIER_ALREADY_EXISTS + uri, e);
+            return 0;
+        }
+
+        if (rowsUpdated != 0) {
+            supplierDictionary.clear();
+            getContext().getContentResolver().notifyChange(uri, null);
+            providerMetrics.recordNotification();
+            notifyProductsChanged(ProductContract.ProductEntry.CONTENT_URI);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Handles the provider-specific methods, and record the call in the provider metrics.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        long startNanos = System.nanoTime();
+        boolean isFailed = true;
+        try {
+            Bundle result = performCall(method, arg, extras);
+            isFailed = false;
+            return result;
+        } finally {
+            providerMetrics.record(ProviderMetrics.OPERATION_CALL, getMethodTarget(method),
+                    startNanos, 0, isFailed);
+        }
+    }
+
+    /**
+     * Helper method handling the provider-specific methods, such as
+     * {@link ProductContract.ProductEntry#METHOD_ADJUST_QUANTITY},
+     * {@link ProductContract.ProductEntry#METHOD_ADJUST_QUANTITIES},
+     * {@link ProductContract.ProductEntry#METHOD_TAKE_STOCK_ALERTS},
+     * {@link ProductContract#METHOD_CHECKPOINT}, {@link ProductContract#METHOD_COMPACT_LEDGER},
+     * {@link ProductContract#METHOD_CACHE_STATS}, {@link ProductContract#METHOD_METRICS} and
+     * {@link ProductContract#METHOD_SLOW_QUERIES}.
+     */
+    private Bundle performCall(String method, String arg, Bundle extras) {
+        if (ProductContract.ProductEntry.METHOD_ADJUST_QUANTITY.equals(method)) {
+            long productId = extras.getLong(ProductContract.ProductEntry.EXTRA_PRODUCT_ID);
+            int delta = extras.getInt(ProductContract.ProductEntry.KEY_QUANTITY_DELTA);
+
+            Bundle result = new Bundle();
+            result.putInt(ProductContract.ProductEntry.EXTRA_NEW_QUANTITY,
+                    adjustQuantity(productId, delta));
+            return result;
+        }
+        if (ProductContract.ProductEntry.METHOD_TAKE_STOCK_ALERTS.equals(method)) {
+            int limit = extras == null ? MAX_STOCK_ALERTS : Math.min(MAX_STOCK_ALERTS,
+                    extras.getInt(ProductContract.ProductEntry.EXTRA_LIMIT, MAX_STOCK_ALERTS));
+            return takeStockAlerts(Math.max(limit, 1));
+        }
+        if (ProductContract.METHOD_CHECKPOINT.equals(method)) {
+            productDbHelper.checkpoint();
+            return null;
+        }
+        if (ProductContract.METHOD_COMPACT_LEDGER.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(ProductContract.EXTRA_MOVEMENTS_COMPACTED, stockLedger.compact(
+                    productDbHelper.getWritableDatabase(), ledgerRetentionDays));
+            return result;
+        }
+        if (ProductContract.METHOD_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(ProductContract.EXTRA_CACHE_HIT_COUNT, productCache.hitCount());
+            result.putInt(ProductContract.EXTRA_CACHE_MISS_COUNT, productCache.missCount());
+            result.putInt(ProductContract.EXTRA_CACHE_EVICTION_COUNT,
+                    productCache.evictionCount());
+            result.putInt(ProductContract.EXTRA_CACHE_SIZE_BYTES, productCache.sizeBytes());
+            result.putInt(ProductContract.EXTRA_CACHE_MAX_SIZE_BYTES,
+                    productCache.maxSizeBytes());
+            return result;
+        }
+        if (ProductContract.METHOD_METRICS.equals(method)) {
+            Bundle result = providerMetrics.toBundle();
+            if (extras != null && extras.getBoolean(ProductContract.EXTRA_METRICS_RESET)) {
+                providerMetrics.reset();
+            }
+            return result;
+        }
+        if (ProductContract.METHOD_SLOW_QUERIES.equals(method)) {
+            if (extras != null &&
+                    extras.containsKey(ProductContract.EXTRA_SLOW_QUERY_THRESHOLD_MILLIS)) {
+                slowQueryLog.setThresholdMillis(
+                        extras.getLong(ProductContract.EXTRA_SLOW_QUERY_THRESHOLD_MILLIS));
+            }
+            Bundle result = slowQueryLog.toBundle();
+            if (extras != null && extras.getBoolean(ProductContract.EXTRA_SLOW_QUERIES_CLEAR)) {
+                slowQueryLog.clear();
+            }
+            return result;
+        }
+        if (ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES.equals(method)) {
+            long[] productIds = extras.getLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS);
+            int[] deltas = extras.getIntArray(ProductContract.ProductEntry.EXTRA_QUANTITY_DELTAS);
+            if (productIds == null || deltas == null || productIds.length != deltas.length) {
+                throw new IllegalArgumentException(QUANTITY_DELTA_REQUIRED + method);
+            }
+
+            int[] newQuantities = adjustQuantities(productIds, deltas, extras.getLong(
+                    ProductContract.ProductEntry.EXTRA_BATCH_ID, NO_BATCH_ID));
+            Bundle result = new Bundle();
+            if (newQuantities == null) {
+                result.putBoolean(ProductContract.ProductEntry.EXTRA_BATCH_ALREADY_APPLIED, true);
+            } else {
+                result.putIntArray(ProductContract.ProductEntry.EXTRA_NEW_QUANTITIES,
+                        newQuantities);
+            }
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Helper method reading and removing pending low-stock alerts, in one single transaction,
+     * so that every alert is taken exactly once. Alerts of products which were restocked above
+     * their threshold meanwhile are dropped.
+     *
+     * @param limit maximum number of alerts taken
+     * @return Bundle holding the IDs, names and current quantities of the alerted products, and
+     * whether more alerts may be pending
+     */
+    private Bundle takeStockAlerts(int limit) {
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+
+        long[] productIds;
+        String[] productNames;
+        int[] quantities;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery(SQL_SELECT_STOCK_ALERTS + SQL_LIMIT + limit, null);
+            try {
+                productIds = new long[cursor.getCount()];
+                productNames = new String[productIds.length];
+                quantities = new int[productIds.length];
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    productIds[i] = cursor.getLong(0);
+                    productNames[i] = cursor.getString(1);
+                    quantities[i] = cursor.getInt(2);
+                }
+            } finally {
+                cursor.close();
+            }
+            if (productIds.length < limit) {
+                db.execSQL(SQL_DELETE_STOCK_ALERTS);
+            } else {
+                db.execSQL(SQL_DELETE_STOCK_ALERTS_UP_TO,
+                        new Object[]{productIds[productIds.length - 1]});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS, productIds);
+        result.putStringArray(ProductContract.ProductEntry.EXTRA_PRODUCT_NAMES, productNames);
+        result.putIntArray(ProductContract.ProductEntry.EXTRA_QUANTITIES, quantities);
+        result.putBoolean(ProductContract.ProductEntry.EXTRA_HAS_MORE_ALERTS,
+                productIds.length == limit);
+        return result;
+    }
+
+    /**
+     * Helper method atomically adding a delta to the quantity of a product.
+     *
+     * @param productId ID of the product whose quantity should be adjusted
+     * @param delta     number of items to add to (if positive) or remove from (if negative) the
+     *                  product quantity
+     * @return quantity of the product after the adjustment, or
+     * {@link ProductContract.ProductEntry#QUANTITY_NOT_ADJUSTED} if the product does not exist
+     * or if there are not enough items in stock.
+     */
+    private int adjustQuantity(long productId, int delta) {
+        return adjustQuantities(new long[]{productId}, new int[]{delta}, NO_BATCH_ID)[0];
+    }
+
+    /**
+     * Helper method atomically adding deltas to the quantities of several products, in one single
+     * transaction. Every delta is applied with one single compiled SQL statement, so that
+     * concurrent adjustments never overwrite each other. An adjustment is refused if it would make
+     * the product quantity negative; the other adjustments are still applied.
+     * A batch of deltas whose ID is not greater than the ID of the last applied batch has
+     * already been applied, and is refused as a whole; otherwise its ID is recorded within the
+     * same transaction as the deltas.
+     *
+     * @param productIds IDs of the products whose quantities should be adjusted
+     * @param deltas     number of items to add to (if positive) or remove from (if negative) the
+     *                   quantity of the product with the same index in productIds
+     * @param batchId    ID of the batch of deltas, or {@link #NO_BATCH_ID}
+     * @return quantities of the products after the adjustments, or
+     * {@link ProductContract.ProductEntry#QUANTITY_NOT_ADJUSTED} for each product which does not
+     * exist or which does not have enough items in stock; null if the batch had already been
+     * applied.
+     */
+    private int[] adjustQuantities(long[] productIds, int[] deltas, long batchId) {
+        SQLiteDatabase db = productDbHelper.getWritableDatabase();
+
+        int[] newQuantities = new int[productIds.length];
+        long updatedAt = System.currentTimeMillis();
+        boolean isBatchOwner = beginNotificationBatch();
+        boolean isCommitted = false;
+        db.beginTransaction();
+        try {
+            if (batchId != NO_BATCH_ID) {
+                if (batchId <= DatabaseUtils.longForQuery(db, SQL_SELECT_LAST_BATCH_ID, null)) {
+                    return null;
+                }
+                db.execSQL(SQL_UPDATE_LAST_BATCH_ID, new Object[]{batchId});
+            }
+            for (int i = 0; i < productIds.length; i++) {
+                // adjust and read the resulting quantity within the same transaction
+                newQuantities[i] = productStatements.adjustQuantity(productIds[i], deltas[i],
+                        updatedAt);
+                if (newQuantities[i] != ProductContract.ProductEntry.QUANTITY_NOT_ADJUSTED) {
+                    // deltas are only applied by sales (negative) and restocks (positive)
+                    stockLedger.recordMovement(productIds[i], deltas[i], deltas[i] < 0 ?
+                            ProductContract.StockMovementEntry.REASON_SALE :
+                            ProductContract.StockMovementEntry.REASON_RESTOCK);
+                    notifyProductsChanged(ContentUris.withAppendedId(
+                            ProductContract.ProductEntry.CONTENT_URI, productIds[i]));
+                }
+            }
+            db.setTransactionSuccessful();
+            isCommitted = true;
+        } finally {
+            db.endTransaction();
+            // If any quantity was adjusted, notify all listeners once
+            endNotificationBatch(isBatchOwner, isCommitted);
+        }
+        return newQuantities;
+    }
+
+    /**
+     * Helper method notifying all listeners that the data at the given URI has changed. Changes
+     * of a single product should be notified through the URI of the product: listeners of that
+     * product only are notified, as well as listeners of the whole list, which can tell which
+     * product changed. While a multi-row operation runs, the notification is postponed until the
+     * whole operation has been committed.
+     * The changed products are removed from the cache at the same time, once the changes are
+     * committed.
+     *
+     * @param uri at which the data has changed
+     */
+    private void notifyProductsChanged(Uri uri) {
+        Set<Uri> batchedUris = batchedNotifications.get();
+        if (batchedUris != null) {
+            batchedUris.add(uri);
+            return;
+        }
+        invalidateCachedProducts(uri);
+        getContext().getContentResolver().notifyChange(uri, null);
+        providerMetrics.recordNotification();
+        compactLedgerIfDue();
+    }
+
+    /**
+     * Helper method compacting the stock ledger on the writer thread, if the compaction interval
+     * has elapsed since the last one. Called after every committed product change, which is
+     * what adds movements to the ledger; most of the time, this only reads the clock.
+     */
+    private void compactLedgerIfDue() {
+        long nowMillis = System.currentTimeMillis();
+        long nextMillis = nextLedgerCompactionMillis.get();
+        if (nowMillis < nextMillis || !nextLedgerCompactionMillis.compareAndSet(nextMillis,
+                nowMillis + ledgerCompactionIntervalMillis)) {
+            // not due yet, or another thread is already scheduling it
+            return;
+        }
+        ProductRepository.getInstance(getContext()).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stockLedger.compact(productDbHelper.getWritableDatabase(),
+                            ledgerRetentionDays);
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Helper method removing changed products from the cache.
+     *
+     * @param uri at which the data has changed - either the URI of a single product, or the URI
+     *            of the whole list if the changed products cannot be told apart
+     */
+    private void invalidateCachedProducts(Uri uri) {
+        long productId = ProductContract.ProductEntry.parseProductId(uri);
+        if (productId == ProductContract.ProductEntry.NO_PRODUCT_ID) {
+            productCache.invalidateAll();
+        } else {
+            productCache.invalidate(productId);
+        }
+    }
+
+    /**
+     * Helper method starting to batch the notifications of the changes made on the calling
+     * thread, unless they are already batched by an enclosing operation.
+     *
+     * @return true if the caller started the batch, and must end it with
+     * {@link #endNotificationBatch(boolean, boolean)}
+     */
+    private boolean beginNotificationBatch() {
+        if (batchedNotifications.get() != null) {
+            return false;
+        }
+        batchedNotifications.set(new LinkedHashSet<Uri>());
+        return true;
+    }
+
+    /**
+     * Helper method ending the batch of notifications started by
+     * {@link #beginNotificationBatch()}. If the changes were committed, listeners are notified
+     * once: through the URI of the product if a single product changed, otherwise through the
+     * URI of the whole list.
+     *
+     * @param isBatchOwner whether the caller started the batch - nothing is done otherwise
+     * @param isCommitted  whether the changes were committed, or rolled back
+     */
+    private void endNotificationBatch(boolean isBatchOwner, boolean isCommitted) {
+        if (!isBatchOwner) {
+            return;
+        }
+        Set<Uri> batchedUris = batchedNotifications.get();
+        batchedNotifications.remove();
+        if (!isCommitted || batchedUris.isEmpty()) {
+            return;
+        }
+        for (Uri batchedUri : batchedUris) {
+            invalidateCachedProducts(batchedUri);
+        }
+        Uri uri = batchedUris.size() == 1 ? batchedUris.iterator().next() :
+                ProductContract.ProductEntry.CONTENT_URI;
+        getContext().getContentResolver().notifyChange(uri, null);
+        providerMetrics.recordNotification();
+        compactLedgerIfDue();
+    }
 }
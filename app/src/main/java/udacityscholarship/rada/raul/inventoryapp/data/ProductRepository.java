@@ -0,0 +1,309 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Entry point for all the writes to the {@link ProductProvider}. Every write runs on one single
+ * background writer thread, so that writes never block the main thread and never compete with
+ * each other for the database lock. The result of each write is delivered on the main thread.
+ */
+public class ProductRepository {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ProductRepository.class.getSimpleName();
+
+    /**
+     * Name of the background thread on which all writes run
+     */
+    private static final String WRITER_THREAD_NAME = "ProductWriter";
+
+    /**
+     * The single instance of the repository, shared by all the screens of the app
+     */
+    private static ProductRepository sInstance;
+
+    /**
+     * Content resolver used to reach the {@link ProductProvider}
+     */
+    private final ContentResolver contentResolver;
+
+    /**
+     * Executor running all writes, one after the other, on the writer thread
+     */
+    private final ExecutorService writeExecutor;
+
+    /**
+     * Handler used to deliver the results of the writes on the main thread
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Flag cancelling the insertion of generated products in progress, or null if there is none.
+     * Only used on the main thread.
+     */
+    private AtomicBoolean generationCancelled;
+
+    /**
+     * Callback receiving the result of a write on the main thread.
+     *
+     * @param <T> type of the result
+     */
+    public interface Callback<T> {
+        /**
+         * @param result of the write - the same value the {@link ContentResolver} would have
+         *               returned, or the failure value (null, 0) if the write threw an exception
+         */
+        void onResult(T result);
+    }
+
+    /**
+     * Create the repository and its writer thread.
+     *
+     * @param context of the app
+     */
+    private ProductRepository(Context context) {
+        contentResolver = context.getApplicationContext().getContentResolver();
+        writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, WRITER_THREAD_NAME);
+            }
+        });
+    }
+
+    /**
+     * Get the single instance of the repository, creating it if needed.
+     *
+     * @param context of the app
+     * @return the repository
+     */
+    public static synchronized ProductRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProductRepository(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Insert a product.
+     *
+     * @param uri      content URI of the products table
+     * @param values   describing the product
+     * @param callback receiving the URI of the new product, or null if the insertion failed
+     */
+    public void insert(final Uri uri, final ContentValues values, Callback<Uri> callback) {
+        submit(new Callable<Uri>() {
+            @Override
+            public Uri call() {
+                return contentResolver.insert(uri, values);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Insert several products in one single transaction.
+     *
+     * @param uri      content URI of the products table
+     * @param values   describing the products
+     * @param callback receiving the number of products inserted
+     */
+    public void bulkInsert(final Uri uri, final ContentValues[] values,
+                           Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.bulkInsert(uri, values);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Update one or more products.
+     *
+     * @param uri           content URI of the products to update
+     * @param values        new values of the products
+     * @param selection     selection, or null if the URI already identifies the products
+     * @param selectionArgs selection arguments
+     * @param callback      receiving the number of products updated
+     */
+    public void update(final Uri uri, final ContentValues values, final String selection,
+                       final String[] selectionArgs, Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.update(uri, values, selection, selectionArgs);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Delete one or more products.
+     *
+     * @param uri           content URI of the products to delete
+     * @param selection     selection, or null if the URI already identifies the products
+     * @param selectionArgs selection arguments
+     * @param callback      receiving the number of products deleted
+     */
+    public void delete(final Uri uri, final String selection, final String[] selectionArgs,
+                       Callback<Integer> callback) {
+        submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return contentResolver.delete(uri, selection, selectionArgs);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * Call one of the methods of the provider, such as
+     * {@link ProductContract.ProductEntry#METHOD_ADJUST_QUANTITY}.
+     *
+     * @param method   name of the method
+     * @param extras   arguments of the method
+     * @param callback receiving the result of the method, or null if it failed
+     */
+    public void call(final String method, final Bundle extras, Callback<Bundle> callback) {
+        submit(new Callable<Bundle>() {
+            @Override
+            public Bundle call() {
+                return contentResolver.call(ProductContract.ProductEntry.CONTENT_URI, method,
+                        null, extras);
+            }
+        }, null, callback);
+    }
+
+    /**
+     * Insert generated products, in batches of one transaction each. Meant for load testing.
+     * Each batch is its own task on the writer thread, queued behind the writes submitted while
+     * the previous batch ran, so that the writes of the user never wait for the whole
+     * generation. The generation stops before its next batch once
+     * {@link #cancelProductGeneration()} is called. Must be called on the main thread.
+     *
+     * @param generator    generating the products
+     * @param productCount number of products to insert
+     * @param batchSize    number of products inserted in each transaction
+     * @param callback     receiving the number of products inserted, once the last batch is
+     *                     inserted or the generation is cancelled
+     */
+    public void insertGeneratedProducts(final ProductLoadGenerator generator,
+                                        final long productCount, final int batchSize,
+                                        final Callback<Long> callback) {
+        final AtomicBoolean isCancelled = new AtomicBoolean();
+        generationCancelled = isCancelled;
+        writeExecutor.execute(new Runnable() {
+            /**
+             * Values reused for each batch; like the counters below, only used on the writer
+             * thread
+             */
+            private final ContentValues[] batch = ProductLoadGenerator.newBatch(batchSize);
+            private long productsInserted;
+            private long productsLeft = productCount;
+
+            @Override
+            public void run() {
+                if (productsLeft > 0 && !isCancelled.get()) {
+                    int count = (int) Math.min(batchSize, productsLeft);
+                    try {
+                        productsInserted += generator.insertBatch(contentResolver, batch, count);
+                        productsLeft -= count;
+                    } catch (Exception e) {
+                        Log.e(LOG_TAG, e.getMessage(), e);
+                        productsLeft = 0;
+                    }
+                    if (productsLeft > 0 && !isCancelled.get()) {
+                        // queue the next batch behind the writes submitted meanwhile
+                        writeExecutor.execute(this);
+                        return;
+                    }
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generationCancelled == isCancelled) {
+                            generationCancelled = null;
+                        }
+                        callback.onResult(productsInserted);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return true if generated products are being inserted, and the insertion was not
+     * cancelled. Must be called on the main thread.
+     */
+    public boolean isGeneratingProducts() {
+        return generationCancelled != null && !generationCancelled.get();
+    }
+
+    /**
+     * Stop inserting generated products, before the next batch. The callback of the generation
+     * receives the number of products inserted so far. Must be called on the main thread.
+     */
+    public void cancelProductGeneration() {
+        if (generationCancelled != null) {
+            generationCancelled.set(true);
+        }
+    }
+
+    /**
+     * Run a task on the writer thread, after all the writes submitted before it.
+     *
+     * @param task to run, which may write to the provider directly
+     */
+    public void execute(Runnable task) {
+        writeExecutor.execute(task);
+    }
+
+    /**
+     * Helper method running a write on the writer thread and delivering its result on the main
+     * thread.
+     *
+     * @param write         to run
+     * @param failureResult delivered if the write throws an exception
+     * @param callback      receiving the result, or null if the result is not needed
+     * @param <T>           type of the result
+     */
+    private <T> void submit(final Callable<T> write, final T failureResult,
+                            final Callback<T> callback) {
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result;
+                try {
+                    result = write.call();
+                } catch (Exception e) {
+                    Log.e(LOG_TAG, e.getMessage(), e);
+                    result = failureResult;
+                }
+
+                if (callback != null) {
+                    final T finalResult = result;
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onResult(finalResult);
+                        }
+                    });
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,289 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+/**
+ * Pool of compiled SQL statements for the most common writes of the {@link ProductProvider}:
+ * inserting a full product, updating the quantity of a product, updating a full product,
+ * deleting a product and adjusting the quantity of a product by a delta. Each statement is
+ * compiled once, the first time it is needed, and the values are bound directly as primitives,
+ * rather than parsing the SQL and boxing every value into a ContentValues for every write.
+ * <p>
+ * Every statement is used by one thread at a time, as binding the arguments and executing the
+ * statement must not interleave between threads.
+ */
+class ProductStatements {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = ProductStatements.class.getSimpleName();
+
+    /**
+     * Value returned by {@link #insertFullRow(ContentValues, long)} when the insertion failed,
+     * the same as {@link SQLiteDatabase#insert(String, String, ContentValues)}
+     */
+    static final long INSERTION_FAILED = -1;
+
+    /**
+     * Columns of a full product, in the order in which they are bound to the statements
+     */
+    private static final String[] FULL_ROW_COLUMNS = {
+            ProductContract.ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID
+    };
+
+    /**
+     * Indices of the pooled statements
+     */
+    private static final int INSERT_FULL_ROW = 0;
+    private static final int UPDATE_FULL_ROW = 1;
+    private static final int UPDATE_QUANTITY = 2;
+    private static final int DELETE_BY_ID = 3;
+    private static final int ADJUST_QUANTITY = 4;
+    private static final int SELECT_QUANTITY = 5;
+
+    /**
+     * SQL of the pooled statements, by index
+     */
+    private static final String[] SQL = {
+            // INSERT_FULL_ROW. Bound arguments: the full row columns, update time.
+            "INSERT INTO " + ProductContract.ProductEntry.TABLE_NAME + " (" +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_NAME + ", " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE + ", " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + ", " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + ", " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT +
+                    ") VALUES (?, ?, ?, ?, ?)",
+            // UPDATE_FULL_ROW. Bound arguments: the full row columns, update time, product ID.
+            "UPDATE " + ProductContract.ProductEntry.TABLE_NAME + " SET " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_NAME + " = ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE + " = ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID + " = ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT + " = ? WHERE " +
+                    ProductContract.ProductEntry._ID + " = ?",
+            // UPDATE_QUANTITY. Bound arguments: quantity, update time, product ID.
+            "UPDATE " + ProductContract.ProductEntry.TABLE_NAME + " SET " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT + " = ? WHERE " +
+                    ProductContract.ProductEntry._ID + " = ?",
+            // DELETE_BY_ID. Bound arguments: product ID.
+            "DELETE FROM " + ProductContract.ProductEntry.TABLE_NAME + " WHERE " +
+                    ProductContract.ProductEntry._ID + " = ?",
+            // ADJUST_QUANTITY: atomically adds a delta to the quantity of a product, as long as
+            // the resulting quantity is not negative. Bound arguments: delta, update time,
+            // product ID, delta.
+            "UPDATE " + ProductContract.ProductEntry.TABLE_NAME + " SET " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " = " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?, " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_UPDATED_AT + " = ? WHERE " +
+                    ProductContract.ProductEntry._ID + " = ? AND " +
+                    ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ? >= 0",
+            // SELECT_QUANTITY. Bound arguments: product ID.
+            "SELECT " + ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " FROM " +
+                    ProductContract.ProductEntry.TABLE_NAME + " WHERE " +
+                    ProductContract.ProductEntry._ID + " = ?"
+    };
+
+    /**
+     * Database helper providing the database on which the statements are compiled
+     */
+    private final ProductDbHelper productDbHelper;
+
+    /**
+     * The compiled statements, by index, or null until they are first needed. Access to the
+     * array is guarded by the array itself.
+     */
+    private final SQLiteStatement[] statements = new SQLiteStatement[SQL.length];
+
+    /**
+     * Lock guarding the statements used to adjust quantities, which are used together
+     */
+    private final Object adjustQuantityLock = new Object();
+
+    /**
+     * Create an empty pool. The statements are compiled the first time they are needed.
+     *
+     * @param productDbHelper database helper providing the database
+     */
+    ProductStatements(ProductDbHelper productDbHelper) {
+        this.productDbHelper = productDbHelper;
+    }
+
+    /**
+     * Check whether the values describe a full product, with a non-null value for every column
+     * of the products table (the supplier being given by its ID), so that they can be written
+     * with {@link #insertFullRow(ContentValues, long)} or
+     * {@link #updateFullRow(long, ContentValues, long)}.
+     *
+     * @param values of the product
+     * @return true if the values describe a full product
+     */
+    static boolean isFullRow(ContentValues values) {
+        if (values.size() != FULL_ROW_COLUMNS.length) {
+            return false;
+        }
+        return values.getAsString(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME) != null &&
+                values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE) != null &&
+                values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY) != null &&
+                values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID) != null;
+    }
+
+    /**
+     * Check whether the values only hold a non-null quantity, so that they can be written with
+     * {@link #updateQuantity(long, long, long)}.
+     *
+     * @param values of the product
+     * @return true if the values only hold the quantity
+     */
+    static boolean isQuantityOnly(ContentValues values) {
+        return values.size() == 1 &&
+                values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY) != null;
+    }
+
+    /**
+     * Insert a full product.
+     *
+     * @param values    of the product, for which {@link #isFullRow(ContentValues)} is true
+     * @param updatedAt time of the insertion, as in {@link System#currentTimeMillis()}
+     * @return ID of the new product, or {@link #INSERTION_FAILED} if the insertion failed
+     */
+    long insertFullRow(ContentValues values, long updatedAt) {
+        SQLiteStatement statement = getStatement(INSERT_FULL_ROW);
+        synchronized (statement) {
+            bindFullRow(statement, values);
+            statement.bindLong(FULL_ROW_COLUMNS.length + 1, updatedAt);
+            try {
+                return statement.executeInsert();
+            } catch (SQLException e) {
+                // same behaviour as SQLiteDatabase.insert()
+                Log.e(LOG_TAG, e.getMessage(), e);
+                return INSERTION_FAILED;
+            }
+        }
+    }
+
+    /**
+     * Update all the columns of a product.
+     *
+     * @param productId ID of the product
+     * @param values    of the product, for which {@link #isFullRow(ContentValues)} is true
+     * @param updatedAt time of the update, as in {@link System#currentTimeMillis()}
+     * @return number of products updated
+     */
+    int updateFullRow(long productId, ContentValues values, long updatedAt) {
+        SQLiteStatement statement = getStatement(UPDATE_FULL_ROW);
+        synchronized (statement) {
+            bindFullRow(statement, values);
+            statement.bindLong(FULL_ROW_COLUMNS.length + 1, updatedAt);
+            statement.bindLong(FULL_ROW_COLUMNS.length + 2, productId);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Set the quantity of a product.
+     *
+     * @param productId ID of the product
+     * @param quantity  new quantity of the product
+     * @param updatedAt time of the update, as in {@link System#currentTimeMillis()}
+     * @return number of products updated
+     */
+    int updateQuantity(long productId, long quantity, long updatedAt) {
+        SQLiteStatement statement = getStatement(UPDATE_QUANTITY);
+        synchronized (statement) {
+            statement.bindLong(1, quantity);
+            statement.bindLong(2, updatedAt);
+            statement.bindLong(3, productId);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Delete a product.
+     *
+     * @param productId ID of the product
+     * @return number of products deleted
+     */
+    int deleteById(long productId) {
+        SQLiteStatement statement = getStatement(DELETE_BY_ID);
+        synchronized (statement) {
+            statement.bindLong(1, productId);
+            return statement.executeUpdateDelete();
+        }
+    }
+
+    /**
+     * Atomically add a delta to the quantity of a product, unless the quantity would become
+     * negative. Should run within a transaction, so that the quantity read back is the one
+     * resulting from the adjustment.
+     *
+     * @param productId ID of the product
+     * @param delta     number of items to add to (if positive) or remove from (if negative) the
+     *                  product quantity
+     * @param updatedAt time of the adjustment, as in {@link System#currentTimeMillis()}
+     * @return quantity of the product after the adjustment, or
+     * {@link ProductContract.ProductEntry#QUANTITY_NOT_ADJUSTED} if the product does not exist or
+     * if there are not enough items in stock.
+     */
+    int adjustQuantity(long productId, int delta, long updatedAt) {
+        SQLiteStatement adjustStatement = getStatement(ADJUST_QUANTITY);
+        SQLiteStatement selectStatement = getStatement(SELECT_QUANTITY);
+        synchronized (adjustQuantityLock) {
+            adjustStatement.bindLong(1, delta);
+            adjustStatement.bindLong(2, updatedAt);
+            adjustStatement.bindLong(3, productId);
+            adjustStatement.bindLong(4, delta);
+            if (adjustStatement.executeUpdateDelete() != 1) {
+                return ProductContract.ProductEntry.QUANTITY_NOT_ADJUSTED;
+            }
+            selectStatement.bindLong(1, productId);
+            try {
+                return (int) selectStatement.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return ProductContract.ProductEntry.QUANTITY_NOT_ADJUSTED;
+            }
+        }
+    }
+
+    /**
+     * Get a pooled statement, compiling it the first time it is needed.
+     *
+     * @param index of the statement
+     * @return the compiled statement
+     */
+    private SQLiteStatement getStatement(int index) {
+        synchronized (statements) {
+            if (statements[index] == null) {
+                statements[index] = productDbHelper.getWritableDatabase().compileStatement(
+                        SQL[index]);
+            }
+            return statements[index];
+        }
+    }
+
+    /**
+     * Bind the values of a full product to the first arguments of a statement.
+     *
+     * @param statement to bind the values to
+     * @param values    of the product, for which {@link #isFullRow(ContentValues)} is true
+     */
+    private static void bindFullRow(SQLiteStatement statement, ContentValues values) {
+        statement.bindString(1, values.getAsString(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_NAME));
+        statement.bindLong(2, values.getAsLong(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE));
+        statement.bindLong(3, values.getAsLong(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY));
+        statement.bindLong(4, values.getAsLong(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_ID));
+    }
+}
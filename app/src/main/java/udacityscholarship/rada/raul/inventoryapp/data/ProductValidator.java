@@ -0,0 +1,98 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.Resources;
+
+import udacityscholarship.rada.raul.inventoryapp.R;
+
+/**
+ * Rules a new product must satisfy before it is inserted in the database. The
+ * {@link ProductProvider} applies them to every insert, and the {@link ProductCsvImporter}
+ * applies the same rules to every imported row, so that invalid rows are rejected one by one
+ * instead of failing a whole batch.
+ */
+public class ProductValidator {
+
+    /**
+     * Resources holding the error messages
+     */
+    private final Resources resources;
+
+    /**
+     * Create a validator.
+     *
+     * @param context used to read the error messages
+     */
+    public ProductValidator(Context context) {
+        resources = context.getResources();
+    }
+
+    /**
+     * Check that the given values describe a product which can be inserted in the database.
+     *
+     * @param values to be inserted in the database in relation to the product
+     * @return message describing the first invalid product detail, or null if the product is
+     * valid
+     */
+    public String findNewProductError(ContentValues values) {
+        // Check that the name is not null
+        String productName = values.getAsString(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_NAME);
+        if (productName == null) {
+            return resources.getString(R.string.product_name_required);
+        }
+
+        // Check that product price is not null and that it is positive
+        Long productPrice = values.getAsLong(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE);
+        if (productPrice == null) {
+            return resources.getString(R.string.product_price_not_null);
+        }
+        if (productPrice < 0) {
+            return resources.getString(R.string.product_price_positive);
+        }
+
+        // If a product quantity is provided, check that it is not negative
+        Integer productQuantity = values.getAsInteger
+                (ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        if (productQuantity != null && productQuantity < 0) {
+            return resources.getString(R.string.product_quantity_positive);
+        }
+
+        // Check that the name of the supplier is not null
+        String productSupplier = values.getAsString(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER);
+        if (productSupplier == null) {
+            return resources.getString(R.string.product_supplier_required);
+        }
+
+        // Check that the phone number of the supplier is not null
+        String productSupplierPhoneNumber = values.getAsString(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER);
+        if (productSupplierPhoneNumber == null) {
+            return resources.getString(R.string.product_supplier_phone_required);
+        }
+
+        // If a reorder threshold is provided, check that it is not negative
+        Integer productReorderThreshold = values.getAsInteger(
+                ProductContract.ProductEntry.COLUMN_PRODUCT_REORDER_THRESHOLD);
+        if (productReorderThreshold != null && productReorderThreshold < 0) {
+            return resources.getString(R.string.product_reorder_threshold_positive);
+        }
+
+        return null;
+    }
+
+    /**
+     * Check that the given values describe a product which can be inserted in the database.
+     *
+     * @param values to be inserted in the database in relation to the product
+     * @throws IllegalArgumentException if any of the required product details is missing or invalid
+     */
+    public void validateNewProduct(ContentValues values) {
+        String error = findNewProductError(values);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+}
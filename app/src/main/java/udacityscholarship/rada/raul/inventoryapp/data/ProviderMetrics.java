@@ -0,0 +1,310 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency and throughput metrics of the {@link ProductProvider}, kept for every operation
+ * (query, insert, ...) and target (URI or method) of the provider: number of calls and failures,
+ * rows returned or changed, total and maximum latency, and a latency histogram. The metrics are
+ * read through {@link ProductContract#METHOD_METRICS}, so they can be pulled from a device in the
+ * field without a profiler.
+ * <p>
+ * Recording is lock-free and allocates nothing, apart from the histogram of an operation and
+ * target the first time it is recorded. The histograms have log-linear buckets in the manner of
+ * HdrHistogram: every power of two of microseconds is split into {@link #SUB_BUCKETS} buckets,
+ * so every latency is known within 25%, from one microsecond to minutes, in about a hundred
+ * buckets.
+ */
+class ProviderMetrics {
+
+    /**
+     * Operations of the provider
+     */
+    static final int OPERATION_QUERY = 0;
+    static final int OPERATION_INSERT = 1;
+    static final int OPERATION_BULK_INSERT = 2;
+    static final int OPERATION_UPDATE = 3;
+    static final int OPERATION_DELETE = 4;
+    static final int OPERATION_APPLY_BATCH = 5;
+    static final int OPERATION_CALL = 6;
+
+    /**
+     * Names of the operations, indexed by the OPERATION_ constants
+     */
+    private static final String[] OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete", "apply_batch", "call"
+    };
+
+    /**
+     * Number of bits, and of buckets, into which every power of two of the histograms is split
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Largest power of two of microseconds with buckets of its own (2^27 us is over two
+     * minutes); longer latencies are counted in the last bucket.
+     */
+    private static final int MAX_EXPONENT = 26;
+
+    /**
+     * Number of buckets of each histogram
+     */
+    static final int BUCKET_COUNT = SUB_BUCKETS * MAX_EXPONENT;
+
+    /**
+     * Percentiles of the latency returned for every operation
+     */
+    private static final double P50 = 0.5;
+    private static final double P90 = 0.9;
+    private static final double P99 = 0.99;
+
+    /**
+     * Number of nanoseconds in a microsecond
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+
+    /**
+     * Separator of the operation and the target in the keys of the metrics
+     */
+    private static final String KEY_SEPARATOR = " ";
+
+    /**
+     * Names of the targets of the operations, such as URIs and provider methods
+     */
+    private final String[] targetNames;
+
+    /**
+     * Counters of every operation and target, at index operation * targets + target
+     */
+    private final AtomicLongArray counts;
+    private final AtomicLongArray failures;
+    private final AtomicLongArray rows;
+    private final AtomicLongArray totalNanos;
+    private final AtomicLongArray maxNanos;
+
+    /**
+     * Histogram of every operation and target, created when the operation is first recorded
+     */
+    private final AtomicReferenceArray<AtomicLongArray> histograms;
+
+    /**
+     * Number of change notifications sent by the provider
+     */
+    private final AtomicLong notifications = new AtomicLong();
+
+    /**
+     * Time at which the metrics started, as in {@link System#currentTimeMillis()}
+     */
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    /**
+     * Create the metrics.
+     *
+     * @param targetNames names of the targets of the operations, such as URIs and provider
+     *                    methods, indexed by the target passed to
+     *                    {@link #record(int, int, long, long, boolean)}
+     */
+    ProviderMetrics(String[] targetNames) {
+        this.targetNames = targetNames;
+        int slots = OPERATION_NAMES.length * targetNames.length;
+        counts = new AtomicLongArray(slots);
+        failures = new AtomicLongArray(slots);
+        rows = new AtomicLongArray(slots);
+        totalNanos = new AtomicLongArray(slots);
+        maxNanos = new AtomicLongArray(slots);
+        histograms = new AtomicReferenceArray<>(slots);
+    }
+
+    /**
+     * Record one operation of the provider.
+     *
+     * @param operation  one of the OPERATION_ constants
+     * @param target     index of the target of the operation, such as the URI match
+     * @param startNanos time at which the operation started, as in {@link System#nanoTime()}
+     * @param rowCount   number of rows returned or changed
+     * @param failed     whether the operation threw an exception
+     */
+    void record(int operation, int target, long startNanos, long rowCount, boolean failed) {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        int slot = operation * targetNames.length + target;
+
+        counts.incrementAndGet(slot);
+        if (failed) {
+            failures.incrementAndGet(slot);
+        }
+        rows.addAndGet(slot, rowCount);
+        totalNanos.addAndGet(slot, elapsedNanos);
+        long max = maxNanos.get(slot);
+        while (elapsedNanos > max && !maxNanos.compareAndSet(slot, max, elapsedNanos)) {
+            max = maxNanos.get(slot);
+        }
+
+        AtomicLongArray histogram = histograms.get(slot);
+        if (histogram == null) {
+            histograms.compareAndSet(slot, null, new AtomicLongArray(BUCKET_COUNT));
+            histogram = histograms.get(slot);
+        }
+        histogram.incrementAndGet(bucketOf(elapsedNanos / NANOS_PER_MICRO));
+    }
+
+    /**
+     * Record the rows returned by an operation, once they are known. The rows of a query are
+     * only known once the caller counts them, after the query itself has been recorded.
+     *
+     * @param operation one of the OPERATION_ constants
+     * @param target    index of the target of the operation, such as the URI match
+     * @param rowCount  number of rows returned
+     */
+    void recordRows(int operation, int target, long rowCount) {
+        rows.addAndGet(operation * targetNames.length + target, rowCount);
+    }
+
+    /**
+     * Record one change notification sent by the provider.
+     */
+    void recordNotification() {
+        notifications.incrementAndGet();
+    }
+
+    /**
+     * Reset all the metrics. Operations recorded meanwhile may be partially reset.
+     */
+    void reset() {
+        for (int slot = 0; slot < counts.length(); slot++) {
+            counts.set(slot, 0);
+            failures.set(slot, 0);
+            rows.set(slot, 0);
+            totalNanos.set(slot, 0);
+            maxNanos.set(slot, 0);
+            histograms.set(slot, null);
+        }
+        notifications.set(0);
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the metrics, as described by {@link ProductContract#METHOD_METRICS}
+     */
+    Bundle toBundle() {
+        Bundle result = new Bundle();
+        ArrayList<String> keys = new ArrayList<>();
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int target = 0; target < targetNames.length; target++) {
+                int slot = operation * targetNames.length + target;
+                long count = counts.get(slot);
+                AtomicLongArray histogram = histograms.get(slot);
+                if (count == 0 || histogram == null) {
+                    continue;
+                }
+                String key = OPERATION_NAMES[operation] + KEY_SEPARATOR + targetNames[target];
+                keys.add(key);
+                result.putBundle(key, slotToBundle(slot, histogram));
+            }
+        }
+        result.putStringArray(ProductContract.EXTRA_METRICS_KEYS,
+                keys.toArray(new String[keys.size()]));
+        result.putLong(ProductContract.EXTRA_METRICS_SINCE_MILLIS, sinceMillis);
+        result.putLong(ProductContract.EXTRA_METRICS_NOTIFICATIONS, notifications.get());
+
+        long[] bucketBounds = new long[BUCKET_COUNT];
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            bucketBounds[bucket] = upperBoundOf(bucket);
+        }
+        result.putLongArray(ProductContract.EXTRA_METRICS_BUCKET_BOUNDS_MICROS, bucketBounds);
+        return result;
+    }
+
+    /**
+     * @param slot      of an operation and target
+     * @param histogram of the operation and target
+     * @return the metrics of the operation and target
+     */
+    private Bundle slotToBundle(int slot, AtomicLongArray histogram) {
+        // copy the histogram first, so the percentiles are consistent with each other
+        long[] buckets = new long[BUCKET_COUNT];
+        long histogramCount = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            buckets[bucket] = histogram.get(bucket);
+            histogramCount += buckets[bucket];
+        }
+
+        Bundle metrics = new Bundle();
+        metrics.putLong(ProductContract.EXTRA_METRIC_COUNT, counts.get(slot));
+        metrics.putLong(ProductContract.EXTRA_METRIC_FAILURES, failures.get(slot));
+        metrics.putLong(ProductContract.EXTRA_METRIC_ROWS, rows.get(slot));
+        metrics.putLong(ProductContract.EXTRA_METRIC_TOTAL_MICROS,
+                totalNanos.get(slot) / NANOS_PER_MICRO);
+        metrics.putLong(ProductContract.EXTRA_METRIC_MAX_MICROS,
+                maxNanos.get(slot) / NANOS_PER_MICRO);
+        metrics.putLong(ProductContract.EXTRA_METRIC_P50_MICROS,
+                percentile(buckets, histogramCount, P50));
+        metrics.putLong(ProductContract.EXTRA_METRIC_P90_MICROS,
+                percentile(buckets, histogramCount, P90));
+        metrics.putLong(ProductContract.EXTRA_METRIC_P99_MICROS,
+                percentile(buckets, histogramCount, P99));
+        metrics.putLongArray(ProductContract.EXTRA_METRIC_HISTOGRAM, buckets);
+        return metrics;
+    }
+
+    /**
+     * @param buckets        of a histogram
+     * @param histogramCount number of latencies in the histogram
+     * @param percentile     between 0 and 1
+     * @return upper bound, in microseconds, of the bucket holding the percentile
+     */
+    private static long percentile(long[] buckets, long histogramCount, double percentile) {
+        long rank = (long) Math.ceil(histogramCount * percentile);
+        long cumulativeCount = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            cumulativeCount += buckets[bucket];
+            if (cumulativeCount >= rank && cumulativeCount > 0) {
+                return upperBoundOf(bucket);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param micros latency, in microseconds
+     * @return bucket of the histograms counting the latency
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + subBucket;
+    }
+
+    /**
+     * @param bucket of the histograms
+     * @return lowest latency, in microseconds, counted in the bucket
+     */
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param bucket of the histograms
+     * @return highest latency, in microseconds, counted in the bucket, or
+     * {@link Long#MAX_VALUE} for the last bucket
+     */
+    static long upperBoundOf(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBoundOf(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,84 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.CrossProcessCursorWrapper;
+
+/**
+ * Cursor returned by the queries of the {@link ProductProvider}, recording the number of rows
+ * it holds in the {@link ProviderMetrics} once the caller has counted them. The provider itself
+ * never counts the rows, which would run the query inside the provider before returning; the
+ * caller counts them anyway, when the cursor is sent to another process or when it is read.
+ * <p>
+ * The cursor stays a cross-process cursor, so its window is still filled directly from the
+ * underlying SQLite cursor when it is sent to another process.
+ */
+class RowCountingCursor extends CrossProcessCursorWrapper {
+
+    /**
+     * Metrics into which the row count is recorded
+     */
+    private final ProviderMetrics providerMetrics;
+
+    /**
+     * Operation and target of the provider metrics which returned the cursor
+     */
+    private final int operation;
+    private final int target;
+
+    /**
+     * Whether the rows have already been recorded, or were never read
+     */
+    private boolean isRecorded;
+
+    /**
+     * Wrap a cursor returned by the provider.
+     *
+     * @param cursor          returned by the query
+     * @param providerMetrics into which the row count is recorded
+     * @param operation       one of the OPERATION_ constants of {@link ProviderMetrics}
+     * @param target          index of the target of the operation, such as the URI match
+     */
+    RowCountingCursor(Cursor cursor, ProviderMetrics providerMetrics, int operation,
+                      int target) {
+        super(cursor);
+        this.providerMetrics = providerMetrics;
+        this.operation = operation;
+        this.target = target;
+    }
+
+    /**
+     * Count the rows, recording the count the first time.
+     */
+    @Override
+    public int getCount() {
+        int count = super.getCount();
+        recordRows(count);
+        return count;
+    }
+
+    /**
+     * Close the cursor. The rows of a cursor which was moved without being counted through this
+     * wrapper have been counted by the underlying cursor, so recording them costs nothing; the
+     * rows of a cursor which was never read are not recorded.
+     */
+    @Override
+    public void close() {
+        if (!isRecorded && !isClosed() && getPosition() != -1) {
+            recordRows(super.getCount());
+        }
+        isRecorded = true;
+        super.close();
+    }
+
+    /**
+     * Record the rows of the cursor in the provider metrics, unless they already were.
+     *
+     * @param count number of rows of the cursor
+     */
+    private void recordRows(int count) {
+        if (!isRecorded) {
+            isRecorded = true;
+            providerMetrics.recordRows(operation, target, count);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.Bundle;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Log of the slowest queries of the {@link ProductProvider}: every query which takes longer than
+ * the threshold is kept, with its selection, sort order, row count and the output of EXPLAIN
+ * QUERY PLAN, in a ring buffer holding the most recent ones. The log shows which selections and
+ * sort orders sent by the callers end up as full scans, so that indexes can be added for the
+ * real traffic.
+ * <p>
+ * The log is off until a threshold is set, and then costs nothing for the queries under the
+ * threshold; the query plan is only read for the slow ones.
+ */
+class SlowQueryLog {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = SlowQueryLog.class.getSimpleName();
+
+    /**
+     * Threshold turning the log off
+     */
+    static final long DISABLED = -1;
+
+    /**
+     * Prefix of the statement reading the plan of a query, and column of the plan holding the
+     * description of each step
+     */
+    private static final String EXPLAIN_QUERY_PLAN = "EXPLAIN QUERY PLAN ";
+    private static final String PLAN_DETAIL_COLUMN = "detail";
+
+    /**
+     * Separator of the steps of a query plan
+     */
+    private static final String PLAN_STEP_SEPARATOR = "\n";
+
+    /**
+     * Strings used for dumping the log
+     */
+    private static final String DUMP_HEADER = "Slow queries (threshold %d ms, %d of %d kept):";
+    private static final String DUMP_QUERY = "  %s  %d us  %d rows  %s";
+    private static final String DUMP_SQL = "    sql: ";
+    private static final String DUMP_SELECTION = "    selection: ";
+    private static final String DUMP_SORT_ORDER = "    sort order: ";
+    private static final String DUMP_PLAN_STEP = "    plan: ";
+
+    /**
+     * Number of nanoseconds in a microsecond and in a millisecond
+     */
+    private static final long NANOS_PER_MICRO = 1000;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * One slow query
+     */
+    private static final class Entry {
+        final long timeMillis;
+        final String uri;
+        final String sql;
+        final String selection;
+        final String sortOrder;
+        final long rowCount;
+        final long durationNanos;
+        final String plan;
+
+        Entry(long timeMillis, String uri, String sql, String selection, String sortOrder,
+              long rowCount, long durationNanos, String plan) {
+            this.timeMillis = timeMillis;
+            this.uri = uri;
+            this.sql = sql;
+            this.selection = selection;
+            this.sortOrder = sortOrder;
+            this.rowCount = rowCount;
+            this.durationNanos = durationNanos;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * Ring buffer of the slow queries; the next one is written at {@link #nextIndex}
+     */
+    private final Entry[] entries;
+    private int nextIndex;
+    private int size;
+
+    /**
+     * Queries taking at least this long are logged, unless it is {@link #DISABLED}
+     */
+    private volatile long thresholdNanos;
+
+    /**
+     * Create the log.
+     *
+     * @param capacity        maximum number of slow queries kept
+     * @param thresholdMillis queries taking at least this long are logged; negative to turn the
+     *                        log off
+     */
+    SlowQueryLog(int capacity, long thresholdMillis) {
+        entries = new Entry[capacity];
+        setThresholdMillis(thresholdMillis);
+    }
+
+    /**
+     * @param thresholdMillis queries taking at least this long are logged; negative to turn the
+     *                        log off
+     */
+    void setThresholdMillis(long thresholdMillis) {
+        thresholdNanos = thresholdMillis < 0 ? DISABLED : thresholdMillis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return the threshold, or {@link #DISABLED} when the log is off
+     */
+    long getThresholdMillis() {
+        long threshold = thresholdNanos;
+        return threshold < 0 ? DISABLED : threshold / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return whether queries are timed and the slow ones logged
+     */
+    boolean isEnabled() {
+        return thresholdNanos >= 0 && entries.length > 0;
+    }
+
+    /**
+     * Log a query if it took at least the threshold, reading its query plan. Must be called on
+     * the thread which ran the query, with the same database.
+     *
+     * @param db            database the query ran on
+     * @param uri           of the provider which was queried
+     * @param sql           run
+     * @param selectionArgs bound to the SQL, only used to read the query plan
+     * @param selection     of the query, or null
+     * @param sortOrder     of the query, or null
+     * @param rowCount      number of rows returned
+     * @param durationNanos duration of the query, including the counting of the rows
+     */
+    void record(SQLiteDatabase db, String uri, String sql, String[] selectionArgs,
+                String selection, String sortOrder, long rowCount, long durationNanos) {
+        long threshold = thresholdNanos;
+        if (threshold < 0 || durationNanos < threshold || entries.length == 0) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), uri, sql, selection, sortOrder,
+                rowCount, durationNanos, explain(db, sql, selectionArgs));
+        synchronized (entries) {
+            entries[nextIndex] = entry;
+            nextIndex = (nextIndex + 1) % entries.length;
+            size = Math.min(size + 1, entries.length);
+        }
+    }
+
+    /**
+     * Clear the log.
+     */
+    void clear() {
+        synchronized (entries) {
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = null;
+            }
+            nextIndex = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * @return the log, as described by {@link ProductContract#METHOD_SLOW_QUERIES}
+     */
+    Bundle toBundle() {
+        ArrayList<Bundle> queries = new ArrayList<>();
+        for (Entry entry : snapshot()) {
+            Bundle query = new Bundle();
+            query.putLong(ProductContract.EXTRA_SLOW_QUERY_TIME_MILLIS, entry.timeMillis);
+            query.putString(ProductContract.EXTRA_SLOW_QUERY_URI, entry.uri);
+            query.putString(ProductContract.EXTRA_SLOW_QUERY_SQL, entry.sql);
+            query.putString(ProductContract.EXTRA_SLOW_QUERY_SELECTION, entry.selection);
+            query.putString(ProductContract.EXTRA_SLOW_QUERY_SORT_ORDER, entry.sortOrder);
+            query.putLong(ProductContract.EXTRA_SLOW_QUERY_ROWS, entry.rowCount);
+            query.putLong(ProductContract.EXTRA_SLOW_QUERY_DURATION_MICROS,
+                    entry.durationNanos / NANOS_PER_MICRO);
+            query.putString(ProductContract.EXTRA_SLOW_QUERY_PLAN, entry.plan);
+            queries.add(query);
+        }
+
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.EXTRA_SLOW_QUERY_THRESHOLD_MILLIS, getThresholdMillis());
+        result.putParcelableArrayList(ProductContract.EXTRA_SLOW_QUERIES, queries);
+        return result;
+    }
+
+    /**
+     * Write the log in a readable form, for the dump of the provider.
+     *
+     * @param writer to write the log to
+     */
+    void dump(PrintWriter writer) {
+        Entry[] queries = snapshot();
+        writer.println(String.format(Locale.ROOT, DUMP_HEADER, getThresholdMillis(),
+                queries.length, entries.length));
+        for (Entry entry : queries) {
+            writer.println(String.format(Locale.ROOT, DUMP_QUERY, new Date(entry.timeMillis),
+                    entry.durationNanos / NANOS_PER_MICRO, entry.rowCount, entry.uri));
+            writer.println(DUMP_SQL + entry.sql);
+            if (entry.selection != null) {
+                writer.println(DUMP_SELECTION + entry.selection);
+            }
+            if (entry.sortOrder != null) {
+                writer.println(DUMP_SORT_ORDER + entry.sortOrder);
+            }
+            for (String step : entry.plan.split(PLAN_STEP_SEPARATOR)) {
+                writer.println(DUMP_PLAN_STEP + step);
+            }
+        }
+    }
+
+    /**
+     * @return the slow queries, oldest first
+     */
+    private Entry[] snapshot() {
+        synchronized (entries) {
+            Entry[] queries = new Entry[size];
+            int first = (nextIndex - size + entries.length) % entries.length;
+            for (int i = 0; i < size; i++) {
+                queries[i] = entries[(first + i) % entries.length];
+            }
+            return queries;
+        }
+    }
+
+    /**
+     * @param db            database the query ran on
+     * @param sql           of the query
+     * @param selectionArgs bound to the SQL
+     * @return the plan of the query, one line per step, or the error if it could not be read
+     */
+    private static String explain(SQLiteDatabase db, String sql, String[] selectionArgs) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(EXPLAIN_QUERY_PLAN + sql, selectionArgs);
+            int detailIndex = cursor.getColumnIndexOrThrow(PLAN_DETAIL_COLUMN);
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append(PLAN_STEP_SEPARATOR);
+                }
+                plan.append(cursor.getString(detailIndex));
+            }
+        } catch (SQLiteException | IllegalArgumentException e) {
+            Log.w(LOG_TAG, e.getMessage(), e);
+            return e.toString();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return plan.toString();
+    }
+}
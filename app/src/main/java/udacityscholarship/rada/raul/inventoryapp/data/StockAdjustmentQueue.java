@@ -0,0 +1,489 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+
+import udacityscholarship.rada.raul.inventoryapp.R;
+
+/**
+ * Write-behind queue for quantity adjustments (sales, restocks). Adjustments of the same product
+ * made within a short window are merged into one single delta, and all pending deltas are then
+ * written to the {@link ProductProvider} in one single transaction, on the writer thread of the
+ * {@link ProductRepository}.
+ * Until they are written, the pending deltas can be read back in order to display the quantities
+ * optimistically.
+ * <p>
+ * When the flush window closes, or when the queue is flushed, the merged deltas become a batch
+ * with its own ID, which is written synchronously to a journal in the shared preferences before
+ * it can be sent to the provider. The provider records the ID of every applied batch within the
+ * same transaction as the deltas, and refuses a batch it has already applied. A batch left in
+ * the journal by a process which died before or after the batch was applied is therefore
+ * replayed the next time the queue is created without ever being counted twice.
+ * <p>
+ * The screens flush the queue when they are paused: {@link #flush()} journals the pending
+ * deltas on the calling thread before it returns, so that they survive the death of the
+ * process even while the writer thread is still busy with earlier writes.
+ */
+public class StockAdjustmentQueue {
+
+    /**
+     * Tag for the log messages
+     */
+    private static final String LOG_TAG = StockAdjustmentQueue.class.getSimpleName();
+
+    /**
+     * Name of the shared preferences file holding the journal of pending deltas
+     */
+    private static final String JOURNAL_NAME = "stock_adjustment_journal";
+
+    /**
+     * Prefix of the keys of the batches in the journal, followed by the batch ID
+     */
+    private static final String KEY_BATCH_PREFIX = "batch_";
+
+    /**
+     * Key of the journal holding the ID of the last batch created, so that batch IDs keep
+     * increasing across processes
+     */
+    private static final String KEY_LAST_BATCH_ID = "last_batch_id";
+
+    /**
+     * The single instance of the queue, shared by all the screens of the app
+     */
+    private static StockAdjustmentQueue sInstance;
+
+    /**
+     * Application context, used to reach the {@link ProductProvider}
+     */
+    private final Context appContext;
+
+    /**
+     * Journal of the batches which have not been written to the database yet, keyed by
+     * {@link #KEY_BATCH_PREFIX} and the batch ID.
+     */
+    private final SharedPreferences journal;
+
+    /**
+     * Repository on whose writer thread the pending deltas are written
+     */
+    private final ProductRepository productRepository;
+
+    /**
+     * Handler timing the flush windows and delivering the results of the flushes on the main
+     * thread
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Lock guarding the pending deltas and the unwritten batches
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Deltas waiting for the next flush, keyed by product ID
+     */
+    private LongSparseArray<Integer> pendingDeltas = new LongSparseArray<>();
+
+    /**
+     * Batches in the journal which are being written to the database, or are waiting to be
+     * written again after a failure, in increasing order of their IDs
+     */
+    private final ArrayList<Batch> unwrittenBatches = new ArrayList<>();
+
+    /**
+     * ID of the last batch created
+     */
+    private long lastBatchId;
+
+    /**
+     * Whether a flush has already been scheduled for the pending deltas
+     */
+    private boolean isFlushScheduled;
+
+    /**
+     * Length of the window, in milliseconds, during which adjustments are merged before being
+     * written to the database
+     */
+    private final long flushWindowMillis;
+
+    /**
+     * Listener notified on the main thread once pending deltas have been written
+     */
+    private OnFlushListener onFlushListener;
+
+    /**
+     * Runnable writing all pending deltas to the database, on the writer thread
+     */
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingDeltas();
+        }
+    };
+
+    /**
+     * Runnable handing {@link #flushTask} over to the writer thread, once the flush window has
+     * elapsed
+     */
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            productRepository.execute(flushTask);
+        }
+    };
+
+    /**
+     * Callback invoked on the main thread after pending deltas have been written to the database.
+     */
+    public interface OnFlushListener {
+        /**
+         * @param productIds    IDs of the adjusted products
+         * @param newQuantities quantity of each product after the adjustment, or
+         *                      {@link ProductContract.ProductEntry#QUANTITY_NOT_ADJUSTED} if the
+         *                      adjustment was refused
+         */
+        void onFlushed(long[] productIds, int[] newQuantities);
+    }
+
+    /**
+     * Deltas merged within one flush window, written to the provider in one single transaction
+     * under the ID of the batch.
+     */
+    private static final class Batch {
+
+        /**
+         * Separators of the product ID and the delta, and of the products, in the journal
+         */
+        private static final char DELTA_SEPARATOR = ':';
+        private static final char PRODUCT_SEPARATOR = ';';
+
+        final long id;
+        final long[] productIds;
+        final int[] deltas;
+
+        /**
+         * @param id         ID of the batch
+         * @param productIds IDs of the adjusted products
+         * @param deltas     delta of the product with the same index in productIds
+         */
+        Batch(long id, long[] productIds, int[] deltas) {
+            this.id = id;
+            this.productIds = productIds;
+            this.deltas = deltas;
+        }
+
+        /**
+         * @param productId ID of a product
+         * @return delta of the product in this batch, or 0
+         */
+        int getDelta(long productId) {
+            for (int i = 0; i < productIds.length; i++) {
+                if (productIds[i] == productId) {
+                    return deltas[i];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return key of the batch in the journal
+         */
+        String getJournalKey() {
+            return KEY_BATCH_PREFIX + id;
+        }
+
+        /**
+         * @return the deltas of the batch, as written to the journal
+         */
+        String encode() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < productIds.length; i++) {
+                if (i > 0) {
+                    builder.append(PRODUCT_SEPARATOR);
+                }
+                builder.append(productIds[i]).append(DELTA_SEPARATOR).append(deltas[i]);
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Read a batch back from the journal.
+         *
+         * @param id      ID of the batch
+         * @param encoded deltas of the batch, as written by {@link #encode()}
+         * @return the batch
+         * @throws NumberFormatException if the journal entry is corrupt
+         */
+        static Batch decode(long id, String encoded) {
+            String[] entries = encoded.split(String.valueOf(PRODUCT_SEPARATOR));
+            long[] productIds = new long[entries.length];
+            int[] deltas = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                int separatorIndex = entries[i].indexOf(DELTA_SEPARATOR);
+                if (separatorIndex < 0) {
+                    throw new NumberFormatException(encoded);
+                }
+                productIds[i] = Long.parseLong(entries[i].substring(0, separatorIndex));
+                deltas[i] = Integer.parseInt(entries[i].substring(separatorIndex + 1));
+            }
+            return new Batch(id, productIds, deltas);
+        }
+    }
+
+    /**
+     * Create the queue and replay the batches left in the journal by a previous process.
+     *
+     * @param context of the app
+     */
+    private StockAdjustmentQueue(Context context) {
+        appContext = context.getApplicationContext();
+        journal = appContext.getSharedPreferences(JOURNAL_NAME, Context.MODE_PRIVATE);
+
+        productRepository = ProductRepository.getInstance(appContext);
+        flushWindowMillis = appContext.getResources().getInteger(
+                R.integer.stock_adjustment_flush_window_millis);
+        lastBatchId = journal.getLong(KEY_LAST_BATCH_ID, 0);
+
+        replayJournal();
+    }
+
+    /**
+     * Get the single instance of the queue, creating it if needed.
+     *
+     * @param context of the app
+     * @return the queue
+     */
+    public static synchronized StockAdjustmentQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StockAdjustmentQueue(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Set the listener notified after pending deltas have been written.
+     *
+     * @param listener to be notified, or null
+     */
+    public void setOnFlushListener(OnFlushListener listener) {
+        onFlushListener = listener;
+    }
+
+    /**
+     * Queue a quantity adjustment for a product. The adjustment is merged with any other pending
+     * adjustment of the same product, and journaled and written once the flush window has
+     * elapsed.
+     *
+     * @param productId ID of the product
+     * @param delta     number of items to add to (if positive) or remove from (if negative) the
+     *                  product quantity
+     */
+    public void enqueue(long productId, int delta) {
+        synchronized (lock) {
+            Integer pendingDelta = pendingDeltas.get(productId);
+            pendingDeltas.put(productId, pendingDelta == null ? delta : pendingDelta + delta);
+
+            // start the window with the first adjustment, so a burst of taps is written at most
+            // flushWindowMillis after it started
+            scheduleFlushLocked(flushWindowMillis);
+        }
+    }
+
+    /**
+     * Get the sum of the deltas of a product which have not been written to the database yet,
+     * so that the quantity can be displayed optimistically.
+     *
+     * @param productId ID of the product
+     * @return delta to add to the quantity read from the database
+     */
+    public int getPendingDelta(long productId) {
+        synchronized (lock) {
+            Integer pendingDelta = pendingDeltas.get(productId);
+            int delta = pendingDelta == null ? 0 : pendingDelta;
+            for (int i = 0; i < unwrittenBatches.size(); i++) {
+                delta += unwrittenBatches.get(i).getDelta(productId);
+            }
+            return delta;
+        }
+    }
+
+    /**
+     * Schedule a flush of the pending deltas, unless one is already scheduled. Must be called
+     * while holding {@link #lock}.
+     *
+     * @param delayMillis delay after which the pending deltas should be written
+     */
+    private void scheduleFlushLocked(long delayMillis) {
+        if (!isFlushScheduled) {
+            isFlushScheduled = true;
+            mainHandler.postDelayed(flushRunnable, delayMillis);
+        }
+    }
+
+    /**
+     * Create the ID of a new batch. IDs keep increasing even if the clock goes back, and do not
+     * start again from 1 should the journal be lost. Must be called while holding {@link #lock}.
+     *
+     * @return the new batch ID
+     */
+    private long nextBatchIdLocked() {
+        lastBatchId = Math.max(lastBatchId + 1, System.currentTimeMillis());
+        return lastBatchId;
+    }
+
+    /**
+     * Write all pending deltas without waiting for the end of the flush window, for instance
+     * when the screen showing the products is paused. The deltas are journaled before this
+     * method returns, and written to the database on the writer thread.
+     */
+    public void flush() {
+        synchronized (lock) {
+            mainHandler.removeCallbacks(flushRunnable);
+            isFlushScheduled = true;
+            journalPendingDeltasLocked();
+            productRepository.execute(flushTask);
+        }
+    }
+
+    /**
+     * Turn the pending deltas, if any, into a new batch, and write it synchronously to the
+     * journal. The batch only joins the unwritten batches once it is in the journal, so that it
+     * never reaches the database before. Must be called while holding {@link #lock}.
+     */
+    private void journalPendingDeltasLocked() {
+        if (pendingDeltas.size() == 0) {
+            return;
+        }
+        long[] productIds = new long[pendingDeltas.size()];
+        int[] deltas = new int[pendingDeltas.size()];
+        for (int i = 0; i < pendingDeltas.size(); i++) {
+            productIds[i] = pendingDeltas.keyAt(i);
+            deltas[i] = pendingDeltas.valueAt(i);
+        }
+        Batch batch = new Batch(nextBatchIdLocked(), productIds, deltas);
+        journal.edit()
+                .putString(batch.getJournalKey(), batch.encode())
+                .putLong(KEY_LAST_BATCH_ID, batch.id)
+                .commit();
+        pendingDeltas = new LongSparseArray<>();
+        unwrittenBatches.add(batch);
+    }
+
+    /**
+     * Journal the pending deltas as a new batch, then write all the unwritten batches to the
+     * database in order, each one in one single transaction. Runs on the writer thread.
+     */
+    private void flushPendingDeltas() {
+        ArrayList<Batch> batches;
+        synchronized (lock) {
+            isFlushScheduled = false;
+            journalPendingDeltasLocked();
+            batches = new ArrayList<>(unwrittenBatches);
+        }
+
+        // the batches are written in order, as the provider refuses a batch older than the last
+        // one it applied
+        for (Batch batch : batches) {
+            if (!writeBatch(batch)) {
+                // the batch stays in the journal, and is written again with the next flush
+                synchronized (lock) {
+                    scheduleFlushLocked(flushWindowMillis);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write a batch of deltas to the database, in one single transaction, then remove it from
+     * the journal.
+     *
+     * @param batch to be written
+     * @return whether the batch is now in the database - written now or by an earlier attempt
+     */
+    private boolean writeBatch(Batch batch) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(ProductContract.ProductEntry.EXTRA_PRODUCT_IDS, batch.productIds);
+        extras.putIntArray(ProductContract.ProductEntry.EXTRA_QUANTITY_DELTAS, batch.deltas);
+        extras.putLong(ProductContract.ProductEntry.EXTRA_BATCH_ID, batch.id);
+        Bundle result = null;
+        try {
+            result = appContext.getContentResolver().call(
+                    ProductContract.ProductEntry.CONTENT_URI,
+                    ProductContract.ProductEntry.METHOD_ADJUST_QUANTITIES, null, extras);
+        } catch (RuntimeException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+        }
+        if (result == null) {
+            return false;
+        }
+
+        // the provider would refuse the batch if it were replayed, so the journal entry can be
+        // removed asynchronously
+        synchronized (lock) {
+            unwrittenBatches.remove(batch);
+        }
+        journal.edit().remove(batch.getJournalKey()).apply();
+
+        final long[] flushedProductIds = batch.productIds;
+        final int[] newQuantities = result.getIntArray(
+                ProductContract.ProductEntry.EXTRA_NEW_QUANTITIES);
+        if (newQuantities == null) {
+            // the batch had been applied by an earlier attempt, whose results were lost
+            return true;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                OnFlushListener listener = onFlushListener;
+                if (listener != null) {
+                    listener.onFlushed(flushedProductIds, newQuantities);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Queue again all the batches left in the journal by a previous process, and write them.
+     */
+    private void replayJournal() {
+        Map<String, ?> journalEntries = journal.getAll();
+        synchronized (lock) {
+            for (Map.Entry<String, ?> entry : journalEntries.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                try {
+                    if (key.startsWith(KEY_BATCH_PREFIX) && value instanceof String) {
+                        unwrittenBatches.add(Batch.decode(
+                                Long.parseLong(key.substring(KEY_BATCH_PREFIX.length())),
+                                (String) value));
+                    }
+                } catch (NumberFormatException e) {
+                    Log.e(LOG_TAG, e.getMessage(), e);
+                }
+            }
+
+            if (unwrittenBatches.isEmpty()) {
+                return;
+            }
+            Collections.sort(unwrittenBatches, new Comparator<Batch>() {
+                @Override
+                public int compare(Batch batch, Batch otherBatch) {
+                    return batch.id < otherBatch.id ? -1 : (batch.id == otherBatch.id ? 0 : 1);
+                }
+            });
+        }
+        flush();
+    }
+}
@@ -0,0 +1,261 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+
+/**
+ * Writer of the append-only ledger of stock movements, used by the {@link ProductProvider} to
+ * record every change of the quantity of a product within the same transaction as the change.
+ * Single movements are appended with a compiled statement; the movements of updates and deletes
+ * given by a selection are computed by SQLite, in one single INSERT ... SELECT statement.
+ * <p>
+ * Movements older than the retention period are compacted into one snapshot per product and
+ * day, so the ledger stays bounded.
+ */
+class StockLedger {
+
+    /**
+     * Number of milliseconds in a day, used to group the movements by day (UTC)
+     */
+    static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * Frequently used names of the ledger tables and columns
+     */
+    private static final String MOVEMENTS = ProductContract.StockMovementEntry.TABLE_NAME;
+    private static final String SNAPSHOTS = ProductContract.StockSnapshotEntry.TABLE_NAME;
+    private static final String MOVEMENT_COLUMNS = " (" +
+            ProductContract.StockMovementEntry.COLUMN_PRODUCT_ID + ", " +
+            ProductContract.StockMovementEntry.COLUMN_DELTA + ", " +
+            ProductContract.StockMovementEntry.COLUMN_CREATED_AT + ", " +
+            ProductContract.StockMovementEntry.COLUMN_REASON + ")";
+
+    /**
+     * SQL appending one movement. Bound arguments: product ID, delta, time, reason.
+     */
+    private static final String SQL_INSERT_MOVEMENT = "INSERT INTO " + MOVEMENTS +
+            MOVEMENT_COLUMNS + " VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL recording the movements of the products whose quantity is about to be set to the same
+     * value; the selection of the update is appended. Bound arguments: new quantity, time,
+     * reason, new quantity, then the selection arguments.
+     */
+    private static final String SQL_INSERT_QUANTITY_CHANGES = "INSERT INTO " + MOVEMENTS +
+            MOVEMENT_COLUMNS + " SELECT " + ProductContract.ProductEntry._ID + ", ? - " +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + ", ?, ? FROM " +
+            ProductContract.ProductEntry.TABLE_NAME + " WHERE " +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " != ?";
+
+    /**
+     * SQL recording the removal of the remaining stock of the products about to be deleted; the
+     * selection of the delete is appended. Bound arguments: time, reason, then the selection
+     * arguments.
+     */
+    private static final String SQL_INSERT_REMOVALS = "INSERT INTO " + MOVEMENTS +
+            MOVEMENT_COLUMNS + " SELECT " + ProductContract.ProductEntry._ID + ", -" +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + ", ?, ? FROM " +
+            ProductContract.ProductEntry.TABLE_NAME + " WHERE " +
+            ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY + " != 0";
+
+    /**
+     * Glue between the statements above and the selection of the update or delete
+     */
+    private static final String AND_SELECTION_START = " AND (";
+    private static final String AND_SELECTION_END = ")";
+
+    /**
+     * SQL reading the time of the oldest movement, through the row ID
+     */
+    private static final String SQL_OLDEST_MOVEMENT = "SELECT " +
+            ProductContract.StockMovementEntry.COLUMN_CREATED_AT + " FROM " + MOVEMENTS +
+            " ORDER BY " + ProductContract.StockMovementEntry._ID + " LIMIT 1";
+
+    /**
+     * Selection of the movements which were folded. Bound arguments: time before which
+     * movements were folded.
+     */
+    private static final String BEFORE_CUTOFF_SELECTION =
+            ProductContract.StockMovementEntry.COLUMN_CREATED_AT + " < ?";
+
+    /**
+     * SQL folding the movements older than a time into the daily snapshots, adding them to the
+     * snapshots of the same product and day left by a previous compaction. Bound arguments:
+     * time before which movements are folded.
+     */
+    private static final String SQL_FOLD_MOVEMENTS = "INSERT OR REPLACE INTO " + SNAPSHOTS + " (" +
+            ProductContract.StockSnapshotEntry.COLUMN_PRODUCT_ID + ", " +
+            ProductContract.StockSnapshotEntry.COLUMN_DAY + ", " +
+            ProductContract.StockSnapshotEntry.COLUMN_UNITS_SOLD + ", " +
+            ProductContract.StockSnapshotEntry.COLUMN_UNITS_RESTOCKED + ", " +
+            ProductContract.StockSnapshotEntry.COLUMN_NET_CHANGE + ", " +
+            ProductContract.StockSnapshotEntry.COLUMN_MOVEMENT_COUNT + ") SELECT " +
+            "c.product_id, c.day, " +
+            "c.units_sold + IFNULL(s." + ProductContract.StockSnapshotEntry.COLUMN_UNITS_SOLD +
+            ", 0), " +
+            "c.units_restocked + IFNULL(s." +
+            ProductContract.StockSnapshotEntry.COLUMN_UNITS_RESTOCKED + ", 0), " +
+            "c.net_change + IFNULL(s." + ProductContract.StockSnapshotEntry.COLUMN_NET_CHANGE +
+            ", 0), " +
+            "c.movement_count + IFNULL(s." +
+            ProductContract.StockSnapshotEntry.COLUMN_MOVEMENT_COUNT + ", 0) FROM (SELECT " +
+            ProductContract.StockMovementEntry.COLUMN_PRODUCT_ID + " AS product_id, " +
+            ProductContract.StockMovementEntry.COLUMN_CREATED_AT + " / " + MILLIS_PER_DAY +
+            " AS day, " +
+            "SUM(CASE WHEN " + ProductContract.StockMovementEntry.COLUMN_REASON + " = " +
+            ProductContract.StockMovementEntry.REASON_SALE + " THEN -" +
+            ProductContract.StockMovementEntry.COLUMN_DELTA + " ELSE 0 END) AS units_sold, " +
+            "SUM(CASE WHEN " + ProductContract.StockMovementEntry.COLUMN_REASON + " = " +
+            ProductContract.StockMovementEntry.REASON_RESTOCK + " THEN " +
+            ProductContract.StockMovementEntry.COLUMN_DELTA +
+            " ELSE 0 END) AS units_restocked, " +
+            "SUM(" + ProductContract.StockMovementEntry.COLUMN_DELTA + ") AS net_change, " +
+            "COUNT(*) AS movement_count FROM " + MOVEMENTS + " WHERE " +
+            BEFORE_CUTOFF_SELECTION + " GROUP BY " +
+            "product_id, day) AS c LEFT JOIN " + SNAPSHOTS + " AS s ON s." +
+            ProductContract.StockSnapshotEntry.COLUMN_PRODUCT_ID + " = c.product_id AND s." +
+            ProductContract.StockSnapshotEntry.COLUMN_DAY + " = c.day";
+
+    /**
+     * Database helper providing the database on which the statement is compiled
+     */
+    private final ProductDbHelper productDbHelper;
+
+    /**
+     * Compiled statement appending one movement, or null until it is first needed. Access is
+     * guarded by the ledger itself.
+     */
+    private SQLiteStatement insertMovementStatement;
+
+    /**
+     * Create the ledger writer. The statement is compiled the first time it is needed.
+     *
+     * @param productDbHelper database helper providing the database
+     */
+    StockLedger(ProductDbHelper productDbHelper) {
+        this.productDbHelper = productDbHelper;
+    }
+
+    /**
+     * Append one movement to the ledger. Nothing is recorded for a zero delta.
+     *
+     * @param productId ID of the product
+     * @param delta     number of items added to (if positive) or removed from (if negative) the
+     *                  stock
+     * @param reason    one of the REASON_ constants of
+     *                  {@link ProductContract.StockMovementEntry}
+     */
+    synchronized void recordMovement(long productId, long delta, int reason) {
+        if (delta == 0) {
+            return;
+        }
+        if (insertMovementStatement == null) {
+            insertMovementStatement = productDbHelper.getWritableDatabase().compileStatement(
+                    SQL_INSERT_MOVEMENT);
+        }
+        insertMovementStatement.bindLong(1, productId);
+        insertMovementStatement.bindLong(2, delta);
+        insertMovementStatement.bindLong(3, System.currentTimeMillis());
+        insertMovementStatement.bindLong(4, reason);
+        insertMovementStatement.executeInsert();
+    }
+
+    /**
+     * Record the movements of the products whose quantity is about to be set, as a correction.
+     * Must be called before the update, within the same transaction.
+     *
+     * @param db            writable database
+     * @param newQuantity   quantity the products are about to be set to
+     * @param selection     selection of the update, or null for all products
+     * @param selectionArgs selection arguments
+     */
+    void recordQuantityChanges(SQLiteDatabase db, long newQuantity, String selection,
+                               String[] selectionArgs) {
+        Object[] bindArgs = concatenateArgs(new Object[]{newQuantity,
+                System.currentTimeMillis(), ProductContract.StockMovementEntry.REASON_CORRECTION,
+                newQuantity}, selectionArgs);
+        db.execSQL(appendSelection(SQL_INSERT_QUANTITY_CHANGES, selection), bindArgs);
+    }
+
+    /**
+     * Record the removal of the remaining stock of the products about to be deleted. Must be
+     * called before the delete, within the same transaction.
+     *
+     * @param db            writable database
+     * @param selection     selection of the delete, or null for all products
+     * @param selectionArgs selection arguments
+     */
+    void recordRemovals(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        Object[] bindArgs = concatenateArgs(new Object[]{System.currentTimeMillis(),
+                ProductContract.StockMovementEntry.REASON_PRODUCT_DELETED}, selectionArgs);
+        db.execSQL(appendSelection(SQL_INSERT_REMOVALS, selection), bindArgs);
+    }
+
+    /**
+     * Fold the movements older than the retention period into the daily snapshots, and remove
+     * them from the ledger. Only whole days are folded, so a snapshot never holds part of a day
+     * whose other movements are still in the ledger.
+     *
+     * @param db            writable database
+     * @param retentionDays number of days, before today, whose movements are kept in the ledger
+     * @return number of movements folded into snapshots
+     */
+    int compact(SQLiteDatabase db, int retentionDays) {
+        long cutoffMillis = (System.currentTimeMillis() / MILLIS_PER_DAY - retentionDays) *
+                MILLIS_PER_DAY;
+
+        // most of the time there is nothing to compact, which the oldest movement tells cheaply
+        SQLiteStatement oldestStatement = db.compileStatement(SQL_OLDEST_MOVEMENT);
+        try {
+            if (oldestStatement.simpleQueryForLong() >= cutoffMillis) {
+                return 0;
+            }
+        } catch (SQLiteDoneException e) {
+            // the ledger is empty
+            return 0;
+        } finally {
+            oldestStatement.close();
+        }
+
+        String[] cutoffArgs = {String.valueOf(cutoffMillis)};
+        int movementsCompacted;
+        db.beginTransaction();
+        try {
+            db.execSQL(SQL_FOLD_MOVEMENTS, cutoffArgs);
+            movementsCompacted = db.delete(MOVEMENTS, BEFORE_CUTOFF_SELECTION, cutoffArgs);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return movementsCompacted;
+    }
+
+    /**
+     * @param sql       statement selecting products
+     * @param selection additional selection, or null
+     * @return the statement, restricted to the selection
+     */
+    private static String appendSelection(String sql, String selection) {
+        if (TextUtils.isEmpty(selection)) {
+            return sql;
+        }
+        return sql + AND_SELECTION_START + selection + AND_SELECTION_END;
+    }
+
+    /**
+     * @param bindArgs      arguments of the statement
+     * @param selectionArgs arguments of the selection appended to the statement, or null
+     * @return all the arguments, in order
+     */
+    private static Object[] concatenateArgs(Object[] bindArgs, String[] selectionArgs) {
+        if (selectionArgs == null) {
+            return bindArgs;
+        }
+        Object[] args = new Object[bindArgs.length + selectionArgs.length];
+        System.arraycopy(bindArgs, 0, args, 0, bindArgs.length);
+        System.arraycopy(selectionArgs, 0, args, bindArgs.length, selectionArgs.length);
+        return args;
+    }
+}
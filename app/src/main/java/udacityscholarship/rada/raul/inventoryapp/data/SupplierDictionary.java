@@ -0,0 +1,119 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.HashMap;
+
+/**
+ * In-memory dictionary of the suppliers, mapping every pair of supplier name and phone number
+ * to the ID of its row in the suppliers table. The {@link ProductProvider} writes the products
+ * with the ID of their supplier, so a bulk import of products from a few suppliers only looks
+ * each supplier up once, rather than once per product.
+ * <p>
+ * The IDs are only handed out within write transactions; a supplier inserted by a transaction
+ * which is then rolled back does not exist, so the provider clears the dictionary whenever a
+ * write transaction is not committed, as well as when a supplier is renamed.
+ */
+class SupplierDictionary {
+
+    /**
+     * Separator between the name and the phone number of a supplier in the keys of the
+     * dictionary. It cannot be typed, so two different suppliers never share a key.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+
+    /**
+     * SQL query reading the ID of a supplier. Bound arguments: name, phone number.
+     */
+    private static final String SQL_SELECT_SUPPLIER_ID = "SELECT " +
+            ProductContract.SupplierEntry._ID + " FROM " +
+            ProductContract.SupplierEntry.TABLE_NAME + " WHERE " +
+            ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME + " = ? AND " +
+            ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " = ?";
+
+    /**
+     * IDs of the suppliers, keyed by name and phone number
+     */
+    private final HashMap<String, Long> supplierIds = new HashMap<>();
+
+    /**
+     * Maximum number of suppliers kept; the dictionary is emptied once it is full
+     */
+    private final int maxSize;
+
+    /**
+     * Create an empty dictionary.
+     *
+     * @param maxSize maximum number of suppliers kept
+     */
+    SupplierDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the ID of a supplier, from the dictionary if possible, otherwise from the suppliers
+     * table, where the supplier is inserted if it does not exist yet. Must be called within a
+     * write transaction.
+     *
+     * @param db          writable database, within a transaction
+     * @param name        of the supplier
+     * @param phoneNumber of the supplier
+     * @return ID of the supplier
+     */
+    synchronized long getOrInsert(SQLiteDatabase db, String name, String phoneNumber) {
+        String key = name + KEY_SEPARATOR + phoneNumber;
+        Long supplierId = supplierIds.get(key);
+        if (supplierId != null) {
+            return supplierId;
+        }
+
+        supplierId = findSupplierId(db, name, phoneNumber);
+        if (supplierId == null) {
+            ContentValues values = new ContentValues();
+            values.put(ProductContract.SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+            values.put(ProductContract.SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phoneNumber);
+            supplierId = db.insertOrThrow(ProductContract.SupplierEntry.TABLE_NAME, null,
+                    values);
+        }
+
+        if (supplierIds.size() >= maxSize) {
+            supplierIds.clear();
+        }
+        supplierIds.put(key, supplierId);
+        return supplierId;
+    }
+
+    /**
+     * Remove all the suppliers from the dictionary, after a write transaction was rolled back
+     * or a supplier was changed. They are looked up again when needed.
+     */
+    synchronized void clear() {
+        supplierIds.clear();
+    }
+
+    /**
+     * @return number of suppliers in the dictionary
+     */
+    synchronized int size() {
+        return supplierIds.size();
+    }
+
+    /**
+     * Read the ID of a supplier from the suppliers table.
+     *
+     * @param db          database to read from
+     * @param name        of the supplier
+     * @param phoneNumber of the supplier
+     * @return ID of the supplier, or null if there is no such supplier
+     */
+    private static Long findSupplierId(SQLiteDatabase db, String name, String phoneNumber) {
+        Cursor cursor = db.rawQuery(SQL_SELECT_SUPPLIER_ID, new String[]{name, phoneNumber});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package udacityscholarship.rada.raul.inventoryapp.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit test checking that {@link PriceUtils} formats and parses the prices stored in
+ * minor units of the currency without losing a cent. PriceUtils uses no Android classes, so
+ * the test runs on the development machine.
+ */
+public class PriceUtilsTest {
+
+    @Test
+    public void formatsAllDecimals() {
+        assertEquals("0.00", PriceUtils.formatPrice(0));
+        assertEquals("0.05", PriceUtils.formatPrice(5));
+        assertEquals("9.99", PriceUtils.formatPrice(999));
+        assertEquals("1234.50", PriceUtils.formatPrice(123450));
+        assertEquals("-0.05", PriceUtils.formatPrice(-5));
+        assertEquals("-92233720368547758.08", PriceUtils.formatPrice(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void formatsIntoBuffer() {
+        char[] buffer = new char[PriceUtils.MAX_PRICE_LENGTH];
+
+        int length = PriceUtils.formatPrice(Long.MAX_VALUE, buffer);
+
+        assertEquals("92233720368547758.07", new String(buffer, 0, length));
+    }
+
+    @Test
+    public void parsesPricesWithOrWithoutDecimals() {
+        assertEquals(999, PriceUtils.parsePrice("9.99"));
+        assertEquals(990, PriceUtils.parsePrice("9,9"));
+        assertEquals(900, PriceUtils.parsePrice(" 9 "));
+        assertEquals(50, PriceUtils.parsePrice(".5"));
+        assertEquals(Long.MAX_VALUE, PriceUtils.parsePrice("92233720368547758.07"));
+    }
+
+    @Test
+    public void rejectsInvalidPrices() {
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice(""));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("."));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("-1"));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("1.234"));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("1.2.3"));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("9 EUR"));
+        assertEquals(PriceUtils.INVALID_PRICE, PriceUtils.parsePrice("92233720368547758.08"));
+    }
+}